@@ -0,0 +1,20 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a GET endpoint whose response only depends on the given aggregates.
+ * The response gets an ETag from their versions and a matching If-None-Match is answered with
+ * 304 Not Modified before the handler runs (see {@link ConditionalGetInterceptor}).
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConditionalGet {
+
+    Aggregate[] value();
+}
@@ -0,0 +1,84 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import ch.hoffmann.jan.warehouse.service.AggregateVersions;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Handles If-None-Match for the endpoints annotated with {@link ConditionalGet}.
+ * The ETag is computed before the handler runs, so a write committing during the request can only make the
+ * tag older than the data (the next request is answered in full), never newer. For the same reason a response
+ * whose data changed very recently is not read from a replica that may not have the change yet.
+ */
+@Component
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+    private final AggregateVersions aggregateVersions;
+
+    @Autowired
+    public ConditionalGetInterceptor(AggregateVersions aggregateVersions) {
+        this.aggregateVersions = aggregateVersions;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)
+                || !(HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod()))) {
+            return true;
+        }
+        ConditionalGet conditionalGet = handlerMethod.getMethodAnnotation(ConditionalGet.class);
+        if (conditionalGet == null) {
+            return true;
+        }
+
+        String etag = aggregateVersions.etag(formatVariant(request), conditionalGet.value());
+        // Clients may keep the response but have to revalidate it on every use
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        // Sets the ETag header, and the 304 status when If-None-Match matches
+        boolean notModified = new ServletWebRequest(request, response).checkNotModified(etag);
+        if (!notModified) {
+            ReplicaRoutingDataSource.requireChangesSince(aggregateVersions.lastChange(conditionalGet.value()));
+        }
+        return !notModified;
+    }
+
+    /**
+     * Names the binary formats the request accepts (see {@link JacksonConfig}), null if it accepts none.
+     * A JSON and a binary response of the same data must not share a tag, or a client holding one could
+     * have it confirmed by a 304 when asking for the other. Accept headers naming a binary format get
+     * their own tags, even where the response is JSON after all.
+     */
+    private static String formatVariant(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null) {
+            return null;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            // Rejected with 406 when the response is written
+            return null;
+        }
+        StringJoiner variant = new StringJoiner("+");
+        for (MediaType binary : JacksonConfig.BINARY_MEDIA_TYPES) {
+            if (accepted.stream().anyMatch(mediaType -> !mediaType.isWildcardSubtype() && mediaType.includes(binary))) {
+                variant.add(binary.getSubtype());
+            }
+        }
+        return variant.length() == 0 ? null : variant.toString();
+    }
+}
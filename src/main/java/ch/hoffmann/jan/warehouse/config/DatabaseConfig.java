@@ -1,6 +1,13 @@
 package ch.hoffmann.jan.warehouse.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -8,16 +15,23 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.annotation.Order;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
 
 @Configuration
 public class DatabaseConfig {
 
+    // Version of the admin bootstrap below; bump it whenever ensureWarehouseDatabaseAndUserSetup() changes
+    // so that installations carrying an older marker run the bootstrap again
+    private static final int BOOTSTRAP_VERSION = 1;
+
     // Admin user for database creation and schema management
     @Value("${spring.datasource.admin.username}")
     private String adminUsername;
@@ -42,24 +56,84 @@ public class DatabaseConfig {
     @Bean
     @Primary
     @Order(1)
-    public DataSource dataSource(DataSourceProperties properties) {
-        // First, ensure the warehouse database and application user exist
-        ensureWarehouseDatabaseAndUserSetup();
+    public DataSource dataSource(DataSourceProperties properties, ObjectProvider<ReplicaRoutingDataSource> replicaRouting) {
+        // First, ensure the warehouse database and application user exist (skipped when already bootstrapped)
+        if (isBootstrapCurrent()) {
+            System.out.println("Database bootstrap marker is at version " + BOOTSTRAP_VERSION + ", skipping admin setup.");
+        } else {
+            ensureWarehouseDatabaseAndUserSetup();
+        }
+
+        // With a read replica, transactions are routed between the primary and replica pools. The lazy proxy
+        // fetches the connection at the first statement, once the transaction has set its read-only flag.
+        ReplicaRoutingDataSource routingDataSource = replicaRouting.getIfAvailable();
+        if (routingDataSource != null) {
+            LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routingDataSource);
+            proxy.setDefaultAutoCommit(true);
+            proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            return proxy;
+        }
 
         // Now create a datasource that points to the warehouse database using app user
+        // (the configured URL carries the driver options, e.g. reWriteBatchedInserts)
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setUrl("jdbc:postgresql://localhost:5432/warehouse");
+        dataSource.setUrl(properties.getUrl());
         dataSource.setUsername(appUsername);
         dataSource.setPassword(appPassword);
 
         return dataSource;
     }
 
+    /**
+     * Primary and replica connection pools with the routing between them (app.datasource.replica.enabled).
+     * A single database under a second URL works as a replica for testing; it never reports lag.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties,
+            @Value("${app.datasource.replica.url}") String replicaUrl,
+            @Value("${app.datasource.replica.username:${spring.datasource.username}}") String replicaUsername,
+            @Value("${app.datasource.replica.password:${spring.datasource.password}}") String replicaPassword,
+            @Value("${app.datasource.primary.pool-size:10}") int primaryPoolSize,
+            @Value("${app.datasource.replica.pool-size:10}") int replicaPoolSize,
+            @Value("${app.datasource.replica.max-lag:2s}") Duration maxLag,
+            @Value("${app.datasource.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        HikariDataSource primary = new HikariDataSource();
+        primary.setPoolName("primary");
+        primary.setJdbcUrl(properties.getUrl());
+        primary.setUsername(appUsername);
+        primary.setPassword(appPassword);
+        primary.setMaximumPoolSize(primaryPoolSize);
+
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica");
+        replica.setJdbcUrl(replicaUrl);
+        replica.setUsername(replicaUsername);
+        replica.setPassword(replicaPassword);
+        replica.setMaximumPoolSize(replicaPoolSize);
+        replica.setReadOnly(true);
+
+        return new ReplicaRoutingDataSource(primary, replica, maxLag, readYourWritesWindow);
+    }
+
+    /**
+     * With a replica, Hibernate has to give the connection back after each transaction instead of holding it for
+     * the whole request (open session in view), so the next transaction of the request is routed again
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return hibernateProperties -> hibernateProperties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
     /**
      * Creates a DataSource with admin privileges for database creation
-     * This is used only during application startup for database initialization
+     * This is used only during application startup for database initialization and schema migrations
      */
     @Bean("adminDataSource")
+    @FlywayDataSource
     public DataSource adminDataSource() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
         dataSource.setUrl("jdbc:postgresql://localhost:5432/warehouse");
@@ -68,6 +142,21 @@ public class DatabaseConfig {
         return dataSource;
     }
 
+    /**
+     * Checks the bootstrap marker with the application user. Any failure (missing database, user or marker)
+     * means the admin bootstrap has to run.
+     */
+    private boolean isBootstrapCurrent() {
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:postgresql://localhost:5432/warehouse", appUsername, appPassword);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(version) FROM app_bootstrap.schema_version")) {
+            return resultSet.next() && resultSet.getInt(1) >= BOOTSTRAP_VERSION;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
     private void ensureWarehouseDatabaseAndUserSetup() {
         // Step 1: Ensure database exists
         try (Connection connection = DriverManager.getConnection(
@@ -140,6 +229,19 @@ public class DatabaseConfig {
                 
                 System.out.println("Permissions configured for application user.");
 
+                // Record the bootstrap so subsequent starts can skip it. The marker lives in its own schema
+                // to keep the application schema untouched.
+                statement.executeUpdate("CREATE SCHEMA IF NOT EXISTS app_bootstrap");
+                statement.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS app_bootstrap.schema_version (" +
+                    "version INTEGER PRIMARY KEY, applied_at TIMESTAMP NOT NULL DEFAULT now())");
+                statement.executeUpdate("GRANT USAGE ON SCHEMA app_bootstrap TO " + appUsername);
+                statement.executeUpdate("GRANT SELECT ON app_bootstrap.schema_version TO " + appUsername);
+                statement.executeUpdate(
+                    "INSERT INTO app_bootstrap.schema_version (version) VALUES (" + BOOTSTRAP_VERSION + ") " +
+                    "ON CONFLICT (version) DO NOTHING");
+                System.out.println("Database bootstrap marker set to version " + BOOTSTRAP_VERSION + ".");
+
             }
         } catch (Exception e) {
             System.err.println("Failed to setup application user: " + e.getMessage());
@@ -18,6 +18,7 @@ import jakarta.annotation.PostConstruct;
 /**
  * Component responsible for setting up the initial admin user during application startup.
  * This runs after database initialization but before other application components.
+ * With async startup enabled the setup is queued behind the Keycloak synchronization in {@link StartupTasks}.
  */
 @Component
 @Order(3)
@@ -25,6 +26,7 @@ public class InitialAdminSetup implements ApplicationRunner {
 
     private final KeycloakService keycloakService;
     private final UserRepository userRepository;
+    private final StartupTasks startupTasks;
     private final ApplicationContext context;
     private final Logger logger = LoggerFactory.getLogger(InitialAdminSetup.class);
 
@@ -43,9 +45,11 @@ public class InitialAdminSetup implements ApplicationRunner {
     public InitialAdminSetup(
             KeycloakService keycloakService,
             UserRepository userRepository,
+            StartupTasks startupTasks,
             ApplicationContext context) {
         this.keycloakService = keycloakService;
         this.userRepository = userRepository;
+        this.startupTasks = startupTasks;
         this.context = context;
     }
 
@@ -70,6 +74,13 @@ public class InitialAdminSetup implements ApplicationRunner {
 
     @Override
     public void run(ApplicationArguments args) {
+        startupTasks.submit("initial-admin-setup", this::setupInitialAdmin);
+    }
+
+    /**
+     * Ensures a manager exists in Keycloak and in the local database, shutting down the application otherwise
+     */
+    void setupInitialAdmin() {
         try {
             logger.info("Starting initial admin setup...");
 
@@ -0,0 +1,66 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.List;
+
+/**
+ * JSON is the default response format. Clients that send Accept: application/cbor or application/x-jackson-smile
+ * get the same DTOs in that binary format, written by mappers configured like the JSON one.
+ */
+@Configuration
+public class JacksonConfig {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+    public static final List<MediaType> BINARY_MEDIA_TYPES = List.of(MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
+    /**
+     * Replaces the reflective getter and setter calls of the DTO (de)serializers with generated lambdas,
+     * which the JIT inlines like direct calls. Spring Boot registers the module with the application's ObjectMapper.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.json.blackbird.enabled", havingValue = "true", matchIfMissing = true)
+    public BlackbirdModule blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    /**
+     * CBOR (RFC 8949). With stringref, every field name and string value after its first occurrence is written as
+     * a reference to it (tags 256 and 25); the client's decoder has to support them (Jackson 2.15 and later does).
+     * Replaces the converter Spring MVC would register with an unconfigured mapper.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+            Jackson2ObjectMapperBuilder builder,
+            @Value("${app.cbor.stringref:true}") boolean stringref) {
+        CBORFactory factory = CBORFactory.builder()
+                .configure(CBORGenerator.Feature.STRINGREF, stringref)
+                .build();
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(factory).build());
+    }
+
+    /**
+     * Smile, Jackson's binary JSON. Repeated field names, and short string values such as warehouse and category
+     * names, are written as back-references to their first occurrence.
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(factory).build());
+    }
+}
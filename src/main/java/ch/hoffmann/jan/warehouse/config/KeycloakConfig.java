@@ -22,6 +22,10 @@ public class KeycloakConfig {
     @Value("${keycloak.admin-password}")
     private String adminPassword;
 
+    // With async startup the connectivity check is left to the background startup tasks
+    @Value("${app.startup.async:false}")
+    private boolean asyncStartup;
+
     @Bean
     public Keycloak keycloak() {
         logger.info("Initializing Keycloak client with server URL: {}", serverUrl);
@@ -35,6 +39,11 @@ public class KeycloakConfig {
                     .password(adminPassword)
                     .build();
 
+            if (asyncStartup) {
+                logger.info("Async startup enabled - deferring Keycloak connectivity check");
+                return keycloak;
+            }
+
             // Test the connection
             keycloak.serverInfo().getInfo();
             logger.info("Successfully connected to Keycloak server");
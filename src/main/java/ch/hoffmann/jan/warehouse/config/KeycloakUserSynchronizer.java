@@ -10,7 +10,8 @@ import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 /**
  * Component responsible for synchronizing Keycloak users with the local database.
  * This runs before the InitialAdminSetup to ensure all users are properly synchronized.
+ * With async startup enabled the synchronization runs in the background via {@link StartupTasks}.
  */
 @Component
 @Order(2) // Run before InitialAdminSetup which has Order(3)
@@ -28,16 +30,28 @@ public class KeycloakUserSynchronizer implements ApplicationRunner {
 
     private final KeycloakService keycloakService;
     private final UserRepository userRepository;
+    private final StartupTasks startupTasks;
+    private final TransactionTemplate transactionTemplate;
     private final Logger logger = LoggerFactory.getLogger(KeycloakUserSynchronizer.class);
 
-    public KeycloakUserSynchronizer(KeycloakService keycloakService, UserRepository userRepository) {
+    public KeycloakUserSynchronizer(KeycloakService keycloakService, UserRepository userRepository,
+                                    StartupTasks startupTasks, PlatformTransactionManager transactionManager) {
         this.keycloakService = keycloakService;
         this.userRepository = userRepository;
+        this.startupTasks = startupTasks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     @Override
-    @Transactional
     public void run(ApplicationArguments args) {
+        startupTasks.submit("keycloak-user-sync",
+                () -> transactionTemplate.executeWithoutResult(status -> synchronizeUsers()));
+    }
+
+    /**
+     * Mirrors all Keycloak users into the local database and deactivates local users missing in Keycloak
+     */
+    void synchronizeUsers() {
         logger.info("Starting Keycloak user synchronization...");
 
         try {
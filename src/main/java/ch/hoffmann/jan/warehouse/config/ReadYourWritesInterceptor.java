@@ -0,0 +1,37 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Reads of a request have to include the client's last write, whichever instance committed it: the commit time
+ * comes back in the last-write cookie set by {@link ReplicaRoutingDataSource}.
+ */
+@Component
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicaRoutingDataSource.clearRequirement();
+        Cookie cookie = WebUtils.getCookie(request, ReplicaRoutingDataSource.LAST_WRITE_COOKIE);
+        if (cookie != null) {
+            try {
+                // Clamped, so a skewed or forged time cannot keep the client on the primary once the replica caught up
+                ReplicaRoutingDataSource.requireChangesSince(
+                        Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis()));
+            } catch (NumberFormatException e) {
+                // Not set by us; ignored
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.clearRequirement();
+    }
+}
@@ -0,0 +1,170 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the replica pool and everything else to the primary pool.
+ * The replica is skipped while its replication lag is above max-lag or it cannot be reached, and for reads that
+ * must see a change the replica may not have replayed yet (see {@link #requireChangesSince(long)}): the client's
+ * own writes, and the data covered by the ETag of a conditional GET.
+ * The time of a committed write is handed to the client in the last-write cookie, which it sends back to whichever
+ * instance serves its next requests (see {@link ReadYourWritesInterceptor}). Commit times are compared with the
+ * time up to which the replica is known to have replayed all commits (see {@link #checkReplicaLag()}), so the
+ * clocks of the instances and the database servers are assumed to be synchronized.
+ * Has to be wrapped in a LazyConnectionDataSourceProxy, so the connection is only fetched once the transaction
+ * has set its read-only flag.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String LAST_WRITE_COOKIE = "last-write";
+
+    private enum Target {
+        PRIMARY, REPLICA
+    }
+
+    // Commit time (epoch millis) of the newest change the current request has to see; 0 if none
+    private static final ThreadLocal<Long> REQUIRED_CHANGES_SINCE = ThreadLocal.withInitial(() -> 0L);
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+    private final Duration maxLag;
+    private final Duration readYourWritesWindow;
+    private volatile boolean replicaAvailable;
+    // Commits up to this time (epoch millis) had been replayed by the replica at its last check
+    private volatile long replicaAsOf;
+    private final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, HikariDataSource replica, Duration maxLag,
+                                    Duration readYourWritesWindow) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLag = maxLag;
+        this.readYourWritesWindow = readYourWritesWindow;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Reads of the current thread have to include the changes committed at or after the given time; the replica
+     * is skipped until it has replayed them
+     */
+    public static void requireChangesSince(long epochMillis) {
+        REQUIRED_CHANGES_SINCE.set(Math.max(REQUIRED_CHANGES_SINCE.get(), epochMillis));
+    }
+
+    public static void clearRequirement() {
+        REQUIRED_CHANGES_SINCE.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Target.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        rememberWrite(System.currentTimeMillis());
+                    }
+                });
+            }
+            return Target.PRIMARY;
+        }
+
+        if (!replicaAvailable || REQUIRED_CHANGES_SINCE.get() > replicaAsOf) {
+            return Target.PRIMARY;
+        }
+        return Target.REPLICA;
+    }
+
+    /**
+     * Measures the replication lag and takes the replica out of rotation while it is too far behind or unreachable.
+     * Everything committed before the check has been replayed only if the replica's replay position has reached the
+     * primary's WAL insert position, read after the check started; that also covers an idle primary. Otherwise the
+     * replica is only known to be as recent as the last transaction it replayed: a standby that replayed everything
+     * it received may not have received a commit still in flight.
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.replica.lag-check-interval:PT1S}")
+    public void checkReplicaLag() {
+        long checkedAt = System.currentTimeMillis();
+        boolean available;
+        long asOf = 0;
+        try (Connection primaryConnection = primary.getConnection();
+             Statement statement = primaryConnection.createStatement();
+             ResultSet primaryPosition = statement.executeQuery("SELECT CAST(pg_current_wal_insert_lsn() AS text)");
+             Connection replicaConnection = replica.getConnection();
+             PreparedStatement replayed = replicaConnection.prepareStatement("""
+                     SELECT NOT pg_is_in_recovery() OR pg_last_wal_replay_lsn() >= CAST(? AS pg_lsn),
+                            COALESCE(EXTRACT(EPOCH FROM pg_last_xact_replay_timestamp()) * 1000, 0)
+                     """)) {
+            primaryPosition.next();
+            replayed.setString(1, primaryPosition.getString(1));
+            try (ResultSet resultSet = replayed.executeQuery()) {
+                resultSet.next();
+                asOf = resultSet.getBoolean(1) ? checkedAt : Math.min(checkedAt, (long) resultSet.getDouble(2));
+            }
+            available = checkedAt - asOf <= maxLag.toMillis();
+            if (!available && replicaAvailable) {
+                logger.warn("Replica lag {}ms exceeds {}, reading from the primary", checkedAt - asOf, maxLag);
+            }
+        } catch (Exception e) {
+            available = false;
+            if (replicaAvailable) {
+                logger.warn("Replica check failed, reading from the primary: {}", e.getMessage());
+            }
+        }
+        if (available && !replicaAvailable) {
+            logger.info("Replica is in sync, read-only transactions use it");
+        }
+        // Set before the replica is taken into rotation
+        replicaAsOf = asOf;
+        replicaAvailable = available;
+    }
+
+    @Override
+    public void close() {
+        replica.close();
+        primary.close();
+    }
+
+    /**
+     * Hands the commit time to the client of the current request, if its response is not sent yet.
+     * The cookie lives for the read-your-writes window; beyond max-lag the replica is out of rotation anyway.
+     */
+    private void rememberWrite(long committedAt) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return;
+        }
+        HttpServletResponse response = attributes.getResponse();
+        if (response == null || response.isCommitted()) {
+            return;
+        }
+        ResponseCookie cookie = ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(committedAt))
+                .path("/")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .maxAge(readYourWritesWindow)
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+}
@@ -0,0 +1,140 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs startup work such as the Keycloak synchronization and the initial admin setup.
+ * In async mode the tasks run on a single background thread (in submission order) and
+ * this indicator keeps the readiness probe OUT_OF_SERVICE until all of them have finished,
+ * so the instance reports liveness immediately but only receives traffic once it is ready.
+ * A failing task is retried with exponential backoff; once its last attempt failed the liveness
+ * state is set to BROKEN, so the instance is restarted instead of staying unready forever.
+ */
+@Component("startupTasks")
+public class StartupTasks implements HealthIndicator, DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(StartupTasks.class);
+
+    private final boolean async;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor;
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final Map<String, String> failedTasks = new ConcurrentHashMap<>();
+
+    public StartupTasks(@Value("${app.startup.async:false}") boolean async,
+                        @Value("${app.startup.retry.max-attempts:5}") int maxAttempts,
+                        @Value("${app.startup.retry.backoff:PT5S}") Duration retryBackoff,
+                        ApplicationEventPublisher eventPublisher) {
+        this.async = async;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.eventPublisher = eventPublisher;
+        this.executor = async ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "startup-tasks");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Runs the task inline, or queues it on the startup thread when async startup is enabled
+     */
+    public void submit(String name, Runnable task) {
+        if (!async) {
+            task.run();
+            return;
+        }
+
+        pendingTasks.incrementAndGet();
+        logger.info("Scheduling startup task '{}' in the background", name);
+        executor.execute(() -> {
+            try {
+                runWithRetries(name, task);
+            } finally {
+                pendingTasks.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Runs the task until it succeeds, doubling the wait after every failed attempt. The later tasks wait
+     * on the same thread, so the submission order is kept.
+     */
+    private void runWithRetries(String name, Runnable task) {
+        Duration backoff = retryBackoff;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                task.run();
+                logger.info("Startup task '{}' finished in {} ms", name, System.currentTimeMillis() - start);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    failedTasks.put(name, String.valueOf(e.getMessage()));
+                    logger.error("Startup task '{}' failed after {} attempts - marking the application as broken: {}",
+                            name, attempt, e.getMessage(), e);
+                    AvailabilityChangeEvent.publish(eventPublisher, this, LivenessState.BROKEN);
+                    return;
+                }
+                logger.warn("Startup task '{}' failed (attempt {} of {}), retrying in {}: {}",
+                        name, attempt, maxAttempts, backoff, e.getMessage());
+            }
+
+            try {
+                Thread.sleep(backoff.toMillis());
+            } catch (InterruptedException e) {
+                // Shutting down
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = backoff.multipliedBy(2);
+        }
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Returns true once every submitted startup task has finished
+     */
+    public boolean isComplete() {
+        return pendingTasks.get() == 0;
+    }
+
+    @Override
+    public Health health() {
+        if (pendingTasks.get() > 0) {
+            return Health.outOfService().withDetail("pendingTasks", pendingTasks.get()).build();
+        }
+        if (!failedTasks.isEmpty()) {
+            return Health.down().withDetails(Map.copyOf(failedTasks)).build();
+        }
+        return Health.up().build();
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ReadYourWritesInterceptor readYourWritesInterceptor;
+    private final ConditionalGetInterceptor conditionalGetInterceptor;
+
+    @Autowired
+    public WebConfig(ReadYourWritesInterceptor readYourWritesInterceptor,
+                     ConditionalGetInterceptor conditionalGetInterceptor) {
+        this.readYourWritesInterceptor = readYourWritesInterceptor;
+        this.conditionalGetInterceptor = conditionalGetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // First: the conditional GET adds to the requirement it sets
+        registry.addInterceptor(readYourWritesInterceptor).addPathPatterns("/api/**");
+        registry.addInterceptor(conditionalGetInterceptor).addPathPatterns("/api/**");
+    }
+}
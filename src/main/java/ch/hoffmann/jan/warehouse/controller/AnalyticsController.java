@@ -0,0 +1,78 @@
+package ch.hoffmann.jan.warehouse.controller;
+
+import ch.hoffmann.jan.warehouse.dto.analytics.DaysOfCoverDTO;
+import ch.hoffmann.jan.warehouse.dto.analytics.StockVelocityDTO;
+import ch.hoffmann.jan.warehouse.service.AnalyticsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/analytics")
+@Tag(name = "Analytics Controller", description = "Endpoints for stock movement analytics")
+public class AnalyticsController {
+
+    private final AnalyticsService analyticsService;
+
+    @Autowired
+    public AnalyticsController(AnalyticsService analyticsService) {
+        this.analyticsService = analyticsService;
+    }
+
+    @GetMapping("/velocity")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Get stock velocity", description = "Returns the units added, removed and transferred per day or week, product and warehouse; the last 30 days by default (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the stock velocity"),
+            @ApiResponse(responseCode = "400", description = "Invalid date range")
+    })
+    public ResponseEntity<List<StockVelocityDTO>> getVelocity(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "DAY") AnalyticsService.Granularity granularity,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) Long warehouseId) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        return ResponseEntity.ok(analyticsService.getVelocity(start, end, granularity, productId, warehouseId));
+    }
+
+    @GetMapping("/days-of-cover")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Get days of cover", description = "Returns the current quantity divided by the average daily outflow over the last days per product and warehouse, lowest first (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully computed the days of cover"),
+            @ApiResponse(responseCode = "400", description = "Invalid window")
+    })
+    public ResponseEntity<List<DaysOfCoverDTO>> getDaysOfCover(
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) Long warehouseId) {
+        return ResponseEntity.ok(analyticsService.getDaysOfCover(days, productId, warehouseId));
+    }
+
+    @PostMapping("/velocity/rebuild")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Rebuild the movement rollup", description = "Recomputes the daily movement rollup of the given closed days from the audit log, e.g. to backfill history (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rollup rebuilt"),
+            @ApiResponse(responseCode = "400", description = "Invalid date range or days not closed yet"),
+            @ApiResponse(responseCode = "409", description = "Another rollup is running")
+    })
+    public ResponseEntity<Map<String, Object>> rebuild(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        int rows = analyticsService.rebuild(from, to);
+        return ResponseEntity.ok(Map.of("from", from, "to", to, "rows", rows));
+    }
+}
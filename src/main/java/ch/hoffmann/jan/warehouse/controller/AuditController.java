@@ -1,17 +1,21 @@
 package ch.hoffmann.jan.warehouse.controller;
 
 import ch.hoffmann.jan.warehouse.dto.audit.AuditResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.audit.HistoricalInventoryDTO;
 import ch.hoffmann.jan.warehouse.service.AuditService;
+import ch.hoffmann.jan.warehouse.service.InventoryHistoryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -20,10 +24,12 @@ import java.util.List;
 public class AuditController {
 
     private final AuditService auditService;
+    private final InventoryHistoryService inventoryHistoryService;
 
     @Autowired
-    public AuditController(AuditService auditService) {
+    public AuditController(AuditService auditService, InventoryHistoryService inventoryHistoryService) {
         this.auditService = auditService;
+        this.inventoryHistoryService = inventoryHistoryService;
     }
 
     @GetMapping
@@ -49,4 +55,19 @@ public class AuditController {
     public ResponseEntity<List<AuditResponseDTO>> getRecentAuditLogs() {
         return ResponseEntity.ok(auditService.getRecentAuditLogs());
     }
-}
\ No newline at end of file
+
+    @GetMapping("/inventory")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Get the inventory at a point in time", description = "Returns the stock quantities per product and warehouse as of the given time, replayed from the audit log, optionally for one product or warehouse (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully computed the inventory"),
+            @ApiResponse(responseCode = "400", description = "Invalid or future point in time"),
+            @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    public ResponseEntity<HistoricalInventoryDTO> getInventoryAt(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) Long warehouseId) {
+        return ResponseEntity.ok(inventoryHistoryService.getInventoryAt(at, productId, warehouseId));
+    }
+}
@@ -0,0 +1,88 @@
+package ch.hoffmann.jan.warehouse.controller;
+
+import ch.hoffmann.jan.warehouse.dto.catalog.CatalogImportEventDTO;
+import ch.hoffmann.jan.warehouse.service.CatalogImportService;
+import ch.hoffmann.jan.warehouse.util.SecurityUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+@RestController
+@RequestMapping("/api/catalog")
+@Tag(name = "Catalog Controller", description = "Endpoints for bulk catalog import")
+public class CatalogController {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final CatalogImportService catalogImportService;
+    private final SecurityUtils securityUtils;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public CatalogController(CatalogImportService catalogImportService, SecurityUtils securityUtils,
+                             ObjectMapper objectMapper) {
+        this.catalogImportService = catalogImportService;
+        this.securityUtils = securityUtils;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(value = "/import",
+            consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Import catalog",
+            description = "Imports products and their initial stock from a CSV (header: name,description,price,category,warehouse,quantity) "
+                    + "or NDJSON body. Categories and warehouses are referenced by name. The response is streamed as NDJSON: "
+                    + "an ERROR line per rejected row, a PROGRESS line per processed chunk and a final SUMMARY line (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import processed, see the streamed report"),
+            @ApiResponse(responseCode = "403", description = "Forbidden - Manager role required"),
+            @ApiResponse(responseCode = "415", description = "Unsupported content type")
+    })
+    public ResponseEntity<StreamingResponseBody> importCatalog(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            HttpServletRequest request) throws IOException {
+        Long userId = securityUtils.getCurrentUserId();
+        CatalogImportService.Format format = MediaType.APPLICATION_NDJSON.includes(contentType)
+                ? CatalogImportService.Format.NDJSON
+                : CatalogImportService.Format.CSV;
+        InputStream input = request.getInputStream();
+
+        StreamingResponseBody body = output ->
+                catalogImportService.importCatalog(input, format, userId, event -> writeEvent(output, event));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Writes one report line and flushes it so the client sees the progress immediately
+     */
+    private void writeEvent(OutputStream output, CatalogImportEventDTO event) {
+        try {
+            output.write(objectMapper.writeValueAsBytes(event));
+            output.write('\n');
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
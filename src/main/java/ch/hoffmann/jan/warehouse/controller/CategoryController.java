@@ -1,5 +1,6 @@
 package ch.hoffmann.jan.warehouse.controller;
 
+import ch.hoffmann.jan.warehouse.config.ConditionalGet;
 import ch.hoffmann.jan.warehouse.dto.category.CategoryCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.category.CategoryResponseDTO;
 import ch.hoffmann.jan.warehouse.service.CategoryService;
@@ -16,6 +17,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
+import static ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate.*;
+
 @RestController
 @RequestMapping("/api/categories")
 @Tag(name = "Category Controller", description = "Endpoints for managing categories")
@@ -29,6 +32,7 @@ public class CategoryController {
     }
 
     @GetMapping
+    @ConditionalGet({CATEGORIES, PRODUCTS})
     @Operation(summary = "Get all categories", description = "Returns a list of all categories")
     @ApiResponse(responseCode = "200", description = "Successfully retrieved list of categories")
     public ResponseEntity<List<CategoryResponseDTO>> getAllCategories() {
@@ -36,6 +40,7 @@ public class CategoryController {
     }
 
     @GetMapping("/{id}")
+    @ConditionalGet({CATEGORIES, PRODUCTS})
     @Operation(summary = "Get category by ID", description = "Returns a category with the specified ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Category found"),
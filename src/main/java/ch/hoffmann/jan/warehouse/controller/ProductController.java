@@ -1,15 +1,23 @@
 package ch.hoffmann.jan.warehouse.controller;
 
+import ch.hoffmann.jan.warehouse.config.ConditionalGet;
 import ch.hoffmann.jan.warehouse.dto.product.ProductCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductPatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSearchResultDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSuggestionDTO;
 import ch.hoffmann.jan.warehouse.service.ProductService;
+import ch.hoffmann.jan.warehouse.util.StreamedList;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,6 +25,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
+import static ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate.*;
+
 @RestController
 @RequestMapping("/api/products")
 @Tag(name = "Product Controller", description = "Endpoints for product management")
@@ -30,13 +40,50 @@ public class ProductController {
     }
 
     @GetMapping
-    @Operation(summary = "Get all products", description = "Returns a list of all products")
-    @ApiResponse(responseCode = "200", description = "Successfully retrieved list of products")
-    public ResponseEntity<List<ProductResponseDTO>> getAllProducts() {
-        return ResponseEntity.ok(productService.getAllProducts());
+    @ConditionalGet({PRODUCTS, CATEGORIES, WAREHOUSES, STOCKS})
+    @Operation(summary = "Get all products",
+            description = "Returns a list of all products; the list is streamed as it is read from the database")
+    @ApiResponse(responseCode = "200", description = "Successfully retrieved list of products",
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = ProductResponseDTO.class))))
+    public ResponseEntity<StreamedList<ProductResponseDTO>> getAllProducts() {
+        return ResponseEntity.ok(new StreamedList<>(ProductResponseDTO.class, productService::streamAllProducts));
+    }
+
+    @GetMapping("/search")
+    @ConditionalGet({PRODUCTS, CATEGORIES, WAREHOUSES, STOCKS})
+    @Operation(summary = "Search products",
+            description = "Searches products by name and description (prefix and fuzzy matching), ordered by relevance. "
+                    + "Optionally filtered by category and by availability (in stock in the given warehouse, or in any warehouse with inStock=true)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Search results"),
+            @ApiResponse(responseCode = "400", description = "Invalid search query or paging parameters")
+    })
+    public ResponseEntity<Page<ProductSearchResultDTO>> searchProducts(
+            @RequestParam("q") String query,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) Long warehouseId,
+            @RequestParam(defaultValue = "false") boolean inStock,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(productService.searchProducts(query, categoryId, warehouseId, inStock, page, size));
+    }
+
+    @GetMapping("/suggest")
+    @Operation(summary = "Suggest products",
+            description = "Returns products whose name starts with the given prefix (case-insensitive), for type-ahead. "
+                    + "Served from an in-memory index")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit")
+    })
+    public ResponseEntity<List<ProductSuggestionDTO>> suggestProducts(
+            @RequestParam("q") String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(productService.suggestProducts(prefix, limit));
     }
 
     @GetMapping("/{id}")
+    @ConditionalGet({PRODUCTS, CATEGORIES, WAREHOUSES, STOCKS})
     @Operation(summary = "Get product by ID", description = "Returns a product by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product found"),
@@ -47,6 +94,7 @@ public class ProductController {
     }
 
     @GetMapping("/category/{categoryId}")
+    @ConditionalGet({PRODUCTS, CATEGORIES, WAREHOUSES, STOCKS})
     @Operation(summary = "Get products by category", description = "Returns a list of products by category ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Products found"),
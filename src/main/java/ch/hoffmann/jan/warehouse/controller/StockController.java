@@ -1,12 +1,24 @@
 package ch.hoffmann.jan.warehouse.controller;
 
+import ch.hoffmann.jan.warehouse.config.ConditionalGet;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.NearestWarehouseDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockTransferRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderResponseDTO;
+import ch.hoffmann.jan.warehouse.service.IdempotencyService;
+import ch.hoffmann.jan.warehouse.service.StockRoutingService;
 import ch.hoffmann.jan.warehouse.service.StockService;
 import ch.hoffmann.jan.warehouse.util.SecurityUtils;
+import ch.hoffmann.jan.warehouse.util.StreamedList;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -19,28 +31,39 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
+import static ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate.*;
+
 @RestController
 @RequestMapping("/api/stocks")
 @Tag(name = "Stock Controller", description = "Endpoints for stock management")
 public class StockController {
 
     private final StockService stockService;
+    private final StockRoutingService stockRoutingService;
     private final SecurityUtils securityUtils;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public StockController(StockService stockService, SecurityUtils securityUtils) {
+    public StockController(StockService stockService, StockRoutingService stockRoutingService,
+                           SecurityUtils securityUtils, IdempotencyService idempotencyService) {
         this.stockService = stockService;
+        this.stockRoutingService = stockRoutingService;
         this.securityUtils = securityUtils;
+        this.idempotencyService = idempotencyService;
     }
 
     @GetMapping
-    @Operation(summary = "Get all stocks", description = "Returns a list of all stocks")
-    @ApiResponse(responseCode = "200", description = "Successfully retrieved list of stocks")
-    public ResponseEntity<List<StockResponseDTO>> getAllStocks() {
-        return ResponseEntity.ok(stockService.getAllStocks());
+    @ConditionalGet({STOCKS, PRODUCTS, WAREHOUSES})
+    @Operation(summary = "Get all stocks",
+            description = "Returns a list of all stocks; the list is streamed as it is read from the database")
+    @ApiResponse(responseCode = "200", description = "Successfully retrieved list of stocks",
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = StockResponseDTO.class))))
+    public ResponseEntity<StreamedList<StockResponseDTO>> getAllStocks() {
+        return ResponseEntity.ok(new StreamedList<>(StockResponseDTO.class, stockService::streamAllStocks));
     }
 
     @GetMapping("/product/{productId}")
+    @ConditionalGet({STOCKS, PRODUCTS, WAREHOUSES})
     @Operation(summary = "Get stocks by product", description = "Returns a list of stocks by product ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Stocks found"),
@@ -51,6 +74,7 @@ public class StockController {
     }
 
     @GetMapping("/warehouse/{warehouseId}")
+    @ConditionalGet({STOCKS, PRODUCTS, WAREHOUSES})
     @Operation(summary = "Get stocks by warehouse", description = "Returns a list of stocks by warehouse ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Stocks found"),
@@ -61,6 +85,7 @@ public class StockController {
     }
 
     @GetMapping("/product/{productId}/warehouse/{warehouseId}")
+    @ConditionalGet({STOCKS, PRODUCTS, WAREHOUSES})
     @Operation(summary = "Get stock by product and warehouse", description = "Returns a stock by product ID and warehouse ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Stock found"),
@@ -72,46 +97,110 @@ public class StockController {
         return ResponseEntity.ok(stockService.getStockByProductAndWarehouse(productId, warehouseId));
     }
 
+    @GetMapping("/product/{productId}/nearest")
+    @ConditionalGet({STOCKS, PRODUCTS, WAREHOUSES})
+    @Operation(summary = "Get nearest warehouses with stock", description = "Returns the warehouses that have at least quantity unreserved units of the product, nearest to the given coordinates first, with their distance in km. Only warehouses with coordinates are considered; radiusKm limits the distance")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Warehouses found"),
+            @ApiResponse(responseCode = "400", description = "Invalid coordinates, quantity, limit or radius"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
+    })
+    public ResponseEntity<List<NearestWarehouseDTO>> getNearestWarehouses(
+            @PathVariable Long productId,
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "1") int quantity,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) Double radiusKm) {
+        return ResponseEntity.ok(stockRoutingService.findNearestWarehouses(productId, latitude, longitude, quantity,
+                limit, radiusKm));
+    }
+
+    @PostMapping("/availability")
+    @Operation(summary = "Check basket availability", description = "Checks a basket of (productId, quantity) lines in one request: the available units per line, which warehouses can ship which lines, and an allocation from a single warehouse if possible, else split over as few warehouses as found. With latitude and longitude nearer warehouses are preferred. Nothing is reserved")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Availability checked; fulfillable is false if the stock is not sufficient"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
+    })
+    public ResponseEntity<BasketAvailabilityResponseDTO> checkBasketAvailability(
+            @Valid @RequestBody BasketAvailabilityRequestDTO basketRequest) {
+        return ResponseEntity.ok(stockRoutingService.checkBasket(basketRequest));
+    }
+
     @PostMapping
     @PreAuthorize("hasRole('MANAGER')")
-    @Operation(summary = "Create stock", description = "Creates a new stock entry (Manager only)")
+    @Operation(summary = "Create stock", description = "Creates a new stock entry (Manager only). With an Idempotency-Key header a retry returns the original response (header Idempotent-Replayed) without applying the change again")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Stock successfully created"),
             @ApiResponse(responseCode = "400", description = "Invalid input data"),
             @ApiResponse(responseCode = "404", description = "Product or warehouse not found"),
-            @ApiResponse(responseCode = "409", description = "Stock already exists")
+            @ApiResponse(responseCode = "409", description = "Stock already exists"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request")
     })
-    public ResponseEntity<StockResponseDTO> createStock(@Valid @RequestBody StockCreateRequestDTO createRequest) {
+    public ResponseEntity<StockResponseDTO> createStock(
+            @Valid @RequestBody StockCreateRequestDTO createRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         Long userId = securityUtils.getCurrentUserId();
-        return new ResponseEntity<>(stockService.createStock(createRequest, userId), HttpStatus.CREATED);
+        return idempotencyService.execute(idempotencyKey, userId, "POST /api/stocks", createRequest, StockResponseDTO.class,
+                () -> new ResponseEntity<>(stockService.createStock(createRequest, userId), HttpStatus.CREATED));
     }
 
     @PutMapping
     @PreAuthorize("hasRole('MANAGER')")
-    @Operation(summary = "Update stock", description = "Updates the stock quantity (Manager only)")
+    @Operation(summary = "Update stock", description = "Updates the stock quantity (Manager only). With an Idempotency-Key header a retry returns the original response (header Idempotent-Replayed) without applying the change again")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Stock successfully updated"),
             @ApiResponse(responseCode = "400", description = "Invalid input data"),
             @ApiResponse(responseCode = "404", description = "Product, warehouse, or stock not found"),
-            @ApiResponse(responseCode = "409", description = "Not enough stock available")
+            @ApiResponse(responseCode = "409", description = "Not enough stock available"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request")
     })
-    public ResponseEntity<StockResponseDTO> updateStock(@Valid @RequestBody StockUpdateRequestDTO updateRequest) {
+    public ResponseEntity<StockResponseDTO> updateStock(
+            @Valid @RequestBody StockUpdateRequestDTO updateRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         Long userId = securityUtils.getCurrentUserId();
-        return ResponseEntity.ok(stockService.updateStock(updateRequest, userId));
+        return idempotencyService.execute(idempotencyKey, userId, "PUT /api/stocks", updateRequest, StockResponseDTO.class,
+                () -> ResponseEntity.ok(stockService.updateStock(updateRequest, userId)));
     }
 
     @PostMapping("/transfer")
     @PreAuthorize("hasRole('MANAGER')")
-    @Operation(summary = "Transfer stock", description = "Transfers stock from one warehouse to another (Manager only)")
+    @Operation(summary = "Transfer stock", description = "Transfers stock from one warehouse to another (Manager only). With an Idempotency-Key header a retry returns the original response (header Idempotent-Replayed) without applying the change again")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Stock successfully transferred"),
             @ApiResponse(responseCode = "400", description = "Invalid input data"),
             @ApiResponse(responseCode = "404", description = "Product, warehouse, or stock not found"),
-            @ApiResponse(responseCode = "409", description = "Not enough stock available or same warehouse transfer")
+            @ApiResponse(responseCode = "409", description = "Not enough stock available or same warehouse transfer"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request")
+    })
+    public ResponseEntity<Void> transferStock(
+            @Valid @RequestBody StockTransferRequestDTO transferRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Long userId = securityUtils.getCurrentUserId();
+        return idempotencyService.execute(idempotencyKey, userId, "POST /api/stocks/transfer", transferRequest, Void.class,
+                () -> {
+                    stockService.transferStock(transferRequest, userId);
+                    return ResponseEntity.ok().build();
+                });
+    }
+
+    @PostMapping("/transfer-orders")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Create transfer order", description = "Transfers many products from one warehouse to another in one transaction; either all lines are transferred or none (Manager only). Supports the Idempotency-Key header like the single transfer")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Stock successfully transferred"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data"),
+            @ApiResponse(responseCode = "404", description = "Product, warehouse, or stock not found"),
+            @ApiResponse(responseCode = "409", description = "Not enough stock available for a line or same warehouse transfer"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request")
     })
-    public ResponseEntity<Void> transferStock(@Valid @RequestBody StockTransferRequestDTO transferRequest) {
+    public ResponseEntity<TransferOrderResponseDTO> createTransferOrder(
+            @Valid @RequestBody TransferOrderRequestDTO orderRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         Long userId = securityUtils.getCurrentUserId();
-        stockService.transferStock(transferRequest, userId);
-        return ResponseEntity.ok().build();
+        return idempotencyService.execute(idempotencyKey, userId, "POST /api/stocks/transfer-orders", orderRequest,
+                TransferOrderResponseDTO.class,
+                () -> new ResponseEntity<>(stockService.createTransferOrder(orderRequest, userId), HttpStatus.CREATED));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package ch.hoffmann.jan.warehouse.controller;
+
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationResponseDTO;
+import ch.hoffmann.jan.warehouse.service.IdempotencyService;
+import ch.hoffmann.jan.warehouse.service.StockReservationService;
+import ch.hoffmann.jan.warehouse.util.SecurityUtils;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/reservations")
+@Tag(name = "Stock Reservation Controller", description = "Endpoints for reserving stock before it is picked")
+public class StockReservationController {
+
+    private final StockReservationService reservationService;
+    private final SecurityUtils securityUtils;
+    private final IdempotencyService idempotencyService;
+
+    @Autowired
+    public StockReservationController(StockReservationService reservationService, SecurityUtils securityUtils,
+                                      IdempotencyService idempotencyService) {
+        this.reservationService = reservationService;
+        this.securityUtils = securityUtils;
+        this.idempotencyService = idempotencyService;
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Get reservation by ID", description = "Returns a stock reservation by ID")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservation found"),
+            @ApiResponse(responseCode = "404", description = "Reservation not found")
+    })
+    public ResponseEntity<StockReservationResponseDTO> getReservation(@PathVariable Long id) {
+        return ResponseEntity.ok(reservationService.getReservation(id));
+    }
+
+    @PostMapping
+    @Operation(summary = "Reserve stock", description = "Reserves available units of a stock entry until they are committed, released or the reservation expires (ttlSeconds, the configured default if not set). Supports the Idempotency-Key header like the stock mutations")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Stock successfully reserved"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data"),
+            @ApiResponse(responseCode = "404", description = "Product, warehouse, or stock not found"),
+            @ApiResponse(responseCode = "409", description = "Not enough unreserved stock available"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request")
+    })
+    public ResponseEntity<StockReservationResponseDTO> reserve(
+            @Valid @RequestBody StockReservationRequestDTO reservationRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Long userId = securityUtils.getCurrentUserId();
+        return idempotencyService.execute(idempotencyKey, userId, "POST /api/reservations", reservationRequest,
+                StockReservationResponseDTO.class,
+                () -> new ResponseEntity<>(reservationService.reserve(reservationRequest, userId), HttpStatus.CREATED));
+    }
+
+    @PostMapping("/{id}/commit")
+    @Operation(summary = "Commit reservation", description = "Removes the reserved units from the stock once they are picked")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservation committed"),
+            @ApiResponse(responseCode = "404", description = "Reservation not found"),
+            @ApiResponse(responseCode = "409", description = "Reservation already committed, released or expired")
+    })
+    public ResponseEntity<StockReservationResponseDTO> commit(@PathVariable Long id) {
+        Long userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(reservationService.commit(id, userId));
+    }
+
+    @PostMapping("/{id}/release")
+    @Operation(summary = "Release reservation", description = "Makes the reserved units available again")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservation released"),
+            @ApiResponse(responseCode = "404", description = "Reservation not found"),
+            @ApiResponse(responseCode = "409", description = "Reservation already committed, released or expired")
+    })
+    public ResponseEntity<StockReservationResponseDTO> release(@PathVariable Long id) {
+        return ResponseEntity.ok(reservationService.release(id));
+    }
+}
@@ -0,0 +1,41 @@
+package ch.hoffmann.jan.warehouse.controller;
+
+import ch.hoffmann.jan.warehouse.dto.sync.SyncResponseDTO;
+import ch.hoffmann.jan.warehouse.service.SyncService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/sync")
+@Tag(name = "Sync Controller", description = "Change feed for offline clients")
+public class SyncController {
+
+    private final SyncService syncService;
+
+    @Autowired
+    public SyncController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+    @GetMapping
+    @Operation(summary = "Get changes since a sync token",
+            description = "Returns the products, stocks and warehouses created or changed since the token and the ids of the "
+                    + "deleted ones, together with the token for the next request. Without a token, or with a token older than "
+                    + "the retained deletions, the full data set is returned with full=true and replaces the local copy. "
+                    + "Rows may occasionally be repeated in the next response")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changes since the token"),
+            @ApiResponse(responseCode = "400", description = "Invalid sync token")
+    })
+    public ResponseEntity<SyncResponseDTO> getChanges(@RequestParam(required = false) String since) {
+        return ResponseEntity.ok(syncService.getChanges(since));
+    }
+}
@@ -1,15 +1,21 @@
 package ch.hoffmann.jan.warehouse.controller;
 
+import ch.hoffmann.jan.warehouse.config.ConditionalGet;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseArchiveResponseDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehousePatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseSummaryDTO;
 import ch.hoffmann.jan.warehouse.service.WarehouseService;
+import ch.hoffmann.jan.warehouse.util.SecurityUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,26 +23,49 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
+import static ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate.*;
+
 @RestController
 @RequestMapping("/api/warehouses")
 @Tag(name = "Warehouse Controller", description = "Endpoints for warehouse management")
 public class WarehouseController {
 
     private final WarehouseService warehouseService;
+    private final SecurityUtils securityUtils;
 
     @Autowired
-    public WarehouseController(WarehouseService warehouseService) {
+    public WarehouseController(WarehouseService warehouseService, SecurityUtils securityUtils) {
         this.warehouseService = warehouseService;
+        this.securityUtils = securityUtils;
     }
 
     @GetMapping
-    @Operation(summary = "Get all warehouses", description = "Returns a list of all warehouses")
+    @ConditionalGet({WAREHOUSES, STOCKS})
+    @Operation(summary = "Get all warehouses",
+            description = "Returns the list of all warehouses with their number of SKUs and total units. "
+                    + "Use /api/warehouses/{id}/stocks for the stock entries")
     @ApiResponse(responseCode = "200", description = "Successfully retrieved list of warehouses")
-    public ResponseEntity<List<WarehouseResponseDTO>> getAllWarehouses() {
+    public ResponseEntity<List<WarehouseSummaryDTO>> getAllWarehouses() {
         return ResponseEntity.ok(warehouseService.getAllWarehouses());
     }
 
+    @GetMapping("/{id}/stocks")
+    @ConditionalGet({WAREHOUSES, PRODUCTS, STOCKS})
+    @Operation(summary = "Get warehouse stocks", description = "Returns a page of the stock entries of a warehouse, ordered by product name")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stocks found"),
+            @ApiResponse(responseCode = "400", description = "Invalid paging parameters"),
+            @ApiResponse(responseCode = "404", description = "Warehouse not found")
+    })
+    public ResponseEntity<Page<WarehouseStockDTO>> getWarehouseStocks(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(warehouseService.getWarehouseStocks(id, page, size));
+    }
+
     @GetMapping("/{id}")
+    @ConditionalGet({WAREHOUSES, PRODUCTS, STOCKS})
     @Operation(summary = "Get warehouse by ID", description = "Returns a warehouse by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Warehouse found"),
@@ -100,4 +129,21 @@ public class WarehouseController {
         warehouseService.deleteWarehouse(id);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    @PostMapping("/{id}/archive")
+    @PreAuthorize("hasRole('MANAGER')")
+    @Operation(summary = "Archive warehouse",
+            description = "Moves all stock of the warehouse to the target warehouse, or writes it off when no target is given, "
+                    + "with one audit entry per product (Manager only)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Warehouse successfully archived"),
+            @ApiResponse(responseCode = "400", description = "Target warehouse is the archived warehouse"),
+            @ApiResponse(responseCode = "404", description = "Warehouse or target warehouse not found")
+    })
+    public ResponseEntity<WarehouseArchiveResponseDTO> archiveWarehouse(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long targetWarehouseId) {
+        Long userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(warehouseService.archiveWarehouse(id, targetWarehouseId, userId));
+    }
+}
@@ -0,0 +1,97 @@
+package ch.hoffmann.jan.warehouse.dto.analytics;
+
+public class DaysOfCoverDTO {
+    private Long productId;
+    private String productName;
+    private Long warehouseId;
+    private String warehouseName;
+    private Integer quantity;
+    // Removed and transferred out units per day over the window
+    private Double averageDailyOutflow;
+    // Null without outflow in the window
+    private Double daysOfCover;
+
+    // Constructors
+    public DaysOfCoverDTO() {
+    }
+
+    public DaysOfCoverDTO(Long productId, String productName, Long warehouseId, String warehouseName, Integer quantity, Double averageDailyOutflow, Double daysOfCover) {
+        this.productId = productId;
+        this.productName = productName;
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.quantity = quantity;
+        this.averageDailyOutflow = averageDailyOutflow;
+        this.daysOfCover = daysOfCover;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Double getAverageDailyOutflow() {
+        return averageDailyOutflow;
+    }
+
+    public void setAverageDailyOutflow(Double averageDailyOutflow) {
+        this.averageDailyOutflow = averageDailyOutflow;
+    }
+
+    public Double getDaysOfCover() {
+        return daysOfCover;
+    }
+
+    public void setDaysOfCover(Double daysOfCover) {
+        this.daysOfCover = daysOfCover;
+    }
+
+    @Override
+    public String toString() {
+        return "DaysOfCoverDTO{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", quantity=" + quantity +
+                ", averageDailyOutflow=" + averageDailyOutflow +
+                ", daysOfCover=" + daysOfCover +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package ch.hoffmann.jan.warehouse.dto.analytics;
+
+import java.time.LocalDate;
+
+public class StockVelocityDTO {
+    private Long productId;
+    private String productName;
+    private Long warehouseId;
+    private String warehouseName;
+    // First day of the day or week bucket
+    private LocalDate periodStart;
+    private Long added;
+    private Long removed;
+    private Long transferredIn;
+    private Long transferredOut;
+
+    // Constructors
+    public StockVelocityDTO() {
+    }
+
+    public StockVelocityDTO(Long productId, String productName, Long warehouseId, String warehouseName, LocalDate periodStart, Long added, Long removed, Long transferredIn, Long transferredOut) {
+        this.productId = productId;
+        this.productName = productName;
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.periodStart = periodStart;
+        this.added = added;
+        this.removed = removed;
+        this.transferredIn = transferredIn;
+        this.transferredOut = transferredOut;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public Long getAdded() {
+        return added;
+    }
+
+    public void setAdded(Long added) {
+        this.added = added;
+    }
+
+    public Long getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(Long removed) {
+        this.removed = removed;
+    }
+
+    public Long getTransferredIn() {
+        return transferredIn;
+    }
+
+    public void setTransferredIn(Long transferredIn) {
+        this.transferredIn = transferredIn;
+    }
+
+    public Long getTransferredOut() {
+        return transferredOut;
+    }
+
+    public void setTransferredOut(Long transferredOut) {
+        this.transferredOut = transferredOut;
+    }
+
+    @Override
+    public String toString() {
+        return "StockVelocityDTO{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", periodStart=" + periodStart +
+                ", added=" + added +
+                ", removed=" + removed +
+                ", transferredIn=" + transferredIn +
+                ", transferredOut=" + transferredOut +
+                '}';
+    }
+}
@@ -13,6 +13,7 @@ public class AuditResponseDTO {
     private String warehouseName;
     private Long targetWarehouseId;
     private String targetWarehouseName;
+    private Long transferOrderId;
     private Integer quantity;
     private LocalDateTime timestamp;
 
@@ -101,6 +102,14 @@ public class AuditResponseDTO {
         this.targetWarehouseName = targetWarehouseName;
     }
 
+    public Long getTransferOrderId() {
+        return transferOrderId;
+    }
+
+    public void setTransferOrderId(Long transferOrderId) {
+        this.transferOrderId = transferOrderId;
+    }
+
     public Integer getQuantity() {
         return quantity;
     }
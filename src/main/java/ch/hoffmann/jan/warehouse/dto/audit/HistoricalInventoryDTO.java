@@ -0,0 +1,55 @@
+package ch.hoffmann.jan.warehouse.dto.audit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class HistoricalInventoryDTO {
+    private LocalDateTime at;
+    // Checkpoint the audit log was replayed from; null if replayed from the beginning
+    private LocalDateTime checkpointAt;
+    private List<HistoricalStockDTO> stocks;
+
+    // Constructors
+    public HistoricalInventoryDTO() {
+    }
+
+    public HistoricalInventoryDTO(LocalDateTime at, LocalDateTime checkpointAt, List<HistoricalStockDTO> stocks) {
+        this.at = at;
+        this.checkpointAt = checkpointAt;
+        this.stocks = stocks;
+    }
+
+    // Getters and setters
+    public LocalDateTime getAt() {
+        return at;
+    }
+
+    public void setAt(LocalDateTime at) {
+        this.at = at;
+    }
+
+    public LocalDateTime getCheckpointAt() {
+        return checkpointAt;
+    }
+
+    public void setCheckpointAt(LocalDateTime checkpointAt) {
+        this.checkpointAt = checkpointAt;
+    }
+
+    public List<HistoricalStockDTO> getStocks() {
+        return stocks;
+    }
+
+    public void setStocks(List<HistoricalStockDTO> stocks) {
+        this.stocks = stocks;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoricalInventoryDTO{" +
+                "at=" + at +
+                ", checkpointAt=" + checkpointAt +
+                ", stocks=" + (stocks != null ? stocks.size() : 0) +
+                '}';
+    }
+}
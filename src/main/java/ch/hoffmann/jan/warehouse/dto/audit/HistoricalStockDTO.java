@@ -0,0 +1,73 @@
+package ch.hoffmann.jan.warehouse.dto.audit;
+
+public class HistoricalStockDTO {
+    private Long productId;
+    private String productName;
+    private Long warehouseId;
+    private String warehouseName;
+    private Integer quantity;
+
+    // Constructors
+    public HistoricalStockDTO() {
+    }
+
+    public HistoricalStockDTO(Long productId, String productName, Long warehouseId, String warehouseName, Integer quantity) {
+        this.productId = productId;
+        this.productName = productName;
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.quantity = quantity;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoricalStockDTO{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
@@ -0,0 +1,115 @@
+package ch.hoffmann.jan.warehouse.dto.catalog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A line of the NDJSON import report: a row error, a progress update after each chunk, or the final summary
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogImportEventDTO {
+
+    public static final String ERROR = "ERROR";
+    public static final String PROGRESS = "PROGRESS";
+    public static final String SUMMARY = "SUMMARY";
+
+    private String type;
+    private Long line;
+    private String message;
+    private Long rowsRead;
+    private Long productsImported;
+    private Long stocksImported;
+    private Long rowsFailed;
+
+    // Constructors
+    public CatalogImportEventDTO() {
+    }
+
+    public static CatalogImportEventDTO error(Long line, String message) {
+        CatalogImportEventDTO event = new CatalogImportEventDTO();
+        event.setType(ERROR);
+        event.setLine(line);
+        event.setMessage(message);
+        return event;
+    }
+
+    public static CatalogImportEventDTO counters(String type, long rowsRead, long productsImported,
+                                                 long stocksImported, long rowsFailed) {
+        CatalogImportEventDTO event = new CatalogImportEventDTO();
+        event.setType(type);
+        event.setRowsRead(rowsRead);
+        event.setProductsImported(productsImported);
+        event.setStocksImported(stocksImported);
+        event.setRowsFailed(rowsFailed);
+        return event;
+    }
+
+    // Getters and setters
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Long getLine() {
+        return line;
+    }
+
+    public void setLine(Long line) {
+        this.line = line;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Long getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(Long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public Long getProductsImported() {
+        return productsImported;
+    }
+
+    public void setProductsImported(Long productsImported) {
+        this.productsImported = productsImported;
+    }
+
+    public Long getStocksImported() {
+        return stocksImported;
+    }
+
+    public void setStocksImported(Long stocksImported) {
+        this.stocksImported = stocksImported;
+    }
+
+    public Long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    public void setRowsFailed(Long rowsFailed) {
+        this.rowsFailed = rowsFailed;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogImportEventDTO{" +
+                "type='" + type + '\'' +
+                ", line=" + line +
+                ", message='" + message + '\'' +
+                ", rowsRead=" + rowsRead +
+                ", productsImported=" + productsImported +
+                ", stocksImported=" + stocksImported +
+                ", rowsFailed=" + rowsFailed +
+                '}';
+    }
+}
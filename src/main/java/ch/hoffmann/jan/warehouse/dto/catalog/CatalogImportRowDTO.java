@@ -0,0 +1,108 @@
+package ch.hoffmann.jan.warehouse.dto.catalog;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of a catalog import: a new product and, optionally, its initial stock in one warehouse.
+ * Categories and warehouses are referenced by name.
+ */
+public class CatalogImportRowDTO {
+
+    @NotBlank(message = "Product name is required")
+    @Size(min = 2, max = 100, message = "Product name must be between 2 and 100 characters")
+    private String name;
+
+    @Size(max = 1000, message = "Description cannot exceed 1000 characters")
+    private String description;
+
+    @NotNull(message = "Price is required")
+    @Positive(message = "Price must be greater than zero")
+    private BigDecimal price;
+
+    @NotBlank(message = "Category is required")
+    private String category;
+
+    private String warehouse;
+
+    @Positive(message = "Quantity must be greater than zero")
+    private Integer quantity;
+
+    // Constructors
+    public CatalogImportRowDTO() {
+    }
+
+    public CatalogImportRowDTO(String name, String description, BigDecimal price, String category,
+                               String warehouse, Integer quantity) {
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.category = category;
+        this.warehouse = warehouse;
+        this.quantity = quantity;
+    }
+
+    // Getters and setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getWarehouse() {
+        return warehouse;
+    }
+
+    public void setWarehouse(String warehouse) {
+        this.warehouse = warehouse;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogImportRowDTO{" +
+                "name='" + name + '\'' +
+                ", price=" + price +
+                ", category='" + category + '\'' +
+                ", warehouse='" + warehouse + '\'' +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package ch.hoffmann.jan.warehouse.dto.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Payload of a domain event stored in the outbox. The aggregate decides the delivery order:
+ * the events of one aggregate are published in the order they were written.
+ */
+public interface DomainEventDTO {
+
+    @JsonIgnore
+    String getEventType();
+
+    @JsonIgnore
+    String getAggregateType();
+
+    @JsonIgnore
+    Long getAggregateId();
+}
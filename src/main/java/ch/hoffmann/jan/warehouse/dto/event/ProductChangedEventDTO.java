@@ -0,0 +1,96 @@
+package ch.hoffmann.jan.warehouse.dto.event;
+
+import java.math.BigDecimal;
+
+/**
+ * A product was created, updated or deleted
+ */
+public class ProductChangedEventDTO implements DomainEventDTO {
+
+    public static final String TYPE = "ProductChanged";
+
+    private Long productId;
+    private String change;
+    private String name;
+    private BigDecimal price;
+    private Long categoryId;
+
+    // Constructors
+    public ProductChangedEventDTO() {
+    }
+
+    public ProductChangedEventDTO(Long productId, String change, String name, BigDecimal price, Long categoryId) {
+        this.productId = productId;
+        this.change = change;
+        this.name = name;
+        this.price = price;
+        this.categoryId = categoryId;
+    }
+
+    @Override
+    public String getEventType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getAggregateType() {
+        return "Product";
+    }
+
+    @Override
+    public Long getAggregateId() {
+        return productId;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getChange() {
+        return change;
+    }
+
+    public void setChange(String change) {
+        this.change = change;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductChangedEventDTO{" +
+                "productId=" + productId +
+                ", change='" + change + '\'' +
+                ", name='" + name + '\'' +
+                ", price=" + price +
+                ", categoryId=" + categoryId +
+                '}';
+    }
+}
@@ -0,0 +1,106 @@
+package ch.hoffmann.jan.warehouse.dto.event;
+
+/**
+ * A stock level changed (created, added to or removed from); ordered per product
+ */
+public class StockAdjustedEventDTO implements DomainEventDTO {
+
+    public static final String TYPE = "StockAdjusted";
+
+    private Long productId;
+    private Long warehouseId;
+    private String operation;
+    private Integer quantity;
+    private Integer newQuantity;
+    private Long userId;
+
+    // Constructors
+    public StockAdjustedEventDTO() {
+    }
+
+    public StockAdjustedEventDTO(Long productId, Long warehouseId, String operation, Integer quantity,
+                                 Integer newQuantity, Long userId) {
+        this.productId = productId;
+        this.warehouseId = warehouseId;
+        this.operation = operation;
+        this.quantity = quantity;
+        this.newQuantity = newQuantity;
+        this.userId = userId;
+    }
+
+    @Override
+    public String getEventType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getAggregateType() {
+        return "Stock";
+    }
+
+    @Override
+    public Long getAggregateId() {
+        return productId;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Integer getNewQuantity() {
+        return newQuantity;
+    }
+
+    public void setNewQuantity(Integer newQuantity) {
+        this.newQuantity = newQuantity;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    @Override
+    public String toString() {
+        return "StockAdjustedEventDTO{" +
+                "productId=" + productId +
+                ", warehouseId=" + warehouseId +
+                ", operation='" + operation + '\'' +
+                ", quantity=" + quantity +
+                ", newQuantity=" + newQuantity +
+                ", userId=" + userId +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package ch.hoffmann.jan.warehouse.dto.event;
+
+/**
+ * Stock moved between two warehouses; ordered per product, together with the adjustments
+ */
+public class StockTransferredEventDTO implements DomainEventDTO {
+
+    public static final String TYPE = "StockTransferred";
+
+    private Long productId;
+    private Long sourceWarehouseId;
+    private Long targetWarehouseId;
+    private Integer quantity;
+    private Long userId;
+
+    // Constructors
+    public StockTransferredEventDTO() {
+    }
+
+    public StockTransferredEventDTO(Long productId, Long sourceWarehouseId, Long targetWarehouseId, Integer quantity,
+                                    Long userId) {
+        this.productId = productId;
+        this.sourceWarehouseId = sourceWarehouseId;
+        this.targetWarehouseId = targetWarehouseId;
+        this.quantity = quantity;
+        this.userId = userId;
+    }
+
+    @Override
+    public String getEventType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getAggregateType() {
+        return "Stock";
+    }
+
+    @Override
+    public Long getAggregateId() {
+        return productId;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getSourceWarehouseId() {
+        return sourceWarehouseId;
+    }
+
+    public void setSourceWarehouseId(Long sourceWarehouseId) {
+        this.sourceWarehouseId = sourceWarehouseId;
+    }
+
+    public Long getTargetWarehouseId() {
+        return targetWarehouseId;
+    }
+
+    public void setTargetWarehouseId(Long targetWarehouseId) {
+        this.targetWarehouseId = targetWarehouseId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    @Override
+    public String toString() {
+        return "StockTransferredEventDTO{" +
+                "productId=" + productId +
+                ", sourceWarehouseId=" + sourceWarehouseId +
+                ", targetWarehouseId=" + targetWarehouseId +
+                ", quantity=" + quantity +
+                ", userId=" + userId +
+                '}';
+    }
+}
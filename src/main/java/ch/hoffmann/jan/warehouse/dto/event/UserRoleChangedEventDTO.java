@@ -0,0 +1,83 @@
+package ch.hoffmann.jan.warehouse.dto.event;
+
+/**
+ * A user was promoted to manager or demoted to employee
+ */
+public class UserRoleChangedEventDTO implements DomainEventDTO {
+
+    public static final String TYPE = "UserRoleChanged";
+
+    private Long userId;
+    private String username;
+    private String previousRole;
+    private String role;
+
+    // Constructors
+    public UserRoleChangedEventDTO() {
+    }
+
+    public UserRoleChangedEventDTO(Long userId, String username, String previousRole, String role) {
+        this.userId = userId;
+        this.username = username;
+        this.previousRole = previousRole;
+        this.role = role;
+    }
+
+    @Override
+    public String getEventType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getAggregateType() {
+        return "User";
+    }
+
+    @Override
+    public Long getAggregateId() {
+        return userId;
+    }
+
+    // Getters and setters
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPreviousRole() {
+        return previousRole;
+    }
+
+    public void setPreviousRole(String previousRole) {
+        this.previousRole = previousRole;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    @Override
+    public String toString() {
+        return "UserRoleChangedEventDTO{" +
+                "userId=" + userId +
+                ", username='" + username + '\'' +
+                ", previousRole='" + previousRole + '\'' +
+                ", role='" + role + '\'' +
+                '}';
+    }
+}
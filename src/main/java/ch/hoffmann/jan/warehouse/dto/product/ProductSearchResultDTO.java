@@ -0,0 +1,106 @@
+package ch.hoffmann.jan.warehouse.dto.product;
+
+import java.math.BigDecimal;
+
+public class ProductSearchResultDTO {
+    private Long id;
+    private String name;
+    private String description;
+    private BigDecimal price;
+    private Long categoryId;
+    private String categoryName;
+    private Long availableQuantity;
+    private Double rank;
+
+    // Constructors
+    public ProductSearchResultDTO() {
+    }
+
+    public ProductSearchResultDTO(Long id, String name, String description, BigDecimal price, Long categoryId,
+                                  String categoryName, Long availableQuantity, Double rank) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.categoryId = categoryId;
+        this.categoryName = categoryName;
+        this.availableQuantity = availableQuantity;
+        this.rank = rank;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public void setCategoryName(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    public Long getAvailableQuantity() {
+        return availableQuantity;
+    }
+
+    public void setAvailableQuantity(Long availableQuantity) {
+        this.availableQuantity = availableQuantity;
+    }
+
+    public Double getRank() {
+        return rank;
+    }
+
+    public void setRank(Double rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSearchResultDTO{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", categoryName='" + categoryName + '\'' +
+                ", availableQuantity=" + availableQuantity +
+                ", rank=" + rank +
+                '}';
+    }
+}
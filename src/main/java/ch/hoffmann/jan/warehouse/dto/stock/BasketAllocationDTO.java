@@ -0,0 +1,62 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+public class BasketAllocationDTO {
+    private Long warehouseId;
+    private String warehouseName;
+    private Long productId;
+    private Integer quantity;
+
+    // Constructors
+    public BasketAllocationDTO() {
+    }
+
+    public BasketAllocationDTO(Long warehouseId, String warehouseName, Long productId, Integer quantity) {
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    // Getters and setters
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "BasketAllocationDTO{" +
+                "warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", productId=" + productId +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
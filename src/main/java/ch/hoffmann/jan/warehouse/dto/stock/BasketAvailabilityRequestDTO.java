@@ -0,0 +1,72 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BasketAvailabilityRequestDTO {
+
+    public static final int MAX_LINES = 200;
+
+    @NotEmpty(message = "At least one line is required")
+    @Size(max = MAX_LINES, message = "A basket can have at most " + MAX_LINES + " lines")
+    private List<@Valid @NotNull BasketLineDTO> lines;
+
+    // Optional delivery coordinates (WGS 84 degrees), given together; nearer warehouses are preferred
+    @DecimalMin(value = "-90", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90", message = "Latitude must be between -90 and 90")
+    private Double latitude;
+
+    @DecimalMin(value = "-180", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180", message = "Longitude must be between -180 and 180")
+    private Double longitude;
+
+    // Constructors
+    public BasketAvailabilityRequestDTO() {
+    }
+
+    public BasketAvailabilityRequestDTO(List<BasketLineDTO> lines, Double latitude, Double longitude) {
+        this.lines = lines;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    // Getters and setters
+    public List<BasketLineDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<BasketLineDTO> lines) {
+        this.lines = lines;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    @Override
+    public String toString() {
+        return "BasketAvailabilityRequestDTO{" +
+                "lineCount=" + (lines != null ? lines.size() : 0) +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                '}';
+    }
+}
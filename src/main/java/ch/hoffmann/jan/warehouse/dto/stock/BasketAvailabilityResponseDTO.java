@@ -0,0 +1,88 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+import java.util.List;
+
+public class BasketAvailabilityResponseDTO {
+
+    public enum AllocationType {
+        // All lines from one warehouse
+        SINGLE_WAREHOUSE,
+        // All lines, from several warehouses
+        SPLIT,
+        // Not enough stock for every line; allocates what is available
+        PARTIAL
+    }
+
+    private boolean fulfillable;
+    private AllocationType allocationType;
+    // Number of warehouses in the allocation
+    private Integer shipments;
+    private List<BasketLineAvailabilityDTO> lines;
+    // The warehouses that have stock of any line, those that can ship the whole basket first
+    private List<WarehouseFulfilmentDTO> warehouses;
+    private List<BasketAllocationDTO> allocations;
+
+    // Constructors
+    public BasketAvailabilityResponseDTO() {
+    }
+
+    // Getters and setters
+    public boolean isFulfillable() {
+        return fulfillable;
+    }
+
+    public void setFulfillable(boolean fulfillable) {
+        this.fulfillable = fulfillable;
+    }
+
+    public AllocationType getAllocationType() {
+        return allocationType;
+    }
+
+    public void setAllocationType(AllocationType allocationType) {
+        this.allocationType = allocationType;
+    }
+
+    public Integer getShipments() {
+        return shipments;
+    }
+
+    public void setShipments(Integer shipments) {
+        this.shipments = shipments;
+    }
+
+    public List<BasketLineAvailabilityDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<BasketLineAvailabilityDTO> lines) {
+        this.lines = lines;
+    }
+
+    public List<WarehouseFulfilmentDTO> getWarehouses() {
+        return warehouses;
+    }
+
+    public void setWarehouses(List<WarehouseFulfilmentDTO> warehouses) {
+        this.warehouses = warehouses;
+    }
+
+    public List<BasketAllocationDTO> getAllocations() {
+        return allocations;
+    }
+
+    public void setAllocations(List<BasketAllocationDTO> allocations) {
+        this.allocations = allocations;
+    }
+
+    @Override
+    public String toString() {
+        return "BasketAvailabilityResponseDTO{" +
+                "fulfillable=" + fulfillable +
+                ", allocationType=" + allocationType +
+                ", shipments=" + shipments +
+                ", lineCount=" + (lines != null ? lines.size() : 0) +
+                ", allocationCount=" + (allocations != null ? allocations.size() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+public class BasketLineAvailabilityDTO {
+    private Long productId;
+    private String productName;
+    private Integer quantity;
+    // Unreserved units over all warehouses
+    private Long available;
+    // Units of the line in the allocation; less than quantity if the basket cannot be fulfilled
+    private Integer allocated;
+
+    // Constructors
+    public BasketLineAvailabilityDTO() {
+    }
+
+    public BasketLineAvailabilityDTO(Long productId, String productName, Integer quantity, Long available,
+                                     Integer allocated) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.available = available;
+        this.allocated = allocated;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Long getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(Long available) {
+        this.available = available;
+    }
+
+    public Integer getAllocated() {
+        return allocated;
+    }
+
+    public void setAllocated(Integer allocated) {
+        this.allocated = allocated;
+    }
+
+    @Override
+    public String toString() {
+        return "BasketLineAvailabilityDTO{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", quantity=" + quantity +
+                ", available=" + available +
+                ", allocated=" + allocated +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+public class NearestWarehouseDTO {
+    private Long warehouseId;
+    private String warehouseName;
+    private String location;
+    private Double latitude;
+    private Double longitude;
+    private Integer availableQuantity;
+    private Double distanceKm;
+
+    // Constructors
+    public NearestWarehouseDTO() {
+    }
+
+    public NearestWarehouseDTO(Long warehouseId, String warehouseName, String location, Double latitude,
+                               Double longitude, Integer availableQuantity, Double distanceKm) {
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.location = location;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.availableQuantity = availableQuantity;
+        this.distanceKm = distanceKm;
+    }
+
+    // Getters and setters
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public Integer getAvailableQuantity() {
+        return availableQuantity;
+    }
+
+    public void setAvailableQuantity(Integer availableQuantity) {
+        this.availableQuantity = availableQuantity;
+    }
+
+    public Double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public void setDistanceKm(Double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+
+    @Override
+    public String toString() {
+        return "NearestWarehouseDTO{" +
+                "warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", availableQuantity=" + availableQuantity +
+                ", distanceKm=" + distanceKm +
+                '}';
+    }
+}
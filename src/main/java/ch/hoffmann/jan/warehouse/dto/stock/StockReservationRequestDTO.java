@@ -0,0 +1,77 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+public class StockReservationRequestDTO {
+
+    @NotNull(message = "Product ID is required")
+    private Long productId;
+
+    @NotNull(message = "Warehouse ID is required")
+    private Long warehouseId;
+
+    @NotNull(message = "Quantity is required")
+    @Min(value = 1, message = "Quantity must be at least 1")
+    private Integer quantity;
+
+    // Optional, the configured default if not set
+    @Min(value = 1, message = "The reservation must last at least 1 second")
+    @Max(value = 86400, message = "The reservation must not last longer than 1 day")
+    private Integer ttlSeconds;
+
+    // Constructors
+    public StockReservationRequestDTO() {
+    }
+
+    public StockReservationRequestDTO(Long productId, Long warehouseId, Integer quantity, Integer ttlSeconds) {
+        this.productId = productId;
+        this.warehouseId = warehouseId;
+        this.quantity = quantity;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Integer getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(Integer ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "StockReservationRequestDTO{" +
+                "productId=" + productId +
+                ", warehouseId=" + warehouseId +
+                ", quantity=" + quantity +
+                ", ttlSeconds=" + ttlSeconds +
+                '}';
+    }
+}
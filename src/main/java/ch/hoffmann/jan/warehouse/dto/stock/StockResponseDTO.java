@@ -7,6 +7,8 @@ public class StockResponseDTO {
     private Long warehouseId;
     private String warehouseName;
     private Integer quantity;
+    // Part of the quantity held by active reservations
+    private Integer reserved;
 
     // Constructors
     public StockResponseDTO() {
@@ -70,6 +72,14 @@ public class StockResponseDTO {
         this.quantity = quantity;
     }
 
+    public Integer getReserved() {
+        return reserved;
+    }
+
+    public void setReserved(Integer reserved) {
+        this.reserved = reserved;
+    }
+
     @Override
     public String toString() {
         return "StockResponseDTO{" +
@@ -79,6 +89,7 @@ public class StockResponseDTO {
                 ", warehouseId=" + warehouseId +
                 ", warehouseName='" + warehouseName + '\'' +
                 ", quantity=" + quantity +
+                ", reserved=" + reserved +
                 '}';
     }
 }
\ No newline at end of file
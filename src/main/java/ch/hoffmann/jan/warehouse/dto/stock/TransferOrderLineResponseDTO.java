@@ -0,0 +1,75 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+public class TransferOrderLineResponseDTO {
+    private Long productId;
+    private String productName;
+    private Integer quantity;
+    // Quantities after the transfer; 0 means the source stock was removed
+    private Integer sourceQuantity;
+    private Integer targetQuantity;
+
+    // Constructors
+    public TransferOrderLineResponseDTO() {
+    }
+
+    public TransferOrderLineResponseDTO(Long productId, String productName, Integer quantity,
+                                        Integer sourceQuantity, Integer targetQuantity) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.sourceQuantity = sourceQuantity;
+        this.targetQuantity = targetQuantity;
+    }
+
+    // Getters and setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Integer getSourceQuantity() {
+        return sourceQuantity;
+    }
+
+    public void setSourceQuantity(Integer sourceQuantity) {
+        this.sourceQuantity = sourceQuantity;
+    }
+
+    public Integer getTargetQuantity() {
+        return targetQuantity;
+    }
+
+    public void setTargetQuantity(Integer targetQuantity) {
+        this.targetQuantity = targetQuantity;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferOrderLineResponseDTO{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", quantity=" + quantity +
+                ", sourceQuantity=" + sourceQuantity +
+                ", targetQuantity=" + targetQuantity +
+                '}';
+    }
+}
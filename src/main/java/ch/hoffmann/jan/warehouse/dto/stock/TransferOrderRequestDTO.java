@@ -0,0 +1,67 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class TransferOrderRequestDTO {
+
+    public static final int MAX_LINES = 1000;
+
+    @NotNull(message = "Source warehouse ID is required")
+    private Long sourceWarehouseId;
+
+    @NotNull(message = "Target warehouse ID is required")
+    private Long targetWarehouseId;
+
+    @NotEmpty(message = "At least one line is required")
+    @Size(max = MAX_LINES, message = "A transfer order can have at most " + MAX_LINES + " lines")
+    private List<@Valid @NotNull TransferOrderLineDTO> lines;
+
+    // Constructors
+    public TransferOrderRequestDTO() {
+    }
+
+    public TransferOrderRequestDTO(Long sourceWarehouseId, Long targetWarehouseId, List<TransferOrderLineDTO> lines) {
+        this.sourceWarehouseId = sourceWarehouseId;
+        this.targetWarehouseId = targetWarehouseId;
+        this.lines = lines;
+    }
+
+    // Getters and setters
+    public Long getSourceWarehouseId() {
+        return sourceWarehouseId;
+    }
+
+    public void setSourceWarehouseId(Long sourceWarehouseId) {
+        this.sourceWarehouseId = sourceWarehouseId;
+    }
+
+    public Long getTargetWarehouseId() {
+        return targetWarehouseId;
+    }
+
+    public void setTargetWarehouseId(Long targetWarehouseId) {
+        this.targetWarehouseId = targetWarehouseId;
+    }
+
+    public List<TransferOrderLineDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<TransferOrderLineDTO> lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferOrderRequestDTO{" +
+                "sourceWarehouseId=" + sourceWarehouseId +
+                ", targetWarehouseId=" + targetWarehouseId +
+                ", lines=" + (lines != null ? lines.size() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class TransferOrderResponseDTO {
+    private Long id;
+    private Long sourceWarehouseId;
+    private String sourceWarehouseName;
+    private Long targetWarehouseId;
+    private String targetWarehouseName;
+    private Integer totalQuantity;
+    private LocalDateTime createdAt;
+    private List<TransferOrderLineResponseDTO> lines;
+
+    // Constructors
+    public TransferOrderResponseDTO() {
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getSourceWarehouseId() {
+        return sourceWarehouseId;
+    }
+
+    public void setSourceWarehouseId(Long sourceWarehouseId) {
+        this.sourceWarehouseId = sourceWarehouseId;
+    }
+
+    public String getSourceWarehouseName() {
+        return sourceWarehouseName;
+    }
+
+    public void setSourceWarehouseName(String sourceWarehouseName) {
+        this.sourceWarehouseName = sourceWarehouseName;
+    }
+
+    public Long getTargetWarehouseId() {
+        return targetWarehouseId;
+    }
+
+    public void setTargetWarehouseId(Long targetWarehouseId) {
+        this.targetWarehouseId = targetWarehouseId;
+    }
+
+    public String getTargetWarehouseName() {
+        return targetWarehouseName;
+    }
+
+    public void setTargetWarehouseName(String targetWarehouseName) {
+        this.targetWarehouseName = targetWarehouseName;
+    }
+
+    public Integer getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public void setTotalQuantity(Integer totalQuantity) {
+        this.totalQuantity = totalQuantity;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<TransferOrderLineResponseDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<TransferOrderLineResponseDTO> lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferOrderResponseDTO{" +
+                "id=" + id +
+                ", sourceWarehouseId=" + sourceWarehouseId +
+                ", targetWarehouseId=" + targetWarehouseId +
+                ", totalQuantity=" + totalQuantity +
+                ", lines=" + (lines != null ? lines.size() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package ch.hoffmann.jan.warehouse.dto.stock;
+
+public class WarehouseFulfilmentDTO {
+    private Long warehouseId;
+    private String warehouseName;
+    // Null without request coordinates or warehouse coordinates
+    private Double distanceKm;
+    // Lines the warehouse can ship completely on its own; complete if it can ship all
+    private Integer fulfillableLines;
+    private boolean complete;
+
+    // Constructors
+    public WarehouseFulfilmentDTO() {
+    }
+
+    public WarehouseFulfilmentDTO(Long warehouseId, String warehouseName, Double distanceKm, Integer fulfillableLines,
+                                  boolean complete) {
+        this.warehouseId = warehouseId;
+        this.warehouseName = warehouseName;
+        this.distanceKm = distanceKm;
+        this.fulfillableLines = fulfillableLines;
+        this.complete = complete;
+    }
+
+    // Getters and setters
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public String getWarehouseName() {
+        return warehouseName;
+    }
+
+    public void setWarehouseName(String warehouseName) {
+        this.warehouseName = warehouseName;
+    }
+
+    public Double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public void setDistanceKm(Double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+
+    public Integer getFulfillableLines() {
+        return fulfillableLines;
+    }
+
+    public void setFulfillableLines(Integer fulfillableLines) {
+        this.fulfillableLines = fulfillableLines;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    @Override
+    public String toString() {
+        return "WarehouseFulfilmentDTO{" +
+                "warehouseId=" + warehouseId +
+                ", warehouseName='" + warehouseName + '\'' +
+                ", distanceKm=" + distanceKm +
+                ", fulfillableLines=" + fulfillableLines +
+                ", complete=" + complete +
+                '}';
+    }
+}
@@ -0,0 +1,91 @@
+package ch.hoffmann.jan.warehouse.dto.sync;
+
+import java.util.List;
+
+/**
+ * Changes since a sync token. With full=true the lists hold the complete data set and the client has to
+ * replace its local copy (first sync, or a token older than the retained tombstones).
+ */
+public class SyncResponseDTO {
+    private String token;
+    private boolean full;
+    private List<SyncProductDTO> products;
+    private List<SyncStockDTO> stocks;
+    private List<SyncWarehouseDTO> warehouses;
+    private List<SyncTombstoneDTO> deleted;
+
+    // Constructors
+    public SyncResponseDTO() {
+    }
+
+    public SyncResponseDTO(String token, boolean full, List<SyncProductDTO> products, List<SyncStockDTO> stocks,
+                           List<SyncWarehouseDTO> warehouses, List<SyncTombstoneDTO> deleted) {
+        this.token = token;
+        this.full = full;
+        this.products = products;
+        this.stocks = stocks;
+        this.warehouses = warehouses;
+        this.deleted = deleted;
+    }
+
+    // Getters and setters
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public List<SyncProductDTO> getProducts() {
+        return products;
+    }
+
+    public void setProducts(List<SyncProductDTO> products) {
+        this.products = products;
+    }
+
+    public List<SyncStockDTO> getStocks() {
+        return stocks;
+    }
+
+    public void setStocks(List<SyncStockDTO> stocks) {
+        this.stocks = stocks;
+    }
+
+    public List<SyncWarehouseDTO> getWarehouses() {
+        return warehouses;
+    }
+
+    public void setWarehouses(List<SyncWarehouseDTO> warehouses) {
+        this.warehouses = warehouses;
+    }
+
+    public List<SyncTombstoneDTO> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<SyncTombstoneDTO> deleted) {
+        this.deleted = deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResponseDTO{" +
+                "token='" + token + '\'' +
+                ", full=" + full +
+                ", products=" + (products != null ? products.size() : 0) +
+                ", stocks=" + (stocks != null ? stocks.size() : 0) +
+                ", warehouses=" + (warehouses != null ? warehouses.size() : 0) +
+                ", deleted=" + (deleted != null ? deleted.size() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package ch.hoffmann.jan.warehouse.dto.sync;
+
+/**
+ * Stock state as sent to the sync clients
+ */
+public class SyncStockDTO {
+    private Long id;
+    private Long productId;
+    private Long warehouseId;
+    private Integer quantity;
+
+    // Constructors
+    public SyncStockDTO() {
+    }
+
+    public SyncStockDTO(Long id, Long productId, Long warehouseId, Integer quantity) {
+        this.id = id;
+        this.productId = productId;
+        this.warehouseId = warehouseId;
+        this.quantity = quantity;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStockDTO{" +
+                "id=" + id +
+                ", productId=" + productId +
+                ", warehouseId=" + warehouseId +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package ch.hoffmann.jan.warehouse.dto.sync;
+
+/**
+ * A deleted product, stock or warehouse
+ */
+public class SyncTombstoneDTO {
+    private String type;
+    private Long id;
+
+    // Constructors
+    public SyncTombstoneDTO() {
+    }
+
+    public SyncTombstoneDTO(String type, Long id) {
+        this.type = type;
+        this.id = id;
+    }
+
+    // Getters and setters
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncTombstoneDTO{" +
+                "type='" + type + '\'' +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package ch.hoffmann.jan.warehouse.dto.sync;
+
+/**
+ * Warehouse state as sent to the sync clients
+ */
+public class SyncWarehouseDTO {
+    private Long id;
+    private String name;
+    private String location;
+
+    // Constructors
+    public SyncWarehouseDTO() {
+    }
+
+    public SyncWarehouseDTO(Long id, String name, String location) {
+        this.id = id;
+        this.name = name;
+        this.location = location;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncWarehouseDTO{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", location='" + location + '\'' +
+                '}';
+    }
+}
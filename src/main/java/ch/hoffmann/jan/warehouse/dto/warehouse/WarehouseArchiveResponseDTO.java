@@ -0,0 +1,65 @@
+package ch.hoffmann.jan.warehouse.dto.warehouse;
+
+/**
+ * Result of archiving a warehouse: how much stock was moved to the target warehouse, or written off without one
+ */
+public class WarehouseArchiveResponseDTO {
+    private Long warehouseId;
+    private Long targetWarehouseId;
+    private long stockEntries;
+    private long units;
+
+    // Constructors
+    public WarehouseArchiveResponseDTO() {
+    }
+
+    public WarehouseArchiveResponseDTO(Long warehouseId, Long targetWarehouseId, long stockEntries, long units) {
+        this.warehouseId = warehouseId;
+        this.targetWarehouseId = targetWarehouseId;
+        this.stockEntries = stockEntries;
+        this.units = units;
+    }
+
+    // Getters and setters
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(Long warehouseId) {
+        this.warehouseId = warehouseId;
+    }
+
+    public Long getTargetWarehouseId() {
+        return targetWarehouseId;
+    }
+
+    public void setTargetWarehouseId(Long targetWarehouseId) {
+        this.targetWarehouseId = targetWarehouseId;
+    }
+
+    public long getStockEntries() {
+        return stockEntries;
+    }
+
+    public void setStockEntries(long stockEntries) {
+        this.stockEntries = stockEntries;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public void setUnits(long units) {
+        this.units = units;
+    }
+
+    @Override
+    public String toString() {
+        return "WarehouseArchiveResponseDTO{" +
+                "warehouseId=" + warehouseId +
+                ", targetWarehouseId=" + targetWarehouseId +
+                ", stockEntries=" + stockEntries +
+                ", units=" + units +
+                '}';
+    }
+}
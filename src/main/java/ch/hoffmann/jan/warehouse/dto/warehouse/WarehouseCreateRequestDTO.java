@@ -1,6 +1,8 @@
 package ch.hoffmann.jan.warehouse.dto.warehouse;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Size;
 
 public class WarehouseCreateRequestDTO {
@@ -13,6 +15,15 @@ public class WarehouseCreateRequestDTO {
     @Size(min = 2, max = 200, message = "Location must be between 2 and 200 characters")
     private String location;
 
+    // Optional coordinates (WGS 84 degrees), given together
+    @DecimalMin(value = "-90", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90", message = "Latitude must be between -90 and 90")
+    private Double latitude;
+
+    @DecimalMin(value = "-180", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180", message = "Longitude must be between -180 and 180")
+    private Double longitude;
+
     // Constructors
     public WarehouseCreateRequestDTO() {
     }
@@ -39,11 +50,29 @@ public class WarehouseCreateRequestDTO {
         this.location = location;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
     @Override
     public String toString() {
         return "WarehouseCreateRequestDTO{" +
                 "name='" + name + '\'' +
                 ", location='" + location + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package ch.hoffmann.jan.warehouse.dto.warehouse;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Size;
 
 public class WarehousePatchRequestDTO {
@@ -10,6 +12,15 @@ public class WarehousePatchRequestDTO {
     @Size(min = 2, max = 200, message = "Location must be between 2 and 200 characters")
     private String location;
 
+    // Optional coordinates (WGS 84 degrees), given together
+    @DecimalMin(value = "-90", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90", message = "Latitude must be between -90 and 90")
+    private Double latitude;
+
+    @DecimalMin(value = "-180", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180", message = "Longitude must be between -180 and 180")
+    private Double longitude;
+
     // Constructors
     public WarehousePatchRequestDTO() {
     }
@@ -36,11 +47,29 @@ public class WarehousePatchRequestDTO {
         this.location = location;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
     @Override
     public String toString() {
         return "WarehousePatchRequestDTO{" +
                 "name='" + name + '\'' +
                 ", location='" + location + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
                 '}';
     }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ public class WarehouseResponseDTO {
     private Long id;
     private String name;
     private String location;
+    private Double latitude;
+    private Double longitude;
     private List<WarehouseStockDTO> stocks;
 
     // Constructors
@@ -43,6 +45,22 @@ public class WarehouseResponseDTO {
         this.location = location;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
     public List<WarehouseStockDTO> getStocks() {
         return stocks;
     }
@@ -57,6 +75,8 @@ public class WarehouseResponseDTO {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", location='" + location + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
                 ", stockCount=" + (stocks != null ? stocks.size() : 0) +
                 '}';
     }
@@ -0,0 +1,76 @@
+package ch.hoffmann.jan.warehouse.dto.warehouse;
+
+/**
+ * Lightweight warehouse overview without the individual stock entries
+ */
+public class WarehouseSummaryDTO {
+    private Long id;
+    private String name;
+    private String location;
+    private long skuCount;
+    private long totalUnits;
+
+    // Constructors
+    public WarehouseSummaryDTO() {
+    }
+
+    public WarehouseSummaryDTO(Long id, String name, String location, long skuCount, long totalUnits) {
+        this.id = id;
+        this.name = name;
+        this.location = location;
+        this.skuCount = skuCount;
+        this.totalUnits = totalUnits;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public long getSkuCount() {
+        return skuCount;
+    }
+
+    public void setSkuCount(long skuCount) {
+        this.skuCount = skuCount;
+    }
+
+    public long getTotalUnits() {
+        return totalUnits;
+    }
+
+    public void setTotalUnits(long totalUnits) {
+        this.totalUnits = totalUnits;
+    }
+
+    @Override
+    public String toString() {
+        return "WarehouseSummaryDTO{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", location='" + location + '\'' +
+                ", skuCount=" + skuCount +
+                ", totalUnits=" + totalUnits +
+                '}';
+    }
+}
@@ -386,4 +386,80 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
-}
\ No newline at end of file
+
+    /**
+     * Handle idempotency key reuse exceptions
+     */
+    @ExceptionHandler(WarehouseException.IdempotencyKeyReuseException.class)
+    public ResponseEntity<Object> handleIdempotencyKeyReuseException(
+            WarehouseException.IdempotencyKeyReuseException ex, WebRequest request) {
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("status", HttpStatus.UNPROCESSABLE_ENTITY.value());
+        body.put("error", "Idempotency Key Reused");
+        body.put("message", ex.getMessage());
+        body.put("path", ((ServletWebRequest) request).getRequest().getRequestURI());
+
+        logger.warn("Idempotency key reused: {}", ex.getMessage());
+
+        return new ResponseEntity<>(body, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    /**
+     * Handle reservation not active exceptions
+     */
+    @ExceptionHandler(WarehouseException.ReservationNotActiveException.class)
+    public ResponseEntity<Object> handleReservationNotActiveException(
+            WarehouseException.ReservationNotActiveException ex, WebRequest request) {
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("status", HttpStatus.CONFLICT.value());
+        body.put("error", "Reservation Not Active");
+        body.put("message", ex.getMessage());
+        body.put("path", ((ServletWebRequest) request).getRequest().getRequestURI());
+
+        logger.warn("Reservation not active: {}", ex.getMessage());
+
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Handle stock reserved exceptions
+     */
+    @ExceptionHandler(WarehouseException.StockReservedException.class)
+    public ResponseEntity<Object> handleStockReservedException(
+            WarehouseException.StockReservedException ex, WebRequest request) {
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("status", HttpStatus.CONFLICT.value());
+        body.put("error", "Stock Reserved");
+        body.put("message", ex.getMessage());
+        body.put("path", ((ServletWebRequest) request).getRequest().getRequestURI());
+
+        logger.warn("Stock reserved: {}", ex.getMessage());
+
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Handle rollup in progress exceptions
+     */
+    @ExceptionHandler(WarehouseException.RollupInProgressException.class)
+    public ResponseEntity<Object> handleRollupInProgressException(
+            WarehouseException.RollupInProgressException ex, WebRequest request) {
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("status", HttpStatus.CONFLICT.value());
+        body.put("error", "Rollup In Progress");
+        body.put("message", ex.getMessage());
+        body.put("path", ((ServletWebRequest) request).getRequest().getRequestURI());
+
+        logger.warn("Rollup in progress: {}", ex.getMessage());
+
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+}
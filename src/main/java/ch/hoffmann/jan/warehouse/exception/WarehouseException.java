@@ -171,4 +171,42 @@ public class WarehouseException extends RuntimeException {
             super(String.format("Invalid audit action: '%s'. Valid actions are: ADD, REMOVE, TRANSFER", action));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Exception thrown when an idempotency key is reused for a different request.
+     */
+    public static class IdempotencyKeyReuseException extends WarehouseException {
+        public IdempotencyKeyReuseException(String key) {
+            super(String.format("Idempotency key '%s' was already used for a different request", key));
+        }
+    }
+
+    /**
+     * Exception thrown when a reservation is committed or released that is no longer active.
+     */
+    public static class ReservationNotActiveException extends WarehouseException {
+        public ReservationNotActiveException(Long reservationId, String status) {
+            super(String.format("Reservation %d is %s and can no longer be committed or released",
+                    reservationId, status));
+        }
+    }
+
+    /**
+     * Exception thrown when a warehouse with reserved stock is archived.
+     */
+    public static class StockReservedException extends WarehouseException {
+        public StockReservedException(String warehouseName, long stockCount) {
+            super(String.format("Cannot archive warehouse '%s' because %d stock entries have active reservations",
+                    warehouseName, stockCount));
+        }
+    }
+
+    /**
+     * Exception thrown when the movement rollup is rebuilt while another rollup is running.
+     */
+    public static class RollupInProgressException extends WarehouseException {
+        public RollupInProgressException() {
+            super("The stock movement rollup is being updated; try again later");
+        }
+    }
+}
@@ -4,11 +4,19 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "audit_logs")
+@Table(name = "audit_logs", indexes = {
+        @Index(name = "ix_audit_logs_timestamp", columnList = "timestamp DESC"),
+        @Index(name = "ix_audit_logs_user", columnList = "user_id"),
+        @Index(name = "ix_audit_logs_product", columnList = "product_id"),
+        @Index(name = "ix_audit_logs_warehouse", columnList = "warehouse_id"),
+        @Index(name = "ix_audit_logs_target_warehouse", columnList = "target_warehouse_id"),
+        @Index(name = "ix_audit_logs_transfer_order", columnList = "transfer_order_id")
+})
 public class Audit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_logs_seq")
+    @SequenceGenerator(name = "audit_logs_seq", sequenceName = "audit_logs_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -30,6 +38,10 @@ public class Audit {
     @JoinColumn(name = "target_warehouse_id")
     private Warehouse targetWarehouse; // Only used for transfers
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "transfer_order_id")
+    private TransferOrder transferOrder; // Only set for the lines of a transfer order
+
     @Column(nullable = false)
     private Integer quantity;
 
@@ -98,6 +110,14 @@ public class Audit {
         this.targetWarehouse = targetWarehouse;
     }
 
+    public TransferOrder getTransferOrder() {
+        return transferOrder;
+    }
+
+    public void setTransferOrder(TransferOrder transferOrder) {
+        this.transferOrder = transferOrder;
+    }
+
     public Integer getQuantity() {
         return quantity;
     }
@@ -1,13 +1,17 @@
 package ch.hoffmann.jan.warehouse.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
-@Table(name = "stocks")
+@Table(name = "stocks",
+        uniqueConstraints = @UniqueConstraint(name = "ux_stocks_product_warehouse", columnNames = {"product_id", "warehouse_id"}),
+        indexes = @Index(name = "ix_stocks_warehouse", columnList = "warehouse_id"))
 public class Stock {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stocks_seq")
+    @SequenceGenerator(name = "stocks_seq", sequenceName = "stocks_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -21,6 +25,12 @@ public class Stock {
     @Column(nullable = false)
     private Integer quantity;
 
+    // Units held by active reservations (see StockReservationService). Only changed with SQL updates, never
+    // written from the entity, so that flushing a loaded Stock cannot overwrite a concurrent reservation.
+    @Column(nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private Integer reserved = 0;
+
     public Stock() {
     }
 
@@ -62,5 +72,15 @@ public class Stock {
     public void setQuantity(Integer quantity) {
         this.quantity = quantity;
     }
-}
 
+    public Integer getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Quantity that is not held by reservations
+     */
+    public int getAvailable() {
+        return quantity - reserved;
+    }
+}
@@ -0,0 +1,109 @@
+package ch.hoffmann.jan.warehouse.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Header of a multi-line stock transfer; its lines are the TRANSFER audit entries that reference it
+ */
+@Entity
+@Table(name = "transfer_orders", indexes = {
+        @Index(name = "ix_transfer_orders_created_at", columnList = "created_at DESC")
+})
+public class TransferOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_orders_seq")
+    @SequenceGenerator(name = "transfer_orders_seq", sequenceName = "transfer_orders_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "source_warehouse_id", nullable = false)
+    private Warehouse sourceWarehouse;
+
+    @ManyToOne
+    @JoinColumn(name = "target_warehouse_id", nullable = false)
+    private Warehouse targetWarehouse;
+
+    @ManyToOne
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "line_count", nullable = false)
+    private Integer lineCount;
+
+    @Column(name = "total_quantity", nullable = false)
+    private Integer totalQuantity;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public TransferOrder() {
+    }
+
+    public TransferOrder(Warehouse sourceWarehouse, Warehouse targetWarehouse, User user,
+                         Integer lineCount, Integer totalQuantity, LocalDateTime createdAt) {
+        this.sourceWarehouse = sourceWarehouse;
+        this.targetWarehouse = targetWarehouse;
+        this.user = user;
+        this.lineCount = lineCount;
+        this.totalQuantity = totalQuantity;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Warehouse getSourceWarehouse() {
+        return sourceWarehouse;
+    }
+
+    public void setSourceWarehouse(Warehouse sourceWarehouse) {
+        this.sourceWarehouse = sourceWarehouse;
+    }
+
+    public Warehouse getTargetWarehouse() {
+        return targetWarehouse;
+    }
+
+    public void setTargetWarehouse(Warehouse targetWarehouse) {
+        this.targetWarehouse = targetWarehouse;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public Integer getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(Integer lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    public Integer getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public void setTotalQuantity(Integer totalQuantity) {
+        this.totalQuantity = totalQuantity;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -1,14 +1,21 @@
 package ch.hoffmann.jan.warehouse.model;
 
+import ch.hoffmann.jan.warehouse.util.GeoHash;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.util.List;
 
 @Entity
-@Table(name = "warehouses")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "warehouses",
+        uniqueConstraints = @UniqueConstraint(name = "ux_warehouses_name", columnNames = "name"))
 public class Warehouse {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "warehouses_seq")
+    @SequenceGenerator(name = "warehouses_seq", sequenceName = "warehouses_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -17,6 +24,14 @@ public class Warehouse {
     @Column(nullable = false)
     private String location;
 
+    // WGS 84 degrees, both set or both null; geohash is derived from them (see GeoHash)
+    private Double latitude;
+
+    private Double longitude;
+
+    @Column(length = 12)
+    private String geohash;
+
     @OneToMany(mappedBy = "warehouse", cascade = CascadeType.ALL)
     private List<Stock> stocks;
 
@@ -53,6 +68,33 @@ public class Warehouse {
         this.location = location;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public String getGeohash() {
+        return geohash;
+    }
+
+    /**
+     * Sets the coordinates and their geohash; null clears both coordinates
+     */
+    public void setCoordinates(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) {
+            this.latitude = null;
+            this.longitude = null;
+            this.geohash = null;
+        } else {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.geohash = GeoHash.encode(latitude, longitude, GeoHash.MAX_PRECISION);
+        }
+    }
+
     public List<Stock> getStocks() {
         return stocks;
     }
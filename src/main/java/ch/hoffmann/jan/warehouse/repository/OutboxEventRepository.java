@@ -0,0 +1,46 @@
+package ch.hoffmann.jan.warehouse.repository;
+
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Transaction-scoped advisory lock, so only one instance dispatches at a time
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryAdvisoryXactLock(@Param("key") long key);
+
+    /**
+     * The oldest pending events in publication order. Events written by transactions that may still be
+     * running (at or above the snapshot xmin) are left for later, and so is every event of an aggregate
+     * behind an earlier event of that aggregate that waits for a retry. The services lock the aggregate row
+     * before changing it (e.g. ProductRepository#findForUpdate), so the events of one aggregate are created
+     * in the order its changes are applied.
+     */
+    @Query(value = """
+            SELECT e.* FROM outbox_events e
+            WHERE e.published_at IS NULL AND e.dead_at IS NULL
+              AND e.txid < pg_snapshot_xmin(pg_current_snapshot())
+              AND NOT EXISTS (SELECT 1 FROM outbox_events b
+                              WHERE b.aggregate_type = e.aggregate_type AND b.aggregate_id = e.aggregate_id
+                                AND b.published_at IS NULL AND b.dead_at IS NULL
+                                AND b.next_attempt_at > :now
+                                AND (b.created_at, b.id) <= (e.created_at, e.id))
+            ORDER BY e.created_at, e.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<OutboxEvent> findDispatchable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.publishedAt < :cutoff")
+    int deletePublishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
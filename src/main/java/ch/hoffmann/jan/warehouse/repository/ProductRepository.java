@@ -2,14 +2,147 @@ package ch.hoffmann.jan.warehouse.repository;
 
 import ch.hoffmann.jan.warehouse.model.Category;
 import ch.hoffmann.jan.warehouse.model.Product;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByCategory(Category category);
+    boolean existsByCategory(Category category);
+    long countByCategory(Category category);
+    // Through the query cache (see ehcache.xml)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     boolean existsByName(String name);
-}
 
+    /**
+     * Product locked with SELECT ... FOR UPDATE until the end of the transaction, so that changes of one product
+     * are applied in the order their outbox events are written
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findForUpdate(@Param("id") Long id);
+
+    /**
+     * Streams (id, name) of all products; must be consumed inside a transaction so the driver can fetch in batches
+     */
+    @Query("SELECT p.id, p.name FROM Product p")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamIdsAndNames();
+
+    /**
+     * Streams all products with their stock entries, ordered by product: one row per stock entry, and one with null
+     * stock columns for a product without any. Columns: (id, name, description, price, categoryId, categoryName,
+     * stockId, warehouseId, warehouseName, quantity). Must be consumed inside a transaction
+     */
+    @Query("""
+            SELECT p.id, p.name, p.description, p.price, c.id, c.name, s.id, w.id, w.name, s.quantity
+            FROM Product p
+            JOIN p.category c
+            LEFT JOIN Stock s ON s.product = p
+            LEFT JOIN s.warehouse w
+            ORDER BY p.id, s.id
+            """)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamAllWithStocks();
+
+    @Query("SELECT p.name FROM Product p WHERE p.name IN :names")
+    Set<String> findExistingNames(@Param("names") Collection<String> names);
+
+    /**
+     * Ranked product search (see V4__product_search.sql): full-text prefix match on name and description,
+     * LIKE prefix and trigram similarity on the name. Filters, stock availability, ranking, the page and
+     * the total number of matches are all resolved in this one statement.
+     * @param tsQuery Prefix tsquery, e.g. "abc:* & 12:*"
+     * @param term The lower-cased search term for the trigram similarity
+     * @param prefixPattern The escaped LIKE pattern matching names starting with the term
+     */
+    @Query(value = """
+            SELECT p.id AS id, p.name AS name, p.description AS description, p.price AS price,
+                   c.id AS categoryId, c.name AS categoryName,
+                   COALESCE((SELECT SUM(s.quantity) FROM stocks s
+                             WHERE s.product_id = p.id
+                               AND (CAST(:warehouseId AS bigint) IS NULL OR s.warehouse_id = CAST(:warehouseId AS bigint))), 0)
+                       AS availableQuantity,
+                   ts_rank_cd(p.search_vector, q.query)
+                       + similarity(lower(p.name), q.term)
+                       + CASE WHEN lower(p.name) LIKE q.prefix ESCAPE '\\' THEN 1 ELSE 0 END AS rank,
+                   COUNT(*) OVER () AS totalCount
+            FROM products p
+            JOIN categories c ON c.id = p.category_id
+            CROSS JOIN (SELECT to_tsquery('simple', :tsQuery) AS query,
+                               CAST(:term AS text) AS term,
+                               CAST(:prefixPattern AS text) AS prefix) q
+            WHERE (p.search_vector @@ q.query
+                   OR lower(p.name) LIKE q.prefix ESCAPE '\\'
+                   OR lower(p.name) % q.term)
+              AND (CAST(:categoryId AS bigint) IS NULL OR p.category_id = CAST(:categoryId AS bigint))
+              AND ((CAST(:warehouseId AS bigint) IS NULL AND NOT :inStockOnly)
+                   OR EXISTS (SELECT 1 FROM stocks s
+                              WHERE s.product_id = p.id AND s.quantity > 0
+                                AND (CAST(:warehouseId AS bigint) IS NULL OR s.warehouse_id = CAST(:warehouseId AS bigint))))
+            ORDER BY rank DESC, p.name
+            LIMIT :limit OFFSET :offset
+            """, nativeQuery = true)
+    List<SearchRow> search(@Param("tsQuery") String tsQuery, @Param("term") String term,
+                           @Param("prefixPattern") String prefixPattern, @Param("categoryId") Long categoryId,
+                           @Param("warehouseId") Long warehouseId, @Param("inStockOnly") boolean inStockOnly,
+                           @Param("limit") int limit, @Param("offset") long offset);
+
+    /**
+     * Products written by transactions with an id >= since, a pg_snapshot_xmin value (see V5__sync_change_tracking.sql)
+     */
+    @Query(value = """
+            SELECT p.id AS id, p.name AS name, p.description AS description, p.price AS price,
+                   p.category_id AS categoryId
+            FROM products p
+            WHERE p.change_xid >= CAST(:since AS xid8)
+            ORDER BY p.id
+            """, nativeQuery = true)
+    List<SyncRow> findChangedSince(@Param("since") String since);
+
+    /**
+     * Row of the product search
+     */
+    interface SearchRow {
+        Long getId();
+        String getName();
+        String getDescription();
+        BigDecimal getPrice();
+        Long getCategoryId();
+        String getCategoryName();
+        Long getAvailableQuantity();
+        Double getRank();
+        Long getTotalCount();
+    }
+
+    /**
+     * Row of the product change feed
+     */
+    interface SyncRow {
+        Long getId();
+        String getName();
+        String getDescription();
+        BigDecimal getPrice();
+        Long getCategoryId();
+    }
+}
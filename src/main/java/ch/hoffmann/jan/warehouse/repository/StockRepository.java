@@ -1,18 +1,220 @@
 package ch.hoffmann.jan.warehouse.repository;
 
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO;
 import ch.hoffmann.jan.warehouse.model.Product;
 import ch.hoffmann.jan.warehouse.model.Stock;
 import ch.hoffmann.jan.warehouse.model.Warehouse;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface StockRepository extends JpaRepository<Stock, Long> {
     List<Stock> findByProduct(Product product);
     List<Stock> findByWarehouse(Warehouse warehouse);
     Optional<Stock> findByProductAndWarehouse(Product product, Warehouse warehouse);
-}
+    // Guards of the delete paths; answered from the indexes without loading the stock entries
+    boolean existsByProduct(Product product);
+    long countByProduct(Product product);
+    boolean existsByWarehouse(Warehouse warehouse);
+    long countByWarehouse(Warehouse warehouse);
+
+    /**
+     * Stock entry locked with SELECT ... FOR UPDATE until the end of the transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Stock s WHERE s.product.id = :productId AND s.warehouse.id = :warehouseId")
+    Optional<Stock> findForUpdate(@Param("productId") Long productId, @Param("warehouseId") Long warehouseId);
+
+    /**
+     * Stock entries of the products in a warehouse, locked in product id order so that concurrent
+     * transfer orders acquire the row locks in the same order
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Stock s WHERE s.warehouse.id = :warehouseId AND s.product.id IN :productIds ORDER BY s.product.id")
+    List<Stock> findForUpdateByWarehouse(@Param("warehouseId") Long warehouseId,
+                                         @Param("productIds") Collection<Long> productIds);
+
+    /**
+     * Stock entries of a warehouse as DTOs (constructor expression, no entities are loaded), ordered by product name
+     */
+    @Query("SELECT new ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO(s.id, p.id, p.name, s.quantity) " +
+            "FROM Stock s JOIN s.product p " +
+            "WHERE s.warehouse.id = :warehouseId " +
+            "ORDER BY p.name, s.id")
+    List<WarehouseStockDTO> findWarehouseStocks(@Param("warehouseId") Long warehouseId);
+
+    @Query(value = "SELECT new ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO(s.id, p.id, p.name, s.quantity) " +
+            "FROM Stock s JOIN s.product p " +
+            "WHERE s.warehouse.id = :warehouseId " +
+            "ORDER BY p.name, s.id",
+            countQuery = "SELECT COUNT(s) FROM Stock s WHERE s.warehouse.id = :warehouseId")
+    Page<WarehouseStockDTO> findWarehouseStocks(@Param("warehouseId") Long warehouseId, Pageable pageable);
+
+    /**
+     * Streams (id, productId, warehouseId, quantity, reserved) of all stock entries; must be consumed inside a
+     * transaction so the driver can fetch in batches
+     */
+    @Query("SELECT s.id, s.product.id, s.warehouse.id, s.quantity, s.reserved FROM Stock s")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamAvailability();
+
+    /**
+     * Streams (id, productId, productName, warehouseId, warehouseName, quantity, reserved) of all stock entries,
+     * ordered by id; must be consumed inside a transaction
+     */
+    @Query("""
+            SELECT s.id, p.id, p.name, w.id, w.name, s.quantity, s.reserved
+            FROM Stock s
+            JOIN s.product p
+            JOIN s.warehouse w
+            ORDER BY s.id
+            """)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamAllWithNames();
+
+    /**
+     * (id, productId, warehouseId, quantity, reserved) of the stock entries of the given (product, warehouse) pairs;
+     * the ids are passed as array literals, e.g. "{1,2}", matched pairwise
+     */
+    @Query(value = """
+            SELECT s.id, s.product_id, s.warehouse_id, s.quantity, s.reserved
+            FROM stocks s
+            JOIN unnest(CAST(:productIds AS bigint[]), CAST(:warehouseIds AS bigint[])) AS k (product_id, warehouse_id)
+              ON k.product_id = s.product_id AND k.warehouse_id = s.warehouse_id
+            """, nativeQuery = true)
+    List<Object[]> findAvailability(@Param("productIds") String productIds, @Param("warehouseIds") String warehouseIds);
 
+    /**
+     * (id, productId, warehouseId, quantity, reserved) of the stock entries in the given buckets of
+     * {@link #findAvailabilityChecksums(int, long)}; the buckets are passed as an array literal, e.g. "{3,17}"
+     */
+    @Query(value = """
+            SELECT s.id, s.product_id, s.warehouse_id, s.quantity, s.reserved
+            FROM stocks s
+            WHERE MOD(s.product_id + 31 * s.warehouse_id, :buckets) = ANY (CAST(:bucketList AS bigint[]))
+            """, nativeQuery = true)
+    List<Object[]> findAvailabilityInBuckets(@Param("buckets") int buckets, @Param("bucketList") String bucketList);
+
+    /**
+     * (bucket, entries, checksum) over the stock entries with product and warehouse ids below 2^32, bucketed by
+     * (productId + 31 * warehouseId) mod buckets; the checksum is the sum of the polynomial hash of
+     * (id, productId, warehouseId, quantity, reserved) with base 31, taken mod modulus. Buckets without entries
+     * are not returned.
+     */
+    @Query(value = """
+            SELECT MOD(s.product_id + 31 * s.warehouse_id, :buckets) AS bucket,
+                   count(*) AS entries,
+                   MOD(SUM((((CAST(s.id AS numeric) * 31 + s.product_id) * 31 + s.warehouse_id) * 31
+                            + s.quantity) * 31 + s.reserved), :modulus) AS checksum
+            FROM stocks s
+            WHERE s.product_id <= 4294967295 AND s.warehouse_id <= 4294967295
+            GROUP BY 1
+            """, nativeQuery = true)
+    List<Object[]> findAvailabilityChecksums(@Param("buckets") int buckets, @Param("modulus") long modulus);
+
+    /**
+     * (productId, warehouseId, warehouseName, latitude, longitude, available) of the stock entries of the products
+     * that have unreserved units
+     */
+    @Query(value = """
+            SELECT s.product_id, s.warehouse_id, w.name, w.latitude, w.longitude, s.quantity - s.reserved
+            FROM stocks s
+            JOIN warehouses w ON w.id = s.warehouse_id
+            WHERE s.product_id IN (:productIds) AND s.quantity > s.reserved
+            """, nativeQuery = true)
+    List<Object[]> findAvailableByProductIds(@Param("productIds") Collection<Long> productIds);
+
+    /**
+     * The warehouses with coordinates that have at least quantity unreserved units of the product, with the
+     * distance from the point in km (haversine, as GeoHash#distanceKm), nearest first. Only warehouses up to
+     * maxDistanceKm away (all if null) are considered, and of those only the ones at most marginKm farther away
+     * than the limit-th nearest are returned. cells, an array literal of geohash prefixes such as "{u0m,u0q}" or
+     * null, restricts the warehouses to these cells through the geohash index.
+     */
+    @Query(value = """
+            WITH candidates AS (
+                SELECT w.id AS warehouseId, w.name AS warehouseName, w.location AS location,
+                       w.latitude AS latitude, w.longitude AS longitude,
+                       s.quantity - s.reserved AS availableQuantity,
+                       2 * 6371.0088 * asin(sqrt(least(1,
+                           power(sin(radians(w.latitude - :latitude) / 2), 2)
+                           + cos(radians(:latitude)) * cos(radians(w.latitude))
+                             * power(sin(radians(w.longitude - :longitude) / 2), 2)))) AS distanceKm
+                FROM stocks s
+                JOIN warehouses w ON w.id = s.warehouse_id
+                WHERE s.product_id = :productId
+                  AND s.quantity - s.reserved >= :quantity
+                  AND w.geohash IS NOT NULL
+                  AND (CAST(:cells AS text) IS NULL
+                       OR w.id IN (SELECT cw.id
+                                   FROM unnest(CAST(:cells AS text[])) AS c (prefix)
+                                   JOIN warehouses cw ON cw.geohash >= c.prefix COLLATE "C"
+                                                     AND cw.geohash < c.prefix || '~' COLLATE "C"))
+            ), in_range AS (
+                SELECT * FROM candidates
+                WHERE CAST(:maxDistanceKm AS float8) IS NULL OR distanceKm <= CAST(:maxDistanceKm AS float8)
+            )
+            SELECT r.* FROM in_range r
+            WHERE r.distanceKm <= COALESCE((SELECT distanceKm FROM in_range
+                                            ORDER BY distanceKm OFFSET :limit - 1 LIMIT 1), 'Infinity') + :marginKm
+            ORDER BY r.distanceKm, r.warehouseId
+            """, nativeQuery = true)
+    List<NearestRow> findNearestAvailable(@Param("productId") Long productId, @Param("quantity") int quantity,
+                                          @Param("latitude") double latitude, @Param("longitude") double longitude,
+                                          @Param("maxDistanceKm") Double maxDistanceKm, @Param("cells") String cells,
+                                          @Param("limit") int limit, @Param("marginKm") double marginKm);
+
+    /**
+     * Stock entries written by transactions with an id >= since, a pg_snapshot_xmin value (see V5__sync_change_tracking.sql)
+     */
+    @Query(value = """
+            SELECT s.id AS id, s.product_id AS productId, s.warehouse_id AS warehouseId, s.quantity AS quantity
+            FROM stocks s
+            WHERE s.change_xid >= CAST(:since AS xid8)
+            ORDER BY s.id
+            """, nativeQuery = true)
+    List<SyncRow> findChangedSince(@Param("since") String since);
+
+    /**
+     * Row of the nearest warehouse query
+     */
+    interface NearestRow {
+        Long getWarehouseId();
+        String getWarehouseName();
+        String getLocation();
+        Double getLatitude();
+        Double getLongitude();
+        Integer getAvailableQuantity();
+        Double getDistanceKm();
+    }
+
+    /**
+     * Row of the stock change feed
+     */
+    interface SyncRow {
+        Long getId();
+        Long getProductId();
+        Long getWarehouseId();
+        Integer getQuantity();
+    }
+}
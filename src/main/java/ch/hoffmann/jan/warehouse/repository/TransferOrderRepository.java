@@ -0,0 +1,9 @@
+package ch.hoffmann.jan.warehouse.repository;
+
+import ch.hoffmann.jan.warehouse.model.TransferOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TransferOrderRepository extends JpaRepository<TransferOrder, Long> {
+}
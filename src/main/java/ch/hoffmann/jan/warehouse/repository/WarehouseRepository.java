@@ -1,11 +1,52 @@
 package ch.hoffmann.jan.warehouse.repository;
 
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseSummaryDTO;
 import ch.hoffmann.jan.warehouse.model.Warehouse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface WarehouseRepository extends JpaRepository<Warehouse, Long> {
+    // Through the query cache (see ehcache.xml)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     boolean existsByName(String name);
-}
+    List<Warehouse> findByNameIn(Collection<String> names);
+
+    /**
+     * One aggregate query for the warehouse overview: number of stock entries (SKUs) and total units per warehouse
+     */
+    @Query("SELECT new ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseSummaryDTO(" +
+            "w.id, w.name, w.location, COUNT(s.id), COALESCE(SUM(s.quantity), 0L)) " +
+            "FROM Warehouse w LEFT JOIN Stock s ON s.warehouse = w " +
+            "GROUP BY w.id, w.name, w.location " +
+            "ORDER BY w.name")
+    List<WarehouseSummaryDTO> findAllSummaries();
 
+    /**
+     * Warehouses written by transactions with an id >= since, a pg_snapshot_xmin value (see V5__sync_change_tracking.sql)
+     */
+    @Query(value = """
+            SELECT w.id AS id, w.name AS name, w.location AS location
+            FROM warehouses w
+            WHERE w.change_xid >= CAST(:since AS xid8)
+            ORDER BY w.id
+            """, nativeQuery = true)
+    List<SyncRow> findChangedSince(@Param("since") String since);
+
+    /**
+     * Row of the warehouse change feed
+     */
+    interface SyncRow {
+        Long getId();
+        String getName();
+        String getLocation();
+    }
+}
@@ -0,0 +1,98 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.util.AfterCommit;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters per aggregate (products, categories, ...), used to build the ETags of the read endpoints.
+ * The services bump the counter of an aggregate after every committed write; an ETag is the random epoch of
+ * this instance followed by the counters the response depends on. The epoch makes the tags of a restarted
+ * instance differ from the ones handed out before the restart.
+ * The counters are local to this instance; writes made through another instance are bumped here when their
+ * invalidation message arrives (see {@link CacheInvalidationBus}).
+ */
+@Component
+public class AggregateVersions {
+
+    public enum Aggregate {
+        PRODUCTS, CATEGORIES, WAREHOUSES, STOCKS
+    }
+
+    private final String epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    private final Map<Aggregate, AtomicLong> versions = new EnumMap<>(Aggregate.class);
+    // Time of the last bump per aggregate (epoch millis)
+    private final Map<Aggregate, AtomicLong> changedAt = new EnumMap<>(Aggregate.class);
+
+    public AggregateVersions() {
+        for (Aggregate aggregate : Aggregate.values()) {
+            versions.put(aggregate, new AtomicLong());
+            changedAt.put(aggregate, new AtomicLong());
+        }
+    }
+
+    /**
+     * Bumps the versions once the current transaction has committed, or immediately without a transaction.
+     * Bumping only after the commit keeps a reader from tagging the old data with the new version.
+     */
+    public void bumpAfterCommit(Aggregate... aggregates) {
+        AfterCommit.run(() -> bump(aggregates));
+    }
+
+    /**
+     * Bumps the versions right away
+     */
+    public void bump(Aggregate... aggregates) {
+        long now = System.currentTimeMillis();
+        for (Aggregate aggregate : aggregates) {
+            versions.get(aggregate).incrementAndGet();
+            changedAt.get(aggregate).set(now);
+        }
+    }
+
+    /**
+     * Returns the current version of the aggregate
+     */
+    public long version(Aggregate aggregate) {
+        return versions.get(aggregate).get();
+    }
+
+    /**
+     * Returns when the newest of the given aggregates was last bumped (epoch millis), 0 if never
+     */
+    public long lastChange(Aggregate... aggregates) {
+        long lastChange = 0;
+        for (Aggregate aggregate : aggregates) {
+            lastChange = Math.max(lastChange, changedAt.get(aggregate).get());
+        }
+        return lastChange;
+    }
+
+    /**
+     * Returns the weak ETag for a response built from the given aggregates. Weak, because the gzip and the plain
+     * encoding of a response share the tag (Tomcat does not compress responses with a strong ETag); If-None-Match
+     * compares weakly anyway.
+     */
+    public String etag(Aggregate... aggregates) {
+        return etag(null, aggregates);
+    }
+
+    /**
+     * Returns the weak ETag for a response built from the given aggregates in a representation other than the
+     * default one, e.g. another format; null for the default representation
+     */
+    public String etag(String variant, Aggregate... aggregates) {
+        StringBuilder etag = new StringBuilder("W/\"").append(epoch);
+        for (Aggregate aggregate : aggregates) {
+            etag.append('-').append(versions.get(aggregate).get());
+        }
+        if (variant != null) {
+            etag.append('-').append(variant);
+        }
+        return etag.append('"').toString();
+    }
+}
@@ -0,0 +1,274 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.analytics.DaysOfCoverDTO;
+import ch.hoffmann.jan.warehouse.dto.analytics.StockVelocityDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Stock movement analytics from the daily rollup stock_movements_daily (see V10__stock_movements_daily.sql and
+ * V13__stock_movements_rollup_job.sql). A scheduled job rolls up the closed days; the days after the last rolled-up
+ * day are aggregated from the audit log at query time, so writing an audit entry touches no rollup row.
+ * A day is closed a settle delay after midnight, because an audit entry is timestamped before its transaction
+ * commits.
+ */
+@Service
+public class AnalyticsService {
+
+    public enum Granularity {
+        DAY,
+        WEEK
+    }
+
+    // Arbitrary application-wide key of the advisory lock ("rollup")
+    private static final long ROLLUP_LOCK_KEY = 0x726f6c6c7570L;
+
+    // Movements per product, warehouse and day between :from and :to (inclusive): the rollup up to
+    // :rolledUpThrough and the audit log after it. Both bounds of the audit part are plain timestamps, so it is a
+    // range scan of ix_audit_logs_timestamp.
+    private static final String MOVEMENTS = """
+            SELECT r.product_id, r.warehouse_id, r.day, r.added, r.removed, r.transferred_in, r.transferred_out
+            FROM stock_movements_daily r
+            WHERE r.day BETWEEN :from AND :to AND r.day <= :rolledUpThrough
+            UNION ALL
+            SELECT a.product_id, a.warehouse_id, a.day, a.added, a.removed, a.transferred_in, a.transferred_out
+            FROM audit_stock_movements a
+            WHERE a.timestamp >= :liveFrom AND a.timestamp < :liveUntil
+            """;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration settleDelay;
+    private final Logger logger = LoggerFactory.getLogger(AnalyticsService.class);
+
+    @Autowired
+    public AnalyticsService(EntityManager entityManager, PlatformTransactionManager transactionManager,
+                            @Value("${app.analytics.settle-delay:10m}") Duration settleDelay) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settleDelay = settleDelay;
+    }
+
+    /**
+     * Units moved per day or week (weeks start on Monday) and product and warehouse between from and to (inclusive)
+     */
+    @Transactional(readOnly = true)
+    public List<StockVelocityDTO> getVelocity(LocalDate from, LocalDate to, Granularity granularity,
+                                              Long productId, Long warehouseId) {
+        validateRange(from, to);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = withMovements(entityManager.createNativeQuery("""
+                        SELECT m.product_id, p.name, m.warehouse_id, w.name,
+                               CAST(date_trunc(CAST(:unit AS text), m.day) AS date) AS period_start,
+                               SUM(m.added), SUM(m.removed), SUM(m.transferred_in), SUM(m.transferred_out)
+                        FROM (""" + MOVEMENTS + """
+                             ) m
+                        JOIN products p ON p.id = m.product_id
+                        JOIN warehouses w ON w.id = m.warehouse_id
+                        WHERE (CAST(:productId AS bigint) IS NULL OR m.product_id = :productId)
+                          AND (CAST(:warehouseId AS bigint) IS NULL OR m.warehouse_id = :warehouseId)
+                        GROUP BY m.product_id, p.name, m.warehouse_id, w.name, period_start
+                        ORDER BY w.name, p.name, period_start
+                        """), from, to)
+                .setParameter("unit", granularity.name().toLowerCase())
+                .setParameter("productId", productId)
+                .setParameter("warehouseId", warehouseId)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new StockVelocityDTO(((Number) row[0]).longValue(), (String) row[1],
+                        ((Number) row[2]).longValue(), (String) row[3], toLocalDate(row[4]),
+                        ((Number) row[5]).longValue(), ((Number) row[6]).longValue(),
+                        ((Number) row[7]).longValue(), ((Number) row[8]).longValue()))
+                .toList();
+    }
+
+    /**
+     * Current quantity divided by the average daily outflow (removed and transferred out) over the last days,
+     * lowest cover first; stock without outflow comes last
+     */
+    @Transactional(readOnly = true)
+    public List<DaysOfCoverDTO> getDaysOfCover(int days, Long productId, Long warehouseId) {
+        if (days < 1 || days > 366) {
+            throw new WarehouseException.ValidationException("The window must be between 1 and 366 days");
+        }
+
+        LocalDate today = LocalDate.now();
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = withMovements(entityManager.createNativeQuery("""
+                        SELECT s.product_id, p.name, s.warehouse_id, w.name, s.quantity,
+                               COALESCE(SUM(m.removed + m.transferred_out), 0)
+                        FROM stocks s
+                        JOIN products p ON p.id = s.product_id
+                        JOIN warehouses w ON w.id = s.warehouse_id
+                        LEFT JOIN (""" + MOVEMENTS + """
+                                  ) m ON m.product_id = s.product_id AND m.warehouse_id = s.warehouse_id
+                        WHERE (CAST(:productId AS bigint) IS NULL OR s.product_id = :productId)
+                          AND (CAST(:warehouseId AS bigint) IS NULL OR s.warehouse_id = :warehouseId)
+                        GROUP BY s.product_id, p.name, s.warehouse_id, w.name, s.quantity
+                        """), today.minusDays(days - 1), today)
+                .setParameter("productId", productId)
+                .setParameter("warehouseId", warehouseId)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> {
+                    int quantity = ((Number) row[4]).intValue();
+                    double averageDailyOutflow = ((Number) row[5]).doubleValue() / days;
+                    Double daysOfCover = averageDailyOutflow > 0 ? quantity / averageDailyOutflow : null;
+                    return new DaysOfCoverDTO(((Number) row[0]).longValue(), (String) row[1],
+                            ((Number) row[2]).longValue(), (String) row[3], quantity, averageDailyOutflow, daysOfCover);
+                })
+                .sorted(Comparator.comparing(DaysOfCoverDTO::getDaysOfCover, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    /**
+     * Recomputes the rollup of the closed days between from and to (inclusive) from the audit log and returns the
+     * number of rollup rows written. Stock writes go on meanwhile: the closed days get no new audit entries, so one
+     * repeatable read snapshot has all of them.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        validateRange(from, to);
+        LocalDate lastClosedDay = lastClosedDay();
+        if (to.isAfter(lastClosedDay)) {
+            throw new WarehouseException.ValidationException(
+                    "Only days up to " + lastClosedDay + " are closed and can be rebuilt");
+        }
+
+        Integer rows = transactionTemplate.execute(status -> {
+            if (!lockRollup()) {
+                throw new WarehouseException.RollupInProgressException();
+            }
+            return rollUp(from, to, rolledUpThrough());
+        });
+        logger.info("Rebuilt the stock movement rollup from {} to {}: {} rows", from, to, rows);
+        return rows != null ? rows : 0;
+    }
+
+    /**
+     * Rolls up the days closed since the last run. Only one instance rolls up at a time.
+     */
+    @Scheduled(fixedDelayString = "${app.analytics.rollup-interval:PT1H}", initialDelayString = "${app.analytics.rollup-initial-delay:PT1M}")
+    public void rollUpClosedDays() {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!lockRollup()) {
+                return;
+            }
+            LocalDate rolledUpThrough = rolledUpThrough();
+            LocalDate from = rolledUpThrough.plusDays(1);
+            LocalDate to = lastClosedDay();
+            if (from.isAfter(to)) {
+                return;
+            }
+            int rows = rollUp(from, to, rolledUpThrough);
+            logger.info("Rolled up the stock movements from {} to {}: {} rows", from, to, rows);
+        });
+    }
+
+    /**
+     * Replaces the rollup rows of the days and advances rolled_up_through if the days continue it.
+     * Runs in a repeatable read transaction that holds the rollup lock.
+     */
+    private int rollUp(LocalDate from, LocalDate to, LocalDate rolledUpThrough) {
+        entityManager.createNativeQuery("DELETE FROM stock_movements_daily WHERE day BETWEEN :from AND :to")
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_movements_daily")
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .executeUpdate();
+        int rows = entityManager.createNativeQuery("""
+                        INSERT INTO stock_movements_daily
+                            (product_id, warehouse_id, day, added, removed, transferred_in, transferred_out)
+                        SELECT product_id, warehouse_id, day,
+                               SUM(added), SUM(removed), SUM(transferred_in), SUM(transferred_out)
+                        FROM audit_stock_movements
+                        WHERE timestamp >= :start AND timestamp < :end
+                        GROUP BY product_id, warehouse_id, day
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_movements_daily")
+                .setParameter("start", from.atStartOfDay())
+                .setParameter("end", to.plusDays(1).atStartOfDay())
+                .executeUpdate();
+        if (!from.isAfter(rolledUpThrough.plusDays(1)) && to.isAfter(rolledUpThrough)) {
+            entityManager.createNativeQuery("UPDATE stock_movements_rollup_state SET rolled_up_through = :to")
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_movements_rollup_state")
+                    .setParameter("to", to)
+                    .executeUpdate();
+        }
+        return rows;
+    }
+
+    /**
+     * Starts a repeatable read snapshot (set with SET TRANSACTION, as in SyncService) and takes the
+     * transaction-scoped rollup lock without waiting; false if another rollup holds it
+     */
+    private boolean lockRollup() {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            }
+        });
+        // Only granted once the previous holder committed, so its rollup is part of the snapshot
+        return (Boolean) entityManager.createNativeQuery("SELECT pg_try_advisory_xact_lock(:key)")
+                .setParameter("key", ROLLUP_LOCK_KEY)
+                .getSingleResult();
+    }
+
+    private LocalDate rolledUpThrough() {
+        return toLocalDate(entityManager.createNativeQuery("SELECT rolled_up_through FROM stock_movements_rollup_state")
+                .getSingleResult());
+    }
+
+    private LocalDate lastClosedDay() {
+        return LocalDateTime.now().minus(settleDelay).toLocalDate().minusDays(1);
+    }
+
+    /**
+     * Binds the parameters of {@link #MOVEMENTS}. The rollup and the audit log are split at the rolled-up day read
+     * here; a rollup committed in between only rebuilds days from the same audit entries.
+     */
+    private Query withMovements(Query query, LocalDate from, LocalDate to) {
+        LocalDate rolledUpThrough = rolledUpThrough();
+        LocalDate liveFrom = from.isAfter(rolledUpThrough) ? from : rolledUpThrough.plusDays(1);
+        return query
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setParameter("rolledUpThrough", rolledUpThrough)
+                .setParameter("liveFrom", liveFrom.atStartOfDay())
+                .setParameter("liveUntil", to.plusDays(1).atStartOfDay());
+    }
+
+    private void validateRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new WarehouseException.ValidationException("'from' must not be after 'to'");
+        }
+        if (from.plusYears(5).isBefore(to)) {
+            throw new WarehouseException.ValidationException("The range must not exceed 5 years");
+        }
+    }
+
+    private LocalDate toLocalDate(Object value) {
+        return value instanceof Date date ? date.toLocalDate() : (LocalDate) value;
+    }
+}
@@ -53,6 +53,14 @@ public class AuditService {
         auditRepository.save(audit);
     }
 
+    /**
+     * Saves a list of pre-constructed Audit objects in JDBC batches
+     */
+    @Transactional
+    public void saveAudits(List<Audit> audits) {
+        auditRepository.saveAll(audits);
+    }
+
     // Simplified method to get paginated audit logs
     @Transactional(readOnly = true)
     public Page<AuditResponseDTO> getAuditLogs(int page, int size) {
@@ -102,6 +110,11 @@ public class AuditService {
             dto.setTargetWarehouseName(audit.getTargetWarehouse().getName());
         }
 
+        // Transfer order header (for the lines of a multi-line transfer); the id is read without loading it
+        if (audit.getTransferOrder() != null) {
+            dto.setTransferOrderId(audit.getTransferOrder().getId());
+        }
+
         return dto;
     }
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityResponseDTO.AllocationType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allocates a basket to warehouses in memory, from the unreserved units of its products per warehouse.
+ * The whole basket comes from one warehouse if any has every line. Otherwise it comes from as few warehouses as
+ * found: the best pair when a pair suffices (all pairs are tried for up to MAX_PAIR_WAREHOUSES warehouses),
+ * else the warehouse covering most of the outstanding units, repeatedly. Warehouses with a lower cost
+ * (the distance to the delivery point) are preferred, then lower ids.
+ */
+final class BasketAllocator {
+
+    static final int MAX_PAIR_WAREHOUSES = 200;
+
+    record Allocation(long warehouseId, long productId, int quantity) {
+    }
+
+    record Result(AllocationType type, List<Allocation> allocations) {
+    }
+
+    private final long[] productIds;
+    private final int[] quantities;
+    private final long[] warehouseIds;
+    // Units of each line per warehouse: units[warehouse][line]
+    private final int[][] units;
+    private final double[] costs;
+
+    private BasketAllocator(Map<Long, Integer> demand, Map<Long, Map<Long, Integer>> available,
+                            Map<Long, Double> costs) {
+        this.productIds = demand.keySet().stream().mapToLong(Long::longValue).toArray();
+        this.quantities = demand.values().stream().mapToInt(Integer::intValue).toArray();
+        this.warehouseIds = available.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        this.units = new int[warehouseIds.length][productIds.length];
+        this.costs = new double[warehouseIds.length];
+        for (int warehouse = 0; warehouse < warehouseIds.length; warehouse++) {
+            Map<Long, Integer> stock = available.get(warehouseIds[warehouse]);
+            for (int line = 0; line < productIds.length; line++) {
+                units[warehouse][line] = stock.getOrDefault(productIds[line], 0);
+            }
+            this.costs[warehouse] = costs.getOrDefault(warehouseIds[warehouse], 0.0);
+        }
+    }
+
+    /**
+     * @param demand    Units per product, in line order
+     * @param available Unreserved units per warehouse and product
+     * @param costs     Cost per warehouse, lower is preferred; missing warehouses cost 0
+     */
+    static Result allocate(Map<Long, Integer> demand, Map<Long, Map<Long, Integer>> available,
+                           Map<Long, Double> costs) {
+        return new BasketAllocator(demand, available, costs).allocate();
+    }
+
+    private Result allocate() {
+        int single = bestSingle();
+        if (single >= 0) {
+            List<Allocation> allocations = new ArrayList<>();
+            take(single, quantities.clone(), allocations);
+            return new Result(AllocationType.SINGLE_WAREHOUSE, allocations);
+        }
+        if (warehouseIds.length <= MAX_PAIR_WAREHOUSES) {
+            int[] pair = bestPair();
+            if (pair != null) {
+                List<Allocation> allocations = new ArrayList<>();
+                int[] remaining = quantities.clone();
+                take(pair[0], remaining, allocations);
+                take(pair[1], remaining, allocations);
+                return new Result(AllocationType.SPLIT, allocations);
+            }
+        }
+        return greedy();
+    }
+
+    /**
+     * The cheapest warehouse that has every line, the one with the most units of the basket's products on a tie
+     */
+    private int bestSingle() {
+        int best = -1;
+        long bestUnits = 0;
+        for (int warehouse = 0; warehouse < warehouseIds.length; warehouse++) {
+            if (!covers(warehouse, -1)) {
+                continue;
+            }
+            long total = 0;
+            for (int line = 0; line < productIds.length; line++) {
+                total += units[warehouse][line];
+            }
+            if (best < 0 || costs[warehouse] < costs[best] || (costs[warehouse] == costs[best] && total > bestUnits)) {
+                best = warehouse;
+                bestUnits = total;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The pair with the lowest total cost that has every line between them, the cheaper warehouse first
+     */
+    private int[] bestPair() {
+        int[] best = null;
+        double bestCost = 0;
+        for (int first = 0; first < warehouseIds.length; first++) {
+            for (int second = first + 1; second < warehouseIds.length; second++) {
+                double cost = costs[first] + costs[second];
+                if ((best == null || cost < bestCost) && covers(first, second)) {
+                    best = costs[second] < costs[first] ? new int[]{second, first} : new int[]{first, second};
+                    bestCost = cost;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * True if the warehouse, together with the other one (-1 for none), has every line
+     */
+    private boolean covers(int warehouse, int other) {
+        for (int line = 0; line < productIds.length; line++) {
+            long total = (long) units[warehouse][line] + (other >= 0 ? units[other][line] : 0);
+            if (total < quantities[line]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Result greedy() {
+        List<Allocation> allocations = new ArrayList<>();
+        int[] remaining = quantities.clone();
+        boolean[] used = new boolean[warehouseIds.length];
+        while (true) {
+            int best = -1;
+            long bestCovered = 0;
+            for (int warehouse = 0; warehouse < warehouseIds.length; warehouse++) {
+                if (used[warehouse]) {
+                    continue;
+                }
+                long covered = 0;
+                for (int line = 0; line < productIds.length; line++) {
+                    covered += Math.min(remaining[line], units[warehouse][line]);
+                }
+                if (covered > bestCovered || (covered == bestCovered && covered > 0 && costs[warehouse] < costs[best])) {
+                    best = warehouse;
+                    bestCovered = covered;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            used[best] = true;
+            take(best, remaining, allocations);
+        }
+        for (int quantity : remaining) {
+            if (quantity > 0) {
+                return new Result(AllocationType.PARTIAL, allocations);
+            }
+        }
+        return new Result(AllocationType.SPLIT, allocations);
+    }
+
+    /**
+     * Allocates as much of the remaining quantities as the warehouse has
+     */
+    private void take(int warehouse, int[] remaining, List<Allocation> allocations) {
+        for (int line = 0; line < productIds.length; line++) {
+            int quantity = Math.min(remaining[line], units[warehouse][line]);
+            if (quantity > 0) {
+                allocations.add(new Allocation(warehouseIds[warehouse], productIds[line], quantity));
+                remaining[line] -= quantity;
+            }
+        }
+    }
+}
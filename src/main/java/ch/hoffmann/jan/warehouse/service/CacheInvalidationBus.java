@@ -0,0 +1,308 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.ReplicaRoutingDataSource;
+import ch.hoffmann.jan.warehouse.model.Category;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.User;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Cache invalidation between the instances of a deployment over PostgreSQL LISTEN/NOTIFY.
+ * The services publish the ids of the products, categories, warehouses and users they change, and the product and
+ * warehouse of every stock entry they change. The notification is sent in the writing transaction, so PostgreSQL
+ * delivers it only after the commit and drops it on a rollback.
+ * The other instances evict those entities from their second-level cache, drop the cached name lookups and bump
+ * their ETag versions; product changes are also applied to the suggest index, stock changes to the stock
+ * availability view and the nearest-warehouse cache.
+ * When the listener connection was lost, everything is evicted once it is back, as messages may have been missed.
+ */
+@Component
+public class CacheInvalidationBus implements DisposableBean {
+
+    public enum Kind {
+        PRODUCT(Product.class, AggregateVersions.Aggregate.PRODUCTS),
+        CATEGORY(Category.class, AggregateVersions.Aggregate.CATEGORIES),
+        WAREHOUSE(Warehouse.class, AggregateVersions.Aggregate.WAREHOUSES),
+        USER(User.class, null),
+        // Not an entity of the second-level cache; see publishStocks
+        STOCK(null, AggregateVersions.Aggregate.STOCKS);
+
+        private final Class<?> entityClass;
+        private final AggregateVersions.Aggregate aggregate;
+
+        Kind(Class<?> entityClass, AggregateVersions.Aggregate aggregate) {
+            this.entityClass = entityClass;
+            this.aggregate = aggregate;
+        }
+    }
+
+    private static final String CHANNEL = "cache_invalidation";
+    // NOTIFY payloads are limited to 8000 bytes; longer id lists are sent as "all entities of this kind"
+    private static final int MAX_PAYLOAD_LENGTH = 7900;
+    private static final String ALL = "*";
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30_000;
+
+    // Identifies the messages of this instance, which need no eviction
+    private final String instanceId = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    private final EntityManager entityManager;
+    private final Cache cache;
+    private final AggregateVersions aggregateVersions;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final StockAvailabilityView stockAvailabilityView;
+    private final StockRoutingService stockRoutingService;
+    private final DataSourceProperties dataSourceProperties;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private volatile boolean running;
+    private Thread listener;
+    private final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    @Autowired
+    public CacheInvalidationBus(EntityManager entityManager, EntityManagerFactory entityManagerFactory,
+                                AggregateVersions aggregateVersions, ProductSuggestIndex productSuggestIndex,
+                                StockAvailabilityView stockAvailabilityView, StockRoutingService stockRoutingService,
+                                DataSourceProperties dataSourceProperties,
+                                @Value("${app.cache.invalidation.enabled:true}") boolean enabled,
+                                @Value("${app.cache.invalidation.poll-interval:10s}") Duration pollInterval) {
+        this.entityManager = entityManager;
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        this.aggregateVersions = aggregateVersions;
+        this.productSuggestIndex = productSuggestIndex;
+        this.stockAvailabilityView = stockAvailabilityView;
+        this.stockRoutingService = stockRoutingService;
+        this.dataSourceProperties = dataSourceProperties;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Tells the other instances that the entity was changed or deleted; delivered when the current transaction commits
+     */
+    @Transactional
+    public void publish(Kind kind, Long id) {
+        publish(kind, List.of(id));
+    }
+
+    /**
+     * Tells the other instances that the entities were changed or deleted; delivered when the current transaction commits
+     */
+    @Transactional
+    public void publish(Kind kind, Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        String payload = instanceId + ":" + kind.name() + ":"
+                + ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        if (payload.length() > MAX_PAYLOAD_LENGTH) {
+            payload = instanceId + ":" + kind.name() + ":" + ALL;
+        }
+        sendNotification(payload);
+    }
+
+    /**
+     * Tells the other instances that the stock entry of the product in the warehouse was changed, created or deleted;
+     * delivered when the current transaction commits
+     */
+    @Transactional
+    public void publishStock(Long productId, Long warehouseId) {
+        publishStocks(List.of(productId), warehouseId);
+    }
+
+    /**
+     * Tells the other instances that the stock entries of the products in the warehouse were changed, created or
+     * deleted; delivered when the current transaction commits. Long lists are split into several notifications
+     * rather than sent as "all", as the receivers reload each entry.
+     */
+    @Transactional
+    public void publishStocks(Collection<Long> productIds, Long warehouseId) {
+        if (!enabled || productIds.isEmpty()) {
+            return;
+        }
+        String prefix = instanceId + ":" + Kind.STOCK.name() + ":";
+        StringBuilder payload = new StringBuilder(prefix);
+        for (Long productId : productIds) {
+            String entry = productId + "/" + warehouseId;
+            if (payload.length() > prefix.length()) {
+                if (payload.length() + 1 + entry.length() > MAX_PAYLOAD_LENGTH) {
+                    sendNotification(payload.toString());
+                    payload.setLength(prefix.length());
+                } else {
+                    payload.append(',');
+                }
+            }
+            payload.append(entry);
+        }
+        sendNotification(payload.toString());
+    }
+
+    private void sendNotification(String payload) {
+        // PostgreSQL sends identical notifications of one transaction only once
+        entityManager.createNativeQuery("SELECT 1 FROM pg_notify(:channel, :payload)")
+                .setParameter("channel", CHANNEL)
+                .setParameter("payload", payload)
+                .getSingleResult();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "cache-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen() {
+        long reconnectDelayMillis = 1000;
+        boolean missedMessages = false;
+        while (running) {
+            // A connection of its own: LISTEN holds it for the lifetime of the application
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.getUrl(),
+                    dataSourceProperties.getUsername(), dataSourceProperties.getPassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                if (missedMessages) {
+                    evictAll();
+                    missedMessages = false;
+                    logger.info("Cache invalidation listener reconnected, evicted all cached entities");
+                }
+                reconnectDelayMillis = 1000;
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollInterval.toMillis());
+                    if (notifications == null || notifications.length == 0) {
+                        // Detects a dead connection, which waiting for notifications does not
+                        statement.execute("SELECT 1");
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                if (!missedMessages) {
+                    logger.warn("Cache invalidation listener failed, reconnecting: {}", e.getMessage());
+                }
+                missedMessages = true;
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    void handle(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || parts[0].equals(instanceId)) {
+            return;
+        }
+        Kind kind;
+        try {
+            kind = Kind.valueOf(parts[1]);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring cache invalidation of unknown kind: {}", payload);
+            return;
+        }
+        // The change is committed on the primary; reload from there rather than from a lagging replica
+        ReplicaRoutingDataSource.requireChangesSince(System.currentTimeMillis());
+
+        if (kind == Kind.STOCK) {
+            handleStocks(parts[2]);
+            return;
+        }
+        if (ALL.equals(parts[2])) {
+            cache.evictEntityData(kind.entityClass);
+            if (kind == Kind.PRODUCT) {
+                productSuggestIndex.rebuild();
+            }
+        } else {
+            List<Long> ids = Arrays.stream(parts[2].split(",")).map(Long::valueOf).toList();
+            ids.forEach(id -> cache.evictEntityData(kind.entityClass, id));
+            if (kind == Kind.PRODUCT) {
+                productSuggestIndex.refresh(ids);
+            }
+        }
+        cache.evictDefaultQueryRegion();
+        if (kind.aggregate != null) {
+            aggregateVersions.bump(kind.aggregate);
+        }
+    }
+
+    /**
+     * Drops the cached stock data of the changed entries, then bumps the version: a request that gets the new
+     * ETag cannot be answered from the stale entries
+     */
+    private void handleStocks(String entries) {
+        List<Long> productIds = new ArrayList<>();
+        for (String entry : entries.split(",")) {
+            int separator = entry.indexOf('/');
+            long productId = Long.parseLong(entry.substring(0, separator));
+            long warehouseId = Long.parseLong(entry.substring(separator + 1));
+            stockAvailabilityView.invalidateAfterCommit(productId, warehouseId);
+            productIds.add(productId);
+        }
+        stockRoutingService.invalidateAfterCommit(productIds);
+        aggregateVersions.bump(AggregateVersions.Aggregate.STOCKS);
+    }
+
+    private void evictAll() {
+        ReplicaRoutingDataSource.requireChangesSince(System.currentTimeMillis());
+        stockRoutingService.invalidateAll();
+        stockAvailabilityView.reconcile();
+        for (Kind kind : Kind.values()) {
+            if (kind.entityClass != null) {
+                cache.evictEntityData(kind.entityClass);
+            }
+            if (kind.aggregate != null) {
+                aggregateVersions.bump(kind.aggregate);
+            }
+        }
+        cache.evictDefaultQueryRegion();
+        productSuggestIndex.rebuild();
+    }
+}
@@ -0,0 +1,461 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.catalog.CatalogImportEventDTO;
+import ch.hoffmann.jan.warehouse.dto.catalog.CatalogImportRowDTO;
+import ch.hoffmann.jan.warehouse.dto.event.ProductChangedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.model.Audit;
+import ch.hoffmann.jan.warehouse.model.Category;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.User;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import ch.hoffmann.jan.warehouse.repository.CategoryRepository;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.UserRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import ch.hoffmann.jan.warehouse.util.CsvReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Imports products and their initial stock from a CSV or NDJSON stream.
+ * The input is read incrementally and processed in chunks: each chunk is validated, resolves its categories,
+ * warehouses and duplicate names with one query each, and is inserted in its own transaction using JDBC batches.
+ * Row errors and progress are reported to a listener while the import is running.
+ */
+@Service
+public class CatalogImportService {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final List<String> REQUIRED_CSV_COLUMNS = List.of("name", "price", "category");
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final StockRepository stockRepository;
+    private final UserRepository userRepository;
+    private final AuditService auditService;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final StockAvailabilityView stockAvailabilityView;
+    private final StockRoutingService stockRoutingService;
+    private final AggregateVersions aggregateVersions;
+    private final OutboxService outboxService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final ObjectReader rowReader;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final Logger logger = LoggerFactory.getLogger(CatalogImportService.class);
+
+    @Autowired
+    public CatalogImportService(ProductRepository productRepository, CategoryRepository categoryRepository,
+                                WarehouseRepository warehouseRepository, StockRepository stockRepository,
+                                UserRepository userRepository, AuditService auditService,
+                                ProductSuggestIndex productSuggestIndex, StockAvailabilityView stockAvailabilityView,
+                                StockRoutingService stockRoutingService, AggregateVersions aggregateVersions,
+                                OutboxService outboxService, CacheInvalidationBus cacheInvalidationBus, Validator validator,
+                                EntityManager entityManager, ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+                                @Value("${app.import.chunk-size:500}") int chunkSize) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.stockRepository = stockRepository;
+        this.userRepository = userRepository;
+        this.auditService = auditService;
+        this.productSuggestIndex = productSuggestIndex;
+        this.stockAvailabilityView = stockAvailabilityView;
+        this.stockRoutingService = stockRoutingService;
+        this.aggregateVersions = aggregateVersions;
+        this.outboxService = outboxService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.validator = validator;
+        this.entityManager = entityManager;
+        this.rowReader = objectMapper.readerFor(CatalogImportRowDTO.class)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports the catalog rows of the given stream. Chunks that were inserted stay committed when a later
+     * chunk fails or the input turns out to be malformed.
+     * @param listener Receives the row errors and a progress event after every chunk
+     * @return The summary, which is also the last event passed to the listener
+     */
+    public CatalogImportEventDTO importCatalog(InputStream input, Format format, Long userId,
+                                              Consumer<CatalogImportEventDTO> listener) {
+        ImportProgress progress = new ImportProgress();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        List<ParsedRow> chunk = new ArrayList<>(chunkSize);
+        String abortReason = null;
+        try (RowSource rows = format == Format.CSV ? new CsvRowSource(reader) : new NdjsonRowSource(reader)) {
+            ParsedRow row;
+            while ((row = rows.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    processChunk(chunk, userId, progress, listener);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            // Malformed input (e.g. an unterminated quote or a missing header): stop reading, keep what was parsed
+            abortReason = e.getMessage();
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, userId, progress, listener);
+        }
+        if (abortReason != null) {
+            logger.warn("Catalog import aborted: {}", abortReason);
+            listener.accept(CatalogImportEventDTO.error(null, "Import aborted: " + abortReason));
+        }
+
+        CatalogImportEventDTO summary = progress.toEvent(CatalogImportEventDTO.SUMMARY);
+        listener.accept(summary);
+        logger.info("Catalog import finished: {} rows read, {} products and {} stocks imported, {} rows failed",
+                progress.rowsRead, progress.productsImported, progress.stocksImported, progress.rowsFailed);
+        return summary;
+    }
+
+    /**
+     * Validates a chunk, inserts its valid rows in one transaction and reports the outcome
+     */
+    private void processChunk(List<ParsedRow> chunk, Long userId, ImportProgress progress,
+                              Consumer<CatalogImportEventDTO> listener) {
+        List<CatalogImportEventDTO> errors = new ArrayList<>();
+        List<ParsedRow> validRows = new ArrayList<>();
+
+        for (ParsedRow row : chunk) {
+            String error = row.error() != null ? row.error() : validate(row.row());
+            if (error != null) {
+                errors.add(CatalogImportEventDTO.error(row.line(), error));
+            } else {
+                validRows.add(row);
+            }
+        }
+
+        ChunkResult result;
+        try {
+            result = transactionTemplate.execute(status -> insertChunk(validRows, userId));
+        } catch (DataAccessException | PersistenceException e) {
+            // The whole chunk was rolled back (e.g. a product with the same name was created concurrently).
+            // The explicit flush in insertChunk goes through the EntityManager, whose exceptions Spring does not translate
+            logger.warn("Catalog import chunk rolled back: {}", e.getMessage());
+            String cause = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            result = new ChunkResult(0, 0, validRows.stream()
+                    .map(row -> CatalogImportEventDTO.error(row.line(), "Chunk rolled back: " + cause))
+                    .collect(Collectors.toList()));
+        }
+        errors.addAll(result.errors());
+        errors.sort(Comparator.comparing(CatalogImportEventDTO::getLine));
+
+        progress.rowsRead += chunk.size();
+        progress.productsImported += result.products();
+        progress.stocksImported += result.stocks();
+        progress.rowsFailed += errors.size();
+
+        errors.forEach(listener);
+        listener.accept(progress.toEvent(CatalogImportEventDTO.PROGRESS));
+    }
+
+    /**
+     * Resolves the references of the chunk with one query per kind and inserts products, stocks and audits in batches
+     */
+    private ChunkResult insertChunk(List<ParsedRow> rows, Long userId) {
+        List<CatalogImportEventDTO> errors = new ArrayList<>();
+        if (rows.isEmpty()) {
+            return new ChunkResult(0, 0, errors);
+        }
+
+        Set<String> names = new HashSet<>();
+        Set<String> categoryNames = new HashSet<>();
+        Set<String> warehouseNames = new HashSet<>();
+        for (ParsedRow row : rows) {
+            names.add(row.row().getName());
+            categoryNames.add(row.row().getCategory());
+            if (row.row().getWarehouse() != null) {
+                warehouseNames.add(row.row().getWarehouse());
+            }
+        }
+
+        Set<String> existingNames = productRepository.findExistingNames(names);
+        Map<String, Category> categories = categoryRepository.findByNameIn(categoryNames).stream()
+                .collect(Collectors.toMap(Category::getName, Function.identity()));
+        Map<String, Warehouse> warehouses = warehouseNames.isEmpty() ? Map.of()
+                : warehouseRepository.findByNameIn(warehouseNames).stream()
+                .collect(Collectors.toMap(Warehouse::getName, Function.identity()));
+
+        User user = userRepository.getReferenceById(userId);
+        LocalDateTime timestamp = LocalDateTime.now();
+        Set<String> namesInChunk = new HashSet<>();
+        List<Product> products = new ArrayList<>();
+        List<Stock> stocks = new ArrayList<>();
+        List<Audit> audits = new ArrayList<>();
+
+        for (ParsedRow parsedRow : rows) {
+            CatalogImportRowDTO row = parsedRow.row();
+            Category category = categories.get(row.getCategory());
+            Warehouse warehouse = row.getWarehouse() != null ? warehouses.get(row.getWarehouse()) : null;
+
+            String error = null;
+            if (existingNames.contains(row.getName())) {
+                error = "Product with name '" + row.getName() + "' already exists";
+            } else if (!namesInChunk.add(row.getName())) {
+                error = "Product name '" + row.getName() + "' appears more than once in the import";
+            } else if (category == null) {
+                error = "Category not found with name : " + row.getCategory();
+            } else if (row.getWarehouse() != null && warehouse == null) {
+                error = "Warehouse not found with name : " + row.getWarehouse();
+            }
+            if (error != null) {
+                errors.add(CatalogImportEventDTO.error(parsedRow.line(), error));
+                continue;
+            }
+
+            Product product = new Product();
+            product.setName(row.getName());
+            product.setDescription(row.getDescription());
+            product.setPrice(row.getPrice());
+            product.setCategory(category);
+            products.add(product);
+
+            if (warehouse != null) {
+                Stock stock = new Stock();
+                stock.setProduct(product);
+                stock.setWarehouse(warehouse);
+                stock.setQuantity(row.getQuantity());
+                stocks.add(stock);
+
+                audits.add(new Audit(null, user, "ADD", product, warehouse, null, row.getQuantity(), timestamp));
+            }
+        }
+
+        productRepository.saveAll(products);
+        stockRepository.saveAll(stocks);
+        auditService.saveAudits(audits);
+        for (Stock stock : stocks) {
+            stockAvailabilityView.invalidateAfterCommit(stock.getProduct().getId(), stock.getWarehouse().getId());
+        }
+        stockRoutingService.invalidateAfterCommit(stocks.stream().map(stock -> stock.getProduct().getId()).toList());
+        for (Product product : products) {
+            outboxService.record(new ProductChangedEventDTO(product.getId(), "CREATED", product.getName(),
+                    product.getPrice(), product.getCategory().getId()));
+        }
+        for (Stock stock : stocks) {
+            outboxService.record(new StockAdjustedEventDTO(stock.getProduct().getId(), stock.getWarehouse().getId(),
+                    "ADD", stock.getQuantity(), stock.getQuantity(), userId));
+        }
+        productSuggestIndex.upsertAllAfterCommit(products.stream()
+                .collect(Collectors.toMap(Product::getId, Product::getName)));
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.PRODUCTS, AggregateVersions.Aggregate.STOCKS);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.PRODUCT, products.stream().map(Product::getId).toList());
+        stocks.stream()
+                .collect(Collectors.groupingBy(stock -> stock.getWarehouse().getId(),
+                        Collectors.mapping(stock -> stock.getProduct().getId(), Collectors.toList())))
+                .forEach((warehouseId, productIds) -> cacheInvalidationBus.publishStocks(productIds, warehouseId));
+
+        // Detach the chunk: with open-in-view the persistence context outlives the transaction,
+        // and dirty checking of earlier chunks would slow down every following flush
+        entityManager.flush();
+        entityManager.clear();
+
+        return new ChunkResult(products.size(), stocks.size(), errors);
+    }
+
+    /**
+     * Normalizes the row and checks the field constraints
+     * @return The error message, or null if the row is valid
+     */
+    private String validate(CatalogImportRowDTO row) {
+        row.setName(trimToNull(row.getName()));
+        row.setDescription(trimToNull(row.getDescription()));
+        row.setCategory(trimToNull(row.getCategory()));
+        row.setWarehouse(trimToNull(row.getWarehouse()));
+
+        Set<ConstraintViolation<CatalogImportRowDTO>> violations = validator.validate(row);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        if (row.getWarehouse() != null && row.getQuantity() == null) {
+            return "Quantity is required when a warehouse is given";
+        }
+        if (row.getWarehouse() == null && row.getQuantity() != null) {
+            return "Warehouse is required when a quantity is given";
+        }
+        return null;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private record ParsedRow(long line, CatalogImportRowDTO row, String error) {
+    }
+
+    private record ChunkResult(int products, int stocks, List<CatalogImportEventDTO> errors) {
+    }
+
+    private static class ImportProgress {
+        private long rowsRead;
+        private long productsImported;
+        private long stocksImported;
+        private long rowsFailed;
+
+        private CatalogImportEventDTO toEvent(String type) {
+            return CatalogImportEventDTO.counters(type, rowsRead, productsImported, stocksImported, rowsFailed);
+        }
+    }
+
+    /**
+     * Reads one row at a time from the input
+     */
+    private interface RowSource extends Closeable {
+        /**
+         * @return The next row, or null at the end of the input
+         */
+        ParsedRow next() throws IOException;
+    }
+
+    /**
+     * CSV with a header line; columns: name, description, price, category, warehouse, quantity (any order)
+     */
+    private static class CsvRowSource implements RowSource {
+
+        private final CsvReader csvReader;
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        private CsvRowSource(BufferedReader reader) throws IOException {
+            this.csvReader = new CsvReader(reader);
+            List<String> header = csvReader.readRecord();
+            if (header == null) {
+                throw new IOException("The CSV input is empty");
+            }
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String column : REQUIRED_CSV_COLUMNS) {
+                if (!columns.containsKey(column)) {
+                    throw new IOException("The CSV header is missing the column '" + column + "'");
+                }
+            }
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            List<String> record = csvReader.readRecord();
+            if (record == null) {
+                return null;
+            }
+            long line = csvReader.getRecordLine();
+
+            CatalogImportRowDTO row = new CatalogImportRowDTO();
+            row.setName(field(record, "name"));
+            row.setDescription(field(record, "description"));
+            row.setCategory(field(record, "category"));
+            row.setWarehouse(field(record, "warehouse"));
+            try {
+                String price = trimToNull(field(record, "price"));
+                row.setPrice(price != null ? new BigDecimal(price) : null);
+                String quantity = trimToNull(field(record, "quantity"));
+                row.setQuantity(quantity != null ? Integer.valueOf(quantity) : null);
+            } catch (NumberFormatException e) {
+                return new ParsedRow(line, null, "Invalid number: " + e.getMessage());
+            }
+            return new ParsedRow(line, row, null);
+        }
+
+        private String field(List<String> record, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < record.size() ? record.get(index) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            csvReader.close();
+        }
+    }
+
+    /**
+     * One JSON object per line; blank lines are skipped
+     */
+    private class NdjsonRowSource implements RowSource {
+
+        private final BufferedReader reader;
+        private long line;
+
+        private NdjsonRowSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+            } while (text != null && text.isBlank());
+
+            if (text == null) {
+                return null;
+            }
+            try {
+                return new ParsedRow(line, rowReader.readValue(text), null);
+            } catch (JsonProcessingException e) {
+                return new ParsedRow(line, null, "Invalid JSON: " + e.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import ch.hoffmann.jan.warehouse.dto.category.CategoryResponseDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
 import ch.hoffmann.jan.warehouse.model.Category;
 import ch.hoffmann.jan.warehouse.repository.CategoryRepository;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,10 +18,17 @@ import java.util.stream.Collectors;
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+    private final AggregateVersions aggregateVersions;
+    private final CacheInvalidationBus cacheInvalidationBus;
 
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, ProductRepository productRepository,
+                           AggregateVersions aggregateVersions, CacheInvalidationBus cacheInvalidationBus) {
         this.categoryRepository = categoryRepository;
+        this.productRepository = productRepository;
+        this.aggregateVersions = aggregateVersions;
+        this.cacheInvalidationBus = cacheInvalidationBus;
     }
 
     @Transactional(readOnly = true)
@@ -49,6 +57,8 @@ public class CategoryService {
         category.setName(createRequest.getName());
 
         Category savedCategory = categoryRepository.save(category);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.CATEGORIES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.CATEGORY, savedCategory.getId());
         return convertToResponseDTO(savedCategory);
     }
 
@@ -68,6 +78,8 @@ public class CategoryService {
         }
 
         Category updatedCategory = categoryRepository.save(category);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.CATEGORIES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.CATEGORY, updatedCategory.getId());
         return convertToResponseDTO(updatedCategory);
     }
 
@@ -77,13 +89,16 @@ public class CategoryService {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Category", "id", id));
 
-        // Check if the category has associated products
-        if (category.getProducts() != null && !category.getProducts().isEmpty()) {
-            throw new WarehouseException.CategoryInUseException(category.getName(), category.getProducts().size());
+        // Check if the category has associated products (counted only for the error message)
+        if (productRepository.existsByCategory(category)) {
+            throw new WarehouseException.CategoryInUseException(category.getName(),
+                    Math.toIntExact(productRepository.countByCategory(category)));
         }
 
         // Delete the category
         categoryRepository.delete(category);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.CATEGORIES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.CATEGORY, category.getId());
     }
 
     /**
@@ -0,0 +1,18 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Destination of the outbox events (message broker, file, ...). Selected with app.outbox.sink; a custom
+ * sink is a bean implementing this interface, with app.outbox.sink set to a value not used by the built-in ones.
+ */
+public interface EventSink {
+
+    /**
+     * Publishes the events in the given order. Throwing fails the batch; the dispatcher then retries the events
+     * one by one, so a sink may receive an event again (delivery is at least once, the event id identifies it).
+     */
+    void publish(List<OutboxEvent> events) throws Exception;
+}
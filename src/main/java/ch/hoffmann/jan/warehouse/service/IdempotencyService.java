@@ -0,0 +1,175 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Makes mutations safe to retry with an Idempotency-Key header (see V7__idempotency_keys.sql).
+ * The key is claimed with an insert in the same transaction as the mutation and the response is stored with it.
+ * A concurrent retry blocks on the claim until the first attempt has finished; it then replays the stored
+ * response, or runs the mutation itself if the first attempt rolled back. Failed requests are not stored.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    @Autowired
+    public IdempotencyService(EntityManager entityManager, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Runs the action once per key and user; a repeated request with the same key returns the stored response
+     * with the Idempotent-Replayed header. Without a key the action simply runs.
+     * @param operation Identifies the endpoint, part of the request fingerprint
+     * @param request The request body, part of the request fingerprint
+     */
+    public <T> ResponseEntity<T> execute(String key, Long userId, String operation, Object request,
+                                         Class<T> responseType, Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new WarehouseException.ValidationException(
+                    HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        byte[] requestHash = fingerprint(operation, request);
+
+        return transactionTemplate.execute(status -> {
+            if (!claim(key, userId, requestHash)) {
+                return replay(key, userId, requestHash, responseType);
+            }
+            ResponseEntity<T> response = action.get();
+            entityManager.createNativeQuery("""
+                            UPDATE idempotency_keys SET response_status = :status, response_body = CAST(:body AS text)
+                            WHERE user_id = :userId AND idempotency_key = :key
+                            """)
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "idempotency_keys")
+                    .setParameter("status", response.getStatusCode().value())
+                    .setParameter("body", response.getBody() != null ? toJson(response.getBody()) : null)
+                    .setParameter("userId", userId)
+                    .setParameter("key", key)
+                    .executeUpdate();
+            return response;
+        });
+    }
+
+    /**
+     * Deletes the expired keys
+     */
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-interval:PT15M}", initialDelayString = "${app.idempotency.purge-interval:PT15M}")
+    public void purgeExpired() {
+        Integer deleted = transactionTemplate.execute(status -> entityManager
+                .createNativeQuery("DELETE FROM idempotency_keys WHERE expires_at < :now")
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "idempotency_keys")
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate());
+        if (deleted != null && deleted > 0) {
+            logger.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+
+    /**
+     * Inserts the key, or takes over an expired one; false if the key is in use
+     */
+    private boolean claim(String key, Long userId, byte[] requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = entityManager.createNativeQuery("""
+                        INSERT INTO idempotency_keys (user_id, idempotency_key, request_hash, expires_at)
+                        VALUES (:userId, :key, :hash, :expiresAt)
+                        ON CONFLICT (user_id, idempotency_key) DO UPDATE
+                            SET request_hash = EXCLUDED.request_hash, response_status = NULL,
+                                response_body = NULL, expires_at = EXCLUDED.expires_at
+                            WHERE idempotency_keys.expires_at <= :now
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "idempotency_keys")
+                .setParameter("userId", userId)
+                .setParameter("key", key)
+                .setParameter("hash", requestHash)
+                .setParameter("expiresAt", now.plus(ttl))
+                .setParameter("now", now)
+                .executeUpdate();
+        return claimed > 0;
+    }
+
+    private <T> ResponseEntity<T> replay(String key, Long userId, byte[] requestHash, Class<T> responseType) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery("""
+                        SELECT request_hash, response_status, response_body FROM idempotency_keys
+                        WHERE user_id = :userId AND idempotency_key = :key
+                        """)
+                .setParameter("userId", userId)
+                .setParameter("key", key)
+                .getResultList();
+        Object[] row = rows.get(0);
+        if (!Arrays.equals((byte[]) row[0], requestHash)) {
+            throw new WarehouseException.IdempotencyKeyReuseException(key);
+        }
+
+        logger.info("Replaying the stored response for idempotency key {} of user {}", key, userId);
+        try {
+            T body = row[2] != null ? objectMapper.readValue((String) row[2], responseType) : null;
+            return ResponseEntity.status(((Number) row[1]).intValue())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot read the stored response of idempotency key " + key, e);
+        }
+    }
+
+    private byte[] fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(toJson(request).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
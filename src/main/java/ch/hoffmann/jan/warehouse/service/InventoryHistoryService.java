@@ -0,0 +1,195 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.audit.HistoricalInventoryDTO;
+import ch.hoffmann.jan.warehouse.dto.audit.HistoricalStockDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Stock quantities at a point in time, replayed from the audit log (see V9__stock_snapshots.sql).
+ * A scheduled job writes checkpoints: the previous checkpoint plus the audit entries since then. A query for
+ * time T starts from the latest checkpoint before T, so it only replays the audit entries of that window.
+ * Checkpoints stay a settle delay behind the clock, because an audit entry is timestamped before its transaction
+ * commits and could otherwise show up after the checkpoint that should have contained it.
+ */
+@Service
+public class InventoryHistoryService {
+
+    // Arbitrary application-wide key of the advisory lock ("history")
+    private static final long CHECKPOINT_LOCK_KEY = 0x686973746f7279L;
+    // Replay start without a checkpoint; before every audit entry
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Quantity change per product and warehouse of the audit entries in (:from, :until]
+    private static final String AUDIT_DELTAS = """
+            SELECT a.product_id, a.warehouse_id,
+                   CASE WHEN a.action = 'ADD' THEN a.quantity ELSE -a.quantity END AS quantity
+            FROM audit_logs a
+            WHERE a.timestamp > :from AND a.timestamp <= :until AND a.action IN ('ADD', 'REMOVE', 'TRANSFER')
+            UNION ALL
+            SELECT a.product_id, a.target_warehouse_id, a.quantity
+            FROM audit_logs a
+            WHERE a.timestamp > :from AND a.timestamp <= :until AND a.action = 'TRANSFER'
+            """;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration settleDelay;
+    private final Logger logger = LoggerFactory.getLogger(InventoryHistoryService.class);
+
+    @Autowired
+    public InventoryHistoryService(EntityManager entityManager, PlatformTransactionManager transactionManager,
+                                   @Value("${app.history.settle-delay:10m}") Duration settleDelay) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settleDelay = settleDelay;
+    }
+
+    /**
+     * Quantities per product and warehouse after all stock changes up to the given time, optionally filtered.
+     * Products and warehouses deleted since are listed by id, without a name.
+     * Repeatable read so that the checkpoint and the replayed entries are read from one snapshot (set with
+     * SET TRANSACTION, as in SyncService).
+     */
+    @Transactional(readOnly = true)
+    public HistoricalInventoryDTO getInventoryAt(LocalDateTime at, Long productId, Long warehouseId) {
+        if (at.isAfter(LocalDateTime.now())) {
+            throw new WarehouseException.ValidationException("The point in time must not be in the future: " + at);
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            }
+        });
+        Checkpoint checkpoint = findCheckpoint(at);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery("""
+                        SELECT t.product_id, p.name, t.warehouse_id, w.name, CAST(SUM(t.quantity) AS integer)
+                        FROM (SELECT l.product_id, l.warehouse_id, l.quantity
+                              FROM stock_snapshot_lines l WHERE l.snapshot_id = :snapshotId
+                              UNION ALL
+                        """ + AUDIT_DELTAS + """
+                             ) t
+                        LEFT JOIN products p ON p.id = t.product_id
+                        LEFT JOIN warehouses w ON w.id = t.warehouse_id
+                        WHERE (CAST(:productId AS bigint) IS NULL OR t.product_id = :productId)
+                          AND (CAST(:warehouseId AS bigint) IS NULL OR t.warehouse_id = :warehouseId)
+                        GROUP BY t.product_id, p.name, t.warehouse_id, w.name
+                        HAVING SUM(t.quantity) <> 0
+                        ORDER BY w.name, t.warehouse_id, p.name, t.product_id
+                        """)
+                .setParameter("snapshotId", checkpoint != null ? checkpoint.id() : -1L)
+                .setParameter("from", checkpoint != null ? checkpoint.takenAt() : BEGINNING)
+                .setParameter("until", at)
+                .setParameter("productId", productId)
+                .setParameter("warehouseId", warehouseId)
+                .getResultList();
+
+        List<HistoricalStockDTO> stocks = rows.stream()
+                .map(row -> new HistoricalStockDTO(((Number) row[0]).longValue(), (String) row[1],
+                        ((Number) row[2]).longValue(), (String) row[3], ((Number) row[4]).intValue()))
+                .toList();
+        return new HistoricalInventoryDTO(at, checkpoint != null ? checkpoint.takenAt() : null, stocks);
+    }
+
+    /**
+     * Writes a checkpoint up to now minus the settle delay, if there were stock changes since the last one.
+     * Only one instance builds a checkpoint at a time.
+     */
+    @Scheduled(fixedDelayString = "${app.history.checkpoint-interval:1d}", initialDelayString = "${app.history.checkpoint-initial-delay:PT5M}")
+    public void createCheckpoint() {
+        transactionTemplate.executeWithoutResult(status -> {
+            boolean locked = (Boolean) entityManager.createNativeQuery("SELECT pg_try_advisory_xact_lock(:key)")
+                    .setParameter("key", CHECKPOINT_LOCK_KEY)
+                    .getSingleResult();
+            if (!locked) {
+                return;
+            }
+
+            LocalDateTime until = LocalDateTime.now().minus(settleDelay);
+            Checkpoint previous = findCheckpoint(until);
+            LocalDateTime from = previous != null ? previous.takenAt() : BEGINNING;
+            boolean changed = (Boolean) entityManager.createNativeQuery(
+                            "SELECT EXISTS (SELECT 1 FROM audit_logs WHERE timestamp > :from AND timestamp <= :until)")
+                    .setParameter("from", from)
+                    .setParameter("until", until)
+                    .getSingleResult();
+            if (!changed) {
+                return;
+            }
+
+            long id = ((Number) entityManager.createNativeQuery("SELECT nextval('stock_snapshots_seq')")
+                    .getSingleResult()).longValue();
+            entityManager.createNativeQuery("INSERT INTO stock_snapshots (id, taken_at, line_count) VALUES (:id, :takenAt, 0)")
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_snapshots")
+                    .setParameter("id", id)
+                    .setParameter("takenAt", until)
+                    .executeUpdate();
+            int lines = entityManager.createNativeQuery("""
+                            INSERT INTO stock_snapshot_lines (snapshot_id, product_id, warehouse_id, quantity)
+                            SELECT :id, t.product_id, t.warehouse_id, SUM(t.quantity)
+                            FROM (SELECT l.product_id, l.warehouse_id, l.quantity
+                                  FROM stock_snapshot_lines l WHERE l.snapshot_id = :previousId
+                                  UNION ALL
+                            """ + AUDIT_DELTAS + """
+                                 ) t
+                            GROUP BY t.product_id, t.warehouse_id
+                            HAVING SUM(t.quantity) <> 0
+                            """)
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_snapshot_lines")
+                    .setParameter("id", id)
+                    .setParameter("previousId", previous != null ? previous.id() : -1L)
+                    .setParameter("from", from)
+                    .setParameter("until", until)
+                    .executeUpdate();
+            entityManager.createNativeQuery("UPDATE stock_snapshots SET line_count = :lines WHERE id = :id")
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_snapshots")
+                    .setParameter("lines", lines)
+                    .setParameter("id", id)
+                    .executeUpdate();
+            logger.info("Wrote inventory checkpoint {} as of {} with {} stock lines", id, until, lines);
+        });
+    }
+
+    /**
+     * The latest checkpoint at or before the given time, or null
+     */
+    private Checkpoint findCheckpoint(LocalDateTime at) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery("""
+                        SELECT id, taken_at FROM stock_snapshots
+                        WHERE taken_at <= :at
+                        ORDER BY taken_at DESC
+                        LIMIT 1
+                        """)
+                .setParameter("at", at)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object takenAt = rows.get(0)[1];
+        return new Checkpoint(((Number) rows.get(0)[0]).longValue(),
+                takenAt instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) takenAt);
+    }
+
+    private record Checkpoint(long id, LocalDateTime takenAt) {
+    }
+}
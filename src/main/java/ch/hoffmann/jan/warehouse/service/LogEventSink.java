@@ -0,0 +1,27 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Writes the events to the application log (logger "ch.hoffmann.jan.warehouse.events"); the default sink
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.sink", havingValue = "log", matchIfMissing = true)
+public class LogEventSink implements EventSink {
+
+    private final Logger logger = LoggerFactory.getLogger("ch.hoffmann.jan.warehouse.events");
+
+    @Override
+    public void publish(List<OutboxEvent> events) {
+        for (OutboxEvent event : events) {
+            logger.info("{} #{} {}:{} {}", event.getEventType(), event.getId(),
+                    event.getAggregateType(), event.getAggregateId(), event.getPayload());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+import ch.hoffmann.jan.warehouse.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Publishes the outbox events to the {@link EventSink}.
+ * Each poll takes the oldest pending events in batches, under an advisory lock so that only one instance
+ * dispatches at a time. Failed events are retried with exponential backoff; until then the later events of
+ * the same aggregate are held back, which keeps the per-aggregate order. After the last attempt an event is
+ * marked dead and skipped. The publication is marked in the same transaction after the sink returned, so a
+ * crash in between delivers the batch again.
+ */
+@Component
+public class OutboxDispatcher {
+
+    // Arbitrary application-wide key of the advisory lock ("outbox")
+    private static final long DISPATCH_LOCK_KEY = 0x6f7574626f78L;
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EventSink eventSink;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration retention;
+    private final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    @Autowired
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository, EventSink eventSink,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.outbox.batch-size:100}") int batchSize,
+                            @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+                            @Value("${app.outbox.retry-backoff:5s}") Duration retryBackoff,
+                            @Value("${app.outbox.retention:7d}") Duration retention) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventSink = eventSink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.retention = retention;
+    }
+
+    /**
+     * Dispatches batches until the outbox is drained or nothing more can be published right now
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval:PT1S}")
+    public void dispatch() {
+        try {
+            Boolean more;
+            do {
+                more = transactionTemplate.execute(status -> dispatchBatch());
+            } while (Boolean.TRUE.equals(more));
+        } catch (RuntimeException e) {
+            logger.error("Outbox dispatch failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the events published longer ago than the retention period
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.cleanup-interval:PT1H}", initialDelayString = "${app.outbox.cleanup-interval:PT1H}")
+    public void deletePublished() {
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxEventRepository.deletePublishedBefore(LocalDateTime.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            logger.info("Deleted {} published outbox events", deleted);
+        }
+    }
+
+    /**
+     * Publishes one batch; returns whether another batch may be ready
+     */
+    private boolean dispatchBatch() {
+        if (!outboxEventRepository.tryAdvisoryXactLock(DISPATCH_LOCK_KEY)) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = outboxEventRepository.findDispatchable(now, batchSize);
+        if (events.isEmpty()) {
+            return false;
+        }
+
+        try {
+            eventSink.publish(events);
+            events.forEach(event -> event.setPublishedAt(now));
+            return events.size() == batchSize;
+        } catch (Exception batchFailure) {
+            logger.warn("Publishing {} outbox events failed, retrying one by one: {}", events.size(), batchFailure.getMessage());
+        }
+
+        // Find the failing events; the later events of their aggregates wait for the retry
+        Set<String> blocked = new HashSet<>();
+        List<OutboxEvent> failed = new ArrayList<>();
+        for (OutboxEvent event : events) {
+            String aggregate = event.getAggregateType() + ":" + event.getAggregateId();
+            if (blocked.contains(aggregate)) {
+                continue;
+            }
+            try {
+                eventSink.publish(List.of(event));
+                event.setPublishedAt(now);
+            } catch (Exception e) {
+                blocked.add(aggregate);
+                failed.add(event);
+                recordFailure(event, e, now);
+            }
+        }
+        // Stop after failures rather than spinning on the same events; the next poll continues
+        return failed.isEmpty() && events.size() == batchSize;
+    }
+
+    private void recordFailure(OutboxEvent event, Exception e, LocalDateTime now) {
+        int attempts = event.getAttempts() + 1;
+        event.setAttempts(attempts);
+        String error = String.valueOf(e.getMessage());
+        event.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        if (attempts >= maxAttempts) {
+            event.setDeadAt(now);
+            logger.error("Outbox event {} ({} {}:{}) failed {} times and is skipped from now on: {}",
+                    event.getId(), event.getEventType(), event.getAggregateType(), event.getAggregateId(), attempts, error);
+        } else {
+            // 1x, 2x, 4x, ... the backoff, at most one hour
+            Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+            event.setNextAttemptAt(now.plus(delay.compareTo(Duration.ofHours(1)) > 0 ? Duration.ofHours(1) : delay));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.event.DomainEventDTO;
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+import ch.hoffmann.jan.warehouse.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes domain events to the outbox. The event is part of the caller's transaction, so it is stored
+ * exactly when the change it describes is committed; the {@link OutboxDispatcher} publishes it afterwards.
+ */
+@Service
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OutboxService(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(DomainEventDTO event) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + event.getEventType() + " event", e);
+        }
+        outboxEventRepository.save(new OutboxEvent(event.getAggregateType(), event.getAggregateId(),
+                event.getEventType(), payload));
+    }
+}
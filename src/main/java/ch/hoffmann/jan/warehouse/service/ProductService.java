@@ -1,8 +1,11 @@
 package ch.hoffmann.jan.warehouse.service;
 
+import ch.hoffmann.jan.warehouse.dto.event.ProductChangedEventDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductPatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSearchResultDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSuggestionDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductStockDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
 import ch.hoffmann.jan.warehouse.model.Category;
@@ -12,25 +15,49 @@ import ch.hoffmann.jan.warehouse.repository.CategoryRepository;
 import ch.hoffmann.jan.warehouse.repository.ProductRepository;
 import ch.hoffmann.jan.warehouse.repository.StockRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ProductService {
 
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_TERMS = 10;
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final StockRepository stockRepository;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final AggregateVersions aggregateVersions;
+    private final OutboxService outboxService;
+    private final CacheInvalidationBus cacheInvalidationBus;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository, StockRepository stockRepository) {
+    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository, StockRepository stockRepository,
+                          ProductSuggestIndex productSuggestIndex, AggregateVersions aggregateVersions,
+                          OutboxService outboxService, CacheInvalidationBus cacheInvalidationBus) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.stockRepository = stockRepository;
+        this.productSuggestIndex = productSuggestIndex;
+        this.aggregateVersions = aggregateVersions;
+        this.outboxService = outboxService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
     }
 
     @Transactional(readOnly = true)
@@ -40,6 +67,45 @@ public class ProductService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Passes all products with their stock entries to the consumer, ordered by id. Reads them with one streamed
+     * query instead of one stock query per product, and holds only the current product in memory
+     */
+    @Transactional(readOnly = true)
+    public void streamAllProducts(Consumer<ProductResponseDTO> consumer) {
+        try (Stream<Object[]> rows = productRepository.streamAllWithStocks()) {
+            ProductResponseDTO current = null;
+            for (Iterator<Object[]> iterator = rows.iterator(); iterator.hasNext(); ) {
+                Object[] row = iterator.next();
+                if (current == null || !current.getId().equals(row[0])) {
+                    if (current != null) {
+                        consumer.accept(current);
+                    }
+                    current = new ProductResponseDTO();
+                    current.setId((Long) row[0]);
+                    current.setName((String) row[1]);
+                    current.setDescription((String) row[2]);
+                    current.setPrice((BigDecimal) row[3]);
+                    current.setCategoryId((Long) row[4]);
+                    current.setCategoryName((String) row[5]);
+                    current.setStocks(new ArrayList<>());
+                }
+                // Null for a product without stock entries (left join)
+                if (row[6] != null) {
+                    ProductStockDTO stock = new ProductStockDTO();
+                    stock.setId((Long) row[6]);
+                    stock.setWarehouseId((Long) row[7]);
+                    stock.setWarehouseName((String) row[8]);
+                    stock.setQuantity((Integer) row[9]);
+                    current.getStocks().add(stock);
+                }
+            }
+            if (current != null) {
+                consumer.accept(current);
+            }
+        }
+    }
+
     @Transactional(readOnly = true)
     public ProductResponseDTO getProductById(Long id) {
         return productRepository.findById(id)
@@ -57,6 +123,56 @@ public class ProductService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Searches products by name and description (full-text prefix match) and by name similarity,
+     * ordered by relevance. Optionally restricted to a category and to products in stock
+     * (in the given warehouse, or in any warehouse when inStockOnly is set).
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductSearchResultDTO> searchProducts(String query, Long categoryId, Long warehouseId,
+                                                       boolean inStockOnly, int page, int size) {
+        String term = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        List<String> tokens = Arrays.stream(term.split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .limit(MAX_SEARCH_TERMS)
+                .collect(Collectors.toList());
+        if (tokens.isEmpty()) {
+            throw new WarehouseException.ValidationException("Search query must contain at least one letter or digit");
+        }
+        if (page < 0 || size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new WarehouseException.ValidationException(
+                    "Page must be >= 0 and size between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        }
+
+        // Every token must match as a prefix, e.g. "usb-c kab" -> "usb:* & c:* & kab:*"
+        String tsQuery = tokens.stream().map(token -> token + ":*").collect(Collectors.joining(" & "));
+        String prefixPattern = term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+
+        List<ProductRepository.SearchRow> rows = productRepository.search(tsQuery, term, prefixPattern,
+                categoryId, warehouseId, inStockOnly, size, (long) page * size);
+
+        long total = rows.isEmpty() ? 0 : rows.get(0).getTotalCount();
+        List<ProductSearchResultDTO> results = rows.stream()
+                .map(row -> new ProductSearchResultDTO(row.getId(), row.getName(), row.getDescription(),
+                        row.getPrice(), row.getCategoryId(), row.getCategoryName(),
+                        row.getAvailableQuantity(), row.getRank()))
+                .collect(Collectors.toList());
+        return new PageImpl<>(results, PageRequest.of(page, size), total);
+    }
+
+    /**
+     * Returns product name suggestions for the prefix from the in-memory index (no database access)
+     */
+    public List<ProductSuggestionDTO> suggestProducts(String prefix, int limit) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new WarehouseException.ValidationException("Limit must be between 1 and " + MAX_SUGGESTIONS);
+        }
+        if (prefix == null || prefix.isBlank()) {
+            return List.of();
+        }
+        return productSuggestIndex.suggest(prefix.stripLeading(), limit);
+    }
+
     @Transactional
     public ProductResponseDTO createProduct(ProductCreateRequestDTO createRequest) {
         // Check if product with the same name already exists
@@ -76,13 +192,17 @@ public class ProductService {
         product.setCategory(category);
 
         Product savedProduct = productRepository.save(product);
+        productSuggestIndex.upsertAfterCommit(savedProduct.getId(), savedProduct.getName());
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.PRODUCTS);
+        outboxService.record(productChanged(savedProduct, "CREATED"));
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.PRODUCT, savedProduct.getId());
         return convertToResponseDTO(savedProduct);
     }
 
     @Transactional
     public ProductResponseDTO updateProduct(Long id, ProductCreateRequestDTO updateRequest) {
-        // Find the product to update
-        Product product = productRepository.findById(id)
+        // Find and lock the product to update; a concurrent change waits, so its event is written after this one
+        Product product = productRepository.findForUpdate(id)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", id));
 
         // Check if the name is actually changing
@@ -107,13 +227,17 @@ public class ProductService {
 
         // Save and return the updated product
         Product updatedProduct = productRepository.save(product);
+        productSuggestIndex.upsertAfterCommit(updatedProduct.getId(), updatedProduct.getName());
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.PRODUCTS);
+        outboxService.record(productChanged(updatedProduct, "UPDATED"));
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.PRODUCT, updatedProduct.getId());
         return convertToResponseDTO(updatedProduct);
     }
 
     @Transactional
     public ProductResponseDTO patchProduct(Long id, ProductPatchRequestDTO patchRequest) {
-        // Find the product to update
-        Product product = productRepository.findById(id)
+        // Find and lock the product to update; a concurrent change waits, so its event is written after this one
+        Product product = productRepository.findForUpdate(id)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", id));
 
         // Update name if provided
@@ -149,23 +273,39 @@ public class ProductService {
 
         // Save and return the updated product
         Product updatedProduct = productRepository.save(product);
+        productSuggestIndex.upsertAfterCommit(updatedProduct.getId(), updatedProduct.getName());
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.PRODUCTS);
+        outboxService.record(productChanged(updatedProduct, "UPDATED"));
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.PRODUCT, updatedProduct.getId());
         return convertToResponseDTO(updatedProduct);
     }
 
     @Transactional
     public void deleteProduct(Long id) {
-        // Find the product to delete
-        Product product = productRepository.findById(id)
+        // Find and lock the product to delete
+        Product product = productRepository.findForUpdate(id)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", id));
 
-        // Check if the product has associated stocks
-        List<Stock> stocks = stockRepository.findByProduct(product);
-        if (!stocks.isEmpty()) {
-            throw new WarehouseException.ProductInUseException(product.getName(), stocks.size());
+        // Check if the product has associated stocks (counted only for the error message)
+        if (stockRepository.existsByProduct(product)) {
+            throw new WarehouseException.ProductInUseException(product.getName(),
+                    Math.toIntExact(stockRepository.countByProduct(product)));
         }
 
         // Delete the product
         productRepository.delete(product);
+        productSuggestIndex.removeAfterCommit(product.getId());
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.PRODUCTS);
+        outboxService.record(productChanged(product, "DELETED"));
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.PRODUCT, product.getId());
+    }
+
+    /**
+     * Builds the outbox event for a product change
+     */
+    private ProductChangedEventDTO productChanged(Product product, String change) {
+        return new ProductChangedEventDTO(product.getId(), change, product.getName(), product.getPrice(),
+                product.getCategory() != null ? product.getCategory().getId() : null);
     }
 
     /**
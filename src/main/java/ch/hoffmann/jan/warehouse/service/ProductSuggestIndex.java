@@ -0,0 +1,313 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.StartupTasks;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSuggestionDTO;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.util.AfterCommit;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over the product names for type-ahead suggestions.
+ * The names are kept in sorted arrays (lower-cased key, original name, id); a lookup is a binary search for the
+ * first key with the prefix followed by a short scan. Readers use an immutable snapshot without locking; changes
+ * are applied copy-on-write after the surrounding transaction commits, merged in one pass per batch.
+ * The index is built at startup from a streaming scan of the products table.
+ */
+@Component
+@Order(4) // After the Keycloak synchronization and the initial admin setup
+public class ProductSuggestIndex implements ApplicationRunner {
+
+    // Rough JVM object sizes used for the memory estimate (compressed references)
+    private static final long STRING_OVERHEAD = 24 + 16;
+    private static final long ENTRY_OVERHEAD = Long.BYTES + 2 * 4;
+
+    private final Logger logger = LoggerFactory.getLogger(ProductSuggestIndex.class);
+
+    private final ProductRepository productRepository;
+    private final StartupTasks startupTasks;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // Changes seen while a rebuild is scanning the table, replayed on top of the rebuilt snapshot
+    private final Object writeLock = new Object();
+    private List<Map<Long, String>> changesDuringRebuild;
+
+    @Autowired
+    public ProductSuggestIndex(ProductRepository productRepository, StartupTasks startupTasks,
+                               PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.startupTasks = startupTasks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        Gauge.builder("products.suggest.index.entries", this, index -> index.snapshot.ids.length)
+                .description("Number of product names in the suggest index")
+                .register(meterRegistry);
+        Gauge.builder("products.suggest.index.memory", this, index -> index.snapshot.estimatedBytes)
+                .description("Estimated heap used by the suggest index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        startupTasks.submit("product-suggest-index", this::rebuild);
+    }
+
+    /**
+     * Returns up to limit products whose name starts with the prefix (case-insensitive), in name order
+     */
+    public List<ProductSuggestionDTO> suggest(String prefix, int limit) {
+        Snapshot current = snapshot;
+        String key = prefix.toLowerCase(Locale.ROOT);
+        List<ProductSuggestionDTO> suggestions = new ArrayList<>(Math.min(limit, 16));
+        for (int i = current.firstIndexOf(key); i < current.keys.length && suggestions.size() < limit; i++) {
+            if (!current.keys[i].startsWith(key)) {
+                break;
+            }
+            suggestions.add(new ProductSuggestionDTO(current.ids[i], current.names[i]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Adds or renames a product once the current transaction has committed
+     */
+    public void upsertAfterCommit(Long id, String name) {
+        Map<Long, String> change = new LinkedHashMap<>();
+        change.put(id, name);
+        AfterCommit.run(() -> apply(change));
+    }
+
+    /**
+     * Adds or renames several products once the current transaction has committed
+     */
+    public void upsertAllAfterCommit(Map<Long, String> namesById) {
+        Map<Long, String> change = new LinkedHashMap<>(namesById);
+        AfterCommit.run(() -> apply(change));
+    }
+
+    /**
+     * Removes a product once the current transaction has committed
+     */
+    public void removeAfterCommit(Long id) {
+        Map<Long, String> change = new LinkedHashMap<>();
+        change.put(id, null);
+        AfterCommit.run(() -> apply(change));
+    }
+
+    /**
+     * Reloads the names of the given products, e.g. after they were changed through another instance;
+     * products that no longer exist are removed
+     */
+    public void refresh(Collection<Long> ids) {
+        Map<Long, String> change = new LinkedHashMap<>();
+        ids.forEach(id -> change.put(id, null));
+        transactionTemplate.executeWithoutResult(status -> productRepository.findAllById(ids)
+                .forEach(product -> change.put(product.getId(), product.getName())));
+        apply(change);
+    }
+
+    /**
+     * Rebuilds the index from the products table
+     */
+    public void rebuild() {
+        synchronized (writeLock) {
+            changesDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            List<Entry> entries = transactionTemplate.execute(status -> {
+                List<Entry> scanned = new ArrayList<>();
+                try (Stream<Object[]> rows = productRepository.streamIdsAndNames()) {
+                    rows.forEach(row -> scanned.add(new Entry((Long) row[0], (String) row[1])));
+                }
+                return scanned;
+            });
+            entries.sort(Entry.ORDER);
+
+            synchronized (writeLock) {
+                Snapshot rebuilt = Snapshot.of(entries);
+                for (Map<Long, String> change : changesDuringRebuild) {
+                    rebuilt = rebuilt.apply(change);
+                }
+                snapshot = rebuilt;
+            }
+            logger.info("Built product suggest index with {} names (~{} KB) in {} ms",
+                    snapshot.ids.length, snapshot.estimatedBytes / 1024, System.currentTimeMillis() - start);
+        } finally {
+            synchronized (writeLock) {
+                changesDuringRebuild = null;
+            }
+        }
+    }
+
+    private void apply(Map<Long, String> change) {
+        synchronized (writeLock) {
+            snapshot = snapshot.apply(change);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        }
+    }
+
+    private record Entry(long id, String name, String key) {
+
+        static final Comparator<Entry> ORDER = Comparator.comparing(Entry::key).thenComparingLong(Entry::id);
+
+        Entry(long id, String name) {
+            this(id, name, lowerCase(name));
+        }
+
+        private static String lowerCase(String name) {
+            String key = name.toLowerCase(Locale.ROOT);
+            // Share the instance when the name is already lower case
+            return key.equals(name) ? name : key;
+        }
+    }
+
+    /**
+     * Immutable sorted arrays; never modified after construction
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new String[0], new String[0], new long[0], 0);
+
+        final String[] keys;
+        final String[] names;
+        final long[] ids;
+        final long estimatedBytes;
+
+        private Snapshot(String[] keys, String[] names, long[] ids, long estimatedBytes) {
+            this.keys = keys;
+            this.names = names;
+            this.ids = ids;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        /**
+         * Builds a snapshot from entries sorted by {@link Entry#ORDER}
+         */
+        static Snapshot of(List<Entry> sorted) {
+            int size = sorted.size();
+            String[] keys = new String[size];
+            String[] names = new String[size];
+            long[] ids = new long[size];
+            long bytes = 3 * 16L;
+            for (int i = 0; i < size; i++) {
+                Entry entry = sorted.get(i);
+                keys[i] = entry.key();
+                names[i] = entry.name();
+                ids[i] = entry.id();
+                bytes += entryBytes(entry.key(), entry.name());
+            }
+            return new Snapshot(keys, names, ids, bytes);
+        }
+
+        /**
+         * Index of the first key that is greater than or equal to the given key
+         */
+        int firstIndexOf(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns a new snapshot with the change applied: a null name removes the id, otherwise the id is
+         * (re)inserted with the new name. One merge pass over the arrays, O(n + k log k) for k changed ids.
+         */
+        Snapshot apply(Map<Long, String> change) {
+            long[] changedIds = change.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            List<Entry> added = new ArrayList<>();
+            change.forEach((id, name) -> {
+                if (name != null) {
+                    added.add(new Entry(id, name));
+                }
+            });
+            added.sort(Entry.ORDER);
+
+            int removed = 0;
+            long bytes = estimatedBytes;
+            for (int i = 0; i < ids.length; i++) {
+                if (Arrays.binarySearch(changedIds, ids[i]) >= 0) {
+                    removed++;
+                    bytes -= entryBytes(keys[i], names[i]);
+                }
+            }
+
+            int size = ids.length - removed + added.size();
+            String[] newKeys = new String[size];
+            String[] newNames = new String[size];
+            long[] newIds = new long[size];
+            int target = 0;
+            int j = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (removed > 0 && Arrays.binarySearch(changedIds, ids[i]) >= 0) {
+                    continue;
+                }
+                while (j < added.size() && compare(added.get(j), keys[i], ids[i]) < 0) {
+                    Entry entry = added.get(j++);
+                    newKeys[target] = entry.key();
+                    newNames[target] = entry.name();
+                    newIds[target++] = entry.id();
+                }
+                newKeys[target] = keys[i];
+                newNames[target] = names[i];
+                newIds[target++] = ids[i];
+            }
+            while (j < added.size()) {
+                Entry entry = added.get(j++);
+                newKeys[target] = entry.key();
+                newNames[target] = entry.name();
+                newIds[target++] = entry.id();
+            }
+            for (Entry entry : added) {
+                bytes += entryBytes(entry.key(), entry.name());
+            }
+            return new Snapshot(newKeys, newNames, newIds, bytes);
+        }
+
+        private static int compare(Entry entry, String key, long id) {
+            int result = entry.key().compareTo(key);
+            return result != 0 ? result : Long.compare(entry.id(), id);
+        }
+
+        private static long entryBytes(String key, String name) {
+            long bytes = ENTRY_OVERHEAD + STRING_OVERHEAD + name.length();
+            if (key != name) {
+                bytes += STRING_OVERHEAD + key.length();
+            }
+            return bytes;
+        }
+    }
+}
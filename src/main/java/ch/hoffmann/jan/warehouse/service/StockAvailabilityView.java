@@ -0,0 +1,654 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.StartupTasks;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory availability (quantity and reserved units) of the stock entries for the read-heavy single stock lookup,
+ * opt-in with app.stock.availability-view.enabled.
+ * Entries are kept in an open-addressing hash table over primitive arrays, keyed by productId << 32 | warehouseId
+ * (ids up to 2^32; larger ids are always read from the database). Readers never block: they read under an optimistic
+ * stamp and fall back to the database when a writer got in between.
+ * The table is built at startup from a streaming scan of the stocks table. When a transaction that changed stock
+ * entries commits, their keys are marked unknown (read from the database) and reloaded by a background thread. Every
+ * invalidation is stamped with a generation, and a reload only applies to keys that were not invalidated again after
+ * it started, so a slow reload never overwrites a newer value. A reconciliation job compares per-bucket counts and
+ * checksums with the stocks table and reloads the buckets that drifted, e.g. after changes made through another
+ * instance while the cache invalidation listener was disconnected. Keys not in the table are read from the database,
+ * so only deletions the view has seen are answered as "no stock entry".
+ */
+@Component
+@Order(5) // After the product suggest index
+public class StockAvailabilityView implements ApplicationRunner, DisposableBean {
+
+    /**
+     * Units of a stock entry as seen by the view; {@link #NONE} when this instance saw the stock entry deleted
+     */
+    public record Availability(long stockId, int quantity, int reserved) {
+
+        public static final Availability NONE = new Availability(0, 0, 0);
+
+        public boolean exists() {
+            return stockId != ABSENT;
+        }
+    }
+
+    // Reconciliation buckets and checksum modulus; must match the queries in StockRepository
+    static final int BUCKETS = 256;
+    static final long CHECKSUM_MODULUS = 2_147_483_647L;
+
+    private static final long MAX_ID = 0xFFFF_FFFFL;
+    // Stock id markers of a table slot
+    private static final long ABSENT = 0;
+    private static final long UNKNOWN = -1;
+    private static final int REFRESH_BATCH_SIZE = 500;
+    private static final long REFRESH_RETRY_DELAY_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(StockAvailabilityView.class);
+
+    private final StockRepository stockRepository;
+    private final StartupTasks startupTasks;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Counter driftedBuckets;
+
+    // Guards table, generation and builtSince; readers only validate an optimistic stamp
+    private final StampedLock lock = new StampedLock();
+    private Table table = new Table(1024);
+    // Stamp of the latest invalidation
+    private volatile long generation;
+    // Generation at the start of the scan the current table was built from; older reloads are discarded
+    private long builtSince;
+    private volatile boolean ready;
+
+    // Keys waiting for the refresh thread
+    private final Object pendingLock = new Object();
+    private long[] pendingKeys = new long[64];
+    private int pendingCount;
+    private volatile boolean running;
+    private Thread refresher;
+
+    @Autowired
+    public StockAvailabilityView(StockRepository stockRepository, StartupTasks startupTasks,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 @Value("${app.stock.availability-view.enabled:false}") boolean enabled) {
+        this.stockRepository = stockRepository;
+        this.startupTasks = startupTasks;
+        // Not read-only: those transactions may read from the replica, which can lag behind the commits followed here
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+
+        Gauge.builder("stocks.availability.view.entries", this, view -> view.table.size)
+                .description("Number of (product, warehouse) keys in the stock availability view")
+                .register(meterRegistry);
+        Gauge.builder("stocks.availability.view.memory", this, view -> view.table.estimatedBytes())
+                .description("Heap used by the stock availability view")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.driftedBuckets = Counter.builder("stocks.availability.view.drifted.buckets")
+                .description("Buckets of the stock availability view reloaded by the reconciliation")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        refresher = new Thread(this::refreshLoop, "stock-availability-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+        startupTasks.submit("stock-availability-view", this::rebuild);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+    }
+
+    /**
+     * Returns the availability of the stock entry, {@link Availability#NONE} if it was reloaded and found deleted,
+     * or null if the view cannot answer (disabled, not built yet, unknown key, the entry is being reloaded or a writer
+     * got in between); never blocks. A key that is not in the table may belong to a stock entry created through
+     * another instance since the table was built, so it is read from the database rather than reported missing.
+     */
+    public Availability get(Long productId, Long warehouseId) {
+        if (!ready || !inRange(productId, warehouseId)) {
+            return null;
+        }
+        long key = key(productId, warehouseId);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0) {
+            return null;
+        }
+        Table current = table;
+        int index = current.indexOf(key);
+        long stockId = index >= 0 ? current.stockIds[index] : UNKNOWN;
+        long units = index >= 0 ? current.units[index] : 0;
+        if (!lock.validate(stamp) || stockId == UNKNOWN) {
+            return null;
+        }
+        return stockId == ABSENT ? Availability.NONE : new Availability(stockId, quantity(units), reserved(units));
+    }
+
+    /**
+     * Reloads the stock entry once the current transaction has committed
+     */
+    public void invalidateAfterCommit(Long productId, Long warehouseId) {
+        invalidateAfterCommit(List.of(productId), warehouseId);
+    }
+
+    /**
+     * Reloads the stock entries of the products in the warehouse once the current transaction has committed.
+     * The keys of one transaction are collected and invalidated together after its commit.
+     */
+    public void invalidateAfterCommit(Collection<Long> productIds, Long warehouseId) {
+        if (!enabled) {
+            return;
+        }
+        long[] keys = productIds.stream()
+                .filter(productId -> inRange(productId, warehouseId))
+                .mapToLong(productId -> key(productId, warehouseId))
+                .toArray();
+        if (keys.length == 0) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(keys);
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingInvalidation pending && pending.view() == this) {
+                pending.add(keys);
+                return;
+            }
+        }
+        PendingInvalidation pending = new PendingInvalidation();
+        pending.add(keys);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    /**
+     * Rebuilds the view from the stocks table
+     */
+    public void rebuild() {
+        long since = generation;
+        long start = System.currentTimeMillis();
+        Table scanned = transactionTemplate.execute(status -> {
+            Table built = new Table(1024);
+            try (Stream<Object[]> rows = stockRepository.streamAvailability()) {
+                Iterator<Object[]> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    Long productId = ((Number) row[1]).longValue();
+                    Long warehouseId = ((Number) row[2]).longValue();
+                    if (!inRange(productId, warehouseId)) {
+                        continue;
+                    }
+                    if (built.isFull()) {
+                        built = built.grow();
+                    }
+                    int index = built.add(key(productId, warehouseId));
+                    built.stockIds[index] = ((Number) row[0]).longValue();
+                    built.units[index] = units(((Number) row[3]).intValue(), ((Number) row[4]).intValue());
+                }
+            }
+            return built;
+        });
+
+        long stamp = lock.writeLock();
+        try {
+            // Keys invalidated while the table was scanned may have been read before their change
+            Table current = table;
+            for (int i = 0; i < current.keys.length; i++) {
+                if (current.keys[i] != 0 && current.stamps[i] > since) {
+                    int index = scanned.indexOf(current.keys[i]);
+                    if (index < 0) {
+                        if (scanned.isFull()) {
+                            scanned = scanned.grow();
+                        }
+                        index = scanned.add(current.keys[i]);
+                    }
+                    scanned.stockIds[index] = UNKNOWN;
+                    scanned.stamps[index] = current.stamps[i];
+                }
+            }
+            table = scanned;
+            builtSince = since;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        ready = true;
+        logger.info("Built stock availability view with {} entries (~{} KB) in {} ms",
+                scanned.size, scanned.estimatedBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Compares the entry count and checksum of every bucket with the stocks table and reloads the buckets that
+     * differ. Buckets with entries invalidated since the comparison started are skipped; they are being reloaded.
+     */
+    @Scheduled(fixedDelayString = "${app.stock.availability-view.reconcile-interval:PT5M}",
+            initialDelayString = "${app.stock.availability-view.reconcile-interval:PT5M}")
+    public void reconcile() {
+        if (!ready) {
+            return;
+        }
+        long since = generation;
+        List<Object[]> rows = transactionTemplate.execute(status ->
+                stockRepository.findAvailabilityChecksums(BUCKETS, CHECKSUM_MODULUS));
+        long[] expectedEntries = new long[BUCKETS];
+        long[] expectedChecksums = new long[BUCKETS];
+        for (Object[] row : rows) {
+            int bucket = ((Number) row[0]).intValue();
+            expectedEntries[bucket] = ((Number) row[1]).longValue();
+            expectedChecksums[bucket] = ((Number) row[2]).longValue();
+        }
+
+        long[] entries = new long[BUCKETS];
+        long[] checksums = new long[BUCKETS];
+        boolean[] skipped = new boolean[BUCKETS];
+        // Holds off the writers for one pass over the arrays
+        long stamp = lock.readLock();
+        try {
+            if (since < builtSince) {
+                return;
+            }
+            Table current = table;
+            for (int i = 0; i < current.keys.length; i++) {
+                long key = current.keys[i];
+                if (key == 0) {
+                    continue;
+                }
+                int bucket = bucket(key);
+                if (current.stockIds[i] == UNKNOWN || current.stamps[i] > since) {
+                    skipped[bucket] = true;
+                } else if (current.stockIds[i] != ABSENT) {
+                    entries[bucket]++;
+                    checksums[bucket] = (checksums[bucket] + hash(current.stockIds[i], key, current.units[i]))
+                            % CHECKSUM_MODULUS;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        int[] drifted = IntStream.range(0, BUCKETS)
+                .filter(bucket -> !skipped[bucket])
+                .filter(bucket -> entries[bucket] != expectedEntries[bucket] || checksums[bucket] != expectedChecksums[bucket])
+                .toArray();
+        if (drifted.length == 0) {
+            return;
+        }
+        driftedBuckets.increment(drifted.length);
+        logger.warn("Stock availability view differs from the stocks table in {} of {} buckets, reloading them",
+                drifted.length, BUCKETS);
+        repair(drifted, since);
+    }
+
+    /**
+     * Waits for invalidated keys and reloads them until the view is destroyed
+     */
+    private void refreshLoop() {
+        while (running) {
+            synchronized (pendingLock) {
+                while (pendingCount == 0) {
+                    try {
+                        pendingLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            try {
+                refreshPending();
+            } catch (RuntimeException e) {
+                // The keys stay unknown and are read from the database until a later reload succeeds
+                logger.warn("Reloading stock availability entries failed, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(REFRESH_RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads the invalidated keys in batches; keys of a failed batch are queued again
+     */
+    void refreshPending() {
+        long[] keys;
+        synchronized (pendingLock) {
+            keys = LongStream.of(Arrays.copyOf(pendingKeys, pendingCount)).distinct().toArray();
+            pendingCount = 0;
+        }
+        for (int from = 0; from < keys.length; from += REFRESH_BATCH_SIZE) {
+            long[] batch = Arrays.copyOfRange(keys, from, Math.min(keys.length, from + REFRESH_BATCH_SIZE));
+            try {
+                refresh(batch);
+            } catch (RuntimeException e) {
+                enqueueRefresh(Arrays.copyOfRange(keys, from, keys.length));
+                throw e;
+            }
+        }
+    }
+
+    private void refresh(long[] keys) {
+        long since = generation;
+        String productIds = arrayLiteral(LongStream.of(keys).map(key -> key >>> 32));
+        String warehouseIds = arrayLiteral(LongStream.of(keys).map(key -> key & MAX_ID));
+        List<Object[]> rows = transactionTemplate.execute(status ->
+                stockRepository.findAvailability(productIds, warehouseIds));
+
+        long stamp = lock.writeLock();
+        try {
+            if (since < builtSince) {
+                return;
+            }
+            long[] found = apply(rows, since);
+            for (long key : keys) {
+                if (Arrays.binarySearch(found, key) < 0) {
+                    applyIfNotInvalidated(key, ABSENT, 0, since);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Reloads the buckets; entries of the view that are no longer in the stocks table are marked absent
+     */
+    private void repair(int[] buckets, long since) {
+        List<Object[]> rows = transactionTemplate.execute(status ->
+                stockRepository.findAvailabilityInBuckets(BUCKETS, arrayLiteral(IntStream.of(buckets).asLongStream())));
+        boolean[] repaired = new boolean[BUCKETS];
+        for (int bucket : buckets) {
+            repaired[bucket] = true;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (since < builtSince) {
+                return;
+            }
+            long[] found = apply(rows, since);
+            Table current = table;
+            for (int i = 0; i < current.keys.length; i++) {
+                long key = current.keys[i];
+                if (key != 0 && repaired[bucket(key)] && current.stockIds[i] > 0 && current.stamps[i] <= since
+                        && Arrays.binarySearch(found, key) < 0) {
+                    current.stockIds[i] = ABSENT;
+                    current.units[i] = 0;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies the (id, productId, warehouseId, quantity, reserved) rows read after since; returns their sorted keys.
+     * Called with the write lock held.
+     */
+    private long[] apply(List<Object[]> rows, long since) {
+        long[] found = new long[rows.size()];
+        int count = 0;
+        for (Object[] row : rows) {
+            long productId = ((Number) row[1]).longValue();
+            long warehouseId = ((Number) row[2]).longValue();
+            if (!inRange(productId, warehouseId)) {
+                continue;
+            }
+            long key = key(productId, warehouseId);
+            found[count++] = key;
+            applyIfNotInvalidated(key, ((Number) row[0]).longValue(),
+                    units(((Number) row[3]).intValue(), ((Number) row[4]).intValue()), since);
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Sets the entry unless its key was invalidated after since; called with the write lock held
+     */
+    private void applyIfNotInvalidated(long key, long stockId, long units, long since) {
+        int index = table.indexOf(key);
+        if (index < 0) {
+            // Also for an absent entry: a missing key reads as unknown
+            if (table.isFull()) {
+                table = table.grow();
+            }
+            index = table.add(key);
+        }
+        if (table.stamps[index] <= since) {
+            table.stockIds[index] = stockId;
+            table.units[index] = units;
+        }
+    }
+
+    private void invalidate(long[] keys) {
+        long stamp = lock.writeLock();
+        try {
+            long invalidation = generation + 1;
+            for (long key : keys) {
+                int index = table.indexOf(key);
+                if (index < 0) {
+                    if (table.isFull()) {
+                        table = table.grow();
+                    }
+                    index = table.add(key);
+                }
+                table.stockIds[index] = UNKNOWN;
+                table.units[index] = 0;
+                table.stamps[index] = invalidation;
+            }
+            generation = invalidation;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        enqueueRefresh(keys);
+    }
+
+    private void enqueueRefresh(long[] keys) {
+        synchronized (pendingLock) {
+            if (pendingCount + keys.length > pendingKeys.length) {
+                pendingKeys = Arrays.copyOf(pendingKeys, Math.max(pendingKeys.length * 2, pendingCount + keys.length));
+            }
+            System.arraycopy(keys, 0, pendingKeys, pendingCount, keys.length);
+            pendingCount += keys.length;
+            pendingLock.notifyAll();
+        }
+    }
+
+    private static boolean inRange(Long productId, Long warehouseId) {
+        return productId != null && warehouseId != null
+                && productId > 0 && productId <= MAX_ID && warehouseId > 0 && warehouseId <= MAX_ID;
+    }
+
+    private static long key(long productId, long warehouseId) {
+        return productId << 32 | warehouseId;
+    }
+
+    /**
+     * (productId + 31 * warehouseId) mod BUCKETS, as in StockRepository#findAvailabilityChecksums
+     */
+    static int bucket(long key) {
+        return (int) (((key >>> 32) + 31 * (key & MAX_ID)) % BUCKETS);
+    }
+
+    /**
+     * Polynomial hash of (id, productId, warehouseId, quantity, reserved) with base 31 mod CHECKSUM_MODULUS,
+     * as in StockRepository#findAvailabilityChecksums
+     */
+    static long hash(long stockId, long key, long units) {
+        long hash = stockId % CHECKSUM_MODULUS;
+        hash = (hash * 31 + (key >>> 32)) % CHECKSUM_MODULUS;
+        hash = (hash * 31 + (key & MAX_ID)) % CHECKSUM_MODULUS;
+        hash = (hash * 31 + quantity(units)) % CHECKSUM_MODULUS;
+        return (hash * 31 + reserved(units)) % CHECKSUM_MODULUS;
+    }
+
+    private static long units(int quantity, int reserved) {
+        return (long) quantity << 32 | (reserved & MAX_ID);
+    }
+
+    private static int quantity(long units) {
+        return (int) (units >>> 32);
+    }
+
+    private static int reserved(long units) {
+        return (int) units;
+    }
+
+    private static String arrayLiteral(LongStream values) {
+        return values.mapToObj(Long::toString).collect(Collectors.joining(",", "{", "}"));
+    }
+
+    /**
+     * Keys changed by the current transaction, invalidated together after it commits
+     */
+    private final class PendingInvalidation implements TransactionSynchronization {
+
+        private long[] keys = new long[16];
+        private int count;
+
+        StockAvailabilityView view() {
+            return StockAvailabilityView.this;
+        }
+
+        void add(long[] added) {
+            if (count + added.length > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, count + added.length));
+            }
+            System.arraycopy(added, 0, keys, count, added.length);
+            count += added.length;
+        }
+
+        @Override
+        public void afterCommit() {
+            invalidate(Arrays.copyOf(keys, count));
+        }
+    }
+
+    /**
+     * Open-addressing hash table with linear probing over parallel arrays. Slots are never removed (a deleted stock
+     * entry becomes absent), so a probe ends at the key or at the first empty slot; the table is rebuilt, without
+     * the absent keys, by {@link #rebuild()}. Writers hold the write lock; a reader may see a half-written slot but
+     * then fails to validate its stamp.
+     */
+    private static final class Table {
+
+        private static final long GOLDEN_RATIO = 0x9E37_79B9_7F4A_7C15L;
+
+        final long[] keys;
+        // Stock id, ABSENT or UNKNOWN
+        final long[] stockIds;
+        // quantity << 32 | reserved
+        final long[] units;
+        // Generation of the last invalidation
+        final long[] stamps;
+        final int shift;
+        int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            stockIds = new long[capacity];
+            units = new long[capacity];
+            stamps = new long[capacity];
+            shift = Long.numberOfLeadingZeros(capacity - 1);
+        }
+
+        int indexOf(long key) {
+            int mask = keys.length - 1;
+            int index = slot(key);
+            // Bounded, as a reader may probe while a writer changes the table
+            for (int probes = 0; probes <= mask; probes++) {
+                long candidate = keys[index];
+                if (candidate == key) {
+                    return index;
+                }
+                if (candidate == 0) {
+                    return -1;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Adds a key that is not in the table yet (as absent) and returns its slot; the caller checks isFull first
+         */
+        int add(long key) {
+            int mask = keys.length - 1;
+            int index = slot(key);
+            while (keys[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            size++;
+            return index;
+        }
+
+        /**
+         * Load factor 3/4
+         */
+        boolean isFull() {
+            return size + 1 > keys.length / 4 * 3;
+        }
+
+        Table grow() {
+            Table grown = new Table(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    int index = grown.add(keys[i]);
+                    grown.stockIds[index] = stockIds[i];
+                    grown.units[index] = units[i];
+                    grown.stamps[index] = stamps[i];
+                }
+            }
+            return grown;
+        }
+
+        long estimatedBytes() {
+            return 4L * (16 + (long) keys.length * Long.BYTES);
+        }
+
+        private int slot(long key) {
+            // Fibonacci hashing: the high bits of the product are well mixed for sequential ids
+            return (int) ((key * GOLDEN_RATIO) >>> shift);
+        }
+    }
+}
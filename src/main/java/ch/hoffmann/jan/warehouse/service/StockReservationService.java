@@ -0,0 +1,328 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationResponseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.StockReservation;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.StockReservationRepository;
+import ch.hoffmann.jan.warehouse.repository.UserRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Reservations (soft allocations) of stock before it is picked.
+ * A reservation adds its quantity to stocks.reserved and is then committed (the units are removed from the stock),
+ * released or expired. Available stock is quantity - reserved; the check constraint of V11__stock_reservations.sql
+ * keeps every writer from going below it.
+ * Reserving is a single conditional UPDATE of the stock row, so concurrent reservations of the same stock entry only
+ * hold its row lock for that statement and the insert of the reservation, and never read a stale availability.
+ */
+@Service
+public class StockReservationService {
+
+    private final StockReservationRepository reservationRepository;
+    private final StockRepository stockRepository;
+    private final ProductRepository productRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final UserRepository userRepository;
+    private final AuditService auditService;
+    private final OutboxService outboxService;
+    private final AggregateVersions aggregateVersions;
+    private final StockAvailabilityView stockAvailabilityView;
+    private final StockRoutingService stockRoutingService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration defaultTtl;
+    private final int sweepBatchSize;
+    private final Duration retention;
+    private final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    @Autowired
+    public StockReservationService(StockReservationRepository reservationRepository, StockRepository stockRepository,
+                                   ProductRepository productRepository, WarehouseRepository warehouseRepository,
+                                   UserRepository userRepository, AuditService auditService, OutboxService outboxService,
+                                   AggregateVersions aggregateVersions, StockAvailabilityView stockAvailabilityView,
+                                   StockRoutingService stockRoutingService, CacheInvalidationBus cacheInvalidationBus,
+                                   EntityManager entityManager,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${app.reservation.default-ttl:15m}") Duration defaultTtl,
+                                   @Value("${app.reservation.sweep-batch-size:500}") int sweepBatchSize,
+                                   @Value("${app.reservation.retention:7d}") Duration retention) {
+        this.reservationRepository = reservationRepository;
+        this.stockRepository = stockRepository;
+        this.productRepository = productRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.userRepository = userRepository;
+        this.auditService = auditService;
+        this.outboxService = outboxService;
+        this.aggregateVersions = aggregateVersions;
+        this.stockAvailabilityView = stockAvailabilityView;
+        this.stockRoutingService = stockRoutingService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.defaultTtl = defaultTtl;
+        this.sweepBatchSize = sweepBatchSize;
+        this.retention = retention;
+    }
+
+    @Transactional(readOnly = true)
+    public StockReservationResponseDTO getReservation(Long id) {
+        return convertToResponseDTO(reservationRepository.findById(id)
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Reservation", "id", id)));
+    }
+
+    /**
+     * Reserves units of a stock entry if that many are available
+     */
+    @Transactional
+    public StockReservationResponseDTO reserve(StockReservationRequestDTO request, Long userId) {
+        Product product = productRepository.findById(request.getProductId())
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", request.getProductId()));
+
+        Warehouse warehouse = warehouseRepository.findById(request.getWarehouseId())
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", request.getWarehouseId()));
+
+        int updated = entityManager.createNativeQuery("""
+                        UPDATE stocks SET reserved = reserved + :quantity
+                        WHERE product_id = :productId AND warehouse_id = :warehouseId
+                          AND quantity - reserved >= :quantity
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "stocks")
+                .setParameter("quantity", request.getQuantity())
+                .setParameter("productId", product.getId())
+                .setParameter("warehouseId", warehouse.getId())
+                .executeUpdate();
+        if (updated == 0) {
+            Stock stock = stockRepository.findByProductAndWarehouse(product, warehouse)
+                    .orElseThrow(() -> new WarehouseException.StockNotFoundException(product.getName(), warehouse.getName()));
+            throw new WarehouseException.InsufficientStockException(
+                    product.getName(), warehouse.getName(), request.getQuantity(), stock.getAvailable());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Duration ttl = request.getTtlSeconds() != null ? Duration.ofSeconds(request.getTtlSeconds()) : defaultTtl;
+        StockReservation reservation = reservationRepository.save(new StockReservation(product, warehouse,
+                userRepository.findById(userId).get(), request.getQuantity(), now, now.plus(ttl)));
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(product.getId(), warehouse.getId());
+        stockRoutingService.invalidateAfterCommit(product.getId());
+        cacheInvalidationBus.publishStock(product.getId(), warehouse.getId());
+
+        logger.info("Reserved {} units of product {} in warehouse {} until {} (reservation {})",
+                request.getQuantity(), product.getName(), warehouse.getName(), reservation.getExpiresAt(), reservation.getId());
+        return convertToResponseDTO(reservation);
+    }
+
+    /**
+     * Removes the reserved units from the stock (they were picked), with an audit entry and event like a REMOVE
+     */
+    @Transactional
+    public StockReservationResponseDTO commit(Long id, Long userId) {
+        StockReservation reservation = lockActiveReservation(id);
+        Product product = reservation.getProduct();
+        Warehouse warehouse = reservation.getWarehouse();
+
+        int newQuantity = ((Number) entityManager.createNativeQuery("""
+                        UPDATE stocks SET quantity = quantity - :quantity, reserved = reserved - :quantity
+                        WHERE product_id = :productId AND warehouse_id = :warehouseId
+                        RETURNING quantity
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "stocks")
+                .setParameter("quantity", reservation.getQuantity())
+                .setParameter("productId", product.getId())
+                .setParameter("warehouseId", warehouse.getId())
+                .getSingleResult()).intValue();
+        if (newQuantity == 0) {
+            // As in StockService, a stock entry is deleted once it is empty
+            entityManager.createNativeQuery("DELETE FROM stocks WHERE product_id = :productId AND warehouse_id = :warehouseId")
+                    .setHint(HibernateHints.HINT_NATIVE_SPACES, "stocks")
+                    .setParameter("productId", product.getId())
+                    .setParameter("warehouseId", warehouse.getId())
+                    .executeUpdate();
+        }
+
+        close(reservation, StockReservation.Status.COMMITTED);
+        auditService.logAuditEvent(
+                userRepository.findById(userId).get(),
+                product,
+                warehouse,
+                null,
+                "REMOVE",
+                reservation.getQuantity()
+        );
+        outboxService.record(new StockAdjustedEventDTO(product.getId(), warehouse.getId(), "REMOVE",
+                reservation.getQuantity(), newQuantity, userId));
+
+        logger.info("Committed reservation {}: removed {} units of product {} from warehouse {}",
+                id, reservation.getQuantity(), product.getName(), warehouse.getName());
+        return convertToResponseDTO(reservation);
+    }
+
+    /**
+     * Gives the reserved units back to the available stock
+     */
+    @Transactional
+    public StockReservationResponseDTO release(Long id) {
+        StockReservation reservation = lockActiveReservation(id);
+        entityManager.createNativeQuery("""
+                        UPDATE stocks SET reserved = reserved - :quantity
+                        WHERE product_id = :productId AND warehouse_id = :warehouseId
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, "stocks")
+                .setParameter("quantity", reservation.getQuantity())
+                .setParameter("productId", reservation.getProduct().getId())
+                .setParameter("warehouseId", reservation.getWarehouse().getId())
+                .executeUpdate();
+        close(reservation, StockReservation.Status.RELEASED);
+
+        logger.info("Released reservation {} of {} units", id, reservation.getQuantity());
+        return convertToResponseDTO(reservation);
+    }
+
+    /**
+     * Expires the active reservations past their expiry time, in batches of sweep-batch-size, oldest first.
+     * Each batch is one statement: it reads the reservations from the partial index on expires_at, skips those that
+     * are being committed or released, and takes the stock row locks in (warehouse id, product id) order like
+     * transfer orders, so it cannot deadlock with them or with another instance sweeping at the same time.
+     */
+    @Scheduled(fixedDelayString = "${app.reservation.sweep-interval:PT5S}")
+    public void expireReservations() {
+        int total = 0;
+        int expired;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            Integer batch = transactionTemplate.execute(status -> {
+                @SuppressWarnings("unchecked")
+                List<Object[]> stocks = entityManager.createNativeQuery("""
+                                WITH expired AS (
+                                    UPDATE stock_reservations SET status = 'EXPIRED', closed_at = :now
+                                    WHERE id IN (SELECT id FROM stock_reservations
+                                                 WHERE status = 'ACTIVE' AND expires_at <= :now
+                                                 ORDER BY expires_at
+                                                 LIMIT :batchSize
+                                                 FOR UPDATE SKIP LOCKED)
+                                    RETURNING product_id, warehouse_id, quantity
+                                ),
+                                totals AS (
+                                    SELECT product_id, warehouse_id, SUM(quantity) AS quantity, count(*) AS reservations
+                                    FROM expired
+                                    GROUP BY product_id, warehouse_id
+                                ),
+                                locked AS (
+                                    SELECT s.id, t.quantity
+                                    FROM stocks s
+                                    JOIN totals t ON t.product_id = s.product_id AND t.warehouse_id = s.warehouse_id
+                                    ORDER BY s.warehouse_id, s.product_id
+                                    FOR UPDATE OF s
+                                ),
+                                released AS (
+                                    UPDATE stocks s SET reserved = s.reserved - l.quantity
+                                    FROM locked l
+                                    WHERE s.id = l.id
+                                    RETURNING s.id
+                                )
+                                SELECT product_id, warehouse_id, reservations FROM totals
+                                """)
+                        .setHint(HibernateHints.HINT_NATIVE_SPACES, List.of("stock_reservations", "stocks"))
+                        .setParameter("now", now)
+                        .setParameter("batchSize", sweepBatchSize)
+                        .getResultList();
+                int reservations = 0;
+                for (Object[] stock : stocks) {
+                    stockAvailabilityView.invalidateAfterCommit(((Number) stock[0]).longValue(), ((Number) stock[1]).longValue());
+                    cacheInvalidationBus.publishStock(((Number) stock[0]).longValue(), ((Number) stock[1]).longValue());
+                    reservations += ((Number) stock[2]).intValue();
+                }
+                stockRoutingService.invalidateAfterCommit(stocks.stream().map(stock -> ((Number) stock[0]).longValue()).toList());
+                return reservations;
+            });
+            expired = batch != null ? batch : 0;
+            total += expired;
+        } while (expired == sweepBatchSize);
+
+        if (total > 0) {
+            aggregateVersions.bump(AggregateVersions.Aggregate.STOCKS);
+            logger.info("Expired {} stock reservations", total);
+        }
+    }
+
+    /**
+     * Deletes the reservations closed longer ago than the retention period
+     */
+    @Scheduled(fixedDelayString = "${app.reservation.purge-interval:PT1H}", initialDelayString = "${app.reservation.purge-interval:PT1H}")
+    public void purgeClosed() {
+        Integer deleted = transactionTemplate.execute(status ->
+                entityManager.createNativeQuery("DELETE FROM stock_reservations WHERE closed_at < :cutoff")
+                        .setHint(HibernateHints.HINT_NATIVE_SPACES, "stock_reservations")
+                        .setParameter("cutoff", LocalDateTime.now().minus(retention))
+                        .executeUpdate());
+        if (deleted != null && deleted > 0) {
+            logger.info("Purged {} closed stock reservations", deleted);
+        }
+    }
+
+    /**
+     * The reservation locked until the end of the transaction; it has to be active and not past its expiry time
+     */
+    private StockReservation lockActiveReservation(Long id) {
+        StockReservation reservation = reservationRepository.findForUpdate(id)
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Reservation", "id", id));
+        if (reservation.getStatus() != StockReservation.Status.ACTIVE) {
+            throw new WarehouseException.ReservationNotActiveException(id, reservation.getStatus().name());
+        }
+        // Not swept yet; treated as expired already
+        if (!reservation.getExpiresAt().isAfter(LocalDateTime.now())) {
+            throw new WarehouseException.ReservationNotActiveException(id, StockReservation.Status.EXPIRED.name());
+        }
+        return reservation;
+    }
+
+    private void close(StockReservation reservation, StockReservation.Status status) {
+        reservation.setStatus(status);
+        reservation.setClosedAt(LocalDateTime.now());
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(reservation.getProduct().getId(), reservation.getWarehouse().getId());
+        stockRoutingService.invalidateAfterCommit(reservation.getProduct().getId());
+        cacheInvalidationBus.publishStock(reservation.getProduct().getId(), reservation.getWarehouse().getId());
+    }
+
+    /**
+     * Converts a StockReservation entity to a StockReservationResponseDTO
+     */
+    private StockReservationResponseDTO convertToResponseDTO(StockReservation reservation) {
+        StockReservationResponseDTO dto = new StockReservationResponseDTO();
+        dto.setId(reservation.getId());
+        dto.setProductId(reservation.getProduct().getId());
+        dto.setProductName(reservation.getProduct().getName());
+        dto.setWarehouseId(reservation.getWarehouse().getId());
+        dto.setWarehouseName(reservation.getWarehouse().getName());
+        dto.setQuantity(reservation.getQuantity());
+        dto.setStatus(reservation.getStatus().name());
+        dto.setCreatedAt(reservation.getCreatedAt());
+        dto.setExpiresAt(reservation.getExpiresAt());
+        dto.setClosedAt(reservation.getClosedAt());
+        return dto;
+    }
+}
@@ -0,0 +1,305 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAllocationDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketLineAvailabilityDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketLineDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.NearestWarehouseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.WarehouseFulfilmentDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.util.AfterCommit;
+import ch.hoffmann.jan.warehouse.util.GeoHash;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Order routing: the warehouses that can fulfil a quantity of a product, nearest to a point first, and the
+ * availability check of a whole basket.
+ * Nearest warehouse answers are cached per product and region, the geohash cell of the point (app.stock.routing.region-precision).
+ * An entry holds the candidates for every point of its region, read by one query from the center of the region,
+ * and is ranked for the requested point when it is used. Stock changes of a product invalidate its entries after
+ * the commit and warehouse changes all entries, also when they are made through another instance and arrive over the
+ * CacheInvalidationBus. The ttl bounds how long changes go unnoticed while the invalidation listener is disconnected.
+ */
+@Service
+public class StockRoutingService {
+
+    public static final int MAX_LIMIT = 50;
+    // Stock versions are kept per stripe of product ids; a change invalidates the entries of the whole stripe
+    private static final int STRIPES = 1024;
+    // Slack for rounding differences between the distances computed by the database and here
+    private static final double ROUNDING_KM = 0.001;
+
+    private final StockRepository stockRepository;
+    private final ProductRepository productRepository;
+    private final AggregateVersions aggregateVersions;
+    private final int regionPrecision;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLongArray stockVersions = new AtomicLongArray(STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public StockRoutingService(StockRepository stockRepository, ProductRepository productRepository,
+                               AggregateVersions aggregateVersions, MeterRegistry meterRegistry,
+                               @Value("${app.stock.routing.region-precision:5}") int regionPrecision,
+                               @Value("${app.stock.routing.cache.max-entries:10000}") int maxEntries,
+                               @Value("${app.stock.routing.cache.ttl:1m}") Duration ttl) {
+        if (regionPrecision < 1 || regionPrecision > GeoHash.MAX_PRECISION) {
+            throw new IllegalArgumentException("app.stock.routing.region-precision must be between 1 and "
+                    + GeoHash.MAX_PRECISION);
+        }
+        this.stockRepository = stockRepository;
+        this.productRepository = productRepository;
+        this.aggregateVersions = aggregateVersions;
+        this.regionPrecision = regionPrecision;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.hits = Counter.builder("stocks.routing.cache").tag("result", "hit")
+                .description("Nearest warehouse queries answered from the cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("stocks.routing.cache").tag("result", "miss")
+                .description("Nearest warehouse queries answered from the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns up to limit warehouses that have at least quantity unreserved units of the product, nearest to the
+     * point first, optionally only those within radiusKm.
+     * Not read-only: a miss must not read from the replica, which can lag behind the commits the cache follows.
+     */
+    @Transactional
+    public List<NearestWarehouseDTO> findNearestWarehouses(Long productId, double latitude, double longitude,
+                                                           int quantity, int limit, Double radiusKm) {
+        if (!GeoHash.isValid(latitude, longitude)) {
+            throw new WarehouseException.ValidationException(
+                    "Latitude must be between -90 and 90 and longitude between -180 and 180");
+        }
+        if (quantity < 1) {
+            throw new WarehouseException.ValidationException("Quantity must be at least 1");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new WarehouseException.ValidationException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (radiusKm != null && !(radiusKm > 0)) {
+            throw new WarehouseException.ValidationException("Radius must be greater than 0");
+        }
+        // From the second-level cache
+        if (productRepository.findById(productId).isEmpty()) {
+            throw new WarehouseException.ResourceNotFoundException("Product", "id", productId);
+        }
+
+        Key key = new Key(productId, GeoHash.encode(latitude, longitude, regionPrecision), quantity, limit, radiusKm);
+        long stockVersion = stockVersions.get(stripe(productId));
+        long warehouseVersion = aggregateVersions.version(AggregateVersions.Aggregate.WAREHOUSES);
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.stockVersion() == stockVersion && entry.warehouseVersion() == warehouseVersion
+                && entry.expiresAt() > now) {
+            hits.increment();
+        } else {
+            misses.increment();
+            // Versions read before the query: a change committed meanwhile leaves the entry outdated, never wrong
+            entry = new Entry(loadCandidates(key), stockVersion, warehouseVersion, now + ttlMillis);
+            if (cache.size() >= maxEntries) {
+                cache.values().removeIf(cached -> cached.expiresAt() <= now);
+                if (cache.size() >= maxEntries) {
+                    cache.clear();
+                }
+            }
+            cache.put(key, entry);
+        }
+        return rank(entry.candidates(), latitude, longitude, limit, radiusKm);
+    }
+
+    /**
+     * Checks a basket in one round trip: the availability of each line, which warehouses can ship which lines and
+     * an allocation to one or more warehouses (see BasketAllocator). Lines of the same product are merged.
+     * The stock of all lines is read with one query; with delivery coordinates nearer warehouses are preferred.
+     */
+    @Transactional(readOnly = true)
+    public BasketAvailabilityResponseDTO checkBasket(BasketAvailabilityRequestDTO basketRequest) {
+        Double latitude = basketRequest.getLatitude();
+        Double longitude = basketRequest.getLongitude();
+        if ((latitude == null) != (longitude == null)) {
+            throw new WarehouseException.ValidationException("Latitude and longitude must be given together");
+        }
+
+        Map<Long, Integer> demand = new LinkedHashMap<>();
+        for (BasketLineDTO line : basketRequest.getLines()) {
+            try {
+                demand.merge(line.getProductId(), line.getQuantity(), Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new WarehouseException.ValidationException("The lines of product " + line.getProductId()
+                        + " add up to more than " + Integer.MAX_VALUE + " units");
+            }
+        }
+        Map<Long, Product> products = productRepository.findAllById(demand.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long productId : demand.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new WarehouseException.ResourceNotFoundException("Product", "id", productId);
+            }
+        }
+
+        // Unreserved units per warehouse and product
+        Map<Long, Map<Long, Integer>> available = new HashMap<>();
+        Map<Long, String> warehouseNames = new HashMap<>();
+        Map<Long, Double> distances = new HashMap<>();
+        for (Object[] row : stockRepository.findAvailableByProductIds(demand.keySet())) {
+            long productId = ((Number) row[0]).longValue();
+            long warehouseId = ((Number) row[1]).longValue();
+            available.computeIfAbsent(warehouseId, id -> new HashMap<>()).put(productId, ((Number) row[5]).intValue());
+            warehouseNames.put(warehouseId, (String) row[2]);
+            if (latitude != null && row[3] != null) {
+                distances.put(warehouseId, GeoHash.distanceKm(latitude, longitude,
+                        ((Number) row[3]).doubleValue(), ((Number) row[4]).doubleValue()));
+            }
+        }
+        // Warehouses without coordinates come last when routing to a point
+        Map<Long, Double> costs = new HashMap<>(distances);
+        if (latitude != null) {
+            available.keySet().forEach(warehouseId -> costs.putIfAbsent(warehouseId, Double.POSITIVE_INFINITY));
+        }
+
+        BasketAllocator.Result result = BasketAllocator.allocate(demand, available, costs);
+
+        Map<Long, Integer> allocated = new HashMap<>();
+        List<BasketAllocationDTO> allocations = new ArrayList<>();
+        for (BasketAllocator.Allocation allocation : result.allocations()) {
+            allocated.merge(allocation.productId(), allocation.quantity(), Integer::sum);
+            allocations.add(new BasketAllocationDTO(allocation.warehouseId(), warehouseNames.get(allocation.warehouseId()),
+                    allocation.productId(), allocation.quantity()));
+        }
+
+        List<BasketLineAvailabilityDTO> lines = demand.entrySet().stream()
+                .map(line -> new BasketLineAvailabilityDTO(line.getKey(), products.get(line.getKey()).getName(),
+                        line.getValue(),
+                        available.values().stream().mapToLong(stock -> stock.getOrDefault(line.getKey(), 0)).sum(),
+                        allocated.getOrDefault(line.getKey(), 0)))
+                .toList();
+
+        List<WarehouseFulfilmentDTO> warehouses = available.entrySet().stream()
+                .map(warehouse -> {
+                    int fulfillableLines = (int) demand.entrySet().stream()
+                            .filter(line -> warehouse.getValue().getOrDefault(line.getKey(), 0) >= line.getValue())
+                            .count();
+                    return new WarehouseFulfilmentDTO(warehouse.getKey(), warehouseNames.get(warehouse.getKey()),
+                            distances.get(warehouse.getKey()), fulfillableLines, fulfillableLines == demand.size());
+                })
+                .sorted(Comparator.comparing(WarehouseFulfilmentDTO::isComplete).reversed()
+                        .thenComparing(WarehouseFulfilmentDTO::getDistanceKm, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(WarehouseFulfilmentDTO::getWarehouseId))
+                .toList();
+
+        BasketAvailabilityResponseDTO response = new BasketAvailabilityResponseDTO();
+        response.setFulfillable(result.type() != BasketAvailabilityResponseDTO.AllocationType.PARTIAL);
+        response.setAllocationType(result.type());
+        response.setShipments((int) allocations.stream().map(BasketAllocationDTO::getWarehouseId).distinct().count());
+        response.setLines(lines);
+        response.setWarehouses(warehouses);
+        response.setAllocations(allocations);
+        return response;
+    }
+
+    /**
+     * Invalidates the cached answers for the product once the current transaction has committed
+     */
+    public void invalidateAfterCommit(Long productId) {
+        AfterCommit.run(() -> stockVersions.incrementAndGet(stripe(productId)));
+    }
+
+    /**
+     * Invalidates the cached answers for the products once the current transaction has committed
+     */
+    public void invalidateAfterCommit(Collection<Long> productIds) {
+        int[] stripes = productIds.stream().mapToInt(StockRoutingService::stripe).distinct().toArray();
+        AfterCommit.run(() -> {
+            for (int stripe : stripes) {
+                stockVersions.incrementAndGet(stripe);
+            }
+        });
+    }
+
+    /**
+     * Drops every cached answer, e.g. when stock changes of other instances may have been missed
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * Reads the candidates for every point of the region: its center is at most cellRadius away from such a point,
+     * so a warehouse within radiusKm of the point is within radiusKm + cellRadius of the center, and one among
+     * the limit nearest of the point is at most 2 * cellRadius farther from the center than the limit-th nearest.
+     */
+    private List<NearestWarehouseDTO> loadCandidates(Key key) {
+        double[] bounds = GeoHash.bounds(key.region());
+        double centerLatitude = (bounds[0] + bounds[1]) / 2;
+        double centerLongitude = (bounds[2] + bounds[3]) / 2;
+        double cellRadius = GeoHash.cellRadiusKm(key.region()) + ROUNDING_KM;
+
+        Double maxDistance = null;
+        String cells = null;
+        if (key.radiusKm() != null) {
+            maxDistance = key.radiusKm() + cellRadius;
+            List<String> covering = GeoHash.coveringCells(centerLatitude, centerLongitude, maxDistance);
+            if (!covering.isEmpty()) {
+                cells = covering.stream().collect(Collectors.joining(",", "{", "}"));
+            }
+        }
+        return stockRepository.findNearestAvailable(key.productId(), key.quantity(), centerLatitude, centerLongitude,
+                        maxDistance, cells, key.limit(), 2 * cellRadius).stream()
+                .map(row -> new NearestWarehouseDTO(row.getWarehouseId(), row.getWarehouseName(), row.getLocation(),
+                        row.getLatitude(), row.getLongitude(), row.getAvailableQuantity(), null))
+                .toList();
+    }
+
+    private static List<NearestWarehouseDTO> rank(List<NearestWarehouseDTO> candidates, double latitude,
+                                                  double longitude, int limit, Double radiusKm) {
+        return candidates.stream()
+                .map(candidate -> new NearestWarehouseDTO(candidate.getWarehouseId(), candidate.getWarehouseName(),
+                        candidate.getLocation(), candidate.getLatitude(), candidate.getLongitude(),
+                        candidate.getAvailableQuantity(),
+                        GeoHash.distanceKm(latitude, longitude, candidate.getLatitude(), candidate.getLongitude())))
+                .filter(candidate -> radiusKm == null || candidate.getDistanceKm() <= radiusKm)
+                .sorted(Comparator.comparingDouble(NearestWarehouseDTO::getDistanceKm)
+                        .thenComparing(NearestWarehouseDTO::getWarehouseId))
+                .limit(limit)
+                .toList();
+    }
+
+    private static int stripe(Long productId) {
+        return (int) Math.floorMod(productId, (long) STRIPES);
+    }
+
+    private record Key(long productId, String region, int quantity, int limit, Double radiusKm) {
+    }
+
+    private record Entry(List<NearestWarehouseDTO> candidates, long stockVersion, long warehouseVersion,
+                         long expiresAt) {
+    }
+}
@@ -1,53 +1,109 @@
 package ch.hoffmann.jan.warehouse.service;
 
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.event.StockTransferredEventDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockTransferRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderLineDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderLineResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderResponseDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Audit;
 import ch.hoffmann.jan.warehouse.model.Product;
 import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.TransferOrder;
+import ch.hoffmann.jan.warehouse.model.User;
 import ch.hoffmann.jan.warehouse.model.Warehouse;
 import ch.hoffmann.jan.warehouse.repository.ProductRepository;
 import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.TransferOrderRepository;
 import ch.hoffmann.jan.warehouse.repository.UserRepository;
 import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class StockService {
 
     private final StockRepository stockRepository;
+    private final TransferOrderRepository transferOrderRepository;
     private final ProductRepository productRepository;
     private final WarehouseRepository warehouseRepository;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final AggregateVersions aggregateVersions;
+    private final OutboxService outboxService;
+    private final StockWriteCoalescer stockWriteCoalescer;
+    private final StockAvailabilityView stockAvailabilityView;
+    private final StockRoutingService stockRoutingService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final TransactionTemplate transactionTemplate;
     private final Logger logger = LoggerFactory.getLogger(StockService.class);
 
     @Autowired
-    public StockService(StockRepository stockRepository, ProductRepository productRepository,
-                        WarehouseRepository warehouseRepository, UserRepository userRepository, AuditService auditService) {
+    public StockService(StockRepository stockRepository, TransferOrderRepository transferOrderRepository,
+                        ProductRepository productRepository,
+                        WarehouseRepository warehouseRepository, UserRepository userRepository, AuditService auditService,
+                        AggregateVersions aggregateVersions, OutboxService outboxService,
+                        StockWriteCoalescer stockWriteCoalescer, StockAvailabilityView stockAvailabilityView,
+                        StockRoutingService stockRoutingService, CacheInvalidationBus cacheInvalidationBus,
+                        PlatformTransactionManager transactionManager) {
         this.stockRepository = stockRepository;
+        this.transferOrderRepository = transferOrderRepository;
         this.productRepository = productRepository;
         this.warehouseRepository = warehouseRepository;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.aggregateVersions = aggregateVersions;
+        this.outboxService = outboxService;
+        this.stockWriteCoalescer = stockWriteCoalescer;
+        this.stockAvailabilityView = stockAvailabilityView;
+        this.stockRoutingService = stockRoutingService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        stockWriteCoalescer.setWriter(this::writeCoalesced);
     }
 
+    /**
+     * Passes all stock entries to the consumer, ordered by id, as they are read from one streamed query
+     */
     @Transactional(readOnly = true)
-    public List<StockResponseDTO> getAllStocks() {
-        return stockRepository.findAll().stream()
-                .map(this::convertToResponseDTO)
-                .collect(Collectors.toList());
+    public void streamAllStocks(Consumer<StockResponseDTO> consumer) {
+        try (Stream<Object[]> rows = stockRepository.streamAllWithNames()) {
+            rows.forEach(row -> {
+                StockResponseDTO dto = new StockResponseDTO();
+                dto.setId((Long) row[0]);
+                dto.setProductId((Long) row[1]);
+                dto.setProductName((String) row[2]);
+                dto.setWarehouseId((Long) row[3]);
+                dto.setWarehouseName((String) row[4]);
+                dto.setQuantity((Integer) row[5]);
+                dto.setReserved((Integer) row[6]);
+                consumer.accept(dto);
+            });
+        }
     }
 
     @Transactional(readOnly = true)
@@ -70,6 +126,10 @@ public class StockService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Product and warehouse come from the second-level cache; the stock entry from the availability view when it
+     * is enabled and can answer, so a hit needs no query at all
+     */
     @Transactional(readOnly = true)
     public StockResponseDTO getStockByProductAndWarehouse(Long productId, Long warehouseId) {
         Product product = productRepository.findById(productId)
@@ -78,6 +138,23 @@ public class StockService {
         Warehouse warehouse = warehouseRepository.findById(warehouseId)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", warehouseId));
 
+        StockAvailabilityView.Availability availability = stockAvailabilityView.get(productId, warehouseId);
+        if (availability != null) {
+            if (!availability.exists()) {
+                throw new WarehouseException.ResourceNotFoundException("Stock", "product and warehouse",
+                        productId + ", " + warehouseId);
+            }
+            StockResponseDTO dto = new StockResponseDTO();
+            dto.setId(availability.stockId());
+            dto.setProductId(product.getId());
+            dto.setProductName(product.getName());
+            dto.setWarehouseId(warehouse.getId());
+            dto.setWarehouseName(warehouse.getName());
+            dto.setQuantity(availability.quantity());
+            dto.setReserved(availability.reserved());
+            return dto;
+        }
+
         Stock stock = stockRepository.findByProductAndWarehouse(product, warehouse)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Stock", "product and warehouse",
                         productId + ", " + warehouseId));
@@ -107,6 +184,10 @@ public class StockService {
         stock.setQuantity(createRequest.getQuantity());
 
         Stock savedStock = stockRepository.save(stock);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(product.getId(), warehouse.getId());
+        stockRoutingService.invalidateAfterCommit(product.getId());
+        cacheInvalidationBus.publishStock(product.getId(), warehouse.getId());
 
         // Create audit log
         auditService.logAuditEvent(
@@ -117,6 +198,8 @@ public class StockService {
                 "ADD",
                 createRequest.getQuantity()
         );
+        outboxService.record(new StockAdjustedEventDTO(product.getId(), warehouse.getId(), "ADD",
+                createRequest.getQuantity(), savedStock.getQuantity(), userId));
 
         logger.info("Created new stock: {} units of product {} in warehouse {}",
                 createRequest.getQuantity(), product.getName(), warehouse.getName());
@@ -124,16 +207,36 @@ public class StockService {
         return convertToResponseDTO(savedStock);
     }
 
-    @Transactional
+    /**
+     * Adds or removes stock; returns null if the stock was removed completely.
+     * Updates of coalesced warehouses are combined with concurrent updates of the same stock entry
+     * (see {@link StockWriteCoalescer}); this thread only waits for their transaction.
+     * Within a caller's transaction (e.g. the claim of an Idempotency-Key) the update is never coalesced: it has to
+     * commit or roll back with that transaction, whose connection would otherwise be held while the flush needs another.
+     */
     public StockResponseDTO updateStock(StockUpdateRequestDTO updateRequest, Long userId) {
+        if (stockWriteCoalescer.isCoalesced(updateRequest.getWarehouseId())
+                && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return stockWriteCoalescer.submit(updateRequest, userId);
+        }
+        return transactionTemplate.execute(status -> applyUpdate(updateRequest, userId));
+    }
+
+    private StockResponseDTO applyUpdate(StockUpdateRequestDTO updateRequest, Long userId) {
         Product product = productRepository.findById(updateRequest.getProductId())
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", updateRequest.getProductId()));
 
         Warehouse warehouse = warehouseRepository.findById(updateRequest.getWarehouseId())
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", updateRequest.getWarehouseId()));
 
-        Optional<Stock> stockOptional = stockRepository.findByProductAndWarehouse(product, warehouse);
+        // Locked, so that the reserved units checked below cannot change until the update is written
+        Optional<Stock> stockOptional = stockRepository.findForUpdate(product.getId(), warehouse.getId());
         Stock stock;
+        // Registered up front for every branch; they are dropped if the update rolls back
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(product.getId(), warehouse.getId());
+        stockRoutingService.invalidateAfterCommit(product.getId());
+        cacheInvalidationBus.publishStock(product.getId(), warehouse.getId());
 
         if (stockOptional.isPresent()) {
             stock = stockOptional.get();
@@ -143,14 +246,24 @@ public class StockService {
                 logger.info("Added {} units to stock of product {} in warehouse {}",
                         updateRequest.getQuantity(), product.getName(), warehouse.getName());
             } else {
-                // Remove stock
-                if (stock.getQuantity() < updateRequest.getQuantity()) {
+                // Remove stock; reserved units cannot be removed
+                if (stock.getAvailable() < updateRequest.getQuantity()) {
                     throw new WarehouseException.InsufficientStockException(
-                            product.getName(), warehouse.getName(), updateRequest.getQuantity(), stock.getQuantity());
+                            product.getName(), warehouse.getName(), updateRequest.getQuantity(), stock.getAvailable());
                 }
                 stock.setQuantity(stock.getQuantity() - updateRequest.getQuantity());
                 if (stock.getQuantity() == 0) {
                     stockRepository.delete(stock);
+                    auditService.logAuditEvent(
+                            userRepository.findById(userId).get(),
+                            product,
+                            warehouse,
+                            null,
+                            "REMOVE",
+                            updateRequest.getQuantity()
+                    );
+                    outboxService.record(new StockAdjustedEventDTO(product.getId(), warehouse.getId(), "REMOVE",
+                            updateRequest.getQuantity(), 0, userId));
                     logger.info("Deleted stock of product {} in warehouse {} as quantity reached 0",
                             product.getName(), warehouse.getName());
                     return null;
@@ -184,6 +297,9 @@ public class StockService {
                 updateRequest.isAddition() ? "ADD" : "REMOVE",
                 updateRequest.getQuantity()
         );
+        outboxService.record(new StockAdjustedEventDTO(product.getId(), warehouse.getId(),
+                updateRequest.isAddition() ? "ADD" : "REMOVE", updateRequest.getQuantity(),
+                updatedStock.getQuantity(), userId));
 
         return convertToResponseDTO(updatedStock);
     }
@@ -204,14 +320,25 @@ public class StockService {
         Warehouse targetWarehouse = warehouseRepository.findById(transferRequest.getTargetWarehouseId())
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Target Warehouse", "id", transferRequest.getTargetWarehouseId()));
 
+        // Both stock entries are locked (see applyUpdate), lower warehouse id first as in createTransferOrder
+        Optional<Stock> sourceStockOptional;
+        Optional<Stock> targetStockOptional;
+        if (sourceWarehouse.getId() < targetWarehouse.getId()) {
+            sourceStockOptional = stockRepository.findForUpdate(product.getId(), sourceWarehouse.getId());
+            targetStockOptional = stockRepository.findForUpdate(product.getId(), targetWarehouse.getId());
+        } else {
+            targetStockOptional = stockRepository.findForUpdate(product.getId(), targetWarehouse.getId());
+            sourceStockOptional = stockRepository.findForUpdate(product.getId(), sourceWarehouse.getId());
+        }
+
         // Check if source stock exists
-        Stock sourceStock = stockRepository.findByProductAndWarehouse(product, sourceWarehouse)
+        Stock sourceStock = sourceStockOptional
                 .orElseThrow(() -> new WarehouseException.StockNotFoundException(product.getName(), sourceWarehouse.getName()));
 
-        // Check if there's enough stock
-        if (sourceStock.getQuantity() < transferRequest.getQuantity()) {
+        // Check if there's enough stock that is not reserved
+        if (sourceStock.getAvailable() < transferRequest.getQuantity()) {
             throw new WarehouseException.InsufficientStockException(
-                    product.getName(), sourceWarehouse.getName(), transferRequest.getQuantity(), sourceStock.getQuantity());
+                    product.getName(), sourceWarehouse.getName(), transferRequest.getQuantity(), sourceStock.getAvailable());
         }
 
         // Reduce source stock
@@ -225,7 +352,6 @@ public class StockService {
         }
 
         // Increase target stock
-        Optional<Stock> targetStockOptional = stockRepository.findByProductAndWarehouse(product, targetWarehouse);
         Stock targetStock;
 
         if (targetStockOptional.isPresent()) {
@@ -239,6 +365,12 @@ public class StockService {
         }
 
         stockRepository.save(targetStock);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(product.getId(), sourceWarehouse.getId());
+        stockAvailabilityView.invalidateAfterCommit(product.getId(), targetWarehouse.getId());
+        stockRoutingService.invalidateAfterCommit(product.getId());
+        cacheInvalidationBus.publishStock(product.getId(), sourceWarehouse.getId());
+        cacheInvalidationBus.publishStock(product.getId(), targetWarehouse.getId());
 
         // Create audit log
         auditService.logAuditEvent(
@@ -249,11 +381,242 @@ public class StockService {
                 "TRANSFER",
                 transferRequest.getQuantity()
         );
+        outboxService.record(new StockTransferredEventDTO(product.getId(), sourceWarehouse.getId(), targetWarehouse.getId(),
+                transferRequest.getQuantity(), userId));
 
         logger.info("Transferred {} units of product {} from warehouse {} to warehouse {}",
                 transferRequest.getQuantity(), product.getName(), sourceWarehouse.getName(), targetWarehouse.getName());
     }
 
+    /**
+     * Moves many products between two warehouses in one transaction.
+     * Lines of the same product are merged. The stock rows of both warehouses are read and locked with one query
+     * per warehouse (lower warehouse id first, then by product id), all lines are checked before anything is changed,
+     * and the changes are written in JDBC batches together with one order header and one audit line per product.
+     */
+    @Transactional
+    public TransferOrderResponseDTO createTransferOrder(TransferOrderRequestDTO orderRequest, Long userId) {
+        if (Objects.equals(orderRequest.getSourceWarehouseId(), orderRequest.getTargetWarehouseId())) {
+            throw new WarehouseException.SameWarehouseTransferException(orderRequest.getSourceWarehouseId().toString());
+        }
+
+        // No merged line can overflow if the total does not
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        int totalQuantity = 0;
+        for (TransferOrderLineDTO line : orderRequest.getLines()) {
+            try {
+                totalQuantity = Math.addExact(totalQuantity, line.getQuantity());
+            } catch (ArithmeticException e) {
+                throw new WarehouseException.ValidationException(
+                        "The order must not move more than " + Integer.MAX_VALUE + " units");
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+
+        Warehouse sourceWarehouse = warehouseRepository.findById(orderRequest.getSourceWarehouseId())
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Source Warehouse", "id", orderRequest.getSourceWarehouseId()));
+
+        Warehouse targetWarehouse = warehouseRepository.findById(orderRequest.getTargetWarehouseId())
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Target Warehouse", "id", orderRequest.getTargetWarehouseId()));
+
+        Map<Long, Product> products = productRepository.findAllById(quantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long productId : quantities.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new WarehouseException.ResourceNotFoundException("Product", "id", productId);
+            }
+        }
+
+        // Same lock order in every transfer order, whatever its direction
+        Map<Long, Stock> sourceStocks;
+        Map<Long, Stock> targetStocks;
+        if (sourceWarehouse.getId() < targetWarehouse.getId()) {
+            sourceStocks = lockStocks(sourceWarehouse, quantities);
+            targetStocks = lockStocks(targetWarehouse, quantities);
+        } else {
+            targetStocks = lockStocks(targetWarehouse, quantities);
+            sourceStocks = lockStocks(sourceWarehouse, quantities);
+        }
+
+        // Check every line before changing anything
+        quantities.forEach((productId, quantity) -> {
+            Stock sourceStock = sourceStocks.get(productId);
+            if (sourceStock == null) {
+                throw new WarehouseException.StockNotFoundException(products.get(productId).getName(), sourceWarehouse.getName());
+            }
+            if (sourceStock.getAvailable() < quantity) {
+                throw new WarehouseException.InsufficientStockException(
+                        products.get(productId).getName(), sourceWarehouse.getName(), quantity, sourceStock.getAvailable());
+            }
+        });
+
+        LocalDateTime now = LocalDateTime.now();
+        User user = userRepository.findById(userId).get();
+        TransferOrder order = transferOrderRepository.save(
+                new TransferOrder(sourceWarehouse, targetWarehouse, user, quantities.size(), totalQuantity, now));
+
+        List<Stock> emptiedStocks = new ArrayList<>();
+        List<Stock> newStocks = new ArrayList<>();
+        List<Audit> audits = new ArrayList<>();
+        List<TransferOrderLineResponseDTO> lines = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            Product product = products.get(productId);
+
+            // Updates of managed entities are flushed as batched UPDATEs
+            Stock sourceStock = sourceStocks.get(productId);
+            sourceStock.setQuantity(sourceStock.getQuantity() - quantity);
+            if (sourceStock.getQuantity() == 0) {
+                emptiedStocks.add(sourceStock);
+            }
+
+            Stock targetStock = targetStocks.get(productId);
+            if (targetStock != null) {
+                targetStock.setQuantity(targetStock.getQuantity() + quantity);
+            } else {
+                targetStock = new Stock();
+                targetStock.setProduct(product);
+                targetStock.setWarehouse(targetWarehouse);
+                targetStock.setQuantity(quantity);
+                newStocks.add(targetStock);
+            }
+
+            Audit audit = new Audit();
+            audit.setUser(user);
+            audit.setProduct(product);
+            audit.setWarehouse(sourceWarehouse);
+            audit.setTargetWarehouse(targetWarehouse);
+            audit.setTransferOrder(order);
+            audit.setAction("TRANSFER");
+            audit.setQuantity(quantity);
+            audit.setTimestamp(now);
+            audits.add(audit);
+
+            outboxService.record(new StockTransferredEventDTO(productId, sourceWarehouse.getId(), targetWarehouse.getId(),
+                    quantity, userId));
+            lines.add(new TransferOrderLineResponseDTO(productId, product.getName(), quantity,
+                    sourceStock.getQuantity(), targetStock.getQuantity()));
+        });
+
+        stockRepository.deleteAll(emptiedStocks);
+        stockRepository.saveAll(newStocks);
+        auditService.saveAudits(audits);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(quantities.keySet(), sourceWarehouse.getId());
+        stockAvailabilityView.invalidateAfterCommit(quantities.keySet(), targetWarehouse.getId());
+        stockRoutingService.invalidateAfterCommit(quantities.keySet());
+        cacheInvalidationBus.publishStocks(quantities.keySet(), sourceWarehouse.getId());
+        cacheInvalidationBus.publishStocks(quantities.keySet(), targetWarehouse.getId());
+
+        logger.info("Transfer order {}: moved {} units of {} products from warehouse {} to warehouse {}",
+                order.getId(), totalQuantity, quantities.size(), sourceWarehouse.getName(), targetWarehouse.getName());
+
+        TransferOrderResponseDTO response = new TransferOrderResponseDTO();
+        response.setId(order.getId());
+        response.setSourceWarehouseId(sourceWarehouse.getId());
+        response.setSourceWarehouseName(sourceWarehouse.getName());
+        response.setTargetWarehouseId(targetWarehouse.getId());
+        response.setTargetWarehouseName(targetWarehouse.getName());
+        response.setTotalQuantity(totalQuantity);
+        response.setCreatedAt(now);
+        response.setLines(lines);
+        return response;
+    }
+
+    /**
+     * Applies the buffered updates of one stock entry in arrival order with one read (under a row lock) and one write.
+     * An update that would make the quantity negative is rejected on its own; every applied update gets its audit
+     * entry and event, and its result is the stock right after it.
+     */
+    private void writeCoalesced(Long productId, Long warehouseId, List<StockWriteCoalescer.PendingUpdate> updates) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Product", "id", productId));
+
+        Warehouse warehouse = warehouseRepository.findById(warehouseId)
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", warehouseId));
+
+        Stock stock = stockRepository.findForUpdate(productId, warehouseId).orElse(null);
+        int quantity = stock != null ? stock.getQuantity() : 0;
+        int reserved = stock != null ? stock.getReserved() : 0;
+        Map<Long, User> users = new HashMap<>();
+        Map<StockWriteCoalescer.PendingUpdate, Integer> applied = new HashMap<>();
+
+        for (StockWriteCoalescer.PendingUpdate update : updates) {
+            StockUpdateRequestDTO request = update.getRequest();
+            if (!request.isAddition()) {
+                // A quantity of 0 means there is no stock entry at this point
+                if (quantity == 0) {
+                    update.reject(new WarehouseException.StockNotFoundException(product.getName(), warehouse.getName()));
+                    continue;
+                }
+                if (quantity - reserved < request.getQuantity()) {
+                    update.reject(new WarehouseException.InsufficientStockException(
+                            product.getName(), warehouse.getName(), request.getQuantity(), quantity - reserved));
+                    continue;
+                }
+            }
+            quantity += request.isAddition() ? request.getQuantity() : -request.getQuantity();
+            applied.put(update, quantity);
+
+            String action = request.isAddition() ? "ADD" : "REMOVE";
+            auditService.logAuditEvent(
+                    users.computeIfAbsent(update.getUserId(), id -> userRepository.findById(id).get()),
+                    product,
+                    warehouse,
+                    null,
+                    action,
+                    request.getQuantity()
+            );
+            outboxService.record(new StockAdjustedEventDTO(productId, warehouseId, action, request.getQuantity(),
+                    quantity, update.getUserId()));
+        }
+        if (applied.isEmpty()) {
+            return;
+        }
+
+        // One write for the whole batch
+        if (quantity == 0) {
+            if (stock != null) {
+                stockRepository.delete(stock);
+            }
+        } else if (stock == null) {
+            stock = new Stock();
+            stock.setProduct(product);
+            stock.setWarehouse(warehouse);
+            stock.setQuantity(quantity);
+            stock = stockRepository.save(stock);
+        } else {
+            stock.setQuantity(quantity);
+        }
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+        stockAvailabilityView.invalidateAfterCommit(productId, warehouseId);
+        stockRoutingService.invalidateAfterCommit(productId);
+        cacheInvalidationBus.publishStock(productId, warehouseId);
+
+        Long stockId = stock != null ? stock.getId() : null;
+        applied.forEach((update, result) -> {
+            if (result == 0) {
+                update.succeed(null);
+                return;
+            }
+            StockResponseDTO dto = new StockResponseDTO();
+            dto.setId(stockId);
+            dto.setProductId(productId);
+            dto.setProductName(product.getName());
+            dto.setWarehouseId(warehouseId);
+            dto.setWarehouseName(warehouse.getName());
+            dto.setQuantity(result);
+            dto.setReserved(reserved);
+            update.succeed(dto);
+        });
+        logger.info("Applied {} of {} coalesced updates to stock of product {} in warehouse {}, now {} units",
+                applied.size(), updates.size(), product.getName(), warehouse.getName(), quantity);
+    }
+
+    private Map<Long, Stock> lockStocks(Warehouse warehouse, Map<Long, Integer> quantities) {
+        return stockRepository.findForUpdateByWarehouse(warehouse.getId(), quantities.keySet()).stream()
+                .collect(Collectors.toMap(stock -> stock.getProduct().getId(), Function.identity()));
+    }
+
     /**
      * Converts a Stock entity to a StockResponseDTO
      */
@@ -265,6 +628,7 @@ public class StockService {
         dto.setWarehouseId(stock.getWarehouse().getId());
         dto.setWarehouseName(stock.getWarehouse().getName());
         dto.setQuantity(stock.getQuantity());
+        dto.setReserved(stock.getReserved());
         return dto;
     }
 }
\ No newline at end of file
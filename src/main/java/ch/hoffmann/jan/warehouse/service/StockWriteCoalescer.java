@@ -0,0 +1,233 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write combining for stock updates on hot rows (opt-in with app.stock.coalescing.enabled).
+ * Updates are buffered per (product, warehouse) in striped buffers and flushed on the coalescer threads every
+ * interval, or right away once a stripe holds max-batch updates. Each key is flushed in its own transaction by
+ * the {@link Writer}, which locks the row once, applies the updates in arrival order and writes the result with
+ * a single UPDATE. The callers wait until that transaction has committed and get their own result or error.
+ */
+@Component
+public class StockWriteCoalescer implements DisposableBean {
+
+    /**
+     * Applies the buffered updates of one key; called inside the flush transaction
+     */
+    public interface Writer {
+        void write(Long productId, Long warehouseId, List<PendingUpdate> updates);
+    }
+
+    private final boolean enabled;
+    private final Set<Long> warehouseIds;
+    private final int maxBatch;
+    private final Duration timeout;
+    private final Stripe[] stripes;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService executor;
+    private volatile Writer writer;
+    private final Logger logger = LoggerFactory.getLogger(StockWriteCoalescer.class);
+
+    @Autowired
+    public StockWriteCoalescer(PlatformTransactionManager transactionManager,
+                               @Value("${app.stock.coalescing.enabled:false}") boolean enabled,
+                               @Value("${app.stock.coalescing.warehouses:}") Set<Long> warehouseIds,
+                               @Value("${app.stock.coalescing.interval:5ms}") Duration interval,
+                               @Value("${app.stock.coalescing.max-batch:64}") int maxBatch,
+                               @Value("${app.stock.coalescing.stripes:16}") int stripeCount,
+                               @Value("${app.stock.coalescing.flush-threads:2}") int flushThreads,
+                               @Value("${app.stock.coalescing.timeout:10s}") Duration timeout) {
+        this.enabled = enabled;
+        this.warehouseIds = warehouseIds;
+        this.maxBatch = maxBatch;
+        this.timeout = timeout;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        // Always a new transaction, also when a flush is triggered from a thread that already has one
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        if (enabled) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newScheduledThreadPool(flushThreads, runnable -> {
+                Thread thread = new Thread(runnable, "stock-coalescer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMicros = interval.toNanos() / 1000;
+            executor.scheduleWithFixedDelay(this::flushAll, intervalMicros, intervalMicros, TimeUnit.MICROSECONDS);
+            logger.info("Stock write coalescing enabled for {} (interval {}, max batch {})",
+                    warehouseIds.isEmpty() ? "all warehouses" : "warehouses " + warehouseIds, interval, maxBatch);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public void setWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Whether updates of this warehouse go through the coalescer
+     */
+    public boolean isCoalesced(Long warehouseId) {
+        return enabled && (warehouseIds.isEmpty() || warehouseIds.contains(warehouseId));
+    }
+
+    /**
+     * Buffers the update and waits until it has been written; returns the stock after this update
+     * (null if it brought the quantity to 0) or throws the error of this update
+     */
+    public StockResponseDTO submit(StockUpdateRequestDTO request, Long userId) {
+        PendingUpdate update = new PendingUpdate(request, userId);
+        Key key = new Key(request.getProductId(), request.getWarehouseId());
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+
+        boolean full;
+        synchronized (stripe) {
+            stripe.pending.computeIfAbsent(key, k -> new ArrayList<>()).add(update);
+            full = ++stripe.size >= maxBatch;
+        }
+        if (full) {
+            executor.execute(() -> flush(stripe));
+        }
+
+        try {
+            return update.future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // The update stays queued and may still be applied
+            throw new IllegalStateException("Stock update of product " + key.productId() + " in warehouse "
+                    + key.warehouseId() + " was not written within " + timeout + "; its outcome is unknown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the stock update", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+            // Write what is still buffered so no caller is left waiting
+            flushAll();
+        }
+    }
+
+    private void flushAll() {
+        for (Stripe stripe : stripes) {
+            flush(stripe);
+        }
+    }
+
+    private void flush(Stripe stripe) {
+        Map<Key, List<PendingUpdate>> batch;
+        synchronized (stripe) {
+            if (stripe.size == 0) {
+                return;
+            }
+            batch = stripe.pending;
+            stripe.pending = new LinkedHashMap<>();
+            stripe.size = 0;
+        }
+        batch.forEach(this::flushKey);
+    }
+
+    private void flushKey(Key key, List<PendingUpdate> updates) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    writer.write(key.productId(), key.warehouseId(), updates));
+        } catch (RuntimeException e) {
+            logger.warn("Coalesced write of {} stock updates for product {} in warehouse {} failed: {}",
+                    updates.size(), key.productId(), key.warehouseId(), e.getMessage());
+            updates.forEach(update -> update.future.completeExceptionally(e));
+            return;
+        }
+        // Only now the updates are durable
+        updates.forEach(PendingUpdate::complete);
+        if (updates.size() > 1) {
+            logger.debug("Coalesced {} stock updates for product {} in warehouse {}",
+                    updates.size(), key.productId(), key.warehouseId());
+        }
+    }
+
+    /**
+     * One buffered update; the writer records its result or error, which is handed to the caller after commit
+     */
+    public static class PendingUpdate {
+
+        private final StockUpdateRequestDTO request;
+        private final Long userId;
+        private final CompletableFuture<StockResponseDTO> future = new CompletableFuture<>();
+        private StockResponseDTO result;
+        private RuntimeException error;
+
+        PendingUpdate(StockUpdateRequestDTO request, Long userId) {
+            this.request = request;
+            this.userId = userId;
+        }
+
+        public StockUpdateRequestDTO getRequest() {
+            return request;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public void succeed(StockResponseDTO result) {
+            this.result = result;
+        }
+
+        public void reject(RuntimeException error) {
+            this.error = error;
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    private record Key(Long productId, Long warehouseId) {
+    }
+
+    private static class Stripe {
+        private Map<Key, List<PendingUpdate>> pending = new LinkedHashMap<>();
+        private int size;
+    }
+}
@@ -0,0 +1,154 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.ReplicaRoutingDataSource;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncProductDTO;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncStockDTO;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncTombstoneDTO;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncWarehouseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Change feed for offline clients (see V5__sync_change_tracking.sql).
+ * The token handed to the client is the xmin of the snapshot the changes were read with; the next request
+ * returns everything written by transactions from that xmin on, plus the tombstones of deleted rows.
+ */
+@Service
+public class SyncService {
+
+    private static final String FULL_SYNC = "0";
+
+    private final ProductRepository productRepository;
+    private final StockRepository stockRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final EntityManager entityManager;
+    private final Duration tombstoneRetention;
+    private final Logger logger = LoggerFactory.getLogger(SyncService.class);
+
+    @Autowired
+    public SyncService(ProductRepository productRepository, StockRepository stockRepository,
+                       WarehouseRepository warehouseRepository, EntityManager entityManager,
+                       @Value("${app.sync.tombstone-retention:30d}") Duration tombstoneRetention) {
+        this.productRepository = productRepository;
+        this.stockRepository = stockRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.entityManager = entityManager;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    /**
+     * Returns the changes since the token, or the full data set without a token or for a token whose
+     * tombstones have been purged. Repeatable read so that all lists and the new token share one snapshot; it is
+     * set with SET TRANSACTION because the isolation attribute is not supported with a read replica.
+     */
+    @Transactional(readOnly = true)
+    public SyncResponseDTO getChanges(String since) {
+        // Always on the primary, so that the tokens of consecutive requests come from the same server
+        ReplicaRoutingDataSource.requireChangesSince(System.currentTimeMillis());
+        // On the JDBC connection: a native executeUpdate without query spaces would clear the second-level cache
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            }
+        });
+
+        // The first statement takes the snapshot, so the token is the xmin of the snapshot used below
+        String token = (String) entityManager
+                .createNativeQuery("SELECT CAST(pg_snapshot_xmin(pg_current_snapshot()) AS text)")
+                .getSingleResult();
+
+        String from = since == null ? FULL_SYNC : parseToken(since);
+        boolean full = FULL_SYNC.equals(from) || isPurged(from);
+        if (full) {
+            from = FULL_SYNC;
+        }
+
+        List<SyncProductDTO> products = productRepository.findChangedSince(from).stream()
+                .map(row -> new SyncProductDTO(row.getId(), row.getName(), row.getDescription(), row.getPrice(),
+                        row.getCategoryId()))
+                .toList();
+        List<SyncStockDTO> stocks = stockRepository.findChangedSince(from).stream()
+                .map(row -> new SyncStockDTO(row.getId(), row.getProductId(), row.getWarehouseId(), row.getQuantity()))
+                .toList();
+        List<SyncWarehouseDTO> warehouses = warehouseRepository.findChangedSince(from).stream()
+                .map(row -> new SyncWarehouseDTO(row.getId(), row.getName(), row.getLocation()))
+                .toList();
+        List<SyncTombstoneDTO> deleted = full ? List.of() : findTombstones(from);
+
+        return new SyncResponseDTO(token, full, products, stocks, warehouses, deleted);
+    }
+
+    /**
+     * Deletes the tombstones older than the retention period and remembers the newest purged transaction id,
+     * so clients with an older token get a full resync instead of silently missing deletes
+     */
+    @Scheduled(fixedDelayString = "${app.sync.purge-interval:PT1H}", initialDelayString = "${app.sync.purge-interval:PT1H}")
+    @Transactional
+    public void purgeTombstones() {
+        int updated = entityManager.createNativeQuery("""
+                        WITH purged AS (
+                            DELETE FROM sync_tombstones WHERE deleted_at < :cutoff RETURNING change_xid
+                        )
+                        UPDATE sync_state
+                        SET purged_through = GREATEST(purged_through, (SELECT MAX(change_xid) FROM purged))
+                        WHERE id = 1 AND EXISTS (SELECT 1 FROM purged)
+                        """)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, List.of("sync_tombstones", "sync_state"))
+                .setParameter("cutoff", LocalDateTime.now().minus(tombstoneRetention))
+                .executeUpdate();
+        if (updated > 0) {
+            logger.info("Purged sync tombstones older than {}", tombstoneRetention);
+        }
+    }
+
+    private List<SyncTombstoneDTO> findTombstones(String from) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery("""
+                        SELECT entity_type, entity_id FROM sync_tombstones
+                        WHERE change_xid >= CAST(:since AS xid8)
+                        ORDER BY entity_type, entity_id
+                        """)
+                .setParameter("since", from)
+                .getResultList();
+        return rows.stream()
+                .map(row -> new SyncTombstoneDTO((String) row[0], ((Number) row[1]).longValue()))
+                .toList();
+    }
+
+    private boolean isPurged(String from) {
+        return (Boolean) entityManager
+                .createNativeQuery("SELECT CAST(:since AS xid8) <= purged_through FROM sync_state WHERE id = 1")
+                .setParameter("since", from)
+                .getSingleResult();
+    }
+
+    private String parseToken(String since) {
+        try {
+            long value = Long.parseLong(since);
+            if (value >= 0) {
+                return Long.toString(value);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new WarehouseException.ValidationException("Invalid sync token: " + since);
+    }
+}
@@ -1,5 +1,6 @@
 package ch.hoffmann.jan.warehouse.service;
 
+import ch.hoffmann.jan.warehouse.dto.event.UserRoleChangedEventDTO;
 import ch.hoffmann.jan.warehouse.dto.user.UserCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.user.UserPatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.user.UserResponseDTO;
@@ -23,12 +24,17 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final KeycloakService keycloakService;
+    private final OutboxService outboxService;
+    private final CacheInvalidationBus cacheInvalidationBus;
     private final Logger logger = LoggerFactory.getLogger(UserService.class);
 
     @Autowired
-    public UserService(UserRepository userRepository, KeycloakService keycloakService) {
+    public UserService(UserRepository userRepository, KeycloakService keycloakService, OutboxService outboxService,
+                       CacheInvalidationBus cacheInvalidationBus) {
         this.userRepository = userRepository;
         this.keycloakService = keycloakService;
+        this.outboxService = outboxService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
     }
 
     /**
@@ -110,6 +116,7 @@ public class UserService {
             user.setActive(true); // Set as active by default
 
             User savedUser = userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, savedUser.getId());
             logger.info("User created successfully with ID: {}", savedUser.getId());
             return convertToDTO(savedUser);
         } catch (WarehouseException.UsernameAlreadyExistsException | WarehouseException.KeycloakOperationException e) {
@@ -188,6 +195,7 @@ public class UserService {
             }
 
             User updatedUser = userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, updatedUser.getId());
             logger.info("User updated successfully: {}", updatedUser.getId());
             return convertToDTO(updatedUser);
         } catch (WarehouseException e) {
@@ -246,6 +254,7 @@ public class UserService {
             }
 
             User updatedUser = userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, updatedUser.getId());
             logger.info("User updated their own information successfully: {}", updatedUser.getId());
             return convertToDTO(updatedUser);
         } catch (WarehouseException e) {
@@ -290,8 +299,12 @@ public class UserService {
                 throw new WarehouseException.KeycloakOperationException("role update", "Failed to update role in Keycloak");
             }
 
+            String previousRole = user.getRole();
             user.setRole(ROLE_MANAGER);
             User updatedUser = userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, updatedUser.getId());
+            outboxService.record(new UserRoleChangedEventDTO(updatedUser.getId(), updatedUser.getUsername(),
+                    previousRole, ROLE_MANAGER));
             logger.info("User promoted to manager successfully: {}", updatedUser.getUsername());
             return convertToDTO(updatedUser);
         } catch (WarehouseException e) {
@@ -343,8 +356,12 @@ public class UserService {
                 throw new WarehouseException.KeycloakOperationException("role update", "Failed to update role in Keycloak");
             }
 
+            String previousRole = user.getRole();
             user.setRole(ROLE_EMPLOYEE);
             User updatedUser = userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, updatedUser.getId());
+            outboxService.record(new UserRoleChangedEventDTO(updatedUser.getId(), updatedUser.getUsername(),
+                    previousRole, ROLE_EMPLOYEE));
             logger.info("User demoted to employee successfully: {}", updatedUser.getUsername());
             return convertToDTO(updatedUser);
         } catch (WarehouseException e) {
@@ -393,6 +410,7 @@ public class UserService {
             // Mark user as inactive in local database
             user.setActive(false);
             userRepository.save(user);
+            cacheInvalidationBus.publish(CacheInvalidationBus.Kind.USER, user.getId());
             logger.info("User deactivated successfully: {}", user.getUsername());
         } catch (WarehouseException e) {
             // Rethrow our custom exceptions
@@ -1,39 +1,111 @@
 package ch.hoffmann.jan.warehouse.service;
 
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.event.StockTransferredEventDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseArchiveResponseDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehousePatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseResponseDTO;
 import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseSummaryDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
-import ch.hoffmann.jan.warehouse.model.Stock;
 import ch.hoffmann.jan.warehouse.model.Warehouse;
 import ch.hoffmann.jan.warehouse.repository.StockRepository;
 import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 @Service
 public class WarehouseService {
 
+    private static final int MAX_STOCK_PAGE_SIZE = 500;
+
+    /*
+     * Archives a warehouse in one statement: deletes its stock entries and writes an audit entry per entry; with a
+     * target warehouse the quantities are added to its stock (TRANSFER), without one they are written off (REMOVE).
+     * Returns the deleted entries. Each row takes its id from its own nextval, the top of the block that nextval
+     * reserves (see V3__pooled_id_sequences.sql), so it never collides with an id Hibernate hands out.
+     */
+    private static final String ARCHIVE_STOCKS = """
+            WITH moved AS (
+                DELETE FROM stocks WHERE warehouse_id = :warehouseId
+                RETURNING product_id, quantity
+            ),
+            audits AS (
+                INSERT INTO audit_logs (id, user_id, action, product_id, warehouse_id, target_warehouse_id, quantity, timestamp)
+                SELECT nextval('audit_logs_seq'), :userId,
+                       CASE WHEN CAST(:targetWarehouseId AS bigint) IS NULL THEN 'REMOVE' ELSE 'TRANSFER' END,
+                       m.product_id, :warehouseId, CAST(:targetWarehouseId AS bigint), m.quantity, :now
+                FROM moved m
+            ),
+            targets AS (
+                INSERT INTO stocks (id, product_id, warehouse_id, quantity)
+                SELECT nextval('stocks_seq'), m.product_id, CAST(:targetWarehouseId AS bigint), m.quantity
+                FROM moved m
+                WHERE CAST(:targetWarehouseId AS bigint) IS NOT NULL
+                ON CONFLICT (product_id, warehouse_id) DO UPDATE SET quantity = stocks.quantity + EXCLUDED.quantity
+            )
+            SELECT product_id, quantity FROM moved ORDER BY product_id
+            """;
+
     private final WarehouseRepository warehouseRepository;
     private final StockRepository stockRepository;
+    private final AggregateVersions aggregateVersions;
+    private final OutboxService outboxService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final StockAvailabilityView stockAvailabilityView;
+    private final StockRoutingService stockRoutingService;
+    private final EntityManager entityManager;
+    private final Logger logger = LoggerFactory.getLogger(WarehouseService.class);
 
     @Autowired
-    public WarehouseService(WarehouseRepository warehouseRepository, StockRepository stockRepository) {
+    public WarehouseService(WarehouseRepository warehouseRepository, StockRepository stockRepository,
+                            AggregateVersions aggregateVersions, OutboxService outboxService,
+                            CacheInvalidationBus cacheInvalidationBus, StockAvailabilityView stockAvailabilityView,
+                            StockRoutingService stockRoutingService, EntityManager entityManager) {
         this.warehouseRepository = warehouseRepository;
         this.stockRepository = stockRepository;
+        this.aggregateVersions = aggregateVersions;
+        this.outboxService = outboxService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.stockAvailabilityView = stockAvailabilityView;
+        this.stockRoutingService = stockRoutingService;
+        this.entityManager = entityManager;
     }
 
+    /**
+     * Returns the warehouse overview (SKU count and total units per warehouse) from one aggregate query
+     */
     @Transactional(readOnly = true)
-    public List<WarehouseResponseDTO> getAllWarehouses() {
-        return warehouseRepository.findAll().stream()
-                .map(this::convertToResponseDTO)
-                .collect(Collectors.toList());
+    public List<WarehouseSummaryDTO> getAllWarehouses() {
+        return warehouseRepository.findAllSummaries();
+    }
+
+    /**
+     * Returns one page of the stock entries of a warehouse, ordered by product name
+     */
+    @Transactional(readOnly = true)
+    public Page<WarehouseStockDTO> getWarehouseStocks(Long id, int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_STOCK_PAGE_SIZE) {
+            throw new WarehouseException.ValidationException(
+                    "Page must be >= 0 and size between 1 and " + MAX_STOCK_PAGE_SIZE);
+        }
+        if (!warehouseRepository.existsById(id)) {
+            throw new WarehouseException.ResourceNotFoundException("Warehouse", "id", id);
+        }
+        return stockRepository.findWarehouseStocks(id, PageRequest.of(page, size));
     }
 
     @Transactional(readOnly = true)
@@ -54,8 +126,11 @@ public class WarehouseService {
         Warehouse warehouse = new Warehouse();
         warehouse.setName(createRequest.getName());
         warehouse.setLocation(createRequest.getLocation());
+        setCoordinates(warehouse, createRequest.getLatitude(), createRequest.getLongitude());
 
         Warehouse savedWarehouse = warehouseRepository.save(warehouse);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.WAREHOUSES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.WAREHOUSE, savedWarehouse.getId());
         return convertToResponseDTO(savedWarehouse);
     }
 
@@ -76,11 +151,14 @@ public class WarehouseService {
             warehouse.setName(updateRequest.getName());
         }
 
-        // Update the location
+        // Update the location; coordinates not given are cleared
         warehouse.setLocation(updateRequest.getLocation());
+        setCoordinates(warehouse, updateRequest.getLatitude(), updateRequest.getLongitude());
 
         // Save and return the updated warehouse
         Warehouse updatedWarehouse = warehouseRepository.save(warehouse);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.WAREHOUSES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.WAREHOUSE, updatedWarehouse.getId());
         return convertToResponseDTO(updatedWarehouse);
     }
 
@@ -109,8 +187,15 @@ public class WarehouseService {
             warehouse.setLocation(patchRequest.getLocation());
         }
 
+        // Update coordinates if provided
+        if (patchRequest.getLatitude() != null || patchRequest.getLongitude() != null) {
+            setCoordinates(warehouse, patchRequest.getLatitude(), patchRequest.getLongitude());
+        }
+
         // Save and return the updated warehouse
         Warehouse updatedWarehouse = warehouseRepository.save(warehouse);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.WAREHOUSES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.WAREHOUSE, updatedWarehouse.getId());
         return convertToResponseDTO(updatedWarehouse);
     }
 
@@ -120,14 +205,106 @@ public class WarehouseService {
         Warehouse warehouse = warehouseRepository.findById(id)
                 .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", id));
 
-        // Check if the warehouse has associated stocks
-        List<Stock> stocks = stockRepository.findByWarehouse(warehouse);
-        if (!stocks.isEmpty()) {
-            throw new WarehouseException.WarehouseInUseException(warehouse.getName(), stocks.size());
+        // Check if the warehouse has associated stocks (counted only for the error message)
+        if (stockRepository.existsByWarehouse(warehouse)) {
+            throw new WarehouseException.WarehouseInUseException(warehouse.getName(),
+                    Math.toIntExact(stockRepository.countByWarehouse(warehouse)));
         }
 
         // Delete the warehouse
         warehouseRepository.delete(warehouse);
+        aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.WAREHOUSES);
+        cacheInvalidationBus.publish(CacheInvalidationBus.Kind.WAREHOUSE, warehouse.getId());
+    }
+
+    /**
+     * Empties a warehouse: moves all of its stock to the target warehouse, or writes it off
+     * when no target is given. Set-based, without loading the stock entries (see ARCHIVE_STOCKS); the events of the
+     * moved entries are recorded in the outbox.
+     * The stock rows of both warehouses are locked first, lower warehouse id first, as transfer orders do.
+     */
+    @Transactional
+    public WarehouseArchiveResponseDTO archiveWarehouse(Long id, Long targetWarehouseId, Long userId) {
+        Warehouse warehouse = warehouseRepository.findById(id)
+                .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Warehouse", "id", id));
+        if (targetWarehouseId != null) {
+            if (Objects.equals(id, targetWarehouseId)) {
+                throw new WarehouseException.SameWarehouseTransferException(id.toString());
+            }
+            warehouseRepository.findById(targetWarehouseId)
+                    .orElseThrow(() -> new WarehouseException.ResourceNotFoundException("Target Warehouse", "id", targetWarehouseId));
+        }
+
+        // Locks the stock rows of both warehouses in the order of the transfer orders
+        entityManager.createNativeQuery("""
+                        SELECT product_id FROM stocks
+                        WHERE warehouse_id IN (:warehouseId, CAST(:targetWarehouseId AS bigint))
+                        ORDER BY warehouse_id, product_id
+                        FOR UPDATE
+                        """)
+                .setParameter("warehouseId", id)
+                .setParameter("targetWarehouseId", targetWarehouseId)
+                .getResultList();
+        // Reserved units are promised to orders of this warehouse; those have to be committed or released first
+        long reservedStocks = ((Number) entityManager.createNativeQuery(
+                        "SELECT count(*) FROM stocks WHERE warehouse_id = :warehouseId AND reserved > 0")
+                .setParameter("warehouseId", id)
+                .getSingleResult()).longValue();
+        if (reservedStocks > 0) {
+            throw new WarehouseException.StockReservedException(warehouse.getName(), reservedStocks);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> moved = entityManager.createNativeQuery(ARCHIVE_STOCKS)
+                .setHint(HibernateHints.HINT_NATIVE_SPACES, List.of("stocks", "audit_logs"))
+                .setParameter("warehouseId", id)
+                .setParameter("targetWarehouseId", targetWarehouseId)
+                .setParameter("userId", userId)
+                .setParameter("now", LocalDateTime.now())
+                .getResultList();
+
+        List<Long> movedProductIds = new ArrayList<>(moved.size());
+        long units = 0;
+        for (Object[] row : moved) {
+            long productId = ((Number) row[0]).longValue();
+            int quantity = ((Number) row[1]).intValue();
+            movedProductIds.add(productId);
+            units += quantity;
+            if (targetWarehouseId != null) {
+                outboxService.record(new StockTransferredEventDTO(productId, id, targetWarehouseId, quantity, userId));
+            } else {
+                outboxService.record(new StockAdjustedEventDTO(productId, id, "REMOVE", quantity, 0, userId));
+            }
+        }
+        long stockEntries = movedProductIds.size();
+        if (stockEntries > 0) {
+            aggregateVersions.bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+            stockAvailabilityView.invalidateAfterCommit(movedProductIds, id);
+            cacheInvalidationBus.publishStocks(movedProductIds, id);
+            if (targetWarehouseId != null) {
+                stockAvailabilityView.invalidateAfterCommit(movedProductIds, targetWarehouseId);
+                cacheInvalidationBus.publishStocks(movedProductIds, targetWarehouseId);
+            }
+            stockRoutingService.invalidateAfterCommit(movedProductIds);
+        }
+
+        if (targetWarehouseId != null) {
+            logger.info("Archived warehouse {}: moved {} units of {} products to warehouse {}",
+                    warehouse.getName(), units, stockEntries, targetWarehouseId);
+        } else {
+            logger.info("Archived warehouse {}: wrote off {} units of {} products", warehouse.getName(), units, stockEntries);
+        }
+        return new WarehouseArchiveResponseDTO(id, targetWarehouseId, stockEntries, units);
+    }
+
+    /**
+     * Sets the coordinates of the warehouse, which are given together or not at all
+     */
+    private void setCoordinates(Warehouse warehouse, Double latitude, Double longitude) {
+        if ((latitude == null) != (longitude == null)) {
+            throw new WarehouseException.ValidationException("Latitude and longitude must be given together");
+        }
+        warehouse.setCoordinates(latitude, longitude);
     }
 
     /**
@@ -138,25 +315,12 @@ public class WarehouseService {
         dto.setId(warehouse.getId());
         dto.setName(warehouse.getName());
         dto.setLocation(warehouse.getLocation());
+        dto.setLatitude(warehouse.getLatitude());
+        dto.setLongitude(warehouse.getLongitude());
 
-        // Convert stocks to specialized DTOs
-        List<WarehouseStockDTO> stockDTOs = stockRepository.findByWarehouse(warehouse).stream()
-                .map(this::convertToWarehouseStockDTO)
-                .collect(Collectors.toList());
-        dto.setStocks(stockDTOs);
+        // Stocks are read as DTOs directly, without loading the Stock and Product entities
+        dto.setStocks(stockRepository.findWarehouseStocks(warehouse.getId()));
 
         return dto;
     }
-
-    /**
-     * Converts a Stock entity to a WarehouseStockDTO
-     */
-    private WarehouseStockDTO convertToWarehouseStockDTO(Stock stock) {
-        WarehouseStockDTO dto = new WarehouseStockDTO();
-        dto.setId(stock.getId());
-        dto.setProductId(stock.getProduct().getId());
-        dto.setProductName(stock.getProduct().getName());
-        dto.setQuantity(stock.getQuantity());
-        return dto;
-    }
 }
\ No newline at end of file
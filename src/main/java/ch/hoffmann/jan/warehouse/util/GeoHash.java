@@ -0,0 +1,175 @@
+package ch.hoffmann.jan.warehouse.util;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Geohashes of WGS 84 coordinates: the interleaved bits of longitude and latitude, written in base32.
+ * A geohash of n characters names a cell of the grid of that precision, and every point in the cell has the cell's
+ * geohash as prefix, so the points of a cell are one range of the sorted geohashes.
+ * Distances are great-circle distances on a sphere of the mean earth radius (haversine), as in StockRepository.
+ */
+public final class GeoHash {
+
+    public static final int MAX_PRECISION = 12;
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private GeoHash() {
+    }
+
+    /**
+     * Returns the geohash of the cell of the given precision (1 to 12 characters) that contains the point
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        checkCoordinates(latitude, longitude);
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between 1 and " + MAX_PRECISION);
+        }
+        double minLatitude = -90, maxLatitude = 90, minLongitude = -180, maxLongitude = 180;
+        StringBuilder geohash = new StringBuilder(precision);
+        boolean longitudeBit = true;
+        int bits = 0;
+        int character = 0;
+        while (geohash.length() < precision) {
+            if (longitudeBit) {
+                double middle = (minLongitude + maxLongitude) / 2;
+                if (longitude >= middle) {
+                    character = character << 1 | 1;
+                    minLongitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLongitude = middle;
+                }
+            } else {
+                double middle = (minLatitude + maxLatitude) / 2;
+                if (latitude >= middle) {
+                    character = character << 1 | 1;
+                    minLatitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLatitude = middle;
+                }
+            }
+            longitudeBit = !longitudeBit;
+            if (++bits == 5) {
+                geohash.append(BASE32.charAt(character));
+                bits = 0;
+                character = 0;
+            }
+        }
+        return geohash.toString();
+    }
+
+    /**
+     * Returns the bounds of the cell as {minLatitude, maxLatitude, minLongitude, maxLongitude}
+     */
+    public static double[] bounds(String geohash) {
+        double[] bounds = {-90, 90, -180, 180};
+        boolean longitudeBit = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            int character = BASE32.indexOf(geohash.charAt(i));
+            if (character < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                int offset = longitudeBit ? 2 : 0;
+                double middle = (bounds[offset] + bounds[offset + 1]) / 2;
+                bounds[(character >> bit & 1) == 1 ? offset : offset + 1] = middle;
+                longitudeBit = !longitudeBit;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the cells of one precision that together cover the circle around the point: the cell of the point
+     * and its neighbours, at the finest precision whose cells are larger than the circle.
+     * Returns an empty list when no such cells exist (the circle contains a pole or spans more than a cell of
+     * precision 1); the caller then has to consider every point.
+     */
+    public static List<String> coveringCells(double latitude, double longitude, double radiusKm) {
+        checkCoordinates(latitude, longitude);
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        if (angle >= Math.PI / 2 || Math.sin(angle) >= cosLatitude) {
+            return List.of();
+        }
+        // Extent of the circle in degrees: along the meridian, and the widest longitude difference of its points
+        double latitudeSpan = Math.toDegrees(angle);
+        double longitudeSpan = Math.toDegrees(Math.asin(Math.sin(angle) / cosLatitude));
+
+        for (int precision = MAX_PRECISION; precision >= 1; precision--) {
+            int bits = 5 * precision;
+            double height = 180 / Math.pow(2, bits / 2);
+            double width = 360 / Math.pow(2, (bits + 1) / 2);
+            if (height >= latitudeSpan && width >= longitudeSpan) {
+                return neighbourhood(encode(latitude, longitude, precision), height, width);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Returns an upper bound of the distance between the center of the cell and any point in it
+     */
+    public static double cellRadiusKm(String geohash) {
+        double[] bounds = bounds(geohash);
+        // Along the meridian to the latitude of the point, then along its parallel, which is longest nearest the equator
+        double nearestToEquator = bounds[0] <= 0 && bounds[1] >= 0 ? 0 : Math.min(Math.abs(bounds[0]), Math.abs(bounds[1]));
+        double halfHeight = (bounds[1] - bounds[0]) / 2 * KM_PER_DEGREE;
+        double halfWidth = (bounds[3] - bounds[2]) / 2 * KM_PER_DEGREE * Math.cos(Math.toRadians(nearestToEquator));
+        return halfHeight + halfWidth;
+    }
+
+    /**
+     * Returns the great-circle distance between two points (haversine formula)
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(Math.min(1, a)));
+    }
+
+    /**
+     * Returns true if the coordinates are a valid latitude and longitude in degrees
+     */
+    public static boolean isValid(double latitude, double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    private static List<String> neighbourhood(String geohash, double height, double width) {
+        double[] bounds = bounds(geohash);
+        double centerLatitude = (bounds[0] + bounds[1]) / 2;
+        double centerLongitude = (bounds[2] + bounds[3]) / 2;
+        Set<String> cells = new LinkedHashSet<>();
+        for (int row = -1; row <= 1; row++) {
+            double latitude = centerLatitude + row * height;
+            if (latitude < -90 || latitude > 90) {
+                continue;
+            }
+            for (int column = -1; column <= 1; column++) {
+                double longitude = centerLongitude + column * width;
+                // Across the antimeridian
+                if (longitude > 180) {
+                    longitude -= 360;
+                } else if (longitude < -180) {
+                    longitude += 360;
+                }
+                cells.add(encode(latitude, longitude, geohash.length()));
+            }
+        }
+        return List.copyOf(cells);
+    }
+
+    private static void checkCoordinates(double latitude, double longitude) {
+        if (!isValid(latitude, longitude)) {
+            throw new IllegalArgumentException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+    }
+}
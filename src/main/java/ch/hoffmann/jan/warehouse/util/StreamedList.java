@@ -0,0 +1,59 @@
+package ch.hoffmann.jan.warehouse.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * A response body that Jackson writes as an array while its elements are produced, instead of a list collected
+ * first. Memory use is bounded by the generator's buffer, and the first bytes leave while the rest is still being
+ * read from the database. Written by the message converter of the negotiated format (JSON, CBOR or Smile).
+ * A failure after the first elements were sent leaves the client with an unterminated array (the status is
+ * already sent).
+ */
+public final class StreamedList<T> implements JsonSerializable {
+
+    private final Class<T> elementType;
+    private final Consumer<Consumer<T>> producer;
+
+    /**
+     * @param producer Passes the elements to its consumer; runs while the response is written
+     */
+    public StreamedList(Class<T> elementType, Consumer<Consumer<T>> producer) {
+        this.elementType = elementType;
+        this.producer = producer;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+        // After a failure the array must stay open, so the client cannot take a partial list for a complete one
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        // Resolved once, not looked up per element
+        JsonSerializer<Object> serializer = serializers.findTypedValueSerializer(elementType, true, null);
+        generator.writeStartArray();
+        try {
+            producer.accept(element -> {
+                try {
+                    serializer.serialize(element, generator, serializers);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider serializers, TypeSerializer typeSerializer)
+            throws IOException {
+        serialize(generator, serializers);
+    }
+}
@@ -0,0 +1,30 @@
+-- Stock reservations: units promised to an order before they are picked.
+-- stocks.reserved is the sum of the active reservations of the row; the check keeps every writer from taking
+-- reserved units, so available = quantity - reserved can never become negative.
+
+ALTER TABLE stocks ADD COLUMN reserved INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE stocks ADD CONSTRAINT ck_stocks_reserved CHECK (reserved >= 0 AND reserved <= quantity);
+
+CREATE SEQUENCE stock_reservations_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE stock_reservations (
+    id BIGINT PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    warehouse_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL,
+    -- ACTIVE until committed (picked), released or expired
+    status VARCHAR(20) NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    closed_at TIMESTAMP,
+    CONSTRAINT ck_stock_reservations_quantity CHECK (quantity > 0),
+    CONSTRAINT fk_stock_reservations_product FOREIGN KEY (product_id) REFERENCES products (id),
+    CONSTRAINT fk_stock_reservations_warehouse FOREIGN KEY (warehouse_id) REFERENCES warehouses (id),
+    CONSTRAINT fk_stock_reservations_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+-- The expiry sweeper reads the active reservations in expiry order; closed ones are not in the index
+CREATE INDEX ix_stock_reservations_active_expires_at ON stock_reservations (expires_at) WHERE status = 'ACTIVE';
+-- Purge of closed reservations after the retention period
+CREATE INDEX ix_stock_reservations_closed_at ON stock_reservations (closed_at) WHERE closed_at IS NOT NULL;
@@ -0,0 +1,14 @@
+-- Warehouse coordinates (WGS 84 degrees) for routing orders to the nearest warehouse that has the stock.
+-- geohash is the 12 character geohash of the coordinates (see GeoHash); every prefix of it is a rectangular
+-- cell, so the warehouses in a cell are one range scan of the index. The C collation makes the index order the
+-- byte order of the base32 characters, which is what the range bounds (prefix <= geohash < prefix || '~') need.
+-- Warehouses without coordinates are not routed to.
+
+ALTER TABLE warehouses ADD COLUMN latitude DOUBLE PRECISION;
+ALTER TABLE warehouses ADD COLUMN longitude DOUBLE PRECISION;
+ALTER TABLE warehouses ADD COLUMN geohash VARCHAR(12) COLLATE "C";
+ALTER TABLE warehouses ADD CONSTRAINT ck_warehouses_coordinates CHECK (
+    (latitude IS NULL AND longitude IS NULL AND geohash IS NULL)
+    OR (latitude BETWEEN -90 AND 90 AND longitude BETWEEN -180 AND 180 AND geohash IS NOT NULL));
+
+CREATE INDEX ix_warehouses_geohash ON warehouses (geohash) WHERE geohash IS NOT NULL;
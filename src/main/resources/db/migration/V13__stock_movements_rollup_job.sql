@@ -0,0 +1,17 @@
+-- The daily movement rollup is no longer maintained by the trigger on audit_logs: its upsert locked the
+-- (product, warehouse, day) row on every stock write. A scheduled job rolls up the closed days from the
+-- audit_stock_movements view instead (see AnalyticsService), and the days after rolled_up_through are read
+-- from the view directly.
+
+DROP TRIGGER trg_audit_logs_movements ON audit_logs;
+DROP FUNCTION stock_movements_rollup();
+
+-- Single row: the last day whose movements are all in stock_movements_daily
+CREATE TABLE stock_movements_rollup_state (
+    id SMALLINT PRIMARY KEY CHECK (id = 1),
+    rolled_up_through DATE NOT NULL
+);
+
+-- The trigger kept every day up to date; today is still open and is read from the view until it is rolled up
+INSERT INTO stock_movements_rollup_state (id, rolled_up_through) VALUES (1, CURRENT_DATE - 1);
+DELETE FROM stock_movements_daily WHERE day >= CURRENT_DATE;
@@ -0,0 +1,58 @@
+-- Baseline schema, equivalent to what hibernate.ddl-auto=update produced for the existing entities.
+-- Installations that were created by Hibernate are baselined at this version (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE categories (
+    id   BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_categories_name UNIQUE (name)
+);
+
+CREATE TABLE warehouses (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name     VARCHAR(255) NOT NULL,
+    location VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE users (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    keycloak_id VARCHAR(255) NOT NULL,
+    username    VARCHAR(255) NOT NULL,
+    firstname   VARCHAR(255),
+    lastname    VARCHAR(255),
+    role        VARCHAR(255) NOT NULL,
+    active      BOOLEAN      NOT NULL,
+    CONSTRAINT uk_users_username UNIQUE (username)
+);
+
+CREATE TABLE products (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        VARCHAR(255)   NOT NULL,
+    description TEXT,
+    price       NUMERIC(38, 2) NOT NULL,
+    category_id BIGINT         NOT NULL,
+    CONSTRAINT fk_products_category FOREIGN KEY (category_id) REFERENCES categories (id)
+);
+
+CREATE TABLE stocks (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    product_id   BIGINT  NOT NULL,
+    warehouse_id BIGINT  NOT NULL,
+    quantity     INTEGER NOT NULL,
+    CONSTRAINT fk_stocks_product FOREIGN KEY (product_id) REFERENCES products (id),
+    CONSTRAINT fk_stocks_warehouse FOREIGN KEY (warehouse_id) REFERENCES warehouses (id)
+);
+
+CREATE TABLE audit_logs (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id             BIGINT       NOT NULL,
+    action              VARCHAR(255) NOT NULL,
+    product_id          BIGINT       NOT NULL,
+    warehouse_id        BIGINT       NOT NULL,
+    target_warehouse_id BIGINT,
+    quantity            INTEGER      NOT NULL,
+    timestamp           TIMESTAMP(6) NOT NULL,
+    CONSTRAINT fk_audit_logs_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT fk_audit_logs_product FOREIGN KEY (product_id) REFERENCES products (id),
+    CONSTRAINT fk_audit_logs_warehouse FOREIGN KEY (warehouse_id) REFERENCES warehouses (id),
+    CONSTRAINT fk_audit_logs_target_warehouse FOREIGN KEY (target_warehouse_id) REFERENCES warehouses (id)
+);
@@ -0,0 +1,38 @@
+-- Explicit indexes for the lookups the services actually run.
+
+-- Stock rows are addressed by (product, warehouse). Merge any duplicates that could be created while
+-- there was no constraint (keep the oldest row, sum the quantities) before enforcing uniqueness.
+UPDATE stocks s
+SET quantity = d.total_quantity
+FROM (SELECT MIN(id) AS keep_id, SUM(quantity) AS total_quantity
+      FROM stocks
+      GROUP BY product_id, warehouse_id
+      HAVING COUNT(*) > 1) d
+WHERE s.id = d.keep_id;
+
+DELETE FROM stocks s
+USING stocks k
+WHERE s.product_id = k.product_id
+  AND s.warehouse_id = k.warehouse_id
+  AND s.id > k.id;
+
+-- findByProductAndWarehouse and findByProduct (leading column)
+CREATE UNIQUE INDEX ux_stocks_product_warehouse ON stocks (product_id, warehouse_id);
+-- findByWarehouse
+CREATE INDEX ix_stocks_warehouse ON stocks (warehouse_id);
+
+-- existsByName; the services already reject duplicate names
+CREATE UNIQUE INDEX ux_products_name ON products (name);
+CREATE UNIQUE INDEX ux_warehouses_name ON warehouses (name);
+-- findByCategory
+CREATE INDEX ix_products_category ON products (category_id);
+
+-- users.username and categories.name are covered by their unique constraints
+CREATE INDEX ix_users_keycloak_id ON users (keycloak_id);
+
+-- Audit log: paging by timestamp and the foreign keys (also needed for deletes of referenced rows)
+CREATE INDEX ix_audit_logs_timestamp ON audit_logs (timestamp DESC);
+CREATE INDEX ix_audit_logs_user ON audit_logs (user_id);
+CREATE INDEX ix_audit_logs_product ON audit_logs (product_id);
+CREATE INDEX ix_audit_logs_warehouse ON audit_logs (warehouse_id);
+CREATE INDEX ix_audit_logs_target_warehouse ON audit_logs (target_warehouse_id) WHERE target_warehouse_id IS NOT NULL;
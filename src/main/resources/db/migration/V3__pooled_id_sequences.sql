@@ -0,0 +1,25 @@
+-- Replace the IDENTITY id columns with sequences so Hibernate can assign ids up front and batch inserts.
+-- The sequences increment by 50 to match allocationSize = 50 (pooled optimizer): each nextval reserves
+-- the block (value - 49 .. value). They start after the highest existing id, so existing ids are kept.
+-- The columns have no default afterwards; rows are inserted with ids assigned by the application.
+
+CREATE SEQUENCE categories_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE warehouses_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE products_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE stocks_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE audit_logs_seq START WITH 1 INCREMENT BY 50;
+
+SELECT setval('categories_seq', COALESCE(MAX(id), 0) + 50, false) FROM categories;
+SELECT setval('warehouses_seq', COALESCE(MAX(id), 0) + 50, false) FROM warehouses;
+SELECT setval('users_seq', COALESCE(MAX(id), 0) + 50, false) FROM users;
+SELECT setval('products_seq', COALESCE(MAX(id), 0) + 50, false) FROM products;
+SELECT setval('stocks_seq', COALESCE(MAX(id), 0) + 50, false) FROM stocks;
+SELECT setval('audit_logs_seq', COALESCE(MAX(id), 0) + 50, false) FROM audit_logs;
+
+ALTER TABLE categories ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE warehouses ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE products ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE stocks ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE audit_logs ALTER COLUMN id DROP IDENTITY IF EXISTS;
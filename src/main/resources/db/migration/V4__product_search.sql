@@ -0,0 +1,17 @@
+-- Product search: full-text search over name and description plus trigram matching on the name
+-- (prefixes and typos in partial SKUs). The 'simple' configuration is used because product names are
+-- codes and proper names in several languages, where stemming and stop words do more harm than good.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Name tokens rank higher (weight A) than description tokens (weight B)
+ALTER TABLE products ADD COLUMN search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(name, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(description, '')), 'B')
+    ) STORED;
+
+CREATE INDEX ix_products_search_vector ON products USING GIN (search_vector);
+
+-- Supports both the similarity operator (%) and LIKE 'prefix%' on the lower-cased name
+CREATE INDEX ix_products_name_trgm ON products USING GIN (lower(name) gin_trgm_ops);
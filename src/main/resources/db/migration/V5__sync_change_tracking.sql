@@ -0,0 +1,69 @@
+-- Change tracking for the delta sync API (GET /api/sync).
+-- Every product, stock and warehouse row carries the id of the transaction that last wrote it, and deletes
+-- leave a tombstone. A sync token is the xmin of the reader's snapshot: every transaction below it had
+-- finished when the client last synced, so the client only needs the rows written by transactions >= token.
+-- Rows may be sent twice (a transaction above xmin that was already visible), but none can be missed,
+-- which a sequence or timestamp would allow because they are assigned before the writer commits.
+
+ALTER TABLE products ADD COLUMN change_xid xid8 NOT NULL DEFAULT pg_current_xact_id();
+ALTER TABLE stocks ADD COLUMN change_xid xid8 NOT NULL DEFAULT pg_current_xact_id();
+ALTER TABLE warehouses ADD COLUMN change_xid xid8 NOT NULL DEFAULT pg_current_xact_id();
+
+CREATE INDEX ix_products_change_xid ON products (change_xid);
+CREATE INDEX ix_stocks_change_xid ON stocks (change_xid);
+CREATE INDEX ix_warehouses_change_xid ON warehouses (change_xid);
+
+CREATE FUNCTION sync_touch_row() RETURNS trigger AS $$
+BEGIN
+    NEW.change_xid := pg_current_xact_id();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_products_sync_touch BEFORE UPDATE ON products
+    FOR EACH ROW EXECUTE FUNCTION sync_touch_row();
+CREATE TRIGGER trg_stocks_sync_touch BEFORE UPDATE ON stocks
+    FOR EACH ROW EXECUTE FUNCTION sync_touch_row();
+CREATE TRIGGER trg_warehouses_sync_touch BEFORE UPDATE ON warehouses
+    FOR EACH ROW EXECUTE FUNCTION sync_touch_row();
+
+-- Ids come from sequences and are never reused, the conflict clause only guards against manual inserts
+CREATE TABLE sync_tombstones (
+    entity_type VARCHAR(20) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    change_xid xid8 NOT NULL DEFAULT pg_current_xact_id(),
+    deleted_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (entity_type, entity_id)
+);
+
+CREATE INDEX ix_sync_tombstones_change_xid ON sync_tombstones (change_xid);
+CREATE INDEX ix_sync_tombstones_deleted_at ON sync_tombstones (deleted_at);
+
+-- Statement level with a transition table, so a bulk delete writes its tombstones in one insert
+CREATE FUNCTION sync_record_deletes() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO sync_tombstones (entity_type, entity_id)
+    SELECT TG_ARGV[0], id FROM deleted_rows
+    ON CONFLICT (entity_type, entity_id)
+        DO UPDATE SET change_xid = EXCLUDED.change_xid, deleted_at = EXCLUDED.deleted_at;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_products_sync_delete AFTER DELETE ON products
+    REFERENCING OLD TABLE AS deleted_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION sync_record_deletes('PRODUCT');
+CREATE TRIGGER trg_stocks_sync_delete AFTER DELETE ON stocks
+    REFERENCING OLD TABLE AS deleted_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION sync_record_deletes('STOCK');
+CREATE TRIGGER trg_warehouses_sync_delete AFTER DELETE ON warehouses
+    REFERENCING OLD TABLE AS deleted_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION sync_record_deletes('WAREHOUSE');
+
+-- Highest change_xid of the purged tombstones; older tokens have to resynchronize from scratch
+CREATE TABLE sync_state (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    purged_through xid8 NOT NULL
+);
+
+INSERT INTO sync_state (id, purged_through) VALUES (1, '0');
@@ -0,0 +1,31 @@
+-- Transactional outbox: domain events are inserted in the transaction of the change they describe and
+-- published afterwards by the OutboxDispatcher (at least once, in order per aggregate).
+
+CREATE SEQUENCE outbox_events_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE outbox_events (
+    id BIGINT PRIMARY KEY,
+    aggregate_type VARCHAR(30) NOT NULL,
+    aggregate_id BIGINT NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    payload JSONB NOT NULL,
+    -- Publication order. Taken from the database clock at insert, since the pooled ids of different
+    -- instances are not ordered in time.
+    created_at TIMESTAMP NOT NULL DEFAULT clock_timestamp(),
+    -- Writing transaction; events are only dispatched once every older transaction has finished, so an
+    -- event can never overtake one that is still uncommitted
+    txid xid8 NOT NULL DEFAULT pg_current_xact_id(),
+    published_at TIMESTAMP,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP,
+    last_error TEXT,
+    -- Set after the last failed attempt; the event is skipped from then on
+    dead_at TIMESTAMP
+);
+
+CREATE INDEX ix_outbox_events_pending ON outbox_events (created_at, id)
+    WHERE published_at IS NULL AND dead_at IS NULL;
+CREATE INDEX ix_outbox_events_pending_aggregate ON outbox_events (aggregate_type, aggregate_id)
+    WHERE published_at IS NULL AND dead_at IS NULL;
+CREATE INDEX ix_outbox_events_published_at ON outbox_events (published_at)
+    WHERE published_at IS NOT NULL;
@@ -0,0 +1,15 @@
+-- Idempotency keys of the stock mutations: the key is claimed in the transaction of the mutation and the
+-- response is stored with it, so a retried request either replays the stored response or, if the first
+-- attempt rolled back, runs again. Expired keys are reclaimed on the next use and purged periodically.
+CREATE TABLE idempotency_keys (
+    user_id BIGINT NOT NULL,
+    idempotency_key VARCHAR(100) NOT NULL,
+    -- SHA-256 of the operation and request body; a key reused for a different request is rejected
+    request_hash BYTEA NOT NULL,
+    response_status INTEGER,
+    response_body TEXT,
+    expires_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (user_id, idempotency_key)
+);
+
+CREATE INDEX ix_idempotency_keys_expires_at ON idempotency_keys (expires_at);
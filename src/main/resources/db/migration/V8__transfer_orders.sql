@@ -0,0 +1,23 @@
+-- Multi-line stock transfers: one header per order, the audit log entries of the order are its lines
+
+CREATE SEQUENCE transfer_orders_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE transfer_orders (
+    id BIGINT PRIMARY KEY,
+    source_warehouse_id BIGINT NOT NULL,
+    target_warehouse_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    line_count INTEGER NOT NULL,
+    total_quantity INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    CONSTRAINT fk_transfer_orders_source_warehouse FOREIGN KEY (source_warehouse_id) REFERENCES warehouses (id),
+    CONSTRAINT fk_transfer_orders_target_warehouse FOREIGN KEY (target_warehouse_id) REFERENCES warehouses (id),
+    CONSTRAINT fk_transfer_orders_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE INDEX ix_transfer_orders_created_at ON transfer_orders (created_at DESC);
+
+ALTER TABLE audit_logs ADD COLUMN transfer_order_id BIGINT;
+ALTER TABLE audit_logs ADD CONSTRAINT fk_audit_logs_transfer_order
+    FOREIGN KEY (transfer_order_id) REFERENCES transfer_orders (id);
+CREATE INDEX ix_audit_logs_transfer_order ON audit_logs (transfer_order_id) WHERE transfer_order_id IS NOT NULL;
@@ -0,0 +1,23 @@
+-- Checkpoints for point-in-time inventory queries. A checkpoint holds the quantity per product and warehouse
+-- after every audit log entry with timestamp <= taken_at; a query for time T replays the audit log from the
+-- latest checkpoint before T. Checkpoints are built from the previous checkpoint and the audit log only.
+
+CREATE SEQUENCE stock_snapshots_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE stock_snapshots (
+    id BIGINT PRIMARY KEY,
+    taken_at TIMESTAMP(6) NOT NULL,
+    line_count INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT clock_timestamp(),
+    CONSTRAINT ux_stock_snapshots_taken_at UNIQUE (taken_at)
+);
+
+-- No foreign keys on product and warehouse: the history stays readable whatever happens to the master data
+CREATE TABLE stock_snapshot_lines (
+    snapshot_id BIGINT NOT NULL,
+    product_id BIGINT NOT NULL,
+    warehouse_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL,
+    PRIMARY KEY (snapshot_id, product_id, warehouse_id),
+    CONSTRAINT fk_stock_snapshot_lines_snapshot FOREIGN KEY (snapshot_id) REFERENCES stock_snapshots (id) ON DELETE CASCADE
+);
@@ -0,0 +1,95 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import ch.hoffmann.jan.warehouse.service.AggregateVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import static ch.hoffmann.jan.warehouse.service.AggregateVersions.Aggregate.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConditionalGetInterceptorTest {
+
+    private AggregateVersions aggregateVersions;
+    private ConditionalGetInterceptor interceptor;
+    private HandlerMethod handler;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        aggregateVersions = new AggregateVersions();
+        interceptor = new ConditionalGetInterceptor(aggregateVersions);
+        handler = new HandlerMethod(new Endpoints(), Endpoints.class.getMethod("products"));
+    }
+
+    @Test
+    void preHandle_WithMatchingIfNoneMatch_ShouldAnswerNotModifiedWithoutRunningTheHandler() throws Exception {
+        // Arrange
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/products"), first, handler));
+        String etag = first.getHeader("ETag");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        boolean proceed = interceptor.preHandle(request, response, handler);
+
+        // Assert
+        assertNotNull(etag);
+        assertFalse(proceed);
+        assertEquals(304, response.getStatus());
+        assertEquals(etag, response.getHeader("ETag"));
+    }
+
+    @Test
+    void preHandle_AfterWriteToDependency_ShouldRunTheHandlerWithNewETag() throws Exception {
+        // Arrange
+        String etag = aggregateVersions.etag(PRODUCTS, STOCKS);
+        aggregateVersions.bump(STOCKS);
+        aggregateVersions.bump(CATEGORIES);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        boolean proceed = interceptor.preHandle(request, response, handler);
+
+        // Assert
+        assertTrue(proceed);
+        assertEquals(200, response.getStatus());
+        assertEquals(aggregateVersions.etag(PRODUCTS, STOCKS), response.getHeader("ETag"));
+        assertNotEquals(etag, response.getHeader("ETag"));
+    }
+
+    @Test
+    void preHandle_WithJsonETagForBinaryFormat_ShouldRunTheHandler() throws Exception {
+        // Arrange: the client holds the JSON response and now asks for CBOR
+        MockHttpServletResponse json = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/products"), json, handler));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("Accept", "application/cbor");
+        request.addHeader("If-None-Match", json.getHeader("ETag"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        boolean proceed = interceptor.preHandle(request, response, handler);
+
+        // Assert
+        assertTrue(proceed);
+        assertEquals(aggregateVersions.etag("cbor", PRODUCTS, STOCKS), response.getHeader("ETag"));
+        assertNotEquals(json.getHeader("ETag"), response.getHeader("ETag"));
+        assertEquals("Accept", response.getHeader("Vary"));
+    }
+
+    static class Endpoints {
+
+        @ConditionalGet({PRODUCTS, STOCKS})
+        public void products() {
+        }
+    }
+}
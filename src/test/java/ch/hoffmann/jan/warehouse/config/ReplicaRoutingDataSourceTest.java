@@ -0,0 +1,160 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private HikariDataSource primary;
+
+    @Mock
+    private HikariDataSource replica;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private ResultSet primaryPosition;
+
+    @Mock
+    private Connection replicaConnection;
+
+    @Mock
+    private PreparedStatement replayQuery;
+
+    @Mock
+    private ResultSet replayed;
+
+    private ReplicaRoutingDataSource dataSource;
+    private final ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new ReplicaRoutingDataSource(primary, replica, Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        interceptor.afterCompletion(new MockHttpServletRequest(), new MockHttpServletResponse(), null, null);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * Runs a lag check; the replica has replayed the primary's WAL position or, if not, the transactions committed
+     * up to the given number of milliseconds ago
+     */
+    private void checkReplica(boolean caughtUp, long lastReplayedAgoMillis) throws Exception {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(primaryConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(primaryPosition);
+        when(primaryPosition.next()).thenReturn(true);
+        when(primaryPosition.getString(1)).thenReturn("0/6C97070");
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.prepareStatement(anyString())).thenReturn(replayQuery);
+        when(replayQuery.executeQuery()).thenReturn(replayed);
+        when(replayed.next()).thenReturn(true);
+        when(replayed.getBoolean(1)).thenReturn(caughtUp);
+        lenient().when(replayed.getDouble(2)).thenReturn((double) (System.currentTimeMillis() - lastReplayedAgoMillis));
+        dataSource.checkReplicaLag();
+    }
+
+    private String routeReadOnly() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        return dataSource.determineCurrentLookupKey().toString();
+    }
+
+    @Test
+    void determineCurrentLookupKey_AfterWrite_ShouldHandTheCommitTimeToTheClient() {
+        // Arrange
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        long before = System.currentTimeMillis();
+
+        // Act
+        String target = dataSource.determineCurrentLookupKey().toString();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Assert
+        assertEquals("PRIMARY", target);
+        Cookie cookie = response.getCookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE);
+        assertNotNull(cookie);
+        assertTrue(Long.parseLong(cookie.getValue()) >= before);
+        assertEquals(5, cookie.getMaxAge());
+        assertTrue(cookie.isHttpOnly());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WithLastWriteCookie_ShouldReadFromThePrimaryUntilTheReplicaReplayedIt()
+            throws Exception {
+        // Arrange: the write was committed through another instance after the last replica check
+        checkReplica(true, 0);
+        Thread.sleep(5);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/stocks");
+        request.setCookies(new Cookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE,
+                Long.toString(System.currentTimeMillis())));
+        interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        Thread.sleep(5);
+
+        // Act & Assert
+        assertEquals("PRIMARY", routeReadOnly());
+        // Lagging by more than the time since the write
+        checkReplica(false, 1500);
+        assertEquals("PRIMARY", routeReadOnly());
+        // Replayed all it received, but the commit has not reached it: only as recent as its last transaction
+        checkReplica(false, 1000);
+        assertEquals("PRIMARY", routeReadOnly());
+        checkReplica(true, 1000);
+        assertEquals("REPLICA", routeReadOnly());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WithoutRequirement_ShouldUseTheReplicaWhileItIsWithinMaxLag() throws Exception {
+        // Arrange
+        interceptor.preHandle(new MockHttpServletRequest("GET", "/api/stocks"), new MockHttpServletResponse(), null);
+
+        // Act & Assert
+        assertEquals("PRIMARY", routeReadOnly());
+        checkReplica(false, 500);
+        assertEquals("REPLICA", routeReadOnly());
+        checkReplica(false, 3000);
+        assertEquals("PRIMARY", routeReadOnly());
+        // Idle primary: nothing replayed for long, but nothing missing either
+        checkReplica(true, 60000);
+        assertEquals("REPLICA", routeReadOnly());
+    }
+}
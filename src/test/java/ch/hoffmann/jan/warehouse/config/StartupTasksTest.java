@@ -0,0 +1,110 @@
+package ch.hoffmann.jan.warehouse.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StartupTasksTest {
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private StartupTasks startupTasks;
+
+    @BeforeEach
+    void setUp() {
+        startupTasks = new StartupTasks(true, 3, Duration.ofMillis(1), eventPublisher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        startupTasks.destroy();
+    }
+
+    private void awaitCompletion() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!startupTasks.isComplete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(startupTasks.isComplete());
+    }
+
+    @Test
+    void submit_WhenTheTaskFailsOnce_ShouldRetryItAndReportReady() throws InterruptedException {
+        // Arrange
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        startupTasks.submit("flaky", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Keycloak is not reachable");
+            }
+        });
+        awaitCompletion();
+
+        // Assert
+        assertEquals(2, attempts.get());
+        assertEquals(Status.UP, startupTasks.health().getStatus());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void submit_WhenEveryAttemptFails_ShouldReportNotReadyAndBreakLiveness() throws InterruptedException {
+        // Arrange
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        startupTasks.submit("broken", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Keycloak is not reachable");
+        });
+        awaitCompletion();
+
+        // Assert: the orchestrator restarts the instance instead of leaving it unready
+        assertEquals(3, attempts.get());
+        assertEquals(Status.DOWN, startupTasks.health().getStatus());
+        assertEquals("Keycloak is not reachable", startupTasks.health().getDetails().get("broken"));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<AvailabilityChangeEvent<LivenessState>> event = ArgumentCaptor.forClass(AvailabilityChangeEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(LivenessState.BROKEN, event.getValue().getState());
+    }
+
+    @Test
+    void submit_WhileATaskIsRetried_ShouldRunTheLaterTasksAfterIt() throws InterruptedException {
+        // Arrange
+        List<String> runs = new ArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        startupTasks.submit("keycloak-user-sync", () -> {
+            runs.add("keycloak-user-sync");
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Keycloak is not reachable");
+            }
+        });
+        startupTasks.submit("initial-admin-setup", () -> runs.add("initial-admin-setup"));
+        awaitCompletion();
+
+        // Assert
+        assertEquals(List.of("keycloak-user-sync", "keycloak-user-sync", "keycloak-user-sync", "initial-admin-setup"), runs);
+        assertEquals(Status.UP, startupTasks.health().getStatus());
+    }
+}
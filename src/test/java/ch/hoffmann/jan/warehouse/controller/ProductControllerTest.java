@@ -5,6 +5,9 @@ import ch.hoffmann.jan.warehouse.dto.product.ProductPatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductResponseDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
 import ch.hoffmann.jan.warehouse.service.ProductService;
+import ch.hoffmann.jan.warehouse.util.StreamedList;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +20,7 @@ import org.springframework.http.ResponseEntity;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -69,19 +73,26 @@ public class ProductControllerTest {
     }
 
     @Test
-    void getAllProducts_ShouldReturnAllProducts() {
+    void getAllProducts_ShouldReturnAllProducts() throws Exception {
         // Arrange
-        when(productService.getAllProducts()).thenReturn(productList);
+        doAnswer(invocation -> {
+            Consumer<ProductResponseDTO> consumer = invocation.getArgument(0);
+            productList.forEach(consumer);
+            return null;
+        }).when(productService).streamAllProducts(any());
 
         // Act
-        ResponseEntity<List<ProductResponseDTO>> response = productController.getAllProducts();
+        ResponseEntity<StreamedList<ProductResponseDTO>> response = productController.getAllProducts();
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<ProductResponseDTO> products = objectMapper.readValue(objectMapper.writeValueAsBytes(response.getBody()),
+                new TypeReference<List<ProductResponseDTO>>() {});
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(2, response.getBody().size());
-        assertEquals("Test Product", response.getBody().get(0).getName());
-        assertEquals("Another Product", response.getBody().get(1).getName());
-        verify(productService, times(1)).getAllProducts();
+        assertEquals(2, products.size());
+        assertEquals("Test Product", products.get(0).getName());
+        assertEquals("Another Product", products.get(1).getName());
+        verify(productService, times(1)).streamAllProducts(any());
     }
 
     @Test
@@ -0,0 +1,130 @@
+package ch.hoffmann.jan.warehouse.repository;
+
+import ch.hoffmann.jan.warehouse.model.Audit;
+import ch.hoffmann.jan.warehouse.model.Category;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.User;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures bulk insert throughput of products, stocks and audit entries against the PostgreSQL database
+ * configured in application.properties (already migrated by the application). Each run inserts one product,
+ * one stock and one audit entry per row, once without JDBC batching and once with the configured batch size.
+ * Everything is rolled back at the end of the test.
+ *
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class BulkInsertBenchmarkTest {
+
+    private static final int ROWS = 5_000;
+    private static final int FLUSH_INTERVAL = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(BulkInsertBenchmarkTest.class);
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void benchmarkBulkInserts() {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+
+        Category category = new Category();
+        category.setName("benchmark-" + runId);
+        entityManager.persist(category);
+
+        Warehouse warehouse = new Warehouse();
+        warehouse.setName("benchmark-" + runId);
+        warehouse.setLocation("Benchmark");
+        entityManager.persist(warehouse);
+
+        User user = new User();
+        user.setKeycloakId("benchmark-" + runId);
+        user.setUsername("benchmark-" + runId);
+        user.setRole("MANAGER");
+        entityManager.persist(user);
+        entityManager.flush();
+
+        // Warm up the connection, statement cache and sequence blocks
+        insertRows(runId + "-warmup", 50, category, warehouse, user, 1_000);
+
+        double unbatched = insertRows(runId + "-single", 1, category, warehouse, user, ROWS);
+        double batched = insertRows(runId + "-batched", 50, category, warehouse, user, ROWS);
+
+        logger.info("Bulk insert of {} products/stocks/audits: {} rows/s without batching, {} rows/s with batch size 50 ({}x)",
+                ROWS, Math.round(unbatched), Math.round(batched), String.format("%.1f", batched / unbatched));
+
+        Long inserted = entityManager.createQuery(
+                        "SELECT COUNT(s) FROM Stock s WHERE s.warehouse.id = :warehouseId", Long.class)
+                .setParameter("warehouseId", warehouse.getId())
+                .getSingleResult();
+        assertThat(inserted).isEqualTo(2L * ROWS + 1_000);
+    }
+
+    /**
+     * Inserts the given number of product/stock/audit rows and returns the throughput in rows per second
+     */
+    private double insertRows(String prefix, int batchSize, Category category, Warehouse warehouse, User user, int rows) {
+        Session session = entityManager.unwrap(Session.class);
+        session.setJdbcBatchSize(batchSize);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            Product product = new Product();
+            product.setName(prefix + "-" + i);
+            product.setDescription("Benchmark product");
+            product.setPrice(new BigDecimal("9.99"));
+            product.setCategory(entityManager.getReference(Category.class, category.getId()));
+            entityManager.persist(product);
+
+            Warehouse warehouseReference = entityManager.getReference(Warehouse.class, warehouse.getId());
+
+            Stock stock = new Stock();
+            stock.setProduct(product);
+            stock.setWarehouse(warehouseReference);
+            stock.setQuantity(10);
+            entityManager.persist(stock);
+
+            Audit audit = new Audit();
+            audit.setUser(entityManager.getReference(User.class, user.getId()));
+            audit.setProduct(product);
+            audit.setWarehouse(warehouseReference);
+            audit.setAction("ADD");
+            audit.setQuantity(10);
+            audit.setTimestamp(LocalDateTime.now());
+            entityManager.persist(audit);
+
+            if ((i + 1) % FLUSH_INTERVAL == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        long elapsed = System.nanoTime() - start;
+
+        session.setJdbcBatchSize(null);
+        return rows / (elapsed / 1_000_000_000.0);
+    }
+}
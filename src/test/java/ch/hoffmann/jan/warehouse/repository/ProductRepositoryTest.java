@@ -13,7 +13,11 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@DataJpaTest
+@DataJpaTest(properties = {
+        // The Flyway migrations are PostgreSQL specific; the embedded test database uses the entity mappings
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
 public class ProductRepositoryTest {
 
     @Autowired
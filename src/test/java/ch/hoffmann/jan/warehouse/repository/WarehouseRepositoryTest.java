@@ -0,0 +1,98 @@
+package ch.hoffmann.jan.warehouse.repository;
+
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseStockDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseSummaryDTO;
+import ch.hoffmann.jan.warehouse.model.Category;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        // The Flyway migrations are PostgreSQL specific; the embedded test database uses the entity mappings
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class WarehouseRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    private Warehouse central;
+
+    @BeforeEach
+    void setUp() {
+        Category category = new Category();
+        category.setName("Electronics");
+        entityManager.persist(category);
+
+        central = new Warehouse();
+        central.setName("Central");
+        central.setLocation("Zurich");
+        entityManager.persist(central);
+
+        Warehouse empty = new Warehouse();
+        empty.setName("Annex");
+        empty.setLocation("Bern");
+        entityManager.persist(empty);
+
+        String[] names = {"Mouse", "Keyboard", "Laptop"};
+        for (int i = 0; i < names.length; i++) {
+            Product product = new Product();
+            product.setName(names[i]);
+            product.setPrice(new BigDecimal("10.00"));
+            product.setCategory(category);
+            entityManager.persist(product);
+
+            Stock stock = new Stock();
+            stock.setProduct(product);
+            stock.setWarehouse(central);
+            stock.setQuantity(10 * (i + 1));
+            entityManager.persist(stock);
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void testFindAllSummaries() {
+        // When
+        List<WarehouseSummaryDTO> summaries = warehouseRepository.findAllSummaries();
+
+        // Then
+        assertThat(summaries).extracting(WarehouseSummaryDTO::getName).containsExactly("Annex", "Central");
+        assertThat(summaries.get(0).getSkuCount()).isZero();
+        assertThat(summaries.get(0).getTotalUnits()).isZero();
+        assertThat(summaries.get(1).getSkuCount()).isEqualTo(3);
+        assertThat(summaries.get(1).getTotalUnits()).isEqualTo(60);
+    }
+
+    @Test
+    public void testFindWarehouseStocksPage() {
+        // When
+        Page<WarehouseStockDTO> page = stockRepository.findWarehouseStocks(central.getId(), PageRequest.of(0, 2));
+
+        // Then
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(page.getContent()).extracting(WarehouseStockDTO::getProductName).containsExactly("Keyboard", "Laptop");
+        assertThat(page.getContent().get(0).getQuantity()).isEqualTo(20);
+    }
+}
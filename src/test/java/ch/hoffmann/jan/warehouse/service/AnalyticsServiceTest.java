@@ -0,0 +1,145 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AnalyticsServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AnalyticsService analyticsService;
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        analyticsService = new AnalyticsService(entityManager, transactionManager, Duration.ZERO);
+    }
+
+    private Query stubQuery(String sql) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(contains(sql))).thenReturn(query);
+        return query;
+    }
+
+    private void stubRolledUpThrough(LocalDate day) {
+        when(stubQuery("SELECT rolled_up_through").getSingleResult()).thenReturn(day);
+    }
+
+    private void stubLock(boolean granted) {
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(stubQuery("pg_try_advisory_xact_lock").getSingleResult()).thenReturn(granted);
+    }
+
+    @Test
+    void rebuild_ShouldRecomputeTheDaysFromASnapshotWithoutLockingTheAuditLog() {
+        // Arrange
+        stubLock(true);
+        stubRolledUpThrough(today.minusDays(1));
+        Query delete = stubQuery("DELETE FROM stock_movements_daily");
+        when(stubQuery("INSERT INTO stock_movements_daily").executeUpdate()).thenReturn(3);
+
+        // Act
+        int rows = analyticsService.rebuild(today.minusDays(3), today.minusDays(2));
+
+        // Assert
+        assertEquals(3, rows);
+        verify(session).doWork(any());
+        verify(delete).setParameter("from", today.minusDays(3));
+        verify(delete).setParameter("to", today.minusDays(2));
+        verify(entityManager, never()).createNativeQuery(contains("LOCK TABLE"));
+        // Days before the rolled-up day do not move it
+        verify(entityManager, never()).createNativeQuery(contains("UPDATE stock_movements_rollup_state"));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void rebuild_OfDayNotClosedYet_ShouldThrow() {
+        assertThrows(WarehouseException.ValidationException.class,
+                () -> analyticsService.rebuild(today.minusDays(1), today));
+        verifyNoInteractions(entityManager, transactionManager);
+    }
+
+    @Test
+    void rebuild_WhileAnotherRollupRuns_ShouldThrowWithoutWriting() {
+        // Arrange
+        stubLock(false);
+
+        // Act & Assert
+        assertThrows(WarehouseException.RollupInProgressException.class,
+                () -> analyticsService.rebuild(today.minusDays(3), today.minusDays(2)));
+        verify(entityManager, never()).createNativeQuery(contains("DELETE FROM stock_movements_daily"));
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void rollUpClosedDays_ShouldRollUpTheDaysSinceTheLastRunAndAdvanceTheRolledUpDay() {
+        // Arrange: the job last ran three days ago
+        stubLock(true);
+        stubRolledUpThrough(today.minusDays(3));
+        Query insert = stubQuery("INSERT INTO stock_movements_daily");
+        stubQuery("DELETE FROM stock_movements_daily");
+        Query state = stubQuery("UPDATE stock_movements_rollup_state");
+
+        // Act
+        analyticsService.rollUpClosedDays();
+
+        // Assert: the two closed days since then, today stays open
+        verify(insert).setParameter("start", today.minusDays(2).atStartOfDay());
+        verify(insert).setParameter("end", today.atStartOfDay());
+        verify(state).setParameter("to", today.minusDays(1));
+        verify(state).executeUpdate();
+    }
+
+    @Test
+    void rollUpClosedDays_WhenUpToDate_ShouldNotWrite() {
+        // Arrange
+        stubLock(true);
+        stubRolledUpThrough(today.minusDays(1));
+
+        // Act
+        analyticsService.rollUpClosedDays();
+
+        // Assert
+        verify(entityManager, never()).createNativeQuery(contains("INSERT INTO stock_movements_daily"));
+    }
+
+    @Test
+    void getVelocity_ShouldReadTheRollupUpToTheRolledUpDayAndTheAuditLogAfterIt() {
+        // Arrange
+        stubRolledUpThrough(today.minusDays(1));
+        Query velocity = stubQuery("FROM stock_movements_daily r");
+        when(velocity.getResultList()).thenReturn(List.of());
+
+        // Act
+        analyticsService.getVelocity(today.minusDays(6), today, AnalyticsService.Granularity.DAY, null, null);
+
+        // Assert
+        verify(velocity).setParameter("rolledUpThrough", today.minusDays(1));
+        verify(velocity).setParameter("liveFrom", today.atStartOfDay());
+        verify(velocity).setParameter("liveUntil", today.plusDays(1).atStartOfDay());
+    }
+}
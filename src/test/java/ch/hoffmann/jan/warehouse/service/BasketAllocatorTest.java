@@ -0,0 +1,85 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityResponseDTO.AllocationType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BasketAllocatorTest {
+
+    private Map<Long, Integer> demand;
+
+    @BeforeEach
+    void setUp() {
+        // Product 1: 5 units, product 2: 3 units
+        demand = new LinkedHashMap<>();
+        demand.put(1L, 5);
+        demand.put(2L, 3);
+    }
+
+    @Test
+    void allocate_WhenOneWarehouseHasEverything_ShouldPreferTheCheapest() {
+        // Arrange: warehouses 10 and 11 both have the whole basket, 11 is nearer
+        Map<Long, Map<Long, Integer>> available = Map.of(
+                10L, Map.of(1L, 9, 2L, 9),
+                11L, Map.of(1L, 5, 2L, 3),
+                12L, Map.of(1L, 100));
+
+        // Act
+        BasketAllocator.Result withoutCosts = BasketAllocator.allocate(demand, available, Map.of());
+        BasketAllocator.Result withCosts = BasketAllocator.allocate(demand, available, Map.of(10L, 20.0, 11L, 5.0, 12L, 1.0));
+
+        // Assert: without costs the one with the most units
+        assertEquals(AllocationType.SINGLE_WAREHOUSE, withoutCosts.type());
+        assertEquals(List.of(new BasketAllocator.Allocation(10L, 1L, 5), new BasketAllocator.Allocation(10L, 2L, 3)),
+                withoutCosts.allocations());
+        assertEquals(List.of(new BasketAllocator.Allocation(11L, 1L, 5), new BasketAllocator.Allocation(11L, 2L, 3)),
+                withCosts.allocations());
+    }
+
+    @Test
+    void allocate_WhenAPairSuffices_ShouldSplitOverTwoWarehouses() {
+        // Arrange: starting with 10 (most units) would need three warehouses; 11 and 12 have everything together
+        Map<Long, Map<Long, Integer>> available = Map.of(
+                10L, Map.of(1L, 4, 2L, 2),
+                11L, Map.of(1L, 5),
+                12L, Map.of(2L, 3));
+
+        // Act
+        BasketAllocator.Result result = BasketAllocator.allocate(demand, available, Map.of());
+
+        // Assert
+        assertEquals(AllocationType.SPLIT, result.type());
+        assertEquals(List.of(new BasketAllocator.Allocation(11L, 1L, 5), new BasketAllocator.Allocation(12L, 2L, 3)),
+                result.allocations());
+
+        // Act: the nearer warehouse of the pair ships first
+        result = BasketAllocator.allocate(demand, available, Map.of(10L, 1.0, 11L, 9.0, 12L, 2.0));
+
+        // Assert
+        assertEquals(List.of(new BasketAllocator.Allocation(12L, 2L, 3), new BasketAllocator.Allocation(11L, 1L, 5)),
+                result.allocations());
+    }
+
+    @Test
+    void allocate_WhenStockIsShort_ShouldAllocateWhatIsAvailable() {
+        // Arrange: no pair suffices, all three together have everything of product 2 but only 4 units of product 1
+        Map<Long, Map<Long, Integer>> available = Map.of(
+                10L, Map.of(1L, 2, 2L, 1),
+                11L, Map.of(1L, 2, 2L, 1),
+                12L, Map.of(2L, 1));
+
+        // Act
+        BasketAllocator.Result result = BasketAllocator.allocate(demand, available, Map.of());
+
+        // Assert
+        assertEquals(AllocationType.PARTIAL, result.type());
+        assertEquals(4, result.allocations().stream().filter(a -> a.productId() == 1L).mapToInt(BasketAllocator.Allocation::quantity).sum());
+        assertEquals(3, result.allocations().stream().filter(a -> a.productId() == 2L).mapToInt(BasketAllocator.Allocation::quantity).sum());
+    }
+}
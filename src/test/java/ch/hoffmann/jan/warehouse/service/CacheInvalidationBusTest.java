@@ -0,0 +1,113 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CacheInvalidationBusTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private SessionFactory sessionFactory;
+
+    @Mock
+    private Cache cache;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private ProductSuggestIndex productSuggestIndex;
+
+    @Mock
+    private StockAvailabilityView stockAvailabilityView;
+
+    @Mock
+    private StockRoutingService stockRoutingService;
+
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @BeforeEach
+    void setUp() {
+        when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+        when(sessionFactory.getCache()).thenReturn(cache);
+        cacheInvalidationBus = new CacheInvalidationBus(entityManager, entityManagerFactory, aggregateVersions,
+                productSuggestIndex, stockAvailabilityView, stockRoutingService, new DataSourceProperties(), true,
+                Duration.ofSeconds(10));
+    }
+
+    @Test
+    void publishStocks_WithManyProducts_ShouldSplitThemIntoSeveralNotifications() {
+        // Arrange
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        List<Long> productIds = LongStream.rangeClosed(1_000_000, 1_001_000).boxed().toList();
+
+        // Act
+        cacheInvalidationBus.publishStocks(productIds, 10L);
+
+        // Assert: every entry is sent once, within the NOTIFY payload limit, rather than as "all"
+        ArgumentCaptor<String> payloads = ArgumentCaptor.forClass(String.class);
+        verify(query, atLeast(2)).setParameter(eq("payload"), payloads.capture());
+        List<String> entries = payloads.getAllValues().stream()
+                .peek(payload -> assertTrue(payload.length() < 8000))
+                .flatMap(payload -> Arrays.stream(payload.split(":", 3)[2].split(",")))
+                .toList();
+        assertEquals(productIds.stream().map(id -> id + "/10").toList(), entries);
+    }
+
+    @Test
+    void handle_WhenAnotherInstanceChangedStock_ShouldDropTheCachedStockBeforeBumpingTheVersion() {
+        // Act
+        cacheInvalidationBus.handle("other:STOCK:1/10,2/10");
+
+        // Assert: a request that sees the new ETag can no longer be answered from the stale entries
+        InOrder inOrder = inOrder(stockAvailabilityView, stockRoutingService, aggregateVersions);
+        inOrder.verify(stockAvailabilityView).invalidateAfterCommit(1L, 10L);
+        inOrder.verify(stockAvailabilityView).invalidateAfterCommit(2L, 10L);
+        inOrder.verify(stockRoutingService).invalidateAfterCommit(List.of(1L, 2L));
+        inOrder.verify(aggregateVersions).bump(AggregateVersions.Aggregate.STOCKS);
+        verifyNoInteractions(cache);
+    }
+
+    @Test
+    void handle_WithOwnMessage_ShouldIgnoreIt() {
+        // Arrange
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        cacheInvalidationBus.publishStock(1L, 10L);
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(query).setParameter(eq("payload"), payload.capture());
+
+        // Act
+        cacheInvalidationBus.handle(payload.getValue());
+
+        // Assert: this instance invalidated its caches when it committed
+        verifyNoInteractions(stockAvailabilityView, stockRoutingService, aggregateVersions);
+    }
+}
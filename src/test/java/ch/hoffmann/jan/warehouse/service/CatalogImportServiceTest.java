@@ -0,0 +1,129 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.catalog.CatalogImportEventDTO;
+import ch.hoffmann.jan.warehouse.model.Category;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.repository.CategoryRepository;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.UserRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CatalogImportServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @Mock
+    private WarehouseRepository warehouseRepository;
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private ProductSuggestIndex productSuggestIndex;
+
+    @Mock
+    private StockAvailabilityView stockAvailabilityView;
+
+    @Mock
+    private StockRoutingService stockRoutingService;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CatalogImportService catalogImportService;
+
+    @BeforeEach
+    void setUp() {
+        catalogImportService = new CatalogImportService(productRepository, categoryRepository, warehouseRepository,
+                stockRepository, userRepository, auditService, productSuggestIndex, stockAvailabilityView,
+                stockRoutingService, aggregateVersions, outboxService, cacheInvalidationBus,
+                Validation.buildDefaultValidatorFactory().getValidator(), entityManager, new ObjectMapper(),
+                transactionManager, 2);
+
+        Category category = new Category();
+        category.setId(1L);
+        category.setName("Tools");
+        when(categoryRepository.findByNameIn(anyCollection())).thenReturn(List.of(category));
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(Set.of());
+        AtomicLong ids = new AtomicLong();
+        when(productRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            products.forEach(product -> product.setId(ids.incrementAndGet()));
+            return products;
+        });
+    }
+
+    @Test
+    void importCatalog_WhenTheFlushHitsAConcurrentDuplicateName_ShouldFailTheChunkAndContinue() {
+        // Arrange: another import inserted "Hammer" between the duplicate check and the flush of the first chunk
+        doThrow(new ConstraintViolationException("could not execute batch",
+                new SQLException("duplicate key value violates unique constraint \"uk_products_name\""), "uk_products_name"))
+                .doNothing()
+                .when(entityManager).flush();
+        String csv = "name,price,category\nHammer,9.90,Tools\nSaw,19.90,Tools\nDrill,49.90,Tools\n";
+        List<CatalogImportEventDTO> events = new ArrayList<>();
+
+        // Act
+        CatalogImportEventDTO summary = catalogImportService.importCatalog(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), CatalogImportService.Format.CSV, 1L,
+                events::add);
+
+        // Assert
+        assertEquals(3L, summary.getRowsRead());
+        assertEquals(1L, summary.getProductsImported());
+        assertEquals(2L, summary.getRowsFailed());
+        List<CatalogImportEventDTO> errors = events.stream()
+                .filter(event -> CatalogImportEventDTO.ERROR.equals(event.getType()))
+                .toList();
+        assertEquals(List.of(2L, 3L), errors.stream().map(CatalogImportEventDTO::getLine).toList());
+        assertTrue(errors.get(0).getMessage().contains("uk_products_name"));
+        verify(transactionManager, times(1)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+    }
+}
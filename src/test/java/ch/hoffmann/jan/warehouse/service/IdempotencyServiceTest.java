@@ -0,0 +1,146 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger executions = new AtomicInteger();
+    private IdempotencyService idempotencyService;
+    private Query claimQuery;
+    private Query storeQuery;
+    private Query replayQuery;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(entityManager, objectMapper, transactionManager, Duration.ofHours(24));
+        claimQuery = mock(Query.class, RETURNS_SELF);
+        storeQuery = mock(Query.class, RETURNS_SELF);
+        replayQuery = mock(Query.class, RETURNS_SELF);
+    }
+
+    private void stubQueries() {
+        lenient().when(entityManager.createNativeQuery(contains("INSERT INTO idempotency_keys"))).thenReturn(claimQuery);
+        lenient().when(entityManager.createNativeQuery(contains("UPDATE idempotency_keys"))).thenReturn(storeQuery);
+        lenient().when(entityManager.createNativeQuery(contains("SELECT request_hash"))).thenReturn(replayQuery);
+    }
+
+    private ResponseEntity<StockResponseDTO> update(String key, int quantity) {
+        StockUpdateRequestDTO request = new StockUpdateRequestDTO(1L, 10L, quantity, StockUpdateRequestDTO.OperationType.ADD);
+        return idempotencyService.execute(key, 5L, "PUT /api/stocks", request, StockResponseDTO.class, () -> {
+            executions.incrementAndGet();
+            StockResponseDTO stock = new StockResponseDTO();
+            stock.setProductId(1L);
+            stock.setQuantity(10 + quantity);
+            return ResponseEntity.ok(stock);
+        });
+    }
+
+    /**
+     * The first request claims the key; its request hash and stored response are returned for the replay
+     */
+    private Object[] firstAttempt(String key, int quantity) {
+        when(claimQuery.executeUpdate()).thenReturn(1);
+        update(key, quantity);
+        ArgumentCaptor<Object> hash = ArgumentCaptor.forClass(Object.class);
+        verify(claimQuery).setParameter(eq("hash"), hash.capture());
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(storeQuery).setParameter(eq("body"), body.capture());
+        return new Object[]{hash.getValue(), 200, body.getValue()};
+    }
+
+    @Test
+    void execute_WithRetriedKey_ShouldReplayTheStoredResponseWithoutRunningTheAction() {
+        // Arrange
+        stubQueries();
+        Object[] stored = firstAttempt("order-42", 5);
+        when(claimQuery.executeUpdate()).thenReturn(0);
+        when(replayQuery.getResultList()).thenReturn(Collections.singletonList(stored));
+
+        // Act
+        ResponseEntity<StockResponseDTO> replayed = update("order-42", 5);
+
+        // Assert
+        assertEquals(1, executions.get());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(15, replayed.getBody().getQuantity());
+        assertEquals(1L, replayed.getBody().getProductId());
+    }
+
+    @Test
+    void execute_WithKeyReusedForAnotherRequest_ShouldThrow() {
+        // Arrange
+        stubQueries();
+        Object[] stored = firstAttempt("order-42", 5);
+        when(claimQuery.executeUpdate()).thenReturn(0);
+        when(replayQuery.getResultList()).thenReturn(Collections.singletonList(stored));
+
+        // Act & Assert
+        assertThrows(WarehouseException.IdempotencyKeyReuseException.class, () -> update("order-42", 6));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_WhenTheActionFails_ShouldRollBackTheClaim() {
+        // Arrange
+        stubQueries();
+        when(claimQuery.executeUpdate()).thenReturn(1);
+
+        // Act
+        assertThrows(WarehouseException.InsufficientStockException.class, () ->
+                idempotencyService.execute("order-42", 5L, "PUT /api/stocks", "request", StockResponseDTO.class, () -> {
+                    throw new WarehouseException.InsufficientStockException("Hammer", "Zurich", 5, 2);
+                }));
+
+        // Assert: nothing is stored, so a retry runs the action again
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(storeQuery, never()).executeUpdate();
+    }
+
+    @Test
+    void execute_WithoutKey_ShouldRunTheActionWithoutTransaction() {
+        // Act
+        update(null, 5);
+        update(null, 5);
+
+        // Assert
+        assertEquals(2, executions.get());
+        verifyNoInteractions(entityManager, transactionManager);
+    }
+
+    @Test
+    void execute_WithInvalidKey_ShouldThrow() {
+        assertThrows(WarehouseException.ValidationException.class, () -> update(" ", 5));
+        assertThrows(WarehouseException.ValidationException.class, () -> update("k".repeat(101), 5));
+        assertEquals(0, executions.get());
+    }
+}
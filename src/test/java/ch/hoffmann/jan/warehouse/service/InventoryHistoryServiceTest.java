@@ -0,0 +1,206 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.audit.HistoricalInventoryDTO;
+import ch.hoffmann.jan.warehouse.dto.audit.HistoricalStockDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class InventoryHistoryServiceTest {
+
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private InventoryHistoryService historyService;
+    private final LocalDateTime checkpointAt = LocalDateTime.now().minusDays(1).withNano(0);
+
+    @BeforeEach
+    void setUp() {
+        historyService = new InventoryHistoryService(entityManager, transactionManager, Duration.ofMinutes(10));
+    }
+
+    private Query stubQuery(String sql) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(contains(sql))).thenReturn(query);
+        return query;
+    }
+
+    private Query stubCheckpoint(boolean exists) {
+        Query checkpoint = stubQuery("SELECT id, taken_at FROM stock_snapshots");
+        when(checkpoint.getResultList()).thenReturn(exists
+                ? List.<Object[]>of(new Object[]{5L, Timestamp.valueOf(checkpointAt)})
+                : List.of());
+        return checkpoint;
+    }
+
+    private Query stubInventory(List<Object[]> rows) {
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        Query inventory = stubQuery("LEFT JOIN products p");
+        when(inventory.getResultList()).thenReturn(rows);
+        return inventory;
+    }
+
+    @Test
+    void getInventoryAt_ShouldReplayTheAuditEntriesSinceTheLatestCheckpointFromOneSnapshot() {
+        // Arrange
+        LocalDateTime at = LocalDateTime.now().minusHours(2);
+        stubCheckpoint(true);
+        Query inventory = stubInventory(List.<Object[]>of(new Object[]{1L, "Hammer", 10L, "Zurich", 4}));
+
+        // Act
+        HistoricalInventoryDTO result = historyService.getInventoryAt(at, null, null);
+
+        // Assert
+        verify(session).doWork(any());
+        verify(inventory).setParameter("snapshotId", 5L);
+        verify(inventory).setParameter("from", checkpointAt);
+        verify(inventory).setParameter("until", at);
+        assertEquals(checkpointAt, result.getCheckpointAt());
+        HistoricalStockDTO stock = result.getStocks().get(0);
+        assertEquals("Hammer", stock.getProductName());
+        assertEquals(4, stock.getQuantity());
+    }
+
+    @Test
+    void getInventoryAt_ShouldCountATransferAtTheSourceAndTheTargetWarehouse() {
+        // Arrange
+        stubCheckpoint(true);
+        stubInventory(List.of());
+
+        // Act
+        historyService.getInventoryAt(LocalDateTime.now(), null, null);
+
+        // Assert: TRANSFER is subtracted with REMOVE at warehouse_id and added at target_warehouse_id
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(entityManager, times(2)).createNativeQuery(sql.capture());
+        String replay = sql.getAllValues().get(1);
+        assertTrue(replay.contains("CASE WHEN a.action = 'ADD' THEN a.quantity ELSE -a.quantity END"));
+        assertTrue(replay.contains("a.action IN ('ADD', 'REMOVE', 'TRANSFER')"));
+        assertTrue(replay.contains("SELECT a.product_id, a.target_warehouse_id, a.quantity"));
+        assertTrue(replay.contains("a.action = 'TRANSFER'"));
+    }
+
+    @Test
+    void getInventoryAt_WithoutCheckpoint_ShouldReplayTheWholeAuditLog() {
+        // Arrange
+        stubCheckpoint(false);
+        Query inventory = stubInventory(List.of());
+
+        // Act
+        HistoricalInventoryDTO result = historyService.getInventoryAt(LocalDateTime.now(), 1L, 10L);
+
+        // Assert
+        verify(inventory).setParameter("snapshotId", -1L);
+        verify(inventory).setParameter("from", BEGINNING);
+        verify(inventory).setParameter("productId", 1L);
+        verify(inventory).setParameter("warehouseId", 10L);
+        assertNull(result.getCheckpointAt());
+    }
+
+    @Test
+    void getInventoryAt_OfDeletedProductAndWarehouse_ShouldListThemByIdWithoutName() {
+        // Arrange
+        stubCheckpoint(true);
+        stubInventory(List.<Object[]>of(new Object[]{3L, null, 30L, null, 2}));
+
+        // Act
+        HistoricalInventoryDTO result = historyService.getInventoryAt(LocalDateTime.now(), null, null);
+
+        // Assert
+        HistoricalStockDTO stock = result.getStocks().get(0);
+        assertEquals(3L, stock.getProductId());
+        assertNull(stock.getProductName());
+        assertEquals(30L, stock.getWarehouseId());
+        assertNull(stock.getWarehouseName());
+        verify(entityManager).createNativeQuery(contains("LEFT JOIN warehouses w"));
+    }
+
+    @Test
+    void getInventoryAt_InTheFuture_ShouldThrow() {
+        assertThrows(WarehouseException.ValidationException.class,
+                () -> historyService.getInventoryAt(LocalDateTime.now().plusMinutes(1), null, null));
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void createCheckpoint_ShouldBuildOnThePreviousCheckpointUpToTheSettleDelayBeforeNow() {
+        // Arrange
+        when(stubQuery("pg_try_advisory_xact_lock").getSingleResult()).thenReturn(true);
+        Query checkpoint = stubCheckpoint(true);
+        Query changed = stubQuery("SELECT EXISTS");
+        when(changed.getSingleResult()).thenReturn(true);
+        when(stubQuery("nextval('stock_snapshots_seq')").getSingleResult()).thenReturn(6L);
+        Query snapshot = stubQuery("INSERT INTO stock_snapshots (id");
+        Query lines = stubQuery("INSERT INTO stock_snapshot_lines");
+        when(lines.executeUpdate()).thenReturn(12);
+        Query lineCount = stubQuery("UPDATE stock_snapshots SET line_count");
+
+        // Act
+        historyService.createCheckpoint();
+
+        // Assert: audit entries of the last 10 minutes may belong to transactions that have not committed yet
+        ArgumentCaptor<LocalDateTime> until = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(checkpoint).setParameter(eq("at"), until.capture());
+        assertTrue(Duration.between(until.getValue(), LocalDateTime.now().minusMinutes(10)).abs().getSeconds() < 5);
+        verify(changed).setParameter("from", checkpointAt);
+        verify(changed).setParameter("until", until.getValue());
+        verify(snapshot).setParameter("takenAt", until.getValue());
+        verify(lines).setParameter("previousId", 5L);
+        verify(lines).setParameter("from", checkpointAt);
+        verify(lines).setParameter("until", until.getValue());
+        verify(lineCount).setParameter("lines", 12);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void createCheckpoint_WithoutChangesSinceTheLastCheckpoint_ShouldNotWrite() {
+        // Arrange
+        when(stubQuery("pg_try_advisory_xact_lock").getSingleResult()).thenReturn(true);
+        stubCheckpoint(true);
+        when(stubQuery("SELECT EXISTS").getSingleResult()).thenReturn(false);
+
+        // Act
+        historyService.createCheckpoint();
+
+        // Assert
+        verify(entityManager, never()).createNativeQuery(contains("INSERT INTO stock_snapshots"));
+    }
+
+    @Test
+    void createCheckpoint_WhileAnotherInstanceWritesOne_ShouldSkip() {
+        // Arrange
+        when(stubQuery("pg_try_advisory_xact_lock").getSingleResult()).thenReturn(false);
+
+        // Act
+        historyService.createCheckpoint();
+
+        // Assert
+        verify(entityManager, never()).createNativeQuery(contains("stock_snapshots"));
+    }
+}
@@ -0,0 +1,93 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.model.OutboxEvent;
+import ch.hoffmann.jan.warehouse.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxDispatcherTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Long> published = new ArrayList<>();
+    private OutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        // The sink rejects event 2; batches containing it fail as a whole
+        EventSink sink = events -> {
+            if (events.stream().anyMatch(event -> event.getId() == 2L)) {
+                throw new IllegalStateException("broker unavailable");
+            }
+            events.forEach(event -> published.add(event.getId()));
+        };
+        dispatcher = new OutboxDispatcher(outboxEventRepository, sink, transactionManager,
+                10, 3, Duration.ofSeconds(5), Duration.ofDays(7));
+        when(outboxEventRepository.tryAdvisoryXactLock(anyLong())).thenReturn(true);
+    }
+
+    @Test
+    void dispatch_WithFailingEvent_ShouldHoldBackLaterEventsOfTheSameAggregate() {
+        // Arrange
+        OutboxEvent first = event(1L, 100L);
+        OutboxEvent failing = event(2L, 100L);
+        OutboxEvent blocked = event(3L, 100L);
+        OutboxEvent other = event(4L, 200L);
+        when(outboxEventRepository.findDispatchable(any(), anyInt())).thenReturn(List.of(first, failing, blocked, other));
+
+        // Act
+        dispatcher.dispatch();
+
+        // Assert
+        assertEquals(List.of(1L, 4L), published);
+        assertNotNull(first.getPublishedAt());
+        assertNull(failing.getPublishedAt());
+        assertEquals(1, failing.getAttempts());
+        assertEquals("broker unavailable", failing.getLastError());
+        assertNotNull(failing.getNextAttemptAt());
+        assertNull(blocked.getPublishedAt());
+        assertEquals(0, blocked.getAttempts());
+        assertNotNull(other.getPublishedAt());
+    }
+
+    @Test
+    void dispatch_AfterLastAttempt_ShouldMarkEventDead() {
+        // Arrange
+        OutboxEvent failing = event(2L, 100L);
+        failing.setAttempts(2);
+        when(outboxEventRepository.findDispatchable(any(), anyInt())).thenReturn(List.of(failing));
+
+        // Act
+        dispatcher.dispatch();
+
+        // Assert
+        assertEquals(3, failing.getAttempts());
+        assertNotNull(failing.getDeadAt());
+        assertTrue(published.isEmpty());
+    }
+
+    private OutboxEvent event(Long id, Long productId) {
+        OutboxEvent event = new OutboxEvent("Stock", productId, "StockAdjusted", "{}");
+        event.setId(id);
+        return event;
+    }
+}
@@ -3,6 +3,7 @@ package ch.hoffmann.jan.warehouse.service;
 import ch.hoffmann.jan.warehouse.dto.product.ProductCreateRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductPatchRequestDTO;
 import ch.hoffmann.jan.warehouse.dto.product.ProductResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSearchResultDTO;
 import ch.hoffmann.jan.warehouse.exception.WarehouseException;
 import ch.hoffmann.jan.warehouse.model.Category;
 import ch.hoffmann.jan.warehouse.model.Product;
@@ -13,15 +14,18 @@ import ch.hoffmann.jan.warehouse.repository.StockRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -39,6 +43,18 @@ public class ProductServiceTest {
     @Mock
     private StockRepository stockRepository;
 
+    @Mock
+    private ProductSuggestIndex productSuggestIndex;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
     @InjectMocks
     private ProductService productService;
 
@@ -100,6 +116,29 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findAll();
     }
 
+    @Test
+    void streamAllProducts_ShouldGroupTheStockRowsOfEachProduct() {
+        // Arrange: (id, name, description, price, categoryId, categoryName, stockId, warehouseId, warehouseName, quantity)
+        when(productRepository.streamAllWithStocks()).thenReturn(Stream.of(
+                new Object[]{1L, "Test Product", "Test Description", new BigDecimal("19.99"), 1L, "Test Category", 10L, 5L, "Main", 3},
+                new Object[]{1L, "Test Product", "Test Description", new BigDecimal("19.99"), 1L, "Test Category", 11L, 6L, "Second", 7},
+                new Object[]{2L, "Another Product", null, new BigDecimal("9.99"), 1L, "Test Category", null, null, null, null}));
+        List<ProductResponseDTO> result = new ArrayList<>();
+
+        // Act
+        productService.streamAllProducts(result::add);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals("Test Product", result.get(0).getName());
+        assertEquals(2, result.get(0).getStocks().size());
+        assertEquals("Second", result.get(0).getStocks().get(1).getWarehouseName());
+        assertEquals(7, result.get(0).getStocks().get(1).getQuantity());
+        assertEquals("Another Product", result.get(1).getName());
+        assertTrue(result.get(1).getStocks().isEmpty());
+        verify(stockRepository, never()).findByProduct(any(Product.class));
+    }
+
     @Test
     void getProductById_WithValidId_ShouldReturnProduct() {
         // Arrange
@@ -190,7 +229,7 @@ public class ProductServiceTest {
     @Test
     void updateProduct_WithValidData_ShouldReturnUpdatedProduct() {
         // Arrange
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product));
         when(categoryRepository.findById(1L)).thenReturn(Optional.of(category));
 
         // Create a product that matches what would be returned after update
@@ -210,7 +249,7 @@ public class ProductServiceTest {
         // Assert
         assertEquals("New Product", result.getName());
         assertEquals(new BigDecimal("29.99"), result.getPrice());
-        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).findForUpdate(1L);
         verify(categoryRepository, times(1)).findById(1L);
         verify(productRepository, times(1)).save(any(Product.class));
     }
@@ -218,7 +257,7 @@ public class ProductServiceTest {
     @Test
     void patchProduct_WithValidData_ShouldReturnUpdatedProduct() {
         // Arrange
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product));
 
         // Create a product that matches what would be returned after patch
         Product patchedProduct = new Product();
@@ -237,44 +276,86 @@ public class ProductServiceTest {
         // Assert
         assertEquals("Updated Product", result.getName());
         assertEquals(new BigDecimal("39.99"), result.getPrice());
-        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).findForUpdate(1L);
         verify(productRepository, times(1)).save(any(Product.class));
     }
 
+    @Test
+    void patchProduct_ShouldLockTheProductBeforeRecordingItsEvent() {
+        // Arrange
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product));
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+        when(stockRepository.findByProduct(any(Product.class))).thenReturn(stockList);
+
+        // Act
+        productService.patchProduct(1L, patchRequestDTO);
+
+        // Assert: a concurrent change of the product waits for the lock, so it records its event after this one
+        InOrder inOrder = inOrder(productRepository, outboxService);
+        inOrder.verify(productRepository).findForUpdate(1L);
+        inOrder.verify(productRepository).save(product);
+        inOrder.verify(outboxService).record(any());
+        verify(productRepository, never()).findById(any());
+    }
+
     @Test
     void deleteProduct_WithValidId_AndNoStock_ShouldDeleteProduct() {
         // Arrange
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        when(stockRepository.findByProduct(product)).thenReturn(new ArrayList<>());
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product));
+        when(stockRepository.existsByProduct(product)).thenReturn(false);
 
         // Act
         productService.deleteProduct(1L);
 
         // Assert
-        verify(productRepository, times(1)).findById(1L);
-        verify(stockRepository, times(1)).findByProduct(product);
+        verify(productRepository, times(1)).findForUpdate(1L);
+        verify(stockRepository, times(1)).existsByProduct(product);
+        verify(stockRepository, never()).findByProduct(any(Product.class));
         verify(productRepository, times(1)).delete(product);
     }
 
     @Test
     void deleteProduct_WithValidId_ButHasStock_ShouldThrowException() {
         // Arrange
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-
-        Stock stock = new Stock();
-        stock.setId(1L);
-        stock.setProduct(product);
-        stock.setQuantity(10);
-
-        List<Stock> stocksWithItems = Arrays.asList(stock);
-        when(stockRepository.findByProduct(product)).thenReturn(stocksWithItems);
+        when(productRepository.findForUpdate(1L)).thenReturn(Optional.of(product));
+        when(stockRepository.existsByProduct(product)).thenReturn(true);
+        when(stockRepository.countByProduct(product)).thenReturn(1L);
 
         // Act & Assert
         assertThrows(WarehouseException.ProductInUseException.class, () -> {
             productService.deleteProduct(1L);
         });
-        verify(productRepository, times(1)).findById(1L);
-        verify(stockRepository, times(1)).findByProduct(product);
+        verify(productRepository, times(1)).findForUpdate(1L);
+        verify(stockRepository, times(1)).existsByProduct(product);
+        verify(stockRepository, never()).findByProduct(any(Product.class));
         verify(productRepository, never()).delete(any(Product.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void searchProducts_ShouldBuildPrefixQueryAndReturnPage() {
+        // Arrange
+        ProductRepository.SearchRow row = mock(ProductRepository.SearchRow.class);
+        when(row.getId()).thenReturn(1L);
+        when(row.getName()).thenReturn("USB-C Cable");
+        when(row.getTotalCount()).thenReturn(21L);
+        when(productRepository.search("usb:* & c:*", "usb-c", "usb-c%", 1L, null, true, 20, 20L))
+                .thenReturn(List.of(row));
+
+        // Act
+        Page<ProductSearchResultDTO> result = productService.searchProducts("  USB-C ", 1L, null, true, 1, 20);
+
+        // Assert
+        assertEquals(21, result.getTotalElements());
+        assertEquals(1, result.getContent().size());
+        assertEquals("USB-C Cable", result.getContent().get(0).getName());
+    }
+
+    @Test
+    void searchProducts_WithoutSearchableCharacters_ShouldThrowException() {
+        // Act & Assert
+        assertThrows(WarehouseException.ValidationException.class, () -> {
+            productService.searchProducts(" -%- ", null, null, false, 0, 20);
+        });
+        verifyNoInteractions(productRepository);
+    }
+}
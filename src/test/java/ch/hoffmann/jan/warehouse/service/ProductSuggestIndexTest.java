@@ -0,0 +1,87 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.StartupTasks;
+import ch.hoffmann.jan.warehouse.dto.product.ProductSuggestionDTO;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductSuggestIndexTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProductSuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        index = new ProductSuggestIndex(productRepository, new StartupTasks(false, 1, Duration.ZERO, null), transactionManager, meterRegistry);
+
+        when(productRepository.streamIdsAndNames()).thenReturn(Stream.of(
+                new Object[]{1L, "Laptop Pro 14"},
+                new Object[]{2L, "laptop stand"},
+                new Object[]{3L, "Mouse"},
+                new Object[]{4L, "LAN cable"}));
+        index.rebuild();
+    }
+
+    @Test
+    void suggest_ShouldMatchPrefixCaseInsensitiveInNameOrder() {
+        // Act
+        List<ProductSuggestionDTO> suggestions = index.suggest("LA", 10);
+
+        // Assert
+        assertEquals(List.of("LAN cable", "Laptop Pro 14", "laptop stand"),
+                suggestions.stream().map(ProductSuggestionDTO::getName).toList());
+        assertEquals(1, index.suggest("lap", 1).size());
+        assertTrue(index.suggest("x", 10).isEmpty());
+    }
+
+    @Test
+    void changes_WithoutTransaction_ShouldApplyImmediately() {
+        // Act
+        index.upsertAfterCommit(3L, "Laptop Mouse");
+        index.upsertAllAfterCommit(Map.of(5L, "Keyboard", 6L, "Laptop Bag"));
+        index.removeAfterCommit(2L);
+
+        // Assert
+        assertEquals(List.of(6L, 3L, 1L),
+                index.suggest("laptop", 10).stream().map(ProductSuggestionDTO::getId).toList());
+        assertTrue(index.suggest("mouse", 10).isEmpty());
+        assertEquals(1, index.suggest("key", 10).size());
+    }
+
+    @Test
+    void metrics_ShouldReportEntriesAndMemory() {
+        // Assert
+        assertEquals(4.0, meterRegistry.get("products.suggest.index.entries").gauge().value());
+        double memory = meterRegistry.get("products.suggest.index.memory").gauge().value();
+        assertTrue(memory > 0);
+
+        // Act
+        index.removeAfterCommit(1L);
+
+        // Assert
+        assertEquals(3.0, meterRegistry.get("products.suggest.index.entries").gauge().value());
+        assertTrue(meterRegistry.get("products.suggest.index.memory").gauge().value() < memory);
+    }
+}
@@ -0,0 +1,151 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.StartupTasks;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockAvailabilityViewTest {
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private StockAvailabilityView view;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        view = new StockAvailabilityView(stockRepository, new StartupTasks(false, 1, Duration.ZERO, null), transactionManager, meterRegistry, true);
+
+        // (id, productId, warehouseId, quantity, reserved)
+        when(stockRepository.streamAvailability()).thenReturn(Stream.of(
+                new Object[]{100L, 1L, 10L, 5, 2},
+                new Object[]{101L, 2L, 10L, 7, 0},
+                new Object[]{102L, 1L, 11L, 3, 0}));
+        view.rebuild();
+    }
+
+    @Test
+    void get_ShouldAnswerFromTheScan() {
+        // Act
+        StockAvailabilityView.Availability availability = view.get(1L, 10L);
+
+        // Assert
+        assertEquals(new StockAvailabilityView.Availability(100L, 5, 2), availability);
+        assertTrue(availability.exists());
+        // Not in the table, e.g. created through another instance since the scan: read from the database
+        assertNull(view.get(2L, 11L));
+        // Ids beyond 2^32 are not in the view
+        assertNull(view.get(1L << 32, 10L));
+        assertEquals(3.0, meterRegistry.get("stocks.availability.view.entries").gauge().value());
+    }
+
+    @Test
+    void get_WhenDisabled_ShouldNotAnswer() {
+        // Arrange
+        StockAvailabilityView disabled = new StockAvailabilityView(stockRepository, new StartupTasks(false, 1, Duration.ZERO, null),
+                transactionManager, new SimpleMeterRegistry(), false);
+
+        // Act
+        disabled.invalidateAfterCommit(1L, 10L);
+
+        // Assert
+        assertNull(disabled.get(1L, 10L));
+        verify(stockRepository, times(1)).streamAvailability();
+    }
+
+    @Test
+    void invalidate_ShouldReadFromDatabaseUntilReloaded() {
+        // Arrange
+        when(stockRepository.findAvailability("{1,3}", "{10,10}")).thenReturn(List.<Object[]>of(
+                new Object[]{103L, 3L, 10L, 4, 0}));
+
+        // Act
+        view.invalidateAfterCommit(List.of(1L, 3L), 10L);
+
+        // Assert
+        assertNull(view.get(1L, 10L));
+        assertNull(view.get(3L, 10L));
+
+        // Act
+        view.refreshPending();
+
+        // Assert: stock entry 1 in warehouse 10 was deleted, 3 was created
+        assertFalse(view.get(1L, 10L).exists());
+        assertEquals(new StockAvailabilityView.Availability(103L, 4, 0), view.get(3L, 10L));
+    }
+
+    @Test
+    void refresh_WhenInvalidatedDuringTheReload_ShouldNotApplyTheOlderValue() {
+        // Arrange: another commit invalidates the entry while the first reload reads it
+        when(stockRepository.findAvailability("{2}", "{10}"))
+                .thenAnswer(invocation -> {
+                    view.invalidateAfterCommit(2L, 10L);
+                    return List.<Object[]>of(new Object[]{101L, 2L, 10L, 6, 0});
+                })
+                .thenReturn(List.<Object[]>of(new Object[]{101L, 2L, 10L, 1, 0}));
+        view.invalidateAfterCommit(2L, 10L);
+
+        // Act
+        view.refreshPending();
+
+        // Assert
+        assertNull(view.get(2L, 10L));
+
+        // Act
+        view.refreshPending();
+
+        // Assert
+        assertEquals(new StockAvailabilityView.Availability(101L, 1, 0), view.get(2L, 10L));
+    }
+
+    @Test
+    void reconcile_ShouldReloadOnlyTheBucketsThatDrifted() {
+        // Arrange: the database agrees with the view except for a changed quantity of product 2 in warehouse 10
+        Object[][] database = {
+                {100L, 1L, 10L, 5, 2},
+                {101L, 2L, 10L, 9, 0},
+                {102L, 1L, 11L, 3, 0}};
+        List<Object[]> checksums = new ArrayList<>();
+        for (Object[] row : database) {
+            long key = (Long) row[1] << 32 | (Long) row[2];
+            long units = (long) (Integer) row[3] << 32 | (Integer) row[4];
+            int bucket = StockAvailabilityView.bucket(key);
+            assertTrue(checksums.stream().noneMatch(checksum -> (int) checksum[0] == bucket));
+            checksums.add(new Object[]{bucket, 1L, StockAvailabilityView.hash((Long) row[0], key, units)});
+        }
+        when(stockRepository.findAvailabilityChecksums(StockAvailabilityView.BUCKETS,
+                StockAvailabilityView.CHECKSUM_MODULUS)).thenReturn(checksums);
+        int drifted = StockAvailabilityView.bucket(2L << 32 | 10L);
+        when(stockRepository.findAvailabilityInBuckets(StockAvailabilityView.BUCKETS, "{" + drifted + "}"))
+                .thenReturn(List.<Object[]>of(database[1]));
+
+        // Act
+        view.reconcile();
+
+        // Assert
+        assertEquals(new StockAvailabilityView.Availability(101L, 9, 0), view.get(2L, 10L));
+        assertEquals(new StockAvailabilityView.Availability(100L, 5, 2), view.get(1L, 10L));
+        assertEquals(1.0, meterRegistry.get("stocks.availability.view.drifted.buckets").counter().count());
+        verify(stockRepository, never()).findAvailability(anyString(), anyString());
+    }
+}
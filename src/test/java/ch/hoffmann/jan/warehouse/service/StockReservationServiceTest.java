@@ -0,0 +1,253 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockReservationResponseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.StockReservation;
+import ch.hoffmann.jan.warehouse.model.User;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.StockReservationRepository;
+import ch.hoffmann.jan.warehouse.repository.UserRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockReservationServiceTest {
+
+    @Mock
+    private StockReservationRepository reservationRepository;
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private WarehouseRepository warehouseRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private StockAvailabilityView stockAvailabilityView;
+
+    @Mock
+    private StockRoutingService stockRoutingService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StockReservationService reservationService;
+    private Product hammer;
+    private Warehouse zurich;
+    private User manager;
+
+    @BeforeEach
+    void setUp() {
+        reservationService = new StockReservationService(reservationRepository, stockRepository, productRepository,
+                warehouseRepository, userRepository, auditService, outboxService, aggregateVersions,
+                stockAvailabilityView, stockRoutingService, cacheInvalidationBus, entityManager, transactionManager,
+                Duration.ofMinutes(15), 2, Duration.ofDays(7));
+        hammer = new Product(1L, "Hammer", "Claw hammer", new BigDecimal("9.90"), null);
+        zurich = new Warehouse(10L, "Zurich", "Zurich");
+        manager = new User(5L, "kc-5", "manager", "Max", "Muster", "MANAGER");
+    }
+
+    private Query stubQuery(String sql) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(contains(sql))).thenReturn(query);
+        return query;
+    }
+
+    private StockReservation activeReservation(LocalDateTime expiresAt) {
+        StockReservation reservation = new StockReservation(hammer, zurich, manager, 4,
+                expiresAt.minusMinutes(15), expiresAt);
+        reservation.setId(7L);
+        when(reservationRepository.findForUpdate(7L)).thenReturn(Optional.of(reservation));
+        return reservation;
+    }
+
+    @Test
+    void reserve_WithAvailableUnits_ShouldCreateAnActiveReservationWithTheRequestedTtl() {
+        // Arrange
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+        when(stubQuery("UPDATE stocks SET reserved = reserved +").executeUpdate()).thenReturn(1);
+        when(reservationRepository.save(any(StockReservation.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        StockReservationResponseDTO reservation = reservationService.reserve(
+                new StockReservationRequestDTO(1L, 10L, 3, 60), 5L);
+
+        // Assert
+        assertEquals("ACTIVE", reservation.getStatus());
+        assertEquals(3, reservation.getQuantity());
+        assertEquals(Duration.ofSeconds(60), Duration.between(reservation.getCreatedAt(), reservation.getExpiresAt()));
+        verify(cacheInvalidationBus).publishStock(1L, 10L);
+        verify(aggregateVersions).bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+    }
+
+    @Test
+    void reserve_WhenMoreThanAvailable_ShouldThrowWithoutReserving() {
+        // Arrange: 5 units, 3 of them reserved
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(stubQuery("UPDATE stocks SET reserved = reserved +").executeUpdate()).thenReturn(0);
+        Stock stock = new Stock(100L, hammer, zurich, 5);
+        ReflectionTestUtils.setField(stock, "reserved", 3);
+        when(stockRepository.findByProductAndWarehouse(hammer, zurich)).thenReturn(Optional.of(stock));
+
+        // Act & Assert
+        WarehouseException.InsufficientStockException exception = assertThrows(
+                WarehouseException.InsufficientStockException.class,
+                () -> reservationService.reserve(new StockReservationRequestDTO(1L, 10L, 3, null), 5L));
+        assertTrue(exception.getMessage().contains("2"));
+        verify(reservationRepository, never()).save(any());
+        verifyNoInteractions(aggregateVersions, cacheInvalidationBus);
+    }
+
+    @Test
+    void reserve_WithoutStockEntry_ShouldThrowStockNotFound() {
+        // Arrange
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(stubQuery("UPDATE stocks SET reserved = reserved +").executeUpdate()).thenReturn(0);
+        when(stockRepository.findByProductAndWarehouse(hammer, zurich)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(WarehouseException.StockNotFoundException.class,
+                () -> reservationService.reserve(new StockReservationRequestDTO(1L, 10L, 3, null), 5L));
+    }
+
+    @Test
+    void commit_ShouldRemoveTheReservedUnitsWithAuditEntryAndEvent() {
+        // Arrange
+        StockReservation reservation = activeReservation(LocalDateTime.now().plusMinutes(5));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+        when(stubQuery("RETURNING quantity").getSingleResult()).thenReturn(6);
+
+        // Act
+        StockReservationResponseDTO committed = reservationService.commit(7L, 5L);
+
+        // Assert: the stock keeps 6 units and is not deleted
+        assertEquals("COMMITTED", committed.getStatus());
+        assertNotNull(reservation.getClosedAt());
+        verify(entityManager, never()).createNativeQuery(contains("DELETE FROM stocks"));
+        verify(auditService).logAuditEvent(manager, hammer, zurich, null, "REMOVE", 4);
+        ArgumentCaptor<StockAdjustedEventDTO> event = ArgumentCaptor.forClass(StockAdjustedEventDTO.class);
+        verify(outboxService).record(event.capture());
+        assertEquals(6, event.getValue().getNewQuantity());
+        verify(cacheInvalidationBus).publishStock(1L, 10L);
+    }
+
+    @Test
+    void commit_WhenTheStockIsEmptied_ShouldDeleteTheStockEntry() {
+        // Arrange
+        activeReservation(LocalDateTime.now().plusMinutes(5));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+        when(stubQuery("RETURNING quantity").getSingleResult()).thenReturn(0);
+        Query delete = stubQuery("DELETE FROM stocks");
+
+        // Act
+        reservationService.commit(7L, 5L);
+
+        // Assert
+        verify(delete).executeUpdate();
+    }
+
+    @Test
+    void commit_OfReservationPastItsExpiry_ShouldThrowBeforeTheSweeperGotToIt() {
+        // Arrange
+        StockReservation reservation = activeReservation(LocalDateTime.now().minusSeconds(1));
+
+        // Act & Assert
+        WarehouseException.ReservationNotActiveException exception = assertThrows(
+                WarehouseException.ReservationNotActiveException.class, () -> reservationService.commit(7L, 5L));
+        assertTrue(exception.getMessage().contains("EXPIRED"));
+        assertEquals(StockReservation.Status.ACTIVE, reservation.getStatus());
+        verify(entityManager, never()).createNativeQuery(anyString());
+        verifyNoInteractions(auditService, outboxService);
+    }
+
+    @Test
+    void release_OfClosedReservation_ShouldThrow() {
+        // Arrange
+        StockReservation reservation = activeReservation(LocalDateTime.now().plusMinutes(5));
+        reservation.setStatus(StockReservation.Status.COMMITTED);
+
+        // Act & Assert
+        assertThrows(WarehouseException.ReservationNotActiveException.class, () -> reservationService.release(7L));
+        verify(entityManager, never()).createNativeQuery(anyString());
+    }
+
+    @Test
+    void expireReservations_ShouldSweepInBatchesAndInvalidateTheReleasedStocks() {
+        // Arrange: a full batch (2 reservations of one stock entry), so a second batch is read, which is empty
+        Query sweep = stubQuery("UPDATE stock_reservations SET status = 'EXPIRED'");
+        when(sweep.getResultList()).thenReturn(List.<Object[]>of(new Object[]{1L, 10L, 2L}), List.of());
+
+        // Act
+        reservationService.expireReservations();
+
+        // Assert: one transaction per batch
+        verify(sweep, times(2)).getResultList();
+        verify(transactionManager, times(2)).commit(any());
+        verify(stockAvailabilityView).invalidateAfterCommit(1L, 10L);
+        verify(stockRoutingService).invalidateAfterCommit(List.of(1L));
+        verify(cacheInvalidationBus).publishStock(1L, 10L);
+        verify(aggregateVersions).bump(AggregateVersions.Aggregate.STOCKS);
+    }
+
+    @Test
+    void expireReservations_WithNothingExpired_ShouldNotBumpTheVersion() {
+        // Arrange
+        when(stubQuery("UPDATE stock_reservations SET status = 'EXPIRED'").getResultList()).thenReturn(List.of());
+
+        // Act
+        reservationService.expireReservations();
+
+        // Assert
+        verifyNoInteractions(aggregateVersions, cacheInvalidationBus);
+    }
+}
@@ -0,0 +1,143 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.BasketAvailabilityRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.BasketLineDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.NearestWarehouseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockRoutingServiceTest {
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private AggregateVersions aggregateVersions;
+    private SimpleMeterRegistry meterRegistry;
+    private StockRoutingService routingService;
+
+    @BeforeEach
+    void setUp() {
+        aggregateVersions = new AggregateVersions();
+        meterRegistry = new SimpleMeterRegistry();
+        routingService = new StockRoutingService(stockRepository, productRepository, aggregateVersions, meterRegistry,
+                5, 100, Duration.ofMinutes(1));
+    }
+
+    private void stubCandidates() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(new Product()));
+        // Zurich main station, Winterthur, Zug
+        when(stockRepository.findNearestAvailable(eq(1L), eq(2), anyDouble(), anyDouble(), isNull(), isNull(), eq(2),
+                anyDouble())).thenReturn(List.of(
+                row(10L, 47.3779, 8.5403, 5),
+                row(11L, 47.5001, 8.7241, 2),
+                row(12L, 47.1662, 8.5155, 9)));
+    }
+
+    @Test
+    void findNearestWarehouses_ShouldRankTheCachedCandidatesForEachPoint() {
+        // Arrange
+        stubCandidates();
+
+        // Act: two points in the same region, one near the station and one farther north-east
+        List<NearestWarehouseDTO> fromStation = routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 2, 2, null);
+        List<NearestWarehouseDTO> fromOerlikon = routingService.findNearestWarehouses(1L, 47.4111, 8.5442, 2, 2, null);
+
+        // Assert
+        assertEquals(List.of(10L, 11L), fromStation.stream().map(NearestWarehouseDTO::getWarehouseId).toList());
+        assertEquals(0.15, fromStation.get(0).getDistanceKm(), 0.01);
+        assertEquals(List.of(10L, 11L), fromOerlikon.stream().map(NearestWarehouseDTO::getWarehouseId).toList());
+        assertEquals(3.8, fromOerlikon.get(0).getDistanceKm(), 0.1);
+        verify(stockRepository, times(1)).findNearestAvailable(anyLong(), anyInt(), anyDouble(), anyDouble(), any(),
+                any(), anyInt(), anyDouble());
+        assertEquals(1.0, meterRegistry.get("stocks.routing.cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void findNearestWarehouses_WhenStockOrWarehousesChanged_ShouldQueryAgain() {
+        // Arrange
+        stubCandidates();
+        routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 2, 2, null);
+
+        // Act: no transaction is active, so the invalidations apply right away
+        routingService.invalidateAfterCommit(2L);
+        routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 2, 2, null);
+        routingService.invalidateAfterCommit(List.of(1L));
+        routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 2, 2, null);
+        aggregateVersions.bump(AggregateVersions.Aggregate.WAREHOUSES);
+        routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 2, 2, null);
+
+        // Assert: another product's change kept the entry
+        verify(stockRepository, times(3)).findNearestAvailable(anyLong(), anyInt(), anyDouble(), anyDouble(), any(),
+                any(), anyInt(), anyDouble());
+    }
+
+    @Test
+    void findNearestWarehouses_WithRadius_ShouldScanTheCellsAroundTheRegion() {
+        // Arrange
+        when(productRepository.findById(1L)).thenReturn(Optional.of(new Product()));
+        when(stockRepository.findNearestAvailable(eq(1L), eq(1), anyDouble(), anyDouble(), notNull(), notNull(), eq(10),
+                anyDouble())).thenReturn(List.of(row(10L, 47.3779, 8.5403, 5), row(11L, 47.5001, 8.7241, 2)));
+
+        // Act
+        List<NearestWarehouseDTO> nearest = routingService.findNearestWarehouses(1L, 47.3769, 8.5417, 1, 10, 5.0);
+
+        // Assert: Winterthur is a candidate for the region but not within 5 km of the point
+        assertEquals(List.of(10L), nearest.stream().map(NearestWarehouseDTO::getWarehouseId).toList());
+    }
+
+    @Test
+    void findNearestWarehouses_WithInvalidInput_ShouldThrow() {
+        // Arrange
+        when(productRepository.findById(2L)).thenReturn(Optional.empty());
+
+        assertThrows(WarehouseException.ValidationException.class,
+                () -> routingService.findNearestWarehouses(1L, 91, 8.5, 1, 10, null));
+        assertThrows(WarehouseException.ValidationException.class,
+                () -> routingService.findNearestWarehouses(1L, 47.3, 8.5, 1, StockRoutingService.MAX_LIMIT + 1, null));
+        assertThrows(WarehouseException.ValidationException.class,
+                () -> routingService.findNearestWarehouses(1L, 47.3, 8.5, 1, 10, 0.0));
+        assertThrows(WarehouseException.ResourceNotFoundException.class,
+                () -> routingService.findNearestWarehouses(2L, 47.3, 8.5, 1, 10, null));
+    }
+
+    @Test
+    void checkBasket_WithLinesOfOneProductAddingUpToMoreThanTheIntRange_ShouldThrowValidation() {
+        assertThrows(WarehouseException.ValidationException.class, () -> routingService.checkBasket(
+                new BasketAvailabilityRequestDTO(List.of(new BasketLineDTO(1L, Integer.MAX_VALUE),
+                        new BasketLineDTO(1L, 1)), null, null)));
+        verifyNoInteractions(productRepository, stockRepository);
+    }
+
+    private static StockRepository.NearestRow row(Long warehouseId, double latitude, double longitude, int available) {
+        return new StockRepository.NearestRow() {
+            public Long getWarehouseId() { return warehouseId; }
+            public String getWarehouseName() { return "Warehouse " + warehouseId; }
+            public String getLocation() { return "Location " + warehouseId; }
+            public Double getLatitude() { return latitude; }
+            public Double getLongitude() { return longitude; }
+            public Integer getAvailableQuantity() { return available; }
+            // Computed from the center of the region; not used for the ranking
+            public Double getDistanceKm() { return 0.0; }
+        };
+    }
+}
@@ -0,0 +1,284 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockTransferRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderLineDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderRequestDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.TransferOrderResponseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Audit;
+import ch.hoffmann.jan.warehouse.model.Product;
+import ch.hoffmann.jan.warehouse.model.Stock;
+import ch.hoffmann.jan.warehouse.model.TransferOrder;
+import ch.hoffmann.jan.warehouse.model.User;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.TransferOrderRepository;
+import ch.hoffmann.jan.warehouse.repository.UserRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockServiceTest {
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private TransferOrderRepository transferOrderRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private WarehouseRepository warehouseRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private StockWriteCoalescer stockWriteCoalescer;
+
+    @Mock
+    private StockAvailabilityView stockAvailabilityView;
+
+    @Mock
+    private StockRoutingService stockRoutingService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StockService stockService;
+    private Product hammer;
+    private Product nails;
+    private Warehouse zurich;
+    private Warehouse bern;
+    private User manager;
+
+    @BeforeEach
+    void setUp() {
+        stockService = new StockService(stockRepository, transferOrderRepository, productRepository, warehouseRepository,
+                userRepository, auditService, aggregateVersions, outboxService, stockWriteCoalescer,
+                stockAvailabilityView, stockRoutingService, cacheInvalidationBus, transactionManager);
+        hammer = new Product(1L, "Hammer", "Claw hammer", new BigDecimal("9.90"), null);
+        nails = new Product(2L, "Nails", "Box of 100 nails", new BigDecimal("4.50"), null);
+        zurich = new Warehouse(10L, "Zurich", "Zurich");
+        bern = new Warehouse(20L, "Bern", "Bern");
+        manager = new User(5L, "kc-5", "manager", "Max", "Muster", "MANAGER");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    private void stubUpdate(int quantity) {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(stockRepository.findForUpdate(1L, 10L)).thenReturn(Optional.of(new Stock(100L, hammer, zurich, quantity)));
+        lenient().when(stockRepository.save(any(Stock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+    }
+
+    /**
+     * A transfer order from Bern (id 20) to Zurich (id 10) of the given products
+     */
+    private void stubTransferOrder(List<Product> products, List<Stock> bernStocks, List<Stock> zurichStocks) {
+        when(warehouseRepository.findById(20L)).thenReturn(Optional.of(bern));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(productRepository.findAllById(anyCollection())).thenReturn(products);
+        when(stockRepository.findForUpdateByWarehouse(eq(20L), anyCollection())).thenReturn(bernStocks);
+        when(stockRepository.findForUpdateByWarehouse(eq(10L), anyCollection())).thenReturn(zurichStocks);
+        lenient().when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+        lenient().when(transferOrderRepository.save(any(TransferOrder.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void updateStock_WithinACallersTransaction_ShouldBypassTheCoalescer() {
+        // Arrange: e.g. the transaction that claimed an Idempotency-Key
+        stubUpdate(5);
+        when(stockWriteCoalescer.isCoalesced(10L)).thenReturn(true);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        // Act
+        StockResponseDTO result = stockService.updateStock(
+                new StockUpdateRequestDTO(1L, 10L, 3, StockUpdateRequestDTO.OperationType.ADD), 5L);
+
+        // Assert: applied in the caller's transaction, so it commits or rolls back with the claim
+        assertEquals(8, result.getQuantity());
+        verify(stockWriteCoalescer, never()).submit(any(), any());
+        verify(auditService).logAuditEvent(manager, hammer, zurich, null, "ADD", 3);
+    }
+
+    @Test
+    void updateStock_WhenRemovingTheLastUnits_ShouldDeleteTheStockAndAuditTheRemoval() {
+        // Arrange
+        stubUpdate(5);
+
+        // Act
+        StockResponseDTO result = stockService.updateStock(
+                new StockUpdateRequestDTO(1L, 10L, 5, StockUpdateRequestDTO.OperationType.REMOVE), 5L);
+
+        // Assert
+        assertNull(result);
+        verify(stockRepository).delete(any(Stock.class));
+        verify(auditService).logAuditEvent(manager, hammer, zurich, null, "REMOVE", 5);
+    }
+
+    @Test
+    void updateStock_OfCoalescedWarehouse_ShouldBeSubmittedToTheCoalescer() {
+        // Arrange
+        when(stockWriteCoalescer.isCoalesced(10L)).thenReturn(true);
+        StockUpdateRequestDTO request = new StockUpdateRequestDTO(1L, 10L, 3, StockUpdateRequestDTO.OperationType.ADD);
+        StockResponseDTO coalesced = new StockResponseDTO();
+        when(stockWriteCoalescer.submit(request, 5L)).thenReturn(coalesced);
+
+        // Act
+        StockResponseDTO result = stockService.updateStock(request, 5L);
+
+        // Assert
+        assertSame(coalesced, result);
+        verifyNoInteractions(stockRepository, transactionManager);
+    }
+
+    @Test
+    void transferStock_InEitherDirection_ShouldLockTheStockOfTheLowerWarehouseIdFirst() {
+        // Arrange
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(warehouseRepository.findById(20L)).thenReturn(Optional.of(bern));
+        when(stockRepository.findForUpdate(1L, 10L)).thenAnswer(invocation -> Optional.of(new Stock(100L, hammer, zurich, 5)));
+        when(stockRepository.findForUpdate(1L, 20L)).thenAnswer(invocation -> Optional.of(new Stock(200L, hammer, bern, 5)));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+
+        // Act
+        stockService.transferStock(new StockTransferRequestDTO(1L, 20L, 10L, 2), 5L);
+        stockService.transferStock(new StockTransferRequestDTO(1L, 10L, 20L, 2), 5L);
+
+        // Assert: Zurich (id 10) first both times, so opposite transfers cannot deadlock
+        InOrder locks = inOrder(stockRepository);
+        locks.verify(stockRepository).findForUpdate(1L, 10L);
+        locks.verify(stockRepository).findForUpdate(1L, 20L);
+        locks.verify(stockRepository).findForUpdate(1L, 10L);
+        locks.verify(stockRepository).findForUpdate(1L, 20L);
+        verify(stockRepository, never()).findByProductAndWarehouse(any(), any());
+    }
+
+    @Test
+    void transferStock_ShouldAddToTheLockedTargetStock() {
+        // Arrange
+        when(productRepository.findById(1L)).thenReturn(Optional.of(hammer));
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(zurich));
+        when(warehouseRepository.findById(20L)).thenReturn(Optional.of(bern));
+        Stock zurichHammers = new Stock(100L, hammer, zurich, 1);
+        when(stockRepository.findForUpdate(1L, 10L)).thenReturn(Optional.of(zurichHammers));
+        when(stockRepository.findForUpdate(1L, 20L)).thenReturn(Optional.of(new Stock(200L, hammer, bern, 5)));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(manager));
+
+        // Act
+        stockService.transferStock(new StockTransferRequestDTO(1L, 20L, 10L, 2), 5L);
+
+        // Assert
+        assertEquals(3, zurichHammers.getQuantity());
+        verify(stockRepository).save(zurichHammers);
+        verify(auditService).logAuditEvent(manager, hammer, bern, zurich, "TRANSFER", 2);
+    }
+
+    @Test
+    void createTransferOrder_ShouldLockTheStocksOfTheLowerWarehouseIdFirst() {
+        // Arrange
+        stubTransferOrder(List.of(hammer), List.of(new Stock(200L, hammer, bern, 5)),
+                List.of(new Stock(100L, hammer, zurich, 1)));
+
+        // Act
+        TransferOrderResponseDTO order = stockService.createTransferOrder(
+                new TransferOrderRequestDTO(20L, 10L, List.of(new TransferOrderLineDTO(1L, 3))), 5L);
+
+        // Assert: the target is locked first because its id is lower
+        InOrder locks = inOrder(stockRepository);
+        locks.verify(stockRepository).findForUpdateByWarehouse(eq(10L), anyCollection());
+        locks.verify(stockRepository).findForUpdateByWarehouse(eq(20L), anyCollection());
+        assertEquals(2, order.getLines().get(0).getSourceQuantity());
+        assertEquals(4, order.getLines().get(0).getTargetQuantity());
+    }
+
+    @Test
+    void createTransferOrder_WhenOneLineExceedsTheStock_ShouldRejectTheWholeOrderBeforeChangingAnything() {
+        // Arrange: enough hammers, too few nails
+        Stock bernHammers = new Stock(200L, hammer, bern, 5);
+        stubTransferOrder(List.of(hammer, nails), List.of(bernHammers, new Stock(201L, nails, bern, 1)), List.of());
+
+        // Act & Assert
+        assertThrows(WarehouseException.InsufficientStockException.class, () -> stockService.createTransferOrder(
+                new TransferOrderRequestDTO(20L, 10L,
+                        List.of(new TransferOrderLineDTO(1L, 3), new TransferOrderLineDTO(2L, 3))), 5L));
+        assertEquals(5, bernHammers.getQuantity());
+        verify(transferOrderRepository, never()).save(any());
+        verify(stockRepository, never()).saveAll(any());
+        verify(stockRepository, never()).deleteAll(any());
+        verifyNoInteractions(auditService, outboxService, cacheInvalidationBus);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createTransferOrder_WithDuplicateLines_ShouldMergeThemIntoOneLine() {
+        // Arrange
+        Stock bernHammers = new Stock(200L, hammer, bern, 5);
+        stubTransferOrder(List.of(hammer), List.of(bernHammers), List.of());
+
+        // Act
+        TransferOrderResponseDTO order = stockService.createTransferOrder(new TransferOrderRequestDTO(20L, 10L,
+                List.of(new TransferOrderLineDTO(1L, 2), new TransferOrderLineDTO(1L, 3))), 5L);
+
+        // Assert: one line of 5, which empties the source and creates the target stock
+        assertEquals(1, order.getLines().size());
+        assertEquals(5, order.getLines().get(0).getQuantity());
+        assertEquals(5, order.getTotalQuantity());
+        verify(productRepository).findAllById(Set.of(1L));
+        verify(stockRepository).deleteAll(List.of(bernHammers));
+        ArgumentCaptor<List<Audit>> audits = ArgumentCaptor.forClass(List.class);
+        verify(auditService).saveAudits(audits.capture());
+        assertEquals(1, audits.getValue().size());
+        assertEquals(5, audits.getValue().get(0).getQuantity());
+    }
+
+    @Test
+    void createTransferOrder_WithLinesAddingUpToMoreThanTheIntRange_ShouldThrowValidation() {
+        assertThrows(WarehouseException.ValidationException.class, () -> stockService.createTransferOrder(
+                new TransferOrderRequestDTO(20L, 10L, List.of(new TransferOrderLineDTO(1L, Integer.MAX_VALUE),
+                        new TransferOrderLineDTO(1L, 1))), 5L));
+        verifyNoInteractions(warehouseRepository, stockRepository);
+    }
+}
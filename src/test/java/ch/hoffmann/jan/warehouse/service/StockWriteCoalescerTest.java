@@ -0,0 +1,149 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.stock.StockResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.stock.StockUpdateRequestDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockWriteCoalescerTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(3);
+    private StockWriteCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        coalescer.destroy();
+    }
+
+    /**
+     * Flushed only when a stripe holds maxBatch updates; one stripe, so every key shares it
+     */
+    private StockWriteCoalescer coalescer(int maxBatch, Duration timeout) {
+        return new StockWriteCoalescer(transactionManager, true, Set.of(), Duration.ofHours(1), maxBatch, 1, 1, timeout);
+    }
+
+    private CompletableFuture<StockResponseDTO> submitAsync(StockUpdateRequestDTO.OperationType operation, int quantity) {
+        return CompletableFuture.supplyAsync(() -> coalescer.submit(
+                new StockUpdateRequestDTO(1L, 10L, quantity, operation), 5L), callers);
+    }
+
+    /**
+     * Applies the updates to a stock of 10 units and rejects removals beyond it, like StockService
+     */
+    private List<List<StockWriteCoalescer.PendingUpdate>> recordingWriter() {
+        List<List<StockWriteCoalescer.PendingUpdate>> batches = new ArrayList<>();
+        coalescer.setWriter((productId, warehouseId, updates) -> {
+            batches.add(List.copyOf(updates));
+            int quantity = 10;
+            for (StockWriteCoalescer.PendingUpdate update : updates) {
+                StockUpdateRequestDTO request = update.getRequest();
+                if (!request.isAddition() && request.getQuantity() > quantity) {
+                    update.reject(new WarehouseException.InsufficientStockException("Hammer", "Zurich",
+                            request.getQuantity(), quantity));
+                    continue;
+                }
+                quantity += request.isAddition() ? request.getQuantity() : -request.getQuantity();
+                StockResponseDTO result = new StockResponseDTO();
+                result.setQuantity(quantity);
+                update.succeed(result);
+            }
+        });
+        return batches;
+    }
+
+    @Test
+    void submit_WithConcurrentUpdatesOfOneStock_ShouldWriteThemInOneTransaction() throws Exception {
+        // Arrange
+        coalescer = coalescer(3, Duration.ofSeconds(5));
+        List<List<StockWriteCoalescer.PendingUpdate>> batches = recordingWriter();
+
+        // Act
+        CompletableFuture<StockResponseDTO> first = submitAsync(StockUpdateRequestDTO.OperationType.ADD, 5);
+        CompletableFuture<StockResponseDTO> second = submitAsync(StockUpdateRequestDTO.OperationType.REMOVE, 50);
+        CompletableFuture<StockResponseDTO> third = submitAsync(StockUpdateRequestDTO.OperationType.ADD, 3);
+
+        // Assert: the rejected removal fails on its own, the others get the stock right after their update
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(WarehouseException.InsufficientStockException.class, rejected.getCause());
+        int firstQuantity = first.get(5, TimeUnit.SECONDS).getQuantity();
+        int thirdQuantity = third.get(5, TimeUnit.SECONDS).getQuantity();
+        assertEquals(18, Math.max(firstQuantity, thirdQuantity));
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    void submit_WhenTheFlushTransactionFails_ShouldFailEveryUpdateOfTheBatch() {
+        // Arrange
+        coalescer = coalescer(2, Duration.ofSeconds(5));
+        coalescer.setWriter((productId, warehouseId, updates) -> {
+            throw new IllegalStateException("connection lost");
+        });
+
+        // Act
+        CompletableFuture<StockResponseDTO> first = submitAsync(StockUpdateRequestDTO.OperationType.ADD, 5);
+        CompletableFuture<StockResponseDTO> second = submitAsync(StockUpdateRequestDTO.OperationType.ADD, 3);
+
+        // Assert: the results of the rolled back transaction are not handed out
+        for (CompletableFuture<StockResponseDTO> future : List.of(first, second)) {
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertEquals("connection lost", failed.getCause().getMessage());
+        }
+        verify(transactionManager, times(1)).rollback(any());
+    }
+
+    @Test
+    void submit_WhenNotWrittenInTime_ShouldReportAnUnknownOutcomeAndWriteItOnShutdown() {
+        // Arrange
+        coalescer = coalescer(64, Duration.ofMillis(50));
+        List<List<StockWriteCoalescer.PendingUpdate>> batches = recordingWriter();
+
+        // Act
+        IllegalStateException timeout = assertThrows(IllegalStateException.class,
+                () -> coalescer.submit(new StockUpdateRequestDTO(1L, 10L, 5, StockUpdateRequestDTO.OperationType.ADD), 5L));
+        coalescer.destroy();
+
+        // Assert: the update stayed queued
+        assertTrue(timeout.getMessage().contains("outcome is unknown"));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void isCoalesced_ShouldOnlyIncludeTheConfiguredWarehouses() {
+        // Arrange
+        coalescer = new StockWriteCoalescer(transactionManager, true, Set.of(10L), Duration.ofHours(1), 64, 1, 1,
+                Duration.ofSeconds(5));
+        StockWriteCoalescer disabled = new StockWriteCoalescer(transactionManager, false, Set.of(), Duration.ofHours(1),
+                64, 1, 1, Duration.ofSeconds(5));
+
+        // Assert
+        assertTrue(coalescer.isCoalesced(10L));
+        assertFalse(coalescer.isCoalesced(11L));
+        assertFalse(disabled.isCoalesced(10L));
+    }
+}
@@ -0,0 +1,199 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.config.ReplicaRoutingDataSource;
+import ch.hoffmann.jan.warehouse.dto.sync.SyncResponseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.repository.ProductRepository;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SyncServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private WarehouseRepository warehouseRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    private SyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        syncService = new SyncService(productRepository, stockRepository, warehouseRepository, entityManager,
+                Duration.ofDays(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.clearRequirement();
+    }
+
+    private Query stubQuery(String sql) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(entityManager.createNativeQuery(contains(sql))).thenReturn(query);
+        return query;
+    }
+
+    /**
+     * Runs the work passed to the session on a mocked connection and returns the xmin of the snapshot
+     */
+    private void stubSnapshot(String xmin) throws Exception {
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        doAnswer(invocation -> {
+            invocation.<Work>getArgument(0).execute(connection);
+            return null;
+        }).when(session).doWork(any());
+        when(connection.createStatement()).thenReturn(statement);
+        when(stubQuery("pg_snapshot_xmin(pg_current_snapshot())").getSingleResult()).thenReturn(xmin);
+    }
+
+    private void stubPurged(boolean purged) {
+        when(stubQuery("<= purged_through").getSingleResult()).thenReturn(purged);
+    }
+
+    @Test
+    void getChanges_WithoutToken_ShouldReturnEverythingWithTheXminOfTheSnapshotAsToken() throws Exception {
+        // Arrange
+        stubSnapshot("742");
+        ProductRepository.SyncRow hammer = mock(ProductRepository.SyncRow.class);
+        when(hammer.getId()).thenReturn(1L);
+        when(hammer.getName()).thenReturn("Hammer");
+        when(hammer.getPrice()).thenReturn(new BigDecimal("9.90"));
+        when(productRepository.findChangedSince("0")).thenReturn(List.of(hammer));
+
+        // Act
+        SyncResponseDTO changes = syncService.getChanges(null);
+
+        // Assert
+        assertTrue(changes.isFull());
+        assertEquals("742", changes.getToken());
+        assertEquals("Hammer", changes.getProducts().get(0).getName());
+        verify(stockRepository).findChangedSince("0");
+        verify(warehouseRepository).findChangedSince("0");
+        assertTrue(changes.getDeleted().isEmpty());
+        verify(entityManager, never()).createNativeQuery(contains("FROM sync_tombstones"));
+    }
+
+    @Test
+    void getChanges_ShouldTakeTheTokenFromTheRepeatableReadSnapshotOfTheChanges() throws Exception {
+        // Arrange
+        stubSnapshot("742");
+
+        // Act
+        syncService.getChanges(null);
+
+        // Assert: the isolation level is set before the first statement, which takes the snapshot
+        InOrder inOrder = inOrder(statement, entityManager, productRepository);
+        inOrder.verify(statement).execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+        inOrder.verify(entityManager).createNativeQuery(contains("pg_snapshot_xmin(pg_current_snapshot())"));
+        inOrder.verify(productRepository).findChangedSince("0");
+        verify(statement).close();
+    }
+
+    @Test
+    void getChanges_WithToken_ShouldReturnTheChangesAndTombstonesFromItsTransactionOn() throws Exception {
+        // Arrange
+        stubSnapshot("742");
+        stubPurged(false);
+        Query tombstones = stubQuery("FROM sync_tombstones");
+        when(tombstones.getResultList()).thenReturn(List.of(new Object[]{"PRODUCT", 3L}, new Object[]{"STOCK", 40L}));
+
+        // Act
+        SyncResponseDTO changes = syncService.getChanges("700");
+
+        // Assert
+        assertFalse(changes.isFull());
+        assertEquals("742", changes.getToken());
+        verify(productRepository).findChangedSince("700");
+        verify(stockRepository).findChangedSince("700");
+        verify(warehouseRepository).findChangedSince("700");
+        verify(tombstones).setParameter("since", "700");
+        assertEquals(2, changes.getDeleted().size());
+        assertEquals("PRODUCT", changes.getDeleted().get(0).getType());
+        assertEquals(3L, changes.getDeleted().get(0).getId());
+    }
+
+    @Test
+    void getChanges_WithTokenOlderThanThePurgedTombstones_ShouldReturnAFullResync() throws Exception {
+        // Arrange
+        stubSnapshot("742");
+        stubPurged(true);
+
+        // Act
+        SyncResponseDTO changes = syncService.getChanges("12");
+
+        // Assert: deletes since the token are no longer known, so the client replaces its data
+        assertTrue(changes.isFull());
+        assertEquals("742", changes.getToken());
+        verify(productRepository).findChangedSince("0");
+        verify(stockRepository).findChangedSince("0");
+        verify(warehouseRepository).findChangedSince("0");
+        verify(entityManager, never()).createNativeQuery(contains("FROM sync_tombstones"));
+    }
+
+    @Test
+    void getChanges_WithInvalidToken_ShouldThrowValidation() throws Exception {
+        // Arrange
+        stubSnapshot("742");
+
+        // Act & Assert
+        assertThrows(WarehouseException.ValidationException.class, () -> syncService.getChanges("-1"));
+        assertThrows(WarehouseException.ValidationException.class, () -> syncService.getChanges("abc"));
+        verifyNoInteractions(productRepository, stockRepository, warehouseRepository);
+    }
+
+    @Test
+    void purgeTombstones_ShouldDeleteTheTombstonesOlderThanTheRetention() {
+        // Arrange
+        Query purge = stubQuery("DELETE FROM sync_tombstones");
+
+        // Act
+        syncService.purgeTombstones();
+
+        // Assert: the purged transaction ids are remembered in the same statement
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(purge).setParameter(eq("cutoff"), cutoff.capture());
+        assertTrue(Duration.between(cutoff.getValue(), LocalDateTime.now().minusDays(30)).abs().getSeconds() < 5);
+        verify(entityManager).createNativeQuery(contains("SET purged_through = GREATEST(purged_through"));
+        verify(purge).executeUpdate();
+    }
+}
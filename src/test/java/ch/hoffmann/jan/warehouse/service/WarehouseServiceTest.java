@@ -0,0 +1,152 @@
+package ch.hoffmann.jan.warehouse.service;
+
+import ch.hoffmann.jan.warehouse.dto.event.DomainEventDTO;
+import ch.hoffmann.jan.warehouse.dto.event.StockAdjustedEventDTO;
+import ch.hoffmann.jan.warehouse.dto.event.StockTransferredEventDTO;
+import ch.hoffmann.jan.warehouse.dto.warehouse.WarehouseArchiveResponseDTO;
+import ch.hoffmann.jan.warehouse.exception.WarehouseException;
+import ch.hoffmann.jan.warehouse.model.Warehouse;
+import ch.hoffmann.jan.warehouse.repository.StockRepository;
+import ch.hoffmann.jan.warehouse.repository.WarehouseRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WarehouseServiceTest {
+
+    @Mock
+    private WarehouseRepository warehouseRepository;
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private AggregateVersions aggregateVersions;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Mock
+    private StockAvailabilityView stockAvailabilityView;
+
+    @Mock
+    private StockRoutingService stockRoutingService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private WarehouseService warehouseService;
+    private Query archiveQuery;
+
+    @BeforeEach
+    void setUp() {
+        warehouseService = new WarehouseService(warehouseRepository, stockRepository, aggregateVersions, outboxService,
+                cacheInvalidationBus, stockAvailabilityView, stockRoutingService, entityManager);
+        archiveQuery = mock(Query.class, RETURNS_SELF);
+    }
+
+    private void stubArchive(long reservedStocks, List<Object[]> moved) {
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(new Warehouse(10L, "Zurich", "Zurich")));
+        lenient().when(warehouseRepository.findById(20L)).thenReturn(Optional.of(new Warehouse(20L, "Bern", "Bern")));
+        when(entityManager.createNativeQuery(contains("FOR UPDATE"))).thenReturn(mock(Query.class, RETURNS_SELF));
+        Query reservedQuery = mock(Query.class, RETURNS_SELF);
+        when(reservedQuery.getSingleResult()).thenReturn(reservedStocks);
+        when(entityManager.createNativeQuery(contains("reserved > 0"))).thenReturn(reservedQuery);
+        lenient().when(entityManager.createNativeQuery(contains("DELETE FROM stocks"))).thenReturn(archiveQuery);
+        lenient().when(archiveQuery.getResultList()).thenReturn(moved);
+    }
+
+    @Test
+    void archiveWarehouse_WithTarget_ShouldRecordATransferEventPerMovedStockEntry() {
+        // Arrange
+        stubArchive(0, List.of(new Object[]{1L, 5}, new Object[]{2L, 7}));
+
+        // Act
+        WarehouseArchiveResponseDTO result = warehouseService.archiveWarehouse(10L, 20L, 5L);
+
+        // Assert
+        assertEquals(2, result.getStockEntries());
+        assertEquals(12, result.getUnits());
+        ArgumentCaptor<DomainEventDTO> events = ArgumentCaptor.forClass(DomainEventDTO.class);
+        verify(outboxService, times(2)).record(events.capture());
+        StockTransferredEventDTO first = (StockTransferredEventDTO) events.getAllValues().get(0);
+        assertEquals(1L, first.getProductId());
+        assertEquals(10L, first.getSourceWarehouseId());
+        assertEquals(20L, first.getTargetWarehouseId());
+        assertEquals(5, first.getQuantity());
+        verify(archiveQuery).setParameter("targetWarehouseId", 20L);
+        verify(cacheInvalidationBus).publishStocks(List.of(1L, 2L), 10L);
+        verify(cacheInvalidationBus).publishStocks(List.of(1L, 2L), 20L);
+        verify(aggregateVersions).bumpAfterCommit(AggregateVersions.Aggregate.STOCKS);
+    }
+
+    @Test
+    void archiveWarehouse_WithoutTarget_ShouldRecordTheWriteOffs() {
+        // Arrange
+        stubArchive(0, List.<Object[]>of(new Object[]{1L, 5}));
+
+        // Act
+        warehouseService.archiveWarehouse(10L, null, 5L);
+
+        // Assert
+        ArgumentCaptor<StockAdjustedEventDTO> event = ArgumentCaptor.forClass(StockAdjustedEventDTO.class);
+        verify(outboxService).record(event.capture());
+        assertEquals("REMOVE", event.getValue().getOperation());
+        assertEquals(5, event.getValue().getQuantity());
+        assertEquals(0, event.getValue().getNewQuantity());
+        verify(cacheInvalidationBus).publishStocks(List.of(1L), 10L);
+        verifyNoMoreInteractions(cacheInvalidationBus);
+    }
+
+    @Test
+    void archiveWarehouse_WithoutStock_ShouldNotInvalidateAnything() {
+        // Arrange
+        stubArchive(0, List.of());
+
+        // Act
+        WarehouseArchiveResponseDTO result = warehouseService.archiveWarehouse(10L, 20L, 5L);
+
+        // Assert
+        assertEquals(0, result.getStockEntries());
+        verifyNoInteractions(outboxService, aggregateVersions, cacheInvalidationBus, stockRoutingService);
+    }
+
+    @Test
+    void archiveWarehouse_WithReservedStock_ShouldThrowWithoutArchiving() {
+        // Arrange
+        stubArchive(3, List.of());
+
+        // Act & Assert
+        assertThrows(WarehouseException.StockReservedException.class,
+                () -> warehouseService.archiveWarehouse(10L, 20L, 5L));
+        verify(archiveQuery, never()).getResultList();
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void archiveWarehouse_IntoItself_ShouldThrow() {
+        // Arrange
+        when(warehouseRepository.findById(10L)).thenReturn(Optional.of(new Warehouse(10L, "Zurich", "Zurich")));
+
+        // Act & Assert
+        assertThrows(WarehouseException.SameWarehouseTransferException.class,
+                () -> warehouseService.archiveWarehouse(10L, 10L, 5L));
+        verifyNoInteractions(entityManager);
+    }
+}
@@ -0,0 +1,53 @@
+package ch.hoffmann.jan.warehouse.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CsvReaderTest {
+
+    @Test
+    public void testReadRecords() throws IOException {
+        // Given
+        CsvReader reader = new CsvReader(new StringReader("name,price\r\nLaptop,999.99\r\n\r\nMouse,19.90"));
+
+        // When / Then
+        assertThat(reader.readRecord()).containsExactly("name", "price");
+        assertThat(reader.readRecord()).containsExactly("Laptop", "999.99");
+        assertThat(reader.getRecordLine()).isEqualTo(2);
+        assertThat(reader.readRecord()).containsExactly("Mouse", "19.90");
+        assertThat(reader.getRecordLine()).isEqualTo(4);
+        assertThat(reader.readRecord()).isNull();
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        // Given
+        CsvReader reader = new CsvReader(new StringReader(
+                "\"Desk, oak\",\"The \"\"big\"\" one\nwith two lines\",,\"\"\nnext,row\n"));
+
+        // When
+        List<String> record = reader.readRecord();
+
+        // Then
+        assertThat(record).containsExactly("Desk, oak", "The \"big\" one\nwith two lines", "", "");
+        assertThat(reader.readRecord()).containsExactly("next", "row");
+        assertThat(reader.getRecordLine()).isEqualTo(3);
+        assertThat(reader.readRecord()).isNull();
+    }
+
+    @Test
+    public void testUnterminatedQuote() throws IOException {
+        // Given
+        CsvReader reader = new CsvReader(new StringReader("ok\n\"broken,field\n"));
+        reader.readRecord();
+
+        // When / Then
+        assertThrows(IOException.class, reader::readRecord);
+    }
+}
@@ -0,0 +1,73 @@
+package ch.hoffmann.jan.warehouse.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GeoHashTest {
+
+    @Test
+    public void testEncodeAndBounds() {
+        // When
+        String geohash = GeoHash.encode(57.64911, 10.40744, 11);
+        double[] bounds = GeoHash.bounds("u4pruydqqvj");
+
+        // Then
+        assertThat(geohash).isEqualTo("u4pruydqqvj");
+        assertThat(GeoHash.encode(57.64911, 10.40744, 5)).isEqualTo("u4pru");
+        assertThat(bounds[0]).isLessThanOrEqualTo(57.64911);
+        assertThat(bounds[1]).isGreaterThan(57.64911);
+        assertThat(bounds[2]).isLessThanOrEqualTo(10.40744);
+        assertThat(bounds[3]).isGreaterThan(10.40744);
+        assertThrows(IllegalArgumentException.class, () -> GeoHash.encode(91, 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> GeoHash.bounds("u4a"));
+    }
+
+    @Test
+    public void testDistance() {
+        // Zurich to Geneva, about 224 km
+        assertThat(GeoHash.distanceKm(47.3769, 8.5417, 46.2044, 6.1432)).isCloseTo(224.0, within(2.0));
+        assertThat(GeoHash.distanceKm(0, 179.9, 0, -179.9)).isCloseTo(22.2, within(0.1));
+    }
+
+    @Test
+    public void testCoveringCells() {
+        // When
+        List<String> cells = GeoHash.coveringCells(47.3769, 8.5417, 10);
+
+        // Then: every point within the radius is in one of the cells
+        assertThat(cells).hasSize(9).allMatch(cell -> cell.length() == cells.get(0).length());
+        for (int bearing = 0; bearing < 360; bearing += 15) {
+            double latitude = 47.3769 + 9.9 / 111.2 * Math.cos(Math.toRadians(bearing));
+            double longitude = 8.5417 + 9.9 / (111.2 * Math.cos(Math.toRadians(47.3769))) * Math.sin(Math.toRadians(bearing));
+            String geohash = GeoHash.encode(latitude, longitude, GeoHash.MAX_PRECISION);
+            assertThat(cells).anyMatch(geohash::startsWith);
+        }
+        // A circle around the pole has no covering cells
+        assertThat(GeoHash.coveringCells(89.99, 0, 10)).isEmpty();
+        // Across the antimeridian
+        assertThat(GeoHash.coveringCells(0, 179.99, 5)).anyMatch(cell -> GeoHash.bounds(cell)[2] < 0);
+    }
+
+    @Test
+    public void testCellRadius() {
+        // Given
+        String cell = GeoHash.encode(47.3769, 8.5417, 5);
+        double[] bounds = GeoHash.bounds(cell);
+        double centerLatitude = (bounds[0] + bounds[1]) / 2;
+        double centerLongitude = (bounds[2] + bounds[3]) / 2;
+
+        // When / Then: no corner is farther away than the radius
+        double radius = GeoHash.cellRadiusKm(cell);
+        for (int latitude = 0; latitude <= 1; latitude++) {
+            for (int longitude = 2; longitude <= 3; longitude++) {
+                assertThat(GeoHash.distanceKm(centerLatitude, centerLongitude, bounds[latitude], bounds[longitude]))
+                        .isLessThanOrEqualTo(radius);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ch.hoffmann.jan.warehouse.util;
+
+import ch.hoffmann.jan.warehouse.config.JacksonConfig;
+import ch.hoffmann.jan.warehouse.dto.product.ProductResponseDTO;
+import ch.hoffmann.jan.warehouse.dto.product.ProductStockDTO;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the serialization of the GET /api/products list: throughput (bytes/s) and bytes allocated per response,
+ * for the former path (collect the DTOs in a list, serialize it to a byte array with reflective accessors) and for
+ * the streamed path with and without Blackbird. The DTOs are produced in memory, so the numbers are those of the
+ * Jackson layer alone. A second run compares the size of the response and the client's parsing cost for JSON,
+ * CBOR and Smile.
+ *
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class StreamedListBenchmarkTest {
+
+    private static final int PRODUCTS = 20_000;
+    private static final int STOCKS_PER_PRODUCT = 3;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private final Logger logger = LoggerFactory.getLogger(StreamedListBenchmarkTest.class);
+
+    @FunctionalInterface
+    private interface Serialization {
+        long run() throws IOException;
+    }
+
+    private record Result(long bytes, double bytesPerSecond, long allocatedPerResponse) {
+    }
+
+    @Test
+    public void benchmarkProductListSerialization() throws IOException {
+        ObjectMapper reflective = new ObjectMapper();
+        ObjectMapper blackbird = new ObjectMapper().registerModule(new BlackbirdModule());
+
+        Result buffered = measure(() -> {
+            List<ProductResponseDTO> products = new ArrayList<>();
+            produce(products::add);
+            return reflective.writeValueAsBytes(products).length;
+        });
+        Result streamed = measure(() -> stream(reflective));
+        Result streamedBlackbird = measure(() -> stream(blackbird));
+
+        log("buffered, reflection", buffered);
+        log("streamed, reflection", streamed);
+        log("streamed, Blackbird", streamedBlackbird);
+
+        assertThat(streamed.bytes()).isEqualTo(buffered.bytes());
+        assertThat(streamedBlackbird.bytes()).isEqualTo(buffered.bytes());
+    }
+
+    @Test
+    public void benchmarkResponseFormats() throws IOException {
+        JacksonConfig config = new JacksonConfig();
+        Map<String, ObjectMapper> formats = new LinkedHashMap<>();
+        formats.put("JSON", new Jackson2ObjectMapperBuilder().build());
+        formats.put("CBOR", config.cborHttpMessageConverter(new Jackson2ObjectMapperBuilder(), true).getObjectMapper());
+        formats.put("Smile", config.smileHttpMessageConverter(new Jackson2ObjectMapperBuilder()).getObjectMapper());
+
+        List<ProductResponseDTO> expected = new ArrayList<>();
+        produce(expected::add);
+        for (Map.Entry<String, ObjectMapper> format : formats.entrySet()) {
+            ObjectMapper objectMapper = format.getValue();
+            byte[] response = objectMapper.writeValueAsBytes(
+                    new StreamedList<>(ProductResponseDTO.class, StreamedListBenchmarkTest::produce));
+            JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, ProductResponseDTO.class);
+
+            // What the client spends on reading the response
+            Result parse = measure(() -> {
+                List<ProductResponseDTO> products = objectMapper.readValue(response, listType);
+                return products.size() == PRODUCTS ? response.length : -1;
+            });
+            log(format.getKey() + ", parsed by the client", parse);
+
+            List<ProductResponseDTO> products = objectMapper.readValue(response, listType);
+            assertThat(products).hasSize(PRODUCTS);
+            assertThat(products.get(PRODUCTS - 1).toString()).isEqualTo(expected.get(PRODUCTS - 1).toString());
+        }
+    }
+
+    private long stream(ObjectMapper objectMapper) throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        objectMapper.writeValue(output, new StreamedList<>(ProductResponseDTO.class, StreamedListBenchmarkTest::produce));
+        return output.count;
+    }
+
+    private Result measure(Serialization serialization) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            bytes = serialization.run();
+        }
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            serialization.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(bytes, (double) bytes * ROUNDS / elapsed * 1e9, allocated / ROUNDS);
+    }
+
+    private void log(String path, Result result) {
+        logger.info("{} products ({} bytes), {}: {} ms per response ({} MB/s), {} KB allocated per response",
+                PRODUCTS, result.bytes(), path, String.format("%.1f", result.bytes() / result.bytesPerSecond() * 1e3),
+                String.format("%.1f", result.bytesPerSecond() / 1e6), result.allocatedPerResponse() / 1024);
+    }
+
+    /**
+     * Produces the same products on every call, one at a time as ProductService.streamAllProducts does
+     */
+    private static void produce(Consumer<ProductResponseDTO> consumer) {
+        for (long id = 1; id <= PRODUCTS; id++) {
+            ProductResponseDTO product = new ProductResponseDTO();
+            product.setId(id);
+            product.setName("Product " + id);
+            product.setDescription("Description of product " + id + ", long enough to be typical of the catalog");
+            product.setPrice(BigDecimal.valueOf(id * 7 % 10_000, 2));
+            product.setCategoryId(id % 50);
+            product.setCategoryName("Category " + id % 50);
+            List<ProductStockDTO> stocks = new ArrayList<>(STOCKS_PER_PRODUCT);
+            for (int i = 0; i < STOCKS_PER_PRODUCT; i++) {
+                ProductStockDTO stock = new ProductStockDTO();
+                stock.setId(id * STOCKS_PER_PRODUCT + i);
+                stock.setWarehouseId((long) i + 1);
+                stock.setWarehouseName("Warehouse " + (i + 1));
+                stock.setQuantity((int) (id % 100) + i);
+                stocks.add(stock);
+            }
+            product.setStocks(stocks);
+            consumer.accept(product);
+        }
+    }
+
+    /**
+     * Discards what is written and counts the bytes, in place of the response
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}